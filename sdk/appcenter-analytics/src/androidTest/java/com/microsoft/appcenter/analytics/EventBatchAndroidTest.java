@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import android.util.Log;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.microsoft.appcenter.analytics.Analytics.EVENT_BATCH_CAPACITY;
+import static org.junit.Assert.assertEquals;
+
+public class EventBatchAndroidTest {
+
+    private static final String TAG = "EventBatch";
+
+    private static final int THREADS = 4;
+
+    private static final int EVENTS_PER_THREAD = 20000;
+
+    /**
+     * Measure producers posting a command per event under a lock, like tracking events did before batching.
+     */
+    private static long synchronizedProducers() throws InterruptedException {
+        final List<Runnable> commands = new ArrayList<>();
+        final Object lock = new Object();
+        long duration = runProducers(new Producer() {
+
+            @Override
+            public void produce(final Integer event) {
+                synchronized (lock) {
+                    commands.add(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            event.hashCode();
+                        }
+                    });
+                }
+            }
+        });
+        assertEquals(THREADS * EVENTS_PER_THREAD, commands.size());
+        return duration;
+    }
+
+    /**
+     * Measure producers adding events to the current batch, taking the lock only to start a new batch
+     * like {@link Analytics#trackEvent} does.
+     */
+    private static long batchProducers() throws InterruptedException {
+        final List<EventBatch<Integer>> commands = new ArrayList<>();
+        final AtomicReference<EventBatch<Integer>> currentBatch = new AtomicReference<>();
+        long duration = runProducers(new Producer() {
+
+            @Override
+            public void produce(Integer event) {
+                EventBatch<Integer> batch = currentBatch.get();
+                if (batch == null || !batch.offer(event)) {
+                    synchronized (commands) {
+                        batch = currentBatch.get();
+                        if (batch == null || !batch.offer(event)) {
+                            if (batch != null) {
+                                batch.seal();
+                            }
+                            EventBatch<Integer> newBatch = new EventBatch<>(EVENT_BATCH_CAPACITY);
+                            newBatch.offer(event);
+                            currentBatch.set(newBatch);
+                            commands.add(newBatch);
+                        }
+                    }
+                }
+            }
+        });
+
+        /* Check no event is lost. */
+        int total = 0;
+        for (EventBatch<Integer> batch : commands) {
+            int count = batch.seal();
+            for (int i = 0; i < count; i++) {
+                batch.get(i);
+            }
+            total += count;
+        }
+        assertEquals(THREADS * EVENTS_PER_THREAD, total);
+        return duration;
+    }
+
+    private static long runProducers(final Producer producer) throws InterruptedException {
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            threads[i] = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < EVENTS_PER_THREAD; j++) {
+                        producer.produce(j);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        long startTime = System.nanoTime();
+        startLatch.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return System.nanoTime() - startTime;
+    }
+
+    @Test
+    public void producerCost() throws InterruptedException {
+
+        /* Warm up then measure each path. */
+        synchronizedProducers();
+        batchProducers();
+        long synchronizedDuration = synchronizedProducers();
+        long batchDuration = batchProducers();
+        int events = THREADS * EVENTS_PER_THREAD;
+        Log.i(TAG, "Producers with " + THREADS + " threads, synchronized: " + synchronizedDuration / events + "ns/event, batch: " + batchDuration / events + "ns/event");
+    }
+
+    private interface Producer {
+
+        void produce(Integer event);
+    }
+}
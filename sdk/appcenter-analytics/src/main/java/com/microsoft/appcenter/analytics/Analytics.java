@@ -8,6 +8,10 @@ package com.microsoft.appcenter.analytics;
 import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Process;
 import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
 import android.support.annotation.WorkerThread;
@@ -33,18 +37,22 @@ import com.microsoft.appcenter.ingestion.models.json.LogFactory;
 import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HandlerUtils;
+import com.microsoft.appcenter.utils.IdHelper;
 import com.microsoft.appcenter.utils.async.AppCenterFuture;
 import com.microsoft.appcenter.utils.async.DefaultAppCenterFuture;
 import com.microsoft.appcenter.utils.context.UserIdContext;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Analytics service.
@@ -80,7 +88,24 @@ public class Analytics extends AbstractAppCenterService {
      * Shared instance.
      */
     @SuppressLint("StaticFieldLeak")
-    private static Analytics sInstance;
+    private static volatile Analytics sInstance;
+
+    /**
+     * Maximum number of events processed by a single background command.
+     */
+    @VisibleForTesting
+    static final int EVENT_BATCH_CAPACITY = 128;
+
+    /**
+     * Interval between metric summaries.
+     */
+    @VisibleForTesting
+    static final long METRICS_FLUSH_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Batch receiving tracked events, null if a new batch must be created by the next event.
+     */
+    private final AtomicReference<EventBatch<PendingEvent>> mEventBatch = new AtomicReference<>();
 
     /**
      * Transmission interval minimum value.
@@ -110,6 +135,81 @@ public class Analytics extends AbstractAppCenterService {
     @VisibleForTesting
     AnalyticsTransmissionTarget mDefaultTransmissionTarget;
 
+    /**
+     * Sampling and rate limiting rules of all events.
+     */
+    private final EventSampler mEventSampler = new EventSampler();
+
+    /**
+     * Metrics aggregated in memory, summaries are sent periodically once the first metric is created.
+     */
+    private final MetricsRegistry mMetricsRegistry = new MetricsRegistry(new Runnable() {
+
+        @Override
+        public void run() {
+            HandlerUtils.runOnUiThread(mUpdateMetricsFlusher);
+        }
+    });
+
+    /**
+     * Measures app start durations.
+     */
+    private final AppStartTracker mAppStartTracker;
+
+    /**
+     * Collects frames of the resumed activity, null before Android 7.0.
+     */
+    private final FrameMetricsCollector mFrameMetricsCollector;
+
+    /**
+     * Whether frame metrics are collected.
+     */
+    private volatile boolean mFrameMetricsEnabled;
+
+    /**
+     * Command sending metric summaries.
+     */
+    private final Runnable mFlushMetricsCommand = new Runnable() {
+
+        @Override
+        public void run() {
+            flushMetrics();
+        }
+    };
+
+    /**
+     * Sends metric summaries periodically while enabled.
+     */
+    private final Runnable mMetricsFlusher = new Runnable() {
+
+        @Override
+        public void run() {
+            post(mFlushMetricsCommand);
+            HandlerUtils.getMainHandler().postDelayed(this, METRICS_FLUSH_INTERVAL);
+        }
+    };
+
+    /**
+     * Whether metric summaries are sent periodically, i.e. whether Analytics is enabled.
+     */
+    private volatile boolean mMetricsFlusherEnabled;
+
+    /**
+     * Schedules or cancels the periodic metrics flush, always run on the UI thread so that it is never scheduled twice.
+     * The main thread is not woken up until a metric is created.
+     */
+    private final Runnable mUpdateMetricsFlusher = new Runnable() {
+
+        @Override
+        public void run() {
+            Handler mainHandler = HandlerUtils.getMainHandler();
+            mainHandler.removeCallbacks(mMetricsFlusher);
+            if (mMetricsFlusherEnabled && !mMetricsRegistry.isEmpty()) {
+                mainHandler.postDelayed(mMetricsFlusher, METRICS_FLUSH_INTERVAL);
+            }
+        }
+    };
+
     /**
      * Current activity to replay onResume when enabled in foreground.
      */
@@ -167,6 +267,12 @@ public class Analytics extends AbstractAppCenterService {
         mFactories.put(CommonSchemaEventLog.TYPE, new CommonSchemaEventLogFactory());
         mTransmissionTargets = new HashMap<>();
         mTransmissionInterval = TimeUnit.SECONDS.toMillis(MINIMUM_TRANSMISSION_INTERVAL_IN_SECONDS);
+        long processStartTime = AppStartTracker.UNKNOWN_PROCESS_START_TIME;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            processStartTime = Process.getStartElapsedRealtime();
+        }
+        mAppStartTracker = new AppStartTracker(mMetricsRegistry, processStartTime);
+        mFrameMetricsCollector = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ? new FrameMetricsCollector() : null;
     }
 
     /**
@@ -175,11 +281,19 @@ public class Analytics extends AbstractAppCenterService {
      * @return shared instance.
      */
     @SuppressWarnings({"WeakerAccess", "RedundantSuppression"})
-    public static synchronized Analytics getInstance() {
-        if (sInstance == null) {
-            sInstance = new Analytics();
+    public static Analytics getInstance() {
+
+        /* Avoid locking when already created as this is called on every event. */
+        Analytics instance = sInstance;
+        if (instance == null) {
+            synchronized (Analytics.class) {
+                instance = sInstance;
+                if (instance == null) {
+                    instance = sInstance = new Analytics();
+                }
+            }
         }
-        return sInstance;
+        return instance;
     }
 
     @VisibleForTesting
@@ -241,6 +355,156 @@ public class Analytics extends AbstractAppCenterService {
         getInstance().resumeInstanceAsync();
     }
 
+    /**
+     * Set the sample rate of events. Only the given percentage of installs keep the events,
+     * the decision is stable for an install and an event name.
+     * <p>
+     * Rules of transmission targets take precedence. The sample rate is recorded on the kept events
+     * sent to transmission targets.
+     *
+     * @param eventName  An event name or null for all events without a specific rule.
+     * @param sampleRate Percentage of installs between 0 and 100, 100 to keep all events.
+     * @return <code>true</code> if the sample rate is set, <code>false</code> otherwise.
+     */
+    public static boolean setEventSampleRate(String eventName, double sampleRate) {
+        return getInstance().mEventSampler.setSampleRate(eventName, sampleRate);
+    }
+
+    /**
+     * Limit the rate of events. Up to the maximum number of events can be tracked in a burst,
+     * then events are discarded until the limit is refilled over the period.
+     * <p>
+     * Rules of transmission targets take precedence.
+     *
+     * @param eventName    An event name or null for all events without a specific rule.
+     * @param maxEvents    Maximum number of events per period, 0 to remove the limit.
+     * @param periodMillis Period in milliseconds.
+     * @return <code>true</code> if the rate limit is set, <code>false</code> otherwise.
+     */
+    public static boolean setEventRateLimit(String eventName, int maxEvents, long periodMillis) {
+        return getInstance().mEventSampler.setRateLimit(eventName, maxEvents, periodMillis);
+    }
+
+    /**
+     * Get a counter. Its total is sent as a summary event once per minute if it changed.
+     *
+     * @param name A metric name, used as the event name.
+     * @return counter, to keep and reuse.
+     */
+    public static Counter getCounter(String name) {
+        return getCounter(name, null);
+    }
+
+    /**
+     * Get a counter. Its total is sent as a summary event once per minute if it changed.
+     *
+     * @param name       A metric name, used as the event name.
+     * @param dimensions Optional dimensions, each set of dimensions is a distinct counter sent as properties.
+     * @return counter, to keep and reuse.
+     */
+    public static Counter getCounter(String name, Map<String, String> dimensions) {
+        return getInstance().mMetricsRegistry.getCounter(name, dimensions);
+    }
+
+    /**
+     * Get a gauge. Its last value is sent as a summary event once per minute if it was set.
+     *
+     * @param name A metric name, used as the event name.
+     * @return gauge, to keep and reuse.
+     */
+    public static Gauge getGauge(String name) {
+        return getGauge(name, null);
+    }
+
+    /**
+     * Get a gauge. Its last value is sent as a summary event once per minute if it was set.
+     *
+     * @param name       A metric name, used as the event name.
+     * @param dimensions Optional dimensions, each set of dimensions is a distinct gauge sent as properties.
+     * @return gauge, to keep and reuse.
+     */
+    public static Gauge getGauge(String name, Map<String, String> dimensions) {
+        return getInstance().mMetricsRegistry.getGauge(name, dimensions);
+    }
+
+    /**
+     * Get a histogram. The distribution of its values is sent as a summary event once per minute
+     * if values were recorded.
+     *
+     * @param name A metric name, used as the event name.
+     * @return histogram, to keep and reuse.
+     */
+    public static Histogram getHistogram(String name) {
+        return getHistogram(name, null);
+    }
+
+    /**
+     * Get a histogram. The distribution of its values is sent as a summary event once per minute
+     * if values were recorded.
+     *
+     * @param name       A metric name, used as the event name.
+     * @param dimensions Optional dimensions, each set of dimensions is a distinct histogram sent as properties.
+     * @return histogram, to keep and reuse.
+     */
+    public static Histogram getHistogram(String name, Map<String, String> dimensions) {
+        return getInstance().mMetricsRegistry.getHistogram(name, dimensions);
+    }
+
+    /**
+     * Start a span timing a section of code. Its duration is recorded in a histogram named after
+     * the span when it is stopped.
+     * <p>
+     * Spans are sampled with the rules set by {@link #setEventSampleRate(String, double)}
+     * and {@link #setEventRateLimit(String, int, long)} for the span name.
+     *
+     * @param name A span name, used as the event name of its summaries.
+     * @return span, to stop when done.
+     */
+    public static Span startSpan(String name) {
+        Analytics analytics = getInstance();
+        if (name == null || name.isEmpty()) {
+            AppCenterLog.error(LOG_TAG, "Span name cannot be null or empty.");
+            return new Span(null, name, EventSampler.NOT_SAMPLED);
+        }
+        double sampleRate = analytics.sampleEvent(name, null);
+        return new Span(sampleRate != EventSampler.DISCARDED ? analytics.mMetricsRegistry : null, name, sampleRate);
+    }
+
+    /**
+     * Enable or disable frame metrics, disabled by default. When enabled, an event named
+     * <code>page_frames</code> is sent after each activity visit, with the page name, the numbers
+     * of frames, slow frames and frozen frames and the longest frame duration in milliseconds.
+     * <p>
+     * Frame durations are the ones reported by the platform for the frames rendered by the activity window,
+     * they are collected only on Android 7.0 (API level 24) and later. The platform drops reports when
+     * the main thread is busy: such frames are counted, and also sent as <code>dropped_frame_reports</code>,
+     * but their duration is unknown.
+     *
+     * @param enabled <code>true</code> to enable, <code>false</code> to disable.
+     */
+    public static void setFrameMetricsEnabled(boolean enabled) {
+        getInstance().mFrameMetricsEnabled = enabled;
+    }
+
+    /**
+     * Set the thresholds of slow and frozen frames. Defaults are 25 and 700 milliseconds.
+     *
+     * @param slowFrameMillis   frames longer than that are slow, in milliseconds.
+     * @param frozenFrameMillis frames longer than that are frozen, in milliseconds.
+     * @return <code>true</code> if the thresholds are set, <code>false</code> otherwise.
+     */
+    public static boolean setFrameMetricsThresholds(long slowFrameMillis, long frozenFrameMillis) {
+        if (slowFrameMillis <= 0 || frozenFrameMillis < slowFrameMillis) {
+            AppCenterLog.error(LOG_TAG, "Frame thresholds must be positive and the frozen frame threshold cannot be lower than the slow frame threshold.");
+            return false;
+        }
+        FrameMetricsCollector frameMetricsCollector = getInstance().mFrameMetricsCollector;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && frameMetricsCollector != null) {
+            frameMetricsCollector.setThresholds(slowFrameMillis, frozenFrameMillis);
+        }
+        return true;
+    }
+
     /**
      * Sets an analytics listener.
      * <p>
@@ -355,7 +619,7 @@ public class Analytics extends AbstractAppCenterService {
      * @param properties Optional properties.
      */
     public static void trackEvent(String name, Map<String, String> properties) {
-        getInstance().trackEventAsync(name, convertProperties(properties), null, Flags.DEFAULTS);
+        trackEvent(name, properties, Flags.DEFAULTS);
     }
 
     /**
@@ -391,7 +655,11 @@ public class Analytics extends AbstractAppCenterService {
      *                   {@link Flags#CRITICAL} flag.
      */
     public static void trackEvent(String name, Map<String, String> properties, int flags) {
-        getInstance().trackEventAsync(name, convertProperties(properties), null, flags);
+        Analytics analytics = getInstance();
+        double sampleRate = analytics.sampleEvent(name, null);
+        if (sampleRate != EventSampler.DISCARDED) {
+            analytics.trackEventAsync(name, convertProperties(properties), null, flags, sampleRate);
+        }
     }
 
     /**
@@ -469,7 +737,18 @@ public class Analytics extends AbstractAppCenterService {
      * Internal method redirection for trackEvent.
      */
     static void trackEvent(String name, EventProperties properties, AnalyticsTransmissionTarget transmissionTarget, int flags) {
-        getInstance().trackEventAsync(name, convertProperties(properties), transmissionTarget, flags);
+        Analytics analytics = getInstance();
+        double sampleRate = analytics.sampleEvent(name, transmissionTarget);
+        if (sampleRate != EventSampler.DISCARDED) {
+            analytics.trackEventAsync(name, convertProperties(properties), transmissionTarget, flags, sampleRate);
+        }
+    }
+
+    /**
+     * Internal method redirection for trackEvent once sampling rules are applied.
+     */
+    static void trackEvent(String name, EventProperties properties, AnalyticsTransmissionTarget transmissionTarget, int flags, double sampleRate) {
+        getInstance().trackEventAsync(name, convertProperties(properties), transmissionTarget, flags, sampleRate);
     }
 
     /**
@@ -602,8 +881,22 @@ public class Analytics extends AbstractAppCenterService {
         return mFactories;
     }
 
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        mAppStartTracker.onActivityCreated();
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+        mAppStartTracker.onActivityStarted();
+    }
+
     @Override
     public synchronized void onActivityResumed(final Activity activity) {
+        mAppStartTracker.onActivityResumed();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && mFrameMetricsEnabled && mFrameMetricsCollector != null && isInstanceEnabled()) {
+            mFrameMetricsCollector.start(activity.getWindow(), generatePageName(activity.getClass()));
+        }
         final Runnable updateCurrentActivityRunnable = new Runnable() {
 
             @Override
@@ -637,13 +930,14 @@ public class Analytics extends AbstractAppCenterService {
         if (mSessionTracker != null) {
             mSessionTracker.onActivityResumed();
             if (mAutoPageTrackingEnabled) {
-                queuePage(generatePageName(activity.getClass()), null);
+                queuePage(generatePageName(activity.getClass()), null, null);
             }
         }
     }
 
     @Override
     public synchronized void onActivityPaused(Activity activity) {
+        final List<TypedProperty> frameMetrics = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && mFrameMetricsCollector != null ? mFrameMetricsCollector.stop() : null;
         final Runnable updateCurrentActivityRunnable = new Runnable() {
 
             @Override
@@ -659,10 +953,23 @@ public class Analytics extends AbstractAppCenterService {
                 if (mSessionTracker != null) {
                     mSessionTracker.onActivityPaused();
                 }
+                if (frameMetrics != null) {
+                    queueFrameMetrics(frameMetrics);
+                }
             }
         }, updateCurrentActivityRunnable, updateCurrentActivityRunnable);
     }
 
+    @Override
+    public void onApplicationEnterBackground() {
+        mAppStartTracker.onApplicationEnterBackground();
+
+        /* The process may be killed in background before the next periodic flush. */
+        if (!isPreStart() && !mMetricsRegistry.isEmpty()) {
+            post(mFlushMetricsCommand);
+        }
+    }
+
     @Override
     protected Channel.GroupListener getChannelListener() {
         return new Channel.GroupListener() {
@@ -690,6 +997,17 @@ public class Analytics extends AbstractAppCenterService {
         };
     }
 
+    @WorkerThread
+    @Override
+    public synchronized void setInstanceEnabled(boolean enabled) {
+
+        /* Discard the values recorded while disabled, disabling discards the other ones. */
+        if (mChannel != null && enabled && !isInstanceEnabled()) {
+            mMetricsRegistry.clear();
+        }
+        super.setInstanceEnabled(enabled);
+    }
+
     /**
      * React to enable state change.
      *
@@ -704,11 +1022,31 @@ public class Analytics extends AbstractAppCenterService {
 
             /* Check if service started at application level and enable corresponding features. */
             startAppLevelFeatures();
+
+            /* Send metrics periodically, including the ones recorded before start such as the cold start. */
+            mMetricsFlusherEnabled = true;
+            HandlerUtils.runOnUiThread(mUpdateMetricsFlusher);
         }
 
         /* On disabling service. */
         else {
             mChannel.removeGroup(ANALYTICS_CRITICAL_GROUP);
+            mMetricsFlusherEnabled = false;
+            HandlerUtils.runOnUiThread(mUpdateMetricsFlusher);
+            mMetricsRegistry.clear();
+
+            /* Stop collecting frames of the resumed activity. */
+            if (mFrameMetricsCollector != null) {
+                HandlerUtils.runOnUiThread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                            mFrameMetricsCollector.stop();
+                        }
+                    }
+                });
+            }
 
             /* Cleanup resources. */
             if (mAnalyticsValidator != null) {
@@ -768,14 +1106,17 @@ public class Analytics extends AbstractAppCenterService {
 
         /* Make a copy to prevent concurrent modification. */
         final Map<String, String> propertiesCopy = properties != null ? new HashMap<>(properties) : null;
-        post(new Runnable() {
+
+        /* Keep original time if the call is buffered until the service starts. */
+        final Date timestamp = isPreStart() ? new Date() : null;
+        postOrBuffer(new Runnable() {
 
             @Override
             public void run() {
 
                 /* This flag is always read/written in the background thread. */
                 if (mStartedFromApp) {
-                    queuePage(name, propertiesCopy);
+                    queuePage(name, propertiesCopy, timestamp);
                 } else {
                     AppCenterLog.error(LOG_TAG, "Cannot track page if not started from app.");
                 }
@@ -787,53 +1128,235 @@ public class Analytics extends AbstractAppCenterService {
      * Enqueue page log now.
      */
     @WorkerThread
-    private void queuePage(String name, Map<String, String> properties) {
+    private void queuePage(String name, Map<String, String> properties, Date timestamp) {
         PageLog pageLog = new PageLog();
         pageLog.setName(name);
         pageLog.setProperties(properties);
+        pageLog.setTimestamp(timestamp);
         mChannel.enqueue(pageLog, ANALYTICS_GROUP, Flags.DEFAULTS);
     }
 
+    /**
+     * Apply sampling and rate limiting rules to an event. The rules of the transmission target win,
+     * then the rules of its parents and finally the global rules.
+     *
+     * @param name               event name.
+     * @param transmissionTarget optional target.
+     * @return sample rate applied to the event, {@link EventSampler#DISCARDED}
+     * or {@link EventSampler#DEFERRED} before start.
+     */
+    double sampleEvent(String name, AnalyticsTransmissionTarget transmissionTarget) {
+
+        /* Invalid names are reported later by validation. */
+        if (name == null) {
+            return EventSampler.NOT_SAMPLED;
+        }
+
+        /* The install identifier is not known yet: sample when processing the event once started. */
+        if (isPreStart()) {
+            return EventSampler.DEFERRED;
+        }
+
+        /* Events are discarded anyway, don't use rate limit tokens. */
+        if (!isInstanceEnabled()) {
+            return EventSampler.NOT_SAMPLED;
+        }
+        for (AnalyticsTransmissionTarget target = transmissionTarget; target != null; target = target.mParentTarget) {
+            EventSampler.Rule rule = target.mEventSampler.getRule(name, true);
+            if (rule != null) {
+                return rule.sample(name);
+            }
+        }
+        EventSampler.Rule rule = mEventSampler.getRule(name, true);
+        return rule != null ? rule.sample(name) : EventSampler.NOT_SAMPLED;
+    }
+
     /**
      * Send an event.
+     * <p>
+     * Once started, events are added to a batch without locking and a single command is posted
+     * per batch to process them in background.
      *
      * @param name               event name.
      * @param properties         optional properties.
      * @param transmissionTarget optional target.
      * @param flags              optional flags.
+     * @param sampleRate         sample rate applied to the event.
      */
-    private synchronized void trackEventAsync(final String name, final List<TypedProperty> properties, final AnalyticsTransmissionTarget transmissionTarget, final int flags) {
-        final String userId = UserIdContext.getInstance().getUserId();
-        post(new Runnable() {
+    private void trackEventAsync(String name, List<TypedProperty> properties, AnalyticsTransmissionTarget transmissionTarget, int flags, double sampleRate) {
+        String userId = UserIdContext.getInstance().getUserId();
+
+        /* Keep original time if the call is buffered until the service starts. */
+        if (isPreStart()) {
+            final PendingEvent event = new PendingEvent(name, properties, transmissionTarget, flags, userId, new Date(), sampleRate);
+            postOrBuffer(new Runnable() {
+
+                @Override
+                public void run() {
+                    queueEvent(event);
+                }
+            });
+            return;
+        }
+
+        /* Add to the current batch without locking, a command is posted only when starting a new batch. */
+        PendingEvent event = new PendingEvent(name, properties, transmissionTarget, flags, userId, null, sampleRate);
+        EventBatch<PendingEvent> batch = mEventBatch.get();
+        if (batch == null || !batch.offer(event)) {
+            startEventBatch(event);
+        }
+    }
+
+    /**
+     * Start a new batch with an event and post the command processing it.
+     * This holds the same lock as posting any other command, so that no command can be posted
+     * between publishing the batch and posting its command.
+     *
+     * @param event first event of the batch.
+     */
+    private synchronized void startEventBatch(PendingEvent event) {
+
+        /* Another thread may have started a batch while waiting for the lock. */
+        EventBatch<PendingEvent> batch = mEventBatch.get();
+        if (batch != null) {
+            if (batch.offer(event)) {
+                return;
+            }
+
+            /* Current batch is full. */
+            batch.seal();
+        }
+        EventBatch<PendingEvent> newBatch = new EventBatch<>(EVENT_BATCH_CAPACITY);
+        newBatch.offer(event);
+        mEventBatch.set(newBatch);
+        postEventBatch(newBatch);
+    }
+
+    /**
+     * Post a command to process a batch of events in background.
+     *
+     * @param batch batch of events.
+     */
+    private void postEventBatch(final EventBatch<PendingEvent> batch) {
+        Runnable discardRunnable = new Runnable() {
 
             @Override
             public void run() {
-                AnalyticsTransmissionTarget aTransmissionTarget = (transmissionTarget == null) ? mDefaultTransmissionTarget : transmissionTarget;
-                EventLog eventLog = new EventLog();
-                if (aTransmissionTarget != null) {
-                    if (aTransmissionTarget.isEnabled()) {
-                        eventLog.addTransmissionTarget(aTransmissionTarget.getTransmissionTargetToken());
-                        eventLog.setTag(aTransmissionTarget);
-                        if (aTransmissionTarget == mDefaultTransmissionTarget) {
-                            eventLog.setUserId(userId);
-                        }
-                    } else {
-                        AppCenterLog.error(LOG_TAG, "This transmission target is disabled.");
-                        return;
-                    }
-                } else if (!mStartedFromApp) {
-                    AppCenterLog.error(LOG_TAG, "Cannot track event using Analytics.trackEvent if not started from app, please start from the application or use Analytics.getTransmissionTarget.");
-                    return;
+                int count = batch.seal();
+                AppCenterLog.info(LOG_TAG, "Analytics or App Center is disabled, discarded " + count + " event(s).");
+            }
+        };
+
+        /* Skip the override as this command must not seal the batch. */
+        super.post(new Runnable() {
+
+            @Override
+            public void run() {
+                mEventBatch.compareAndSet(batch, null);
+                int count = batch.seal();
+                for (int i = 0; i < count; i++) {
+                    queueEvent(batch.get(i));
                 }
-                eventLog.setId(UUID.randomUUID());
-                eventLog.setName(name);
-                eventLog.setTypedProperties(properties);
+            }
+        }, discardRunnable, discardRunnable);
+    }
+
+    /**
+     * Seal the batch of events currently being filled before posting any other command,
+     * so that events tracked after this command are processed after it.
+     */
+    @Override
+    protected synchronized boolean post(Runnable runnable, Runnable coreDisabledRunnable, Runnable serviceDisabledRunnable) {
+        EventBatch<PendingEvent> batch = mEventBatch.getAndSet(null);
+        if (batch != null) {
+            batch.seal();
+        }
+        return super.post(runnable, coreDisabledRunnable, serviceDisabledRunnable);
+    }
 
-                /* Filter and validate flags. For now we support only persistence. */
-                int filteredFlags = Flags.getPersistenceFlag(flags, true);
-                mChannel.enqueue(eventLog, filteredFlags == Flags.CRITICAL ? ANALYTICS_CRITICAL_GROUP : ANALYTICS_GROUP, filteredFlags);
+    /**
+     * Enqueue a summary event for each metric recorded since the last flush.
+     * Summaries get the session identifier of the session current at flush time,
+     * not the one of the session values were recorded in.
+     */
+    @WorkerThread
+    private void flushMetrics() {
+
+        /* Check like events from Analytics.trackEvent, once for all metrics. */
+        if (mDefaultTransmissionTarget == null && !mStartedFromApp) {
+            mMetricsRegistry.clear();
+            return;
+        }
+        String userId = UserIdContext.getInstance().getUserId();
+        for (Metric metric : mMetricsRegistry.getMetrics()) {
+            List<TypedProperty> summary = metric.getSummary();
+            if (summary != null) {
+                queueEvent(new PendingEvent(metric.getName(), summary, null, Flags.DEFAULTS, userId, null, metric.getSampleRate()));
             }
-        });
+        }
+    }
+
+    /**
+     * Enqueue the frame metrics of a page visit.
+     *
+     * @param frameMetrics summary of the page visit.
+     */
+    @WorkerThread
+    private void queueFrameMetrics(List<TypedProperty> frameMetrics) {
+
+        /* Check like events from Analytics.trackEvent. */
+        if (mDefaultTransmissionTarget == null && !mStartedFromApp) {
+            return;
+        }
+        double sampleRate = sampleEvent(FrameMetricsCollector.EVENT_NAME, null);
+        if (sampleRate != EventSampler.DISCARDED) {
+            String userId = UserIdContext.getInstance().getUserId();
+            queueEvent(new PendingEvent(FrameMetricsCollector.EVENT_NAME, frameMetrics, null, Flags.DEFAULTS, userId, null, sampleRate));
+        }
+    }
+
+    /**
+     * Enqueue event log now.
+     *
+     * @param event event to enqueue.
+     */
+    @WorkerThread
+    private void queueEvent(PendingEvent event) {
+        double sampleRate = event.mSampleRate;
+        if (sampleRate == EventSampler.DEFERRED) {
+            sampleRate = sampleEvent(event.mName, event.mTransmissionTarget);
+            if (sampleRate == EventSampler.DISCARDED) {
+                return;
+            }
+        }
+        AnalyticsTransmissionTarget aTransmissionTarget = (event.mTransmissionTarget == null) ? mDefaultTransmissionTarget : event.mTransmissionTarget;
+        EventLog eventLog = new EventLog();
+        if (aTransmissionTarget != null) {
+            if (aTransmissionTarget.isEnabled()) {
+                eventLog.addTransmissionTarget(aTransmissionTarget.getTransmissionTargetToken());
+                eventLog.setTag(aTransmissionTarget);
+                if (aTransmissionTarget == mDefaultTransmissionTarget) {
+                    eventLog.setUserId(event.mUserId);
+                }
+            } else {
+                AppCenterLog.error(LOG_TAG, "This transmission target is disabled.");
+                return;
+            }
+        } else if (!mStartedFromApp) {
+            AppCenterLog.error(LOG_TAG, "Cannot track event using Analytics.trackEvent if not started from app, please start from the application or use Analytics.getTransmissionTarget.");
+            return;
+        }
+        eventLog.setId(UUID.randomUUID());
+        eventLog.setTimestamp(event.mTimestamp);
+        eventLog.setName(event.mName);
+        eventLog.setTypedProperties(event.mProperties);
+        if (sampleRate != EventSampler.NOT_SAMPLED) {
+            eventLog.setSampleRate(sampleRate);
+        }
+
+        /* Filter and validate flags. For now we support only persistence. */
+        int filteredFlags = Flags.getPersistenceFlag(event.mFlags, true);
+        mChannel.enqueue(eventLog, filteredFlags == Flags.CRITICAL ? ANALYTICS_CRITICAL_GROUP : ANALYTICS_GROUP, filteredFlags);
     }
 
     /**
@@ -894,6 +1417,9 @@ public class Analytics extends AbstractAppCenterService {
     public synchronized void onStarted(@NonNull Context context, @NonNull Channel channel, String appSecret, String transmissionTargetToken, boolean startedFromApp) {
         mContext = context;
         mStartedFromApp = startedFromApp;
+
+        /* Known before events stop being deferred. */
+        EventSampler.setInstallId(IdHelper.getInstallId());
         super.onStarted(context, channel, appSecret, transmissionTargetToken, startedFromApp);
         setDefaultTransmissionTarget(transmissionTargetToken);
     }
@@ -981,4 +1507,55 @@ public class Analytics extends AbstractAppCenterService {
     String getEnabledPreferenceKeyPrefix() {
         return getEnabledPreferenceKey() + "/";
     }
+
+    /**
+     * Event tracked and waiting to be processed in background.
+     */
+    private static class PendingEvent {
+
+        /**
+         * Event name.
+         */
+        final String mName;
+
+        /**
+         * Event properties.
+         */
+        final List<TypedProperty> mProperties;
+
+        /**
+         * Optional transmission target.
+         */
+        final AnalyticsTransmissionTarget mTransmissionTarget;
+
+        /**
+         * Flags.
+         */
+        final int mFlags;
+
+        /**
+         * User identifier when the event was tracked.
+         */
+        final String mUserId;
+
+        /**
+         * Event time or null to use the time of enqueuing in the channel.
+         */
+        final Date mTimestamp;
+
+        /**
+         * Sample rate applied to the event, or {@link EventSampler#DEFERRED} to sample it when processed.
+         */
+        final double mSampleRate;
+
+        PendingEvent(String name, List<TypedProperty> properties, AnalyticsTransmissionTarget transmissionTarget, int flags, String userId, Date timestamp, double sampleRate) {
+            mName = name;
+            mProperties = properties;
+            mTransmissionTarget = transmissionTarget;
+            mFlags = flags;
+            mUserId = userId;
+            mTimestamp = timestamp;
+            mSampleRate = sampleRate;
+        }
+    }
 }
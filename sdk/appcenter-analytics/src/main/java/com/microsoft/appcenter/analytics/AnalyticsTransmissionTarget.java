@@ -62,6 +62,11 @@ public class AnalyticsTransmissionTarget {
      */
     private final PropertyConfigurator mPropertyConfigurator;
 
+    /**
+     * Sampling and rate limiting rules of events tracked with this target and its children.
+     */
+    final EventSampler mEventSampler = new EventSampler();
+
     /**
      * App context.
      */
@@ -72,6 +77,23 @@ public class AnalyticsTransmissionTarget {
      */
     private Channel mChannel;
 
+    /**
+     * Storage key of the enabled state of this target.
+     */
+    private String mEnabledPreferenceKey;
+
+    /**
+     * Cached enabled state of this target in storage, null until read.
+     */
+    private volatile Boolean mEnabledInStorage;
+
+    /**
+     * Cached enabled state of this target and its ancestors, null until computed.
+     * Ancestors cannot change state while one of them is disabled and setting state on a target
+     * applies it to all descendants, so the cached states of a subtree are updated together.
+     */
+    private volatile Boolean mEnabled;
+
     /**
      * Create a new instance.
      *
@@ -88,7 +110,7 @@ public class AnalyticsTransmissionTarget {
     void initInBackground(Context context, Channel channel) {
         mContext = context;
         mChannel = channel;
-        channel.addListener(mPropertyConfigurator);
+        channel.addTaggedListener(this, mPropertyConfigurator);
     }
 
     /**
@@ -200,6 +222,10 @@ public class AnalyticsTransmissionTarget {
      *                   {@link Flags#CRITICAL} flag.
      */
     public void trackEvent(String name, Map<String, String> properties, int flags) {
+        double sampleRate = Analytics.getInstance().sampleEvent(name, this);
+        if (sampleRate == EventSampler.DISCARDED) {
+            return;
+        }
         EventProperties eventProperties = null;
         if (properties != null) {
             eventProperties = new EventProperties();
@@ -207,7 +233,7 @@ public class AnalyticsTransmissionTarget {
                 eventProperties.set(entry.getKey(), entry.getValue());
             }
         }
-        trackEvent(name, eventProperties, flags);
+        trackEvent(name, eventProperties, flags, sampleRate);
     }
 
     /**
@@ -250,6 +276,16 @@ public class AnalyticsTransmissionTarget {
      *                   {@link Flags#CRITICAL} flag.
      */
     public void trackEvent(String name, EventProperties properties, int flags) {
+        double sampleRate = Analytics.getInstance().sampleEvent(name, this);
+        if (sampleRate != EventSampler.DISCARDED) {
+            trackEvent(name, properties, flags, sampleRate);
+        }
+    }
+
+    /**
+     * Track a custom event once sampling rules are applied.
+     */
+    private void trackEvent(String name, EventProperties properties, int flags, double sampleRate) {
 
         /* Merge common properties. More specific target wins conflicts. */
         EventProperties mergedProperties = new EventProperties();
@@ -271,7 +307,7 @@ public class AnalyticsTransmissionTarget {
         }
 
         /* Track event with merged properties. */
-        Analytics.trackEvent(name, mergedProperties, this, flags);
+        Analytics.trackEvent(name, mergedProperties, this, flags, sampleRate);
     }
 
     /**
@@ -346,7 +382,7 @@ public class AnalyticsTransmissionTarget {
                         while (descendantIterator.hasNext()) {
                             AnalyticsTransmissionTarget descendantTarget = descendantIterator.next();
                             descendantIterator.remove();
-                            SharedPreferencesManager.putBoolean(descendantTarget.getEnabledPreferenceKey(), enabled);
+                            descendantTarget.setEnabledInStorage(enabled);
                             for (AnalyticsTransmissionTarget childTarget : descendantTarget.mChildrenTargets.values()) {
                                 descendantIterator.add(childTarget);
                             }
@@ -391,6 +427,36 @@ public class AnalyticsTransmissionTarget {
         });
     }
 
+    /**
+     * Set the sample rate of events tracked with this target and its children.
+     * Only the given percentage of installs keep the events, the decision is stable for an install and an event name.
+     * <p>
+     * Rules of child targets take precedence over this target, and this target over global rules.
+     * The sample rate is recorded on the kept events.
+     *
+     * @param eventName  An event name or null for all events without a specific rule.
+     * @param sampleRate Percentage of installs between 0 and 100, 100 to keep all events.
+     * @return <code>true</code> if the sample rate is set, <code>false</code> otherwise.
+     */
+    public boolean setEventSampleRate(String eventName, double sampleRate) {
+        return mEventSampler.setSampleRate(eventName, sampleRate);
+    }
+
+    /**
+     * Limit the rate of events tracked with this target and its children. Up to the maximum number
+     * of events can be tracked in a burst, then events are discarded until the limit is refilled over the period.
+     * <p>
+     * Rules of child targets take precedence over this target, and this target over global rules.
+     *
+     * @param eventName    An event name or null for all events without a specific rule.
+     * @param maxEvents    Maximum number of events per period, 0 to remove the limit.
+     * @param periodMillis Period in milliseconds.
+     * @return <code>true</code> if the rate limit is set, <code>false</code> otherwise.
+     */
+    public boolean setEventRateLimit(String eventName, int maxEvents, long periodMillis) {
+        return mEventSampler.setRateLimit(eventName, maxEvents, periodMillis);
+    }
+
     /**
      * Getter for transmission target token.
      *
@@ -437,27 +503,47 @@ public class AnalyticsTransmissionTarget {
 
     @NonNull
     private String getEnabledPreferenceKey() {
-        return Analytics.getInstance().getEnabledPreferenceKeyPrefix() + PartAUtils.getTargetKey(mTransmissionTargetToken);
+        if (mEnabledPreferenceKey == null) {
+            mEnabledPreferenceKey = Analytics.getInstance().getEnabledPreferenceKeyPrefix() + PartAUtils.getTargetKey(mTransmissionTargetToken);
+        }
+        return mEnabledPreferenceKey;
     }
 
     @WorkerThread
     private boolean isEnabledInStorage() {
-        return SharedPreferencesManager.getBoolean(getEnabledPreferenceKey(), true);
+        Boolean enabledInStorage = mEnabledInStorage;
+        if (enabledInStorage == null) {
+            enabledInStorage = SharedPreferencesManager.getBoolean(getEnabledPreferenceKey(), true);
+            mEnabledInStorage = enabledInStorage;
+        }
+        return enabledInStorage;
+    }
+
+    /**
+     * Save the enabled state of this target, its ancestors must be enabled.
+     *
+     * @param enabled new state.
+     */
+    @WorkerThread
+    private void setEnabledInStorage(boolean enabled) {
+        SharedPreferencesManager.putBoolean(getEnabledPreferenceKey(), enabled);
+        mEnabledInStorage = enabled;
+        mEnabled = enabled;
     }
 
     @WorkerThread
     private boolean areAncestorsEnabled() {
-        for (AnalyticsTransmissionTarget target = mParentTarget; target != null; target = target.mParentTarget) {
-            if (!target.isEnabledInStorage()) {
-                return false;
-            }
-        }
-        return true;
+        return mParentTarget == null || mParentTarget.isEnabled();
     }
 
     @WorkerThread
     boolean isEnabled() {
-        return areAncestorsEnabled() && isEnabledInStorage();
+        Boolean enabled = mEnabled;
+        if (enabled == null) {
+            enabled = areAncestorsEnabled() && isEnabledInStorage();
+            mEnabled = enabled;
+        }
+        return enabled;
     }
 
     /**
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure app start durations from activity lifecycle callbacks, into a histogram by start type:
+ * <ul>
+ * <li>Cold: from process start to the first activity resumed.</li>
+ * <li>Warm: an activity is created after the application entered background, or the first one
+ * long after process start, until it is resumed.</li>
+ * <li>Hot: an existing activity is started after the application entered background, until it is resumed.</li>
+ * </ul>
+ * Summaries are event logs sent when metrics are flushed: their session identifier is the one of
+ * the session current at flush time, which can differ from the session of the measured start.
+ */
+class AppStartTracker {
+
+    /**
+     * Metric name.
+     */
+    @VisibleForTesting
+    static final String METRIC_NAME = "app_start";
+
+    /**
+     * Dimension holding the start type.
+     */
+    @VisibleForTesting
+    static final String TYPE_DIMENSION = "type";
+
+    @VisibleForTesting
+    static final String COLD = "cold";
+
+    @VisibleForTesting
+    static final String WARM = "warm";
+
+    @VisibleForTesting
+    static final String HOT = "hot";
+
+    /**
+     * Process start time when unknown.
+     */
+    static final long UNKNOWN_PROCESS_START_TIME = -1;
+
+    /**
+     * If the first activity is created later than that after process start, the process was
+     * started for something else and it's a warm start.
+     */
+    @VisibleForTesting
+    static final long MAX_COLD_START_DELAY = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Metrics receiving durations.
+     */
+    private final MetricsRegistry mMetricsRegistry;
+
+    /**
+     * Process start time in milliseconds since boot, {@link #UNKNOWN_PROCESS_START_TIME} if unknown.
+     */
+    private final long mProcessStartTime;
+
+    /**
+     * Whether an activity lifecycle callback was received.
+     */
+    private boolean mActivitySeen;
+
+    /**
+     * Whether no activity was resumed since the application entered background.
+     */
+    private boolean mInBackground = true;
+
+    /**
+     * Type of start being measured, null if none.
+     */
+    private String mStartType;
+
+    /**
+     * Start time in milliseconds since boot of the start being measured.
+     */
+    private long mStartTime;
+
+    AppStartTracker(MetricsRegistry metricsRegistry, long processStartTime) {
+        mMetricsRegistry = metricsRegistry;
+        mProcessStartTime = processStartTime;
+    }
+
+    synchronized void onActivityCreated() {
+        if (mInBackground && mStartType == null) {
+            long now = SystemClock.elapsedRealtime();
+            if (!mActivitySeen && mProcessStartTime == UNKNOWN_PROCESS_START_TIME) {
+
+                /* Cold start without process start time: measure neither this activity nor its start. */
+                mInBackground = false;
+            } else if (!mActivitySeen && now - mProcessStartTime <= MAX_COLD_START_DELAY) {
+                mStartType = COLD;
+                mStartTime = mProcessStartTime;
+            } else {
+                mStartType = WARM;
+                mStartTime = now;
+            }
+        }
+        mActivitySeen = true;
+    }
+
+    synchronized void onActivityStarted() {
+
+        /* Without a previous activity, the SDK was started after the activity was created. */
+        if (mInBackground && mStartType == null && mActivitySeen) {
+            mStartType = HOT;
+            mStartTime = SystemClock.elapsedRealtime();
+        }
+        mActivitySeen = true;
+    }
+
+    synchronized void onActivityResumed() {
+        if (mStartType != null) {
+            long duration = SystemClock.elapsedRealtime() - mStartTime;
+            mMetricsRegistry.getHistogram(METRIC_NAME, Collections.singletonMap(TYPE_DIMENSION, mStartType)).record(duration);
+            mStartType = null;
+        }
+        mActivitySeen = true;
+        mInBackground = false;
+    }
+
+    synchronized void onApplicationEnterBackground() {
+        mInBackground = true;
+        mStartType = null;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metric counting occurrences, the summary holds the total since the previous one.
+ */
+public class Counter extends Metric {
+
+    /**
+     * Type sent in the summary.
+     */
+    static final String TYPE = "counter";
+
+    /**
+     * Value of {@link #mValue} when not updated since the last flush.
+     */
+    private static final long NOT_UPDATED = Long.MIN_VALUE;
+
+    /**
+     * Total since the last flush or {@link #NOT_UPDATED}, in a single field so that flushing resets it atomically.
+     */
+    private final AtomicLong mValue = new AtomicLong(NOT_UPDATED);
+
+    Counter(String name, Map<String, String> dimensions) {
+        super(name, dimensions);
+    }
+
+    /**
+     * Add 1 to the counter.
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Add a value to the counter.
+     *
+     * @param delta value to add.
+     */
+    public void add(long delta) {
+        while (true) {
+            long value = mValue.get();
+            long total = (value == NOT_UPDATED ? 0 : value) + delta;
+            if (mValue.compareAndSet(value, total)) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    String getType() {
+        return TYPE;
+    }
+
+    @Override
+    boolean flush(List<TypedProperty> properties) {
+        long value = mValue.getAndSet(NOT_UPDATED);
+        if (value == NOT_UPDATED) {
+            return false;
+        }
+        addProperty(properties, "value", value);
+        return true;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed size batch of items added by any number of threads without locking and processed by a
+ * single consumer once sealed.
+ *
+ * @param <E> item type.
+ */
+class EventBatch<E> {
+
+    /**
+     * Items storage.
+     */
+    private final AtomicReferenceArray<E> mItems;
+
+    /**
+     * Number of reserved slots when positive, or -(size + 1) once sealed.
+     */
+    private final AtomicInteger mState = new AtomicInteger();
+
+    /**
+     * Init.
+     *
+     * @param capacity maximum number of items.
+     */
+    EventBatch(int capacity) {
+        mItems = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Add an item.
+     *
+     * @param item item to add.
+     * @return false if the batch is sealed or full.
+     */
+    boolean offer(@NonNull E item) {
+        while (true) {
+            int state = mState.get();
+            if (state < 0 || state >= mItems.length()) {
+                return false;
+            }
+            if (mState.compareAndSet(state, state + 1)) {
+                mItems.set(state, item);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Prevent any new item from being added.
+     *
+     * @return number of items in the batch.
+     */
+    int seal() {
+        while (true) {
+            int state = mState.get();
+            if (state < 0) {
+                return -state - 1;
+            }
+            if (mState.compareAndSet(state, -state - 1)) {
+                return state;
+            }
+        }
+    }
+
+    /**
+     * Get an item of a sealed batch, waiting for the producer that reserved the slot to write it.
+     *
+     * @param index item index, lower than the value returned by {@link #seal()}.
+     * @return item.
+     */
+    E get(int index) {
+        E item;
+        while ((item = mItems.get(index)) == null) {
+            Thread.yield();
+        }
+        return item;
+    }
+}
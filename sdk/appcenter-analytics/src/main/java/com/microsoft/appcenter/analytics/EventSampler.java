@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.microsoft.appcenter.analytics.Analytics.LOG_TAG;
+
+/**
+ * Sampling and rate limiting rules of events, by event name or for all events.
+ * <p>
+ * Rules are evaluated when an event is tracked, before anything is allocated for the event.
+ */
+class EventSampler {
+
+    /**
+     * Sample rate of events that are not sampled, in percent.
+     */
+    static final double NOT_SAMPLED = 100;
+
+    /**
+     * Result of {@link Rule#sample(String)} for discarded events.
+     */
+    static final double DISCARDED = -1;
+
+    /**
+     * Sample rate of events tracked before start, sampled when processed once the install identifier is known.
+     */
+    static final double DEFERRED = -2;
+
+    /**
+     * FNV-1a offset basis.
+     */
+    private static final int FNV_OFFSET_BASIS = 0x811c9dc5;
+
+    /**
+     * FNV-1a prime.
+     */
+    private static final int FNV_PRIME = 0x01000193;
+
+    /**
+     * Hash of the install identifier, sampling decisions are stable for an install and an event name.
+     */
+    private static volatile Integer sInstallIdHash;
+
+    /**
+     * Rules by event name.
+     */
+    private final Map<String, Rule> mRules = new ConcurrentHashMap<>();
+
+    /**
+     * Rule of events without a specific rule.
+     */
+    private volatile Rule mDefaultRule;
+
+    /**
+     * Set the install identifier used to sample events.
+     *
+     * @param installId install identifier.
+     */
+    static void setInstallId(@NonNull UUID installId) {
+        sInstallIdHash = hash(FNV_OFFSET_BASIS, installId.toString());
+    }
+
+    @VisibleForTesting
+    static void unsetInstallId() {
+        sInstallIdHash = null;
+    }
+
+    /**
+     * Set the sample rate of events.
+     *
+     * @param eventName  event name or null for events without a specific rule.
+     * @param sampleRate percentage of installs that keep the events, between 0 and 100.
+     *                   The rule still overrides less specific rules when keeping all events.
+     * @return true if the sample rate is set, false if invalid.
+     */
+    synchronized boolean setSampleRate(@Nullable String eventName, double sampleRate) {
+        if (!(sampleRate >= 0 && sampleRate <= NOT_SAMPLED)) {
+            AppCenterLog.error(LOG_TAG, "Sample rate must be between 0 and 100.");
+            return false;
+        }
+        Rule rule = getRule(eventName, false);
+        TokenBucket bucket = rule != null ? rule.mBucket : null;
+        putRule(eventName, new Rule(sampleRate, bucket));
+        return true;
+    }
+
+    /**
+     * Set the rate limit of events.
+     *
+     * @param eventName    event name or null for events without a specific rule.
+     * @param maxEvents    maximum number of events per period, zero or negative to remove the limit.
+     * @param periodMillis period in milliseconds.
+     * @return true if the rate limit is set, false if invalid.
+     */
+    synchronized boolean setRateLimit(@Nullable String eventName, int maxEvents, long periodMillis) {
+        if (maxEvents > 0 && periodMillis <= 0) {
+            AppCenterLog.error(LOG_TAG, "Rate limit period must be positive.");
+            return false;
+        }
+        Rule rule = getRule(eventName, false);
+        double sampleRate = rule != null ? rule.mSampleRate : NOT_SAMPLED;
+        putRule(eventName, new Rule(sampleRate, maxEvents > 0 ? new TokenBucket(maxEvents, periodMillis) : null));
+        return true;
+    }
+
+    /**
+     * Get the rule of an event.
+     *
+     * @param eventName   event name, can be null.
+     * @param withDefault whether to fall back to the rule of events without a specific rule.
+     * @return rule or null if none.
+     */
+    @Nullable
+    Rule getRule(@Nullable String eventName, boolean withDefault) {
+        Rule rule = eventName != null ? mRules.get(eventName) : mDefaultRule;
+        return rule == null && withDefault ? mDefaultRule : rule;
+    }
+
+    private void putRule(@Nullable String eventName, Rule rule) {
+        if (eventName == null) {
+            mDefaultRule = rule;
+        } else {
+            mRules.put(eventName, rule);
+        }
+    }
+
+    /**
+     * Hash characters with FNV-1a.
+     */
+    private static int hash(int hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Sample rate and rate limit of events.
+     */
+    static class Rule {
+
+        /**
+         * Percentage of installs that keep the events.
+         */
+        final double mSampleRate;
+
+        /**
+         * Rate limit or null if unlimited.
+         */
+        final TokenBucket mBucket;
+
+        Rule(double sampleRate, TokenBucket bucket) {
+            mSampleRate = sampleRate;
+            mBucket = bucket;
+        }
+
+        /**
+         * Decide whether to keep an event. Rate limit tokens are only used by sampled in events.
+         *
+         * @param eventName event name.
+         * @return sample rate applied to the event or {@link #DISCARDED}.
+         */
+        double sample(@NonNull String eventName) {
+            if (mSampleRate < NOT_SAMPLED) {
+
+                /* Analytics defers events until the install identifier is known, keep them if it is still not. */
+                Integer installIdHash = sInstallIdHash;
+                if (installIdHash != null) {
+
+                    /* Map the hash to [0, 100). */
+                    long hash = hash(installIdHash, eventName) & 0xffffffffL;
+                    if (hash * NOT_SAMPLED / (1L << 32) >= mSampleRate) {
+                        return DISCARDED;
+                    }
+                    return mBucket == null || mBucket.tryAcquire() ? mSampleRate : DISCARDED;
+                }
+            }
+            return mBucket == null || mBucket.tryAcquire() ? NOT_SAMPLED : DISCARDED;
+        }
+    }
+
+    /**
+     * Token bucket allowing bursts of up to the maximum number of events, refilled continuously.
+     */
+    static class TokenBucket {
+
+        /**
+         * Maximum number of tokens.
+         */
+        private final int mCapacity;
+
+        /**
+         * Tokens added per millisecond.
+         */
+        private final double mRefillRate;
+
+        /**
+         * Available tokens.
+         */
+        private double mTokens;
+
+        /**
+         * Time of the last refill.
+         */
+        private long mLastRefillTime;
+
+        TokenBucket(int capacity, long periodMillis) {
+            mCapacity = capacity;
+            mRefillRate = (double) capacity / periodMillis;
+            mTokens = capacity;
+            mLastRefillTime = SystemClock.elapsedRealtime();
+        }
+
+        /**
+         * Use a token if available.
+         *
+         * @return true if a token was used.
+         */
+        synchronized boolean tryAcquire() {
+            long now = SystemClock.elapsedRealtime();
+            mTokens = Math.min(mCapacity, mTokens + (now - mLastRefillTime) * mRefillRate);
+            mLastRefillTime = now;
+            if (mTokens < 1) {
+                return false;
+            }
+            mTokens--;
+            return true;
+        }
+    }
+}
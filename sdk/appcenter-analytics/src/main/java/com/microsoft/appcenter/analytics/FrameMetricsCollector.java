@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.RequiresApi;
+import android.support.annotation.UiThread;
+import android.support.annotation.VisibleForTesting;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+import com.microsoft.appcenter.utils.HandlerUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collect the durations of the frames rendered by the window of the resumed activity,
+ * as reported by the platform. Nothing is done when no frame is rendered.
+ * <p>
+ * Frame metrics are delivered on the main thread, like activity callbacks, so that counters are
+ * primitive fields without synchronization and recording a frame does not allocate.
+ */
+@RequiresApi(Build.VERSION_CODES.N)
+class FrameMetricsCollector implements Window.OnFrameMetricsAvailableListener {
+
+    /**
+     * Name of summary events.
+     */
+    @VisibleForTesting
+    static final String EVENT_NAME = "page_frames";
+
+    /**
+     * Default threshold of slow frames: at least one vsync missed at 60Hz.
+     */
+    static final long DEFAULT_SLOW_FRAME_MILLIS = 25;
+
+    /**
+     * Default threshold of frozen frames.
+     */
+    static final long DEFAULT_FROZEN_FRAME_MILLIS = 700;
+
+    /**
+     * Frames longer than that are slow, in nanoseconds.
+     */
+    private volatile long mSlowFrameNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_FRAME_MILLIS);
+
+    /**
+     * Frames longer than that are frozen, in nanoseconds.
+     */
+    private volatile long mFrozenFrameNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_FROZEN_FRAME_MILLIS);
+
+    /**
+     * Window being observed, null when not collecting.
+     */
+    private Window mWindow;
+
+    /**
+     * Page being visited.
+     */
+    private String mPageName;
+
+    /**
+     * Number of frames, including the ones whose report was dropped.
+     */
+    private long mFrames;
+
+    /**
+     * Number of frames whose report was dropped by the platform, their duration is unknown.
+     * Reports are dropped when the main thread is busy, so slow frames can be undercounted when this is not 0.
+     */
+    private long mDroppedFrameReports;
+
+    /**
+     * Number of slow frames, including frozen frames.
+     */
+    private long mSlowFrames;
+
+    /**
+     * Number of frozen frames.
+     */
+    private long mFrozenFrames;
+
+    /**
+     * Longest frame in nanoseconds.
+     */
+    private long mMaxFrameDuration;
+
+    /**
+     * Set the thresholds of slow and frozen frames.
+     *
+     * @param slowFrameMillis   frames longer than that are slow, in milliseconds.
+     * @param frozenFrameMillis frames longer than that are frozen, in milliseconds.
+     */
+    void setThresholds(long slowFrameMillis, long frozenFrameMillis) {
+        mSlowFrameNanos = TimeUnit.MILLISECONDS.toNanos(slowFrameMillis);
+        mFrozenFrameNanos = TimeUnit.MILLISECONDS.toNanos(frozenFrameMillis);
+    }
+
+    /**
+     * Start collecting frames of a page visit, discarding the current visit if any.
+     *
+     * @param window   window of the page.
+     * @param pageName page name.
+     */
+    @UiThread
+    void start(@NonNull Window window, String pageName) {
+        if (mWindow != window) {
+            if (mWindow != null) {
+                mWindow.removeOnFrameMetricsAvailableListener(this);
+            }
+            window.addOnFrameMetricsAvailableListener(this, HandlerUtils.getMainHandler());
+            mWindow = window;
+        }
+        mPageName = pageName;
+        mFrames = 0;
+        mSlowFrames = 0;
+        mFrozenFrames = 0;
+        mMaxFrameDuration = 0;
+        mDroppedFrameReports = 0;
+    }
+
+    /**
+     * Stop collecting frames.
+     *
+     * @return summary of the page visit as properties, or null if not collecting or no frame was rendered.
+     */
+    @UiThread
+    List<TypedProperty> stop() {
+        if (mWindow == null) {
+            return null;
+        }
+        mWindow.removeOnFrameMetricsAvailableListener(this);
+        mWindow = null;
+        if (mFrames == 0) {
+            return null;
+        }
+        List<TypedProperty> properties = new ArrayList<>();
+        StringTypedProperty page = new StringTypedProperty();
+        page.setName("page");
+        page.setValue(mPageName);
+        properties.add(page);
+        addProperty(properties, "frames", mFrames);
+        addProperty(properties, "slow_frames", mSlowFrames);
+        addProperty(properties, "frozen_frames", mFrozenFrames);
+        DoubleTypedProperty maxFrame = new DoubleTypedProperty();
+        maxFrame.setName("max_frame_ms");
+        maxFrame.setValue(mMaxFrameDuration / 1e6);
+        properties.add(maxFrame);
+        addProperty(properties, "dropped_frame_reports", mDroppedFrameReports);
+        return properties;
+    }
+
+    @Override
+    public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics, int dropCountSinceLastInvocation) {
+
+        /* Frames of the previous window may still be delivered. */
+        if (window != mWindow) {
+            return;
+        }
+        long duration = frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION);
+        mFrames += 1 + dropCountSinceLastInvocation;
+        mDroppedFrameReports += dropCountSinceLastInvocation;
+        if (duration > mSlowFrameNanos) {
+            mSlowFrames++;
+        }
+        if (duration > mFrozenFrameNanos) {
+            mFrozenFrames++;
+        }
+        mMaxFrameDuration = Math.max(mMaxFrameDuration, duration);
+    }
+
+    private static void addProperty(List<TypedProperty> properties, String name, long value) {
+        LongTypedProperty property = new LongTypedProperty();
+        property.setName(name);
+        property.setValue(value);
+        properties.add(property);
+    }
+}
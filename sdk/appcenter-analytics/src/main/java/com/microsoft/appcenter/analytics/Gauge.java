@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metric holding a current value, the summary holds the last value set.
+ */
+public class Gauge extends Metric {
+
+    /**
+     * Type sent in the summary.
+     */
+    static final String TYPE = "gauge";
+
+    /**
+     * Raw bits of the last value.
+     */
+    private final AtomicLong mValueBits = new AtomicLong();
+
+    /**
+     * Whether the value was set since the last flush.
+     */
+    private final AtomicBoolean mUpdated = new AtomicBoolean();
+
+    Gauge(String name, Map<String, String> dimensions) {
+        super(name, dimensions);
+    }
+
+    /**
+     * Set the current value. NaN and infinite values are ignored.
+     *
+     * @param value current value.
+     */
+    public void set(double value) {
+        if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+            mValueBits.set(Double.doubleToRawLongBits(value));
+            mUpdated.set(true);
+        }
+    }
+
+    @Override
+    String getType() {
+        return TYPE;
+    }
+
+    @Override
+    boolean flush(List<TypedProperty> properties) {
+        if (!mUpdated.getAndSet(false)) {
+            return false;
+        }
+        addProperty(properties, "value", Double.longBitsToDouble(mValueBits.get()));
+        return true;
+    }
+}
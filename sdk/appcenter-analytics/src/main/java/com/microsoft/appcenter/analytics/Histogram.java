@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Metric summarizing the distribution of values such as latencies: the summary holds count, sum,
+ * min, max and quantiles of the values recorded since the previous one.
+ * <p>
+ * Values are counted in logarithmic buckets so that quantiles have a bounded relative error,
+ * and sketches of the same metric can be merged by adding bucket counts.
+ */
+public class Histogram extends Metric {
+
+    /**
+     * Type sent in the summary.
+     */
+    static final String TYPE = "histogram";
+
+    /**
+     * Relative error of quantiles.
+     */
+    @VisibleForTesting
+    static final double RELATIVE_ACCURACY = 0.02;
+
+    /**
+     * Values up to this one share the first bucket.
+     */
+    @VisibleForTesting
+    static final double MIN_VALUE = 1e-3;
+
+    /**
+     * Values from this one share the last bucket.
+     */
+    @VisibleForTesting
+    static final double MAX_VALUE = 1e9;
+
+    /**
+     * Ratio between bucket bounds.
+     */
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+
+    /**
+     * Logarithm of {@link #GAMMA}.
+     */
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+
+    /**
+     * Number of buckets.
+     */
+    @VisibleForTesting
+    static final int BUCKET_COUNT = (int) Math.ceil(Math.log(MAX_VALUE / MIN_VALUE) / LOG_GAMMA) + 1;
+
+    /**
+     * Quantiles sent in the summary.
+     */
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    /**
+     * Names of quantile properties.
+     */
+    private static final String[] QUANTILE_NAMES = {"p50", "p90", "p99"};
+
+    /**
+     * Value counts by bucket since the last flush.
+     */
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Raw bits of the sum of values.
+     */
+    private final AtomicLong mSumBits = new AtomicLong();
+
+    /**
+     * Raw bits of the minimum value.
+     */
+    private final AtomicLong mMinBits = new AtomicLong(Double.doubleToRawLongBits(Double.POSITIVE_INFINITY));
+
+    /**
+     * Raw bits of the maximum value.
+     */
+    private final AtomicLong mMaxBits = new AtomicLong(Double.doubleToRawLongBits(Double.NEGATIVE_INFINITY));
+
+    Histogram(String name, Map<String, String> dimensions) {
+        super(name, dimensions);
+    }
+
+    /**
+     * Record a value. NaN and infinite values are ignored.
+     *
+     * @param value value to record, such as a duration in milliseconds.
+     */
+    public void record(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+        mBuckets.incrementAndGet(getBucket(value));
+        while (true) {
+            long bits = mSumBits.get();
+            if (mSumBits.compareAndSet(bits, Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + value))) {
+                break;
+            }
+        }
+        while (true) {
+            long bits = mMinBits.get();
+            if (value >= Double.longBitsToDouble(bits) || mMinBits.compareAndSet(bits, Double.doubleToRawLongBits(value))) {
+                break;
+            }
+        }
+        while (true) {
+            long bits = mMaxBits.get();
+            if (value <= Double.longBitsToDouble(bits) || mMaxBits.compareAndSet(bits, Double.doubleToRawLongBits(value))) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    String getType() {
+        return TYPE;
+    }
+
+    @Override
+    boolean flush(List<TypedProperty> properties) {
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = mBuckets.getAndSet(i, 0);
+            count += counts[i];
+        }
+        double sum = Double.longBitsToDouble(mSumBits.getAndSet(0));
+        double min = Double.longBitsToDouble(mMinBits.getAndSet(Double.doubleToRawLongBits(Double.POSITIVE_INFINITY)));
+        double max = Double.longBitsToDouble(mMaxBits.getAndSet(Double.doubleToRawLongBits(Double.NEGATIVE_INFINITY)));
+        if (count == 0) {
+            return false;
+        }
+        addProperty(properties, "count", count);
+        addProperty(properties, "sum", sum);
+
+        /* A value recorded during the flush may be missing from min or max. */
+        if (min <= max) {
+            addProperty(properties, "min", min);
+            addProperty(properties, "max", max);
+        }
+        for (int i = 0; i < QUANTILES.length; i++) {
+            double quantile = getQuantile(counts, count, QUANTILES[i]);
+            addProperty(properties, QUANTILE_NAMES[i], min <= max ? Math.max(min, Math.min(max, quantile)) : quantile);
+        }
+        return true;
+    }
+
+    @VisibleForTesting
+    static int getBucket(double value) {
+        if (value <= MIN_VALUE) {
+            return 0;
+        }
+        return (int) Math.min(BUCKET_COUNT - 1, Math.ceil(Math.log(value / MIN_VALUE) / LOG_GAMMA));
+    }
+
+    /**
+     * Get a quantile from bucket counts.
+     *
+     * @param counts   value counts by bucket.
+     * @param count    total count.
+     * @param quantile quantile between 0 and 1.
+     * @return value with the relative accuracy.
+     */
+    @VisibleForTesting
+    static double getQuantile(long[] counts, long count, double quantile) {
+        long rank = (long) (quantile * (count - 1));
+        int bucket = 0;
+        for (long seen = counts[0]; seen <= rank; seen += counts[bucket]) {
+            bucket++;
+        }
+
+        /* Middle of the bucket in relative terms: bucket i holds values in (MIN_VALUE * GAMMA^(i-1), MIN_VALUE * GAMMA^i]. */
+        return bucket == 0 ? MIN_VALUE : MIN_VALUE * Math.pow(GAMMA, bucket) * 2 / (GAMMA + 1);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Metric aggregated in memory and sent as a single summary event per flush interval.
+ * <p>
+ * Recording values does not lock nor allocate: get a metric once and keep it.
+ */
+public abstract class Metric {
+
+    /**
+     * Prefix of summary property names, to avoid conflicts with dimensions.
+     */
+    static final String PROPERTY_PREFIX = "metric.";
+
+    /**
+     * Metric name, used as event name.
+     */
+    private final String mName;
+
+    /**
+     * Dimensions, sent as string properties.
+     */
+    private final Map<String, String> mDimensions;
+
+    /**
+     * Sample rate of the values, sent with the summary.
+     */
+    private volatile double mSampleRate = EventSampler.NOT_SAMPLED;
+
+    Metric(String name, Map<String, String> dimensions) {
+        mName = name;
+        mDimensions = Collections.unmodifiableMap(dimensions);
+    }
+
+    /**
+     * Get the metric name.
+     *
+     * @return metric name.
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Get the dimensions.
+     *
+     * @return dimensions.
+     */
+    public Map<String, String> getDimensions() {
+        return mDimensions;
+    }
+
+    /**
+     * Get the sample rate of the values.
+     *
+     * @return sample rate in percent.
+     */
+    double getSampleRate() {
+        return mSampleRate;
+    }
+
+    /**
+     * Set the sample rate of the values, when they are recorded only by a sample of installs.
+     *
+     * @param sampleRate sample rate in percent.
+     */
+    void setSampleRate(double sampleRate) {
+        mSampleRate = sampleRate;
+    }
+
+    /**
+     * Get the summary of the values recorded since the last one and reset them.
+     *
+     * @return metric type, aggregated values and dimensions as properties, or null if nothing was recorded.
+     */
+    List<TypedProperty> getSummary() {
+        List<TypedProperty> properties = new ArrayList<>();
+        StringTypedProperty type = new StringTypedProperty();
+        type.setName(PROPERTY_PREFIX + "type");
+        type.setValue(getType());
+        properties.add(type);
+        if (!flush(properties)) {
+            return null;
+        }
+        for (Map.Entry<String, String> dimension : mDimensions.entrySet()) {
+            StringTypedProperty property = new StringTypedProperty();
+            property.setName(dimension.getKey());
+            property.setValue(dimension.getValue());
+            properties.add(property);
+        }
+        return properties;
+    }
+
+    /**
+     * Get the type sent in the summary.
+     *
+     * @return metric type.
+     */
+    abstract String getType();
+
+    /**
+     * Add the values aggregated since the last flush to summary properties and reset them.
+     *
+     * @param properties summary properties.
+     * @return false if nothing was recorded since the last flush.
+     */
+    abstract boolean flush(List<TypedProperty> properties);
+
+    static void addProperty(List<TypedProperty> properties, String name, long value) {
+        LongTypedProperty property = new LongTypedProperty();
+        property.setName(PROPERTY_PREFIX + name);
+        property.setValue(value);
+        properties.add(property);
+    }
+
+    static void addProperty(List<TypedProperty> properties, String name, double value) {
+        DoubleTypedProperty property = new DoubleTypedProperty();
+        property.setName(PROPERTY_PREFIX + name);
+        property.setValue(value);
+        properties.add(property);
+    }
+}
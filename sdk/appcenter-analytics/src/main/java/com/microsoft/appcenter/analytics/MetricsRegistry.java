@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.microsoft.appcenter.analytics.Analytics.LOG_TAG;
+
+/**
+ * Metrics by type, name and dimensions.
+ */
+class MetricsRegistry {
+
+    /**
+     * Maximum number of metrics, to bound memory and summaries when dimensions have many values.
+     */
+    @VisibleForTesting
+    static final int MAX_METRICS = 200;
+
+    /**
+     * Metrics by key.
+     */
+    private final Map<List<Object>, Metric> mMetrics = new ConcurrentHashMap<>();
+
+    /**
+     * Histograms without dimensions by name, to get them without allocating a key when spans stop.
+     */
+    private final Map<String, Histogram> mHistograms = new ConcurrentHashMap<>();
+
+    /**
+     * Called once the first metric is created, may be null.
+     */
+    private final Runnable mFirstMetricListener;
+
+    MetricsRegistry() {
+        this(null);
+    }
+
+    /**
+     * Init.
+     *
+     * @param firstMetricListener called once the first metric is created, on the thread creating it.
+     */
+    MetricsRegistry(Runnable firstMetricListener) {
+        mFirstMetricListener = firstMetricListener;
+    }
+
+    Counter getCounter(String name, Map<String, String> dimensions) {
+        Metric metric = getMetric(Counter.TYPE, name, dimensions);
+        return metric instanceof Counter ? (Counter) metric : new Counter(name, Collections.<String, String>emptyMap());
+    }
+
+    Gauge getGauge(String name, Map<String, String> dimensions) {
+        Metric metric = getMetric(Gauge.TYPE, name, dimensions);
+        return metric instanceof Gauge ? (Gauge) metric : new Gauge(name, Collections.<String, String>emptyMap());
+    }
+
+    Histogram getHistogram(String name, Map<String, String> dimensions) {
+        boolean withoutDimensions = name != null && (dimensions == null || dimensions.isEmpty());
+        if (withoutDimensions) {
+            Histogram histogram = mHistograms.get(name);
+            if (histogram != null) {
+                return histogram;
+            }
+        }
+        Metric metric = getMetric(Histogram.TYPE, name, dimensions);
+        if (metric instanceof Histogram) {
+            if (withoutDimensions) {
+                mHistograms.put(name, (Histogram) metric);
+            }
+            return (Histogram) metric;
+        }
+        return new Histogram(name, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * Get or create a metric.
+     *
+     * @return metric or null if invalid, the caller then returns a metric that is never sent.
+     */
+    private synchronized Metric getMetric(String type, String name, Map<String, String> dimensions) {
+        if (name == null || name.isEmpty()) {
+            AppCenterLog.error(LOG_TAG, "Metric name cannot be null or empty.");
+            return null;
+        }
+
+        /* Sort dimensions so that the key does not depend on map order. */
+        Map<String, String> sortedDimensions = new TreeMap<>();
+        if (dimensions != null) {
+            for (Map.Entry<String, String> dimension : dimensions.entrySet()) {
+                if (dimension.getKey() == null || dimension.getValue() == null) {
+                    AppCenterLog.error(LOG_TAG, "Metric dimension names and values cannot be null.");
+                    return null;
+                }
+                sortedDimensions.put(dimension.getKey(), dimension.getValue());
+            }
+        }
+        List<Object> key = Arrays.<Object>asList(type, name, sortedDimensions);
+        Metric metric = mMetrics.get(key);
+        if (metric == null) {
+            if (mMetrics.size() >= MAX_METRICS) {
+                AppCenterLog.error(LOG_TAG, "Too many metrics, " + name + " will not be sent.");
+                return null;
+            }
+            switch (type) {
+                case Counter.TYPE:
+                    metric = new Counter(name, sortedDimensions);
+                    break;
+
+                case Gauge.TYPE:
+                    metric = new Gauge(name, sortedDimensions);
+                    break;
+
+                default:
+                    metric = new Histogram(name, sortedDimensions);
+            }
+            mMetrics.put(key, metric);
+            if (mMetrics.size() == 1 && mFirstMetricListener != null) {
+                mFirstMetricListener.run();
+            }
+        }
+        return metric;
+    }
+
+    /**
+     * Get all metrics.
+     *
+     * @return metrics.
+     */
+    Collection<Metric> getMetrics() {
+        return mMetrics.values();
+    }
+
+    /**
+     * Check whether no metric was created yet.
+     *
+     * @return true if there is no metric.
+     */
+    boolean isEmpty() {
+        return mMetrics.isEmpty();
+    }
+
+    /**
+     * Discard values recorded since the last flush.
+     */
+    void clear() {
+        for (Metric metric : mMetrics.values()) {
+            metric.getSummary();
+        }
+    }
+}
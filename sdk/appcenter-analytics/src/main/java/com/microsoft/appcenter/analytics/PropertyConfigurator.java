@@ -58,6 +58,37 @@ public class PropertyConfigurator extends AbstractChannelListener {
      */
     private boolean mDeviceIdEnabled;
 
+    /**
+     * Incremented when a Part A property of any configurator changes, as children inherit them.
+     * Only accessed on the App Center thread, like the properties.
+     */
+    private static int sPropertiesVersion;
+
+    /**
+     * Value of {@link #sPropertiesVersion} when properties were last resolved.
+     */
+    private int mResolvedPropertiesVersion = -1;
+
+    /**
+     * App name of this target or the nearest parent.
+     */
+    private String mResolvedAppName;
+
+    /**
+     * App version of this target or the nearest parent.
+     */
+    private String mResolvedAppVersion;
+
+    /**
+     * App locale of this target or the nearest parent.
+     */
+    private String mResolvedAppLocale;
+
+    /**
+     * User identifier of this target or the nearest parent.
+     */
+    private String mResolvedUserId;
+
     /**
      * The transmission target which this configurator belongs to.
      */
@@ -90,56 +121,19 @@ public class PropertyConfigurator extends AbstractChannelListener {
             UserExtension user = ((CommonSchemaLog) log).getExt().getUser();
             DeviceExtension device = ((CommonSchemaLog) log).getExt().getDevice();
 
-            /* Override app name if not null, else use the name of the nearest parent. */
-            if (mAppName != null) {
-                app.setName(mAppName);
-            } else {
-                for (AnalyticsTransmissionTarget target = mTransmissionTarget.mParentTarget; target != null; target = target.mParentTarget) {
-                    String parentAppName = target.getPropertyConfigurator().getAppName();
-                    if (parentAppName != null) {
-                        app.setName(parentAppName);
-                        break;
-                    }
-                }
+            /* Override properties if not null on this target, else use the ones of the nearest parent. */
+            resolveProperties();
+            if (mResolvedAppName != null) {
+                app.setName(mResolvedAppName);
             }
-
-            /* Override app version if not null, else use the version of the nearest parent. */
-            if (mAppVersion != null) {
-                app.setVer(mAppVersion);
-            } else {
-                for (AnalyticsTransmissionTarget target = mTransmissionTarget.mParentTarget; target != null; target = target.mParentTarget) {
-                    String parentAppVersion = target.getPropertyConfigurator().getAppVersion();
-                    if (parentAppVersion != null) {
-                        app.setVer(parentAppVersion);
-                        break;
-                    }
-                }
+            if (mResolvedAppVersion != null) {
+                app.setVer(mResolvedAppVersion);
             }
-
-            /* Override app locale if not null, else use the locale of the nearest parent. */
-            if (mAppLocale != null) {
-                app.setLocale(mAppLocale);
-            } else {
-                for (AnalyticsTransmissionTarget target = mTransmissionTarget.mParentTarget; target != null; target = target.mParentTarget) {
-                    String parentAppLocale = target.getPropertyConfigurator().getAppLocale();
-                    if (parentAppLocale != null) {
-                        app.setLocale(parentAppLocale);
-                        break;
-                    }
-                }
+            if (mResolvedAppLocale != null) {
+                app.setLocale(mResolvedAppLocale);
             }
-
-            /* Override userId if not null, else use the userId of the nearest parent. */
-            if (mUserId != null) {
-                user.setLocalId(mUserId);
-            } else {
-                for (AnalyticsTransmissionTarget target = mTransmissionTarget.mParentTarget; target != null; target = target.mParentTarget) {
-                    String parentUserId = target.getPropertyConfigurator().getUserId();
-                    if (parentUserId != null) {
-                        user.setLocalId(parentUserId);
-                        break;
-                    }
-                }
+            if (mResolvedUserId != null) {
+                user.setLocalId(mResolvedUserId);
             }
 
             /* Fill out the device id if it has been collected. */
@@ -153,6 +147,35 @@ public class PropertyConfigurator extends AbstractChannelListener {
         }
     }
 
+    /**
+     * Resolve inherited properties unless none changed since last time.
+     */
+    private void resolveProperties() {
+        if (mResolvedPropertiesVersion == sPropertiesVersion) {
+            return;
+        }
+        mResolvedAppName = mAppName;
+        mResolvedAppVersion = mAppVersion;
+        mResolvedAppLocale = mAppLocale;
+        mResolvedUserId = mUserId;
+        for (AnalyticsTransmissionTarget target = mTransmissionTarget.mParentTarget; target != null; target = target.mParentTarget) {
+            PropertyConfigurator parent = target.getPropertyConfigurator();
+            if (mResolvedAppName == null) {
+                mResolvedAppName = parent.getAppName();
+            }
+            if (mResolvedAppVersion == null) {
+                mResolvedAppVersion = parent.getAppVersion();
+            }
+            if (mResolvedAppLocale == null) {
+                mResolvedAppLocale = parent.getAppLocale();
+            }
+            if (mResolvedUserId == null) {
+                mResolvedUserId = parent.getUserId();
+            }
+        }
+        mResolvedPropertiesVersion = sPropertiesVersion;
+    }
+
     /**
      * Checks if the log should be overridden by this instance.
      *
@@ -184,6 +207,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
             @Override
             public void run() {
                 mAppName = appName;
+                sPropertiesVersion++;
             }
         });
     }
@@ -208,6 +232,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
             @Override
             public void run() {
                 mAppVersion = appVersion;
+                sPropertiesVersion++;
             }
         });
     }
@@ -232,6 +257,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
             @Override
             public void run() {
                 mAppLocale = appLocale;
+                sPropertiesVersion++;
             }
         });
     }
@@ -260,6 +286,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
                 @Override
                 public void run() {
                     mUserId = UserIdContext.getPrefixedUserId(userId);
+                    sPropertiesVersion++;
                 }
             });
         }
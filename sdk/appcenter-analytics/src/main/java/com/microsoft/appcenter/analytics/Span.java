@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.microsoft.appcenter.analytics.Analytics.LOG_TAG;
+
+/**
+ * Timed section of code, such as a cold start or a checkout submit.
+ * <p>
+ * The duration of stopped spans is recorded in milliseconds into a {@link Histogram} named
+ * after the span, with attributes as dimensions. Counters are added into a {@link Counter} named
+ * after the span and the counter: "span_counter". Child spans are named after their parent:
+ * "parent.child". Both separators are valid in event names of all transmission targets.
+ * <p>
+ * Spans are sampled with the rules of events named after the root span, a sampled out span
+ * and its children record nothing.
+ */
+public class Span {
+
+    /**
+     * Separator between parent and child span names.
+     */
+    @VisibleForTesting
+    static final String CHILD_SEPARATOR = ".";
+
+    /**
+     * Separator between span and counter names.
+     */
+    @VisibleForTesting
+    static final String COUNTER_SEPARATOR = "_";
+
+    /**
+     * Metrics receiving the span values, null if sampled out or invalid.
+     */
+    private final MetricsRegistry mMetricsRegistry;
+
+    /**
+     * Span name including the names of its parents.
+     */
+    private final String mName;
+
+    /**
+     * Sample rate applied to the span.
+     */
+    private final double mSampleRate;
+
+    /**
+     * Start time in nanoseconds.
+     */
+    private final long mStartTime;
+
+    /**
+     * Whether the span is stopped.
+     */
+    private final AtomicBoolean mStopped = new AtomicBoolean();
+
+    /**
+     * Attributes, allocated by the first one.
+     */
+    private Map<String, String> mAttributes;
+
+    /**
+     * Counters, allocated by the first one.
+     */
+    private Map<String, Long> mCounters;
+
+    Span(MetricsRegistry metricsRegistry, String name, double sampleRate) {
+        mMetricsRegistry = metricsRegistry;
+        mName = name;
+        mSampleRate = sampleRate;
+        mStartTime = System.nanoTime();
+    }
+
+    /**
+     * Get the span name.
+     *
+     * @return span name including the names of its parents.
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Start a child span. It shares the sampling decision of this span.
+     *
+     * @param name child span name.
+     * @return child span, to stop when done.
+     */
+    public Span startChild(String name) {
+        if (name == null || name.isEmpty()) {
+            AppCenterLog.error(LOG_TAG, "Span name cannot be null or empty.");
+            return new Span(null, mName, mSampleRate);
+        }
+        return new Span(mMetricsRegistry, mName + CHILD_SEPARATOR + name, mSampleRate);
+    }
+
+    /**
+     * Set an attribute, sent as a dimension of the span metrics. Values should have a low
+     * cardinality such as a screen name or a cache hit, not an identifier.
+     *
+     * @param key   attribute key.
+     * @param value attribute value.
+     * @return this span.
+     */
+    public synchronized Span setAttribute(String key, String value) {
+        if (key == null || value == null) {
+            AppCenterLog.error(LOG_TAG, "Span attribute keys and values cannot be null.");
+        } else if (mMetricsRegistry != null && !mStopped.get()) {
+            if (mAttributes == null) {
+                mAttributes = new HashMap<>();
+            }
+            mAttributes.put(key, value);
+        }
+        return this;
+    }
+
+    /**
+     * Add 1 to a counter of this span.
+     *
+     * @param name counter name.
+     * @return this span.
+     */
+    public Span incrementCounter(String name) {
+        return addToCounter(name, 1);
+    }
+
+    /**
+     * Add a value to a counter of this span, such as a number of items or bytes.
+     *
+     * @param name  counter name.
+     * @param delta value to add.
+     * @return this span.
+     */
+    public synchronized Span addToCounter(String name, long delta) {
+        if (name == null || name.isEmpty()) {
+            AppCenterLog.error(LOG_TAG, "Span counter name cannot be null or empty.");
+        } else if (mMetricsRegistry != null && !mStopped.get()) {
+            if (mCounters == null) {
+                mCounters = new HashMap<>();
+            }
+            Long value = mCounters.get(name);
+            mCounters.put(name, value == null ? delta : value + delta);
+        }
+        return this;
+    }
+
+    /**
+     * Stop the span and record its duration and counters. Only the first call has an effect.
+     *
+     * @return duration in milliseconds.
+     */
+    public double stop() {
+        double duration = (System.nanoTime() - mStartTime) / 1e6;
+        if (mStopped.compareAndSet(false, true) && mMetricsRegistry != null) {
+            Map<String, String> attributes;
+            Map<String, Long> counters;
+            synchronized (this) {
+                attributes = mAttributes;
+                counters = mCounters;
+            }
+            Histogram histogram = mMetricsRegistry.getHistogram(mName, attributes);
+            histogram.setSampleRate(mSampleRate);
+            histogram.record(duration);
+            if (counters != null) {
+                for (Map.Entry<String, Long> counter : counters.entrySet()) {
+                    Counter metric = mMetricsRegistry.getCounter(mName + COUNTER_SEPARATOR + counter.getKey(), attributes);
+                    metric.setSampleRate(mSampleRate);
+                    metric.add(counter.getValue());
+                }
+            }
+        }
+        return duration;
+    }
+}
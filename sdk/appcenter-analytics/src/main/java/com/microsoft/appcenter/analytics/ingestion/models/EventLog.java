@@ -36,6 +36,12 @@ public class EventLog extends LogWithNameAndProperties {
      */
     private List<TypedProperty> typedProperties;
 
+    /**
+     * Sample rate in percent applied to the event, null if not sampled.
+     * Not serialized: only transmission target logs, converted before being persisted, record it.
+     */
+    private Double sampleRate;
+
     @Override
     public String getType() {
         return TYPE;
@@ -78,6 +84,24 @@ public class EventLog extends LogWithNameAndProperties {
         this.typedProperties = typedProperties;
     }
 
+    /**
+     * Get the sampleRate value.
+     *
+     * @return the sampleRate value
+     */
+    public Double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Set the sampleRate value.
+     *
+     * @param sampleRate the sampleRate value to set
+     */
+    public void setSampleRate(Double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
     @Override
     public void read(JSONObject object) throws JSONException {
         super.read(object);
@@ -37,6 +37,7 @@ public class EventLogFactory extends AbstractLogFactory {
 
             /* Add common Part A fields. */
             PartAUtils.addPartAFromLog(log, commonSchemaEventLog, transmissionTarget);
+            commonSchemaEventLog.setPopSample(eventLog.getSampleRate());
 
             /* Part B, C and Part A metadata. */
             CommonSchemaDataUtils.addCommonSchemaData(eventLog.getTypedProperties(), commonSchemaEventLog);
@@ -5,7 +5,9 @@
 
 package com.microsoft.appcenter.analytics;
 
+import android.os.Handler;
 import android.os.SystemClock;
+import android.view.FrameMetrics;
 
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.AppCenterHandler;
@@ -23,6 +25,8 @@ import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.util.UUID;
+
 import static org.junit.Assert.assertFalse;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
@@ -33,7 +37,7 @@ import static org.powermock.api.mockito.PowerMockito.doAnswer;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 
 @RunWith(PowerMockRunner.class)
-@PrepareForTest({SystemClock.class, SharedPreferencesManager.class, AppCenterLog.class, AppCenter.class, HandlerUtils.class})
+@PrepareForTest({SystemClock.class, SharedPreferencesManager.class, AppCenterLog.class, AppCenter.class, HandlerUtils.class, FrameMetrics.class})
 abstract class AbstractAnalyticsTest {
 
     static final String ANALYTICS_ENABLED_KEY = PrefStorageConstants.KEY_ENABLED + "_" + Analytics.getInstance().getServiceName();
@@ -47,6 +51,9 @@ abstract class AbstractAnalyticsTest {
     @Mock
     private AppCenterFuture<Boolean> mCoreEnabledFuture;
 
+    @Mock
+    Handler mMainHandler;
+
     @Before
     public void setUp() {
         Analytics.unsetInstance();
@@ -69,10 +76,12 @@ abstract class AbstractAnalyticsTest {
         mockStatic(HandlerUtils.class);
         doAnswer(runNow).when(HandlerUtils.class);
         HandlerUtils.runOnUiThread(any(Runnable.class));
+        when(HandlerUtils.getMainHandler()).thenReturn(mMainHandler);
 
         /* First call to com.microsoft.appcenter.AppCenter.isEnabled shall return true, initial state. */
         mockStatic(SharedPreferencesManager.class);
         when(SharedPreferencesManager.getBoolean(anyString(), eq(true))).thenReturn(true);
+        when(SharedPreferencesManager.getString(eq(PrefStorageConstants.KEY_INSTALL_ID), anyString())).thenReturn(UUID.randomUUID().toString());
 
         /* Then simulate further changes to state. */
         doAnswer(new Answer<Object>() {
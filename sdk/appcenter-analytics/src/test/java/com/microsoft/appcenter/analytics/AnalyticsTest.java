@@ -6,8 +6,13 @@
 package com.microsoft.appcenter.analytics;
 
 import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.view.FrameMetrics;
+import android.view.Window;
 
 import com.microsoft.appcenter.AppCenter;
+import com.microsoft.appcenter.AppCenterHandler;
 import com.microsoft.appcenter.Flags;
 import com.microsoft.appcenter.analytics.channel.AnalyticsListener;
 import com.microsoft.appcenter.analytics.channel.AnalyticsValidator;
@@ -30,7 +35,9 @@ import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+import com.microsoft.appcenter.test.TestUtils;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.PrefStorageConstants;
 import com.microsoft.appcenter.utils.async.AppCenterConsumer;
 import com.microsoft.appcenter.utils.context.UserIdContext;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
@@ -42,10 +49,13 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
+import org.powermock.reflect.Whitebox;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
@@ -73,6 +83,8 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Matchers.notNull;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -87,6 +99,7 @@ public class AnalyticsTest extends AbstractAnalyticsTest {
     @After
     public void resetUserId() {
         UserIdContext.unsetInstance();
+        EventSampler.unsetInstallId();
     }
 
     @Test
@@ -113,7 +126,7 @@ public class AnalyticsTest extends AbstractAnalyticsTest {
     @Test
     public void notInit() {
 
-        /* Just check log is discarded without throwing any exception. */
+        /* Just check log is kept until start without throwing any exception. */
         Analytics.trackEvent("test");
         Analytics.trackEvent("test", new HashMap<String, String>());
         Analytics.trackEvent("test", (Map<String, String>) null);
@@ -124,8 +137,8 @@ public class AnalyticsTest extends AbstractAnalyticsTest {
         Analytics.trackPage("test", new HashMap<String, String>());
         Analytics.trackPage("test", null);
 
-        /* Verify we just get an error every time. */
-        verifyStatic(times(9));
+        /* Verify calls are buffered instead of failing. */
+        verifyStatic(never());
         AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString());
     }
 
@@ -444,6 +457,353 @@ public class AnalyticsTest extends AbstractAnalyticsTest {
         verify(channel, times(2)).enqueue(isA(EventLog.class), anyString(), eq(DEFAULTS));
     }
 
+    @Test
+    public void trackEventsInBatches() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+
+        /* Hold background commands to run them later. */
+        AppCenterHandler handler = mock(AppCenterHandler.class);
+        ArgumentCaptor<Runnable> backgroundRunnable = ArgumentCaptor.forClass(Runnable.class);
+        doNothing().when(handler).post(backgroundRunnable.capture(), any(Runnable.class));
+        analytics.onStarting(handler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+
+        /* A single command is posted per batch of events. */
+        for (int i = 0; i <= Analytics.EVENT_BATCH_CAPACITY; i++) {
+            Analytics.trackEvent("eventName");
+        }
+        verify(handler, times(2)).post(any(Runnable.class), any(Runnable.class));
+        verify(channel, never()).enqueue(isA(EventLog.class), anyString(), anyInt());
+
+        /* Another command seals the current batch so that next event is processed after it. */
+        Analytics.setEnabled(true);
+        Analytics.trackEvent("eventName");
+        verify(handler, times(4)).post(any(Runnable.class), any(Runnable.class));
+
+        /* Run the commands. */
+        for (Runnable runnable : backgroundRunnable.getAllValues()) {
+            runnable.run();
+        }
+        verify(channel, times(Analytics.EVENT_BATCH_CAPACITY + 2)).enqueue(isA(EventLog.class), anyString(), anyInt());
+    }
+
+    @Test
+    public void trackEventsFromManyThreads() throws InterruptedException {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+
+        /* Hold background commands to run them later. */
+        AppCenterHandler handler = mock(AppCenterHandler.class);
+        final List<Runnable> backgroundRunnables = Collections.synchronizedList(new ArrayList<Runnable>());
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                backgroundRunnables.add((Runnable) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(handler).post(any(Runnable.class), any(Runnable.class));
+        analytics.onStarting(handler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+
+        /* Track events concurrently. */
+        int threadCount = 12;
+        final int eventsPerThread = 500;
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread() {
+
+                @Override
+                public void run() {
+                    for (int j = 0; j < eventsPerThread; j++) {
+                        Analytics.trackEvent("eventName");
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        /* Check every event is processed once, using a command per batch. */
+        assertTrue(backgroundRunnables.size() < threadCount * eventsPerThread);
+        for (Runnable runnable : backgroundRunnables) {
+            runnable.run();
+        }
+        verify(channel, times(threadCount * eventsPerThread)).enqueue(isA(EventLog.class), anyString(), anyInt());
+    }
+
+    @Test
+    public void trackEventWithSampling() {
+        when(SharedPreferencesManager.getString(eq(PrefStorageConstants.KEY_INSTALL_ID), anyString())).thenReturn(new UUID(0, 0).toString());
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, null, "target", true);
+        AnalyticsTransmissionTarget target = Analytics.getTransmissionTarget("other");
+        AnalyticsTransmissionTarget child = target.getTransmissionTarget("child");
+        assertTrue(Analytics.setEventSampleRate(null, 0));
+        assertTrue(Analytics.setEventSampleRate("kept", 99.999999));
+        assertTrue(Analytics.setEventRateLimit("limited", 1, 60000));
+        assertFalse(Analytics.setEventSampleRate("invalid", 200));
+
+        /* Global rules: sampled out events are not even converted. */
+        Analytics.trackEvent("discarded", new HashMap<String, String>());
+        Analytics.trackEvent("limited");
+        Analytics.trackEvent("limited");
+        Analytics.trackEvent("kept", new EventProperties());
+        ArgumentCaptor<EventLog> eventLog = ArgumentCaptor.forClass(EventLog.class);
+        verify(channel, times(2)).enqueue(eventLog.capture(), anyString(), eq(DEFAULTS));
+        assertEquals("limited", eventLog.getAllValues().get(0).getName());
+        assertNull(eventLog.getAllValues().get(0).getSampleRate());
+        assertEquals("kept", eventLog.getAllValues().get(1).getName());
+        assertEquals(99.999999, eventLog.getAllValues().get(1).getSampleRate(), 0);
+
+        /* Target rules take precedence, for the target and its children. */
+        assertTrue(target.setEventSampleRate(null, 100));
+        assertTrue(child.setEventRateLimit("limited", 0, 0));
+        target.trackEvent("discarded");
+        child.trackEvent("limited", new HashMap<String, String>());
+        eventLog = ArgumentCaptor.forClass(EventLog.class);
+        verify(channel, times(4)).enqueue(eventLog.capture(), anyString(), eq(DEFAULTS));
+        assertEquals("discarded", eventLog.getAllValues().get(2).getName());
+        assertEquals("limited", eventLog.getAllValues().get(3).getName());
+
+        /* A target without rules uses global rules. */
+        Analytics.getTransmissionTarget("another").trackEvent("discarded");
+        verify(channel, times(4)).enqueue(any(Log.class), anyString(), anyInt());
+    }
+
+    @Test
+    public void trackEventWithSamplingBeforeStart() throws Exception {
+        when(SharedPreferencesManager.getString(eq(PrefStorageConstants.KEY_INSTALL_ID), anyString())).thenReturn(new UUID(0, 0).toString());
+        Analytics analytics = Analytics.getInstance();
+        assertTrue(Analytics.setEventSampleRate("discarded", 0));
+        assertTrue(Analytics.setEventSampleRate("kept", 99.999999));
+        assertTrue(Analytics.setEventRateLimit("limited", 1, 60000));
+
+        /* Events tracked before start are sampled once the install identifier is known. */
+        Analytics.trackEvent("discarded");
+        Analytics.trackEvent("limited");
+        Analytics.trackEvent("limited");
+        Analytics.trackEvent("kept");
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        Whitebox.invokeMethod(analytics, "replayPreStartCommands");
+        ArgumentCaptor<EventLog> eventLog = ArgumentCaptor.forClass(EventLog.class);
+        verify(channel, times(2)).enqueue(eventLog.capture(), anyString(), eq(DEFAULTS));
+        assertEquals("limited", eventLog.getAllValues().get(0).getName());
+        assertNull(eventLog.getAllValues().get(0).getSampleRate());
+        assertEquals("kept", eventLog.getAllValues().get(1).getName());
+        assertEquals(99.999999, eventLog.getAllValues().get(1).getSampleRate(), 0);
+    }
+
+    @Test
+    public void rateLimitNotUsedWhileDisabled() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        assertTrue(Analytics.setEventRateLimit("limited", 1, 60000));
+
+        /* Events tracked while disabled don't use tokens. */
+        Analytics.setEnabled(false);
+        Analytics.trackEvent("limited");
+        Analytics.setEnabled(true);
+        Analytics.trackEvent("limited");
+        verify(channel).enqueue(any(EventLog.class), anyString(), anyInt());
+    }
+
+    @Test
+    public void metricSummaries() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+
+        /* The main thread is not woken up until a metric is created. */
+        analytics.onApplicationEnterBackground();
+        verify(mMainHandler, never()).postDelayed(any(Runnable.class), anyLong());
+        Counter counter = Analytics.getCounter("taps");
+        ArgumentCaptor<Runnable> flusher = ArgumentCaptor.forClass(Runnable.class);
+        verify(mMainHandler).postDelayed(flusher.capture(), eq(Analytics.METRICS_FLUSH_INTERVAL));
+
+        /* Nothing sent without values. */
+        Histogram histogram = Analytics.getHistogram("latency", Collections.singletonMap("api", "login"));
+        flusher.getValue().run();
+        verify(channel, never()).enqueue(any(EventLog.class), anyString(), anyInt());
+        verify(mMainHandler, times(2)).postDelayed(flusher.getValue(), Analytics.METRICS_FLUSH_INTERVAL);
+
+        /* One summary event per metric. */
+        counter.increment();
+        histogram.record(12);
+        histogram.record(30);
+        flusher.getValue().run();
+        ArgumentCaptor<EventLog> eventLog = ArgumentCaptor.forClass(EventLog.class);
+        verify(channel, times(2)).enqueue(eventLog.capture(), eq(ANALYTICS_GROUP), eq(DEFAULTS));
+        Map<String, EventLog> eventLogs = new HashMap<>();
+        for (EventLog log : eventLog.getAllValues()) {
+            eventLogs.put(log.getName(), log);
+        }
+        assertEquals(2, eventLogs.get("taps").getTypedProperties().size());
+        List<TypedProperty> properties = eventLogs.get("latency").getTypedProperties();
+        assertEquals("metric.type", properties.get(0).getName());
+        assertEquals("metric.count", properties.get(1).getName());
+        assertEquals(2, ((LongTypedProperty) properties.get(1)).getValue());
+        assertEquals("api", properties.get(properties.size() - 1).getName());
+
+        /* Also sent when going to background. */
+        counter.increment();
+        analytics.onApplicationEnterBackground();
+        verify(channel, times(3)).enqueue(any(EventLog.class), anyString(), anyInt());
+
+        /* Nothing recorded before disabling nor while disabled survives a disable. */
+        counter.increment();
+        histogram.record(5);
+        Analytics.setEnabled(false);
+        verify(channel, times(3)).enqueue(any(EventLog.class), anyString(), anyInt());
+        verify(mMainHandler, times(3)).removeCallbacks(flusher.getValue());
+        counter.increment();
+        Analytics.setEnabled(true);
+        verify(mMainHandler, times(4)).postDelayed(flusher.getValue(), Analytics.METRICS_FLUSH_INTERVAL);
+        flusher.getValue().run();
+        analytics.onApplicationEnterBackground();
+        verify(channel, times(3)).enqueue(any(EventLog.class), anyString(), anyInt());
+    }
+
+    @Test
+    public void spanSummaries() {
+        when(SharedPreferencesManager.getString(eq(PrefStorageConstants.KEY_INSTALL_ID), anyString())).thenReturn(new UUID(0, 0).toString());
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        assertTrue(Analytics.setEventSampleRate("sampled", 99.999999));
+        assertTrue(Analytics.setEventSampleRate("discarded", 0));
+
+        /* Children of a sampled out span record nothing either. */
+        Analytics.startSpan("sampled").stop();
+        ArgumentCaptor<Runnable> flusher = ArgumentCaptor.forClass(Runnable.class);
+        verify(mMainHandler).postDelayed(flusher.capture(), eq(Analytics.METRICS_FLUSH_INTERVAL));
+        Span discarded = Analytics.startSpan("discarded");
+        discarded.startChild("child").stop();
+        discarded.stop();
+        Analytics.startSpan(null).stop();
+        flusher.getValue().run();
+        ArgumentCaptor<EventLog> eventLog = ArgumentCaptor.forClass(EventLog.class);
+        verify(channel).enqueue(eventLog.capture(), eq(ANALYTICS_GROUP), eq(DEFAULTS));
+        assertEquals("sampled", eventLog.getValue().getName());
+        assertEquals(99.999999, eventLog.getValue().getSampleRate(), 0);
+    }
+
+    /**
+     * Get event logs enqueued in the analytics group, ignoring session logs.
+     */
+    private static List<EventLog> getEnqueuedEventLogs(Channel channel) {
+        ArgumentCaptor<Log> log = ArgumentCaptor.forClass(Log.class);
+        verify(channel, atLeastOnce()).enqueue(log.capture(), eq(ANALYTICS_GROUP), eq(DEFAULTS));
+        List<EventLog> eventLogs = new ArrayList<>();
+        for (Log value : log.getAllValues()) {
+            if (value instanceof EventLog) {
+                eventLogs.add((EventLog) value);
+            }
+        }
+        return eventLogs;
+    }
+
+    @Test
+    public void appStartSummaries() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+
+        /* Process start time is unknown on this API level: only the hot start is measured. */
+        Activity activity = new Activity();
+        analytics.onActivityCreated(activity, null);
+        analytics.onActivityStarted(activity);
+        analytics.onActivityResumed(activity);
+        analytics.onApplicationEnterBackground();
+        analytics.onActivityStarted(activity);
+        analytics.onActivityResumed(activity);
+        ArgumentCaptor<Runnable> flusher = ArgumentCaptor.forClass(Runnable.class);
+        verify(mMainHandler).postDelayed(flusher.capture(), eq(Analytics.METRICS_FLUSH_INTERVAL));
+        flusher.getValue().run();
+        List<EventLog> eventLogs = getEnqueuedEventLogs(channel);
+        assertEquals(1, eventLogs.size());
+        assertEquals(AppStartTracker.METRIC_NAME, eventLogs.get(0).getName());
+        List<TypedProperty> properties = eventLogs.get(0).getTypedProperties();
+        assertEquals(AppStartTracker.HOT, ((StringTypedProperty) properties.get(properties.size() - 1)).getValue());
+    }
+
+    @Test
+    public void metricsRecordedBeforeStartAreSent() {
+
+        /* Like a cold start measured before the service starts. */
+        Analytics.getHistogram(AppStartTracker.METRIC_NAME, Collections.singletonMap(AppStartTracker.TYPE_DIMENSION, AppStartTracker.COLD)).record(800);
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        ArgumentCaptor<Runnable> flusher = ArgumentCaptor.forClass(Runnable.class);
+        verify(mMainHandler).postDelayed(flusher.capture(), eq(Analytics.METRICS_FLUSH_INTERVAL));
+        flusher.getValue().run();
+        List<EventLog> eventLogs = getEnqueuedEventLogs(channel);
+        assertEquals(1, eventLogs.size());
+        assertEquals(AppStartTracker.METRIC_NAME, eventLogs.get(0).getName());
+    }
+
+    @Test
+    public void frameMetrics() throws Exception {
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.N);
+        try {
+            Analytics.unsetInstance();
+            Analytics analytics = Analytics.getInstance();
+            Channel channel = mock(Channel.class);
+            analytics.onStarting(mAppCenterHandler);
+            analytics.onStarted(mock(Context.class), channel, "", null, true);
+            assertFalse(Analytics.setFrameMetricsThresholds(0, 700));
+            assertFalse(Analytics.setFrameMetricsThresholds(100, 50));
+            assertTrue(Analytics.setFrameMetricsThresholds(50, 100));
+
+            /* Disabled by default. */
+            Activity activity = new Activity();
+            analytics.onActivityResumed(activity);
+            verify(activity.mWindow, never()).addOnFrameMetricsAvailableListener(any(Window.OnFrameMetricsAvailableListener.class), any(Handler.class));
+
+            /* One summary per visit. */
+            Analytics.setFrameMetricsEnabled(true);
+            analytics.onActivityResumed(activity);
+            ArgumentCaptor<Window.OnFrameMetricsAvailableListener> listener = ArgumentCaptor.forClass(Window.OnFrameMetricsAvailableListener.class);
+            verify(activity.mWindow).addOnFrameMetricsAvailableListener(listener.capture(), eq(mMainHandler));
+            FrameMetrics frameMetrics = mock(FrameMetrics.class);
+            when(frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION)).thenReturn(TimeUnit.MILLISECONDS.toNanos(60));
+            listener.getValue().onFrameMetricsAvailable(activity.mWindow, frameMetrics, 0);
+            analytics.onActivityPaused(activity);
+            verify(activity.mWindow).removeOnFrameMetricsAvailableListener(listener.getValue());
+            List<EventLog> eventLogs = getEnqueuedEventLogs(channel);
+            assertEquals(1, eventLogs.size());
+            assertEquals(FrameMetricsCollector.EVENT_NAME, eventLogs.get(0).getName());
+            List<TypedProperty> properties = eventLogs.get(0).getTypedProperties();
+            assertEquals("Activity", ((StringTypedProperty) properties.get(0)).getValue());
+            assertEquals(1, ((LongTypedProperty) properties.get(2)).getValue());
+            assertEquals(0, ((LongTypedProperty) properties.get(3)).getValue());
+
+            /* Not collected while disabled, and disabling stops collecting. */
+            analytics.onActivityResumed(activity);
+            verify(activity.mWindow, times(2)).addOnFrameMetricsAvailableListener(listener.getValue(), mMainHandler);
+            Analytics.setEnabled(false);
+            verify(activity.mWindow, times(2)).removeOnFrameMetricsAvailableListener(listener.getValue());
+            analytics.onActivityResumed(activity);
+            verify(activity.mWindow, times(2)).addOnFrameMetricsAvailableListener(listener.getValue(), mMainHandler);
+        } finally {
+            TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", 0);
+        }
+    }
+
     @Test
     public void trackPageFromApp() {
         Analytics analytics = Analytics.getInstance();
@@ -913,5 +1273,12 @@ public class AnalyticsTest extends AbstractAnalyticsTest {
      * Activity with page name automatically resolving to "Activity", because name == suffix.
      */
     private static class Activity extends android.app.Activity {
+
+        final Window mWindow = mock(Window.class);
+
+        @Override
+        public Window getWindow() {
+            return mWindow;
+        }
     }
 }
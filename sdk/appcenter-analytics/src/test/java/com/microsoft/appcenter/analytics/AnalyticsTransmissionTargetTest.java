@@ -19,6 +19,7 @@ import com.microsoft.appcenter.ingestion.models.one.ProtocolExtension;
 import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -353,6 +354,41 @@ public class AnalyticsTransmissionTargetTest extends AbstractAnalyticsTest {
         assertFalse(childTarget.isEnabledAsync().get());
     }
 
+    @Test
+    public void enabledStateCached() {
+        AnalyticsTransmissionTarget parentTarget = Analytics.getTransmissionTarget("parent");
+        AnalyticsTransmissionTarget childTarget = parentTarget.getTransmissionTarget("child");
+        String parentKey = Analytics.getInstance().getEnabledPreferenceKeyPrefix() + "parent";
+        String childKey = Analytics.getInstance().getEnabledPreferenceKeyPrefix() + "child";
+
+        /* Storage is read once per target. */
+        for (int i = 0; i < 3; i++) {
+            childTarget.trackEvent("event");
+        }
+        verify(mChannel, times(3)).enqueue(isA(EventLog.class), anyString(), eq(DEFAULTS));
+        verifyStatic();
+        SharedPreferencesManager.getBoolean(parentKey, true);
+        verifyStatic();
+        SharedPreferencesManager.getBoolean(childKey, true);
+
+        /* State is written through to the storage of the whole subtree, without reading it again. */
+        parentTarget.setEnabledAsync(false).get();
+        verifyStatic();
+        SharedPreferencesManager.putBoolean(parentKey, false);
+        verifyStatic();
+        SharedPreferencesManager.putBoolean(childKey, false);
+        assertFalse(childTarget.isEnabledAsync().get());
+        childTarget.trackEvent("event");
+        parentTarget.setEnabledAsync(true).get();
+        assertTrue(childTarget.isEnabledAsync().get());
+        childTarget.trackEvent("event");
+        verify(mChannel, times(4)).enqueue(isA(EventLog.class), anyString(), eq(DEFAULTS));
+        verifyStatic();
+        SharedPreferencesManager.getBoolean(parentKey, true);
+        verifyStatic();
+        SharedPreferencesManager.getBoolean(childKey, true);
+    }
+
     @Test
     public void addAuthenticationProvider() {
 
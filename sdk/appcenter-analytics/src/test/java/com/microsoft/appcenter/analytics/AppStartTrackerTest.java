@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import android.os.SystemClock;
+
+import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(SystemClock.class)
+public class AppStartTrackerTest {
+
+    private MetricsRegistry mMetricsRegistry;
+
+    @Before
+    public void setUp() {
+        mockStatic(SystemClock.class);
+        mMetricsRegistry = new MetricsRegistry();
+    }
+
+    private void setTime(long time) {
+        when(SystemClock.elapsedRealtime()).thenReturn(time);
+    }
+
+    /**
+     * Get the number of starts of a type since the last call and check their maximum duration.
+     */
+    private long getCount(String type, long maxDuration) {
+        Histogram histogram = mMetricsRegistry.getHistogram(AppStartTracker.METRIC_NAME, Collections.singletonMap(AppStartTracker.TYPE_DIMENSION, type));
+        List<TypedProperty> summary = histogram.getSummary();
+        if (summary == null) {
+            return 0;
+        }
+        long count = 0;
+        for (TypedProperty property : summary) {
+            if (property.getName().equals("metric.count")) {
+                count = ((LongTypedProperty) property).getValue();
+            } else if (property.getName().equals("metric.max")) {
+                assertEquals(maxDuration, ((DoubleTypedProperty) property).getValue(), 0);
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void coldWarmAndHotStarts() {
+        AppStartTracker tracker = new AppStartTracker(mMetricsRegistry, 1000);
+
+        /* Cold start from process start. */
+        setTime(1500);
+        tracker.onActivityCreated();
+        tracker.onActivityStarted();
+        setTime(1800);
+        tracker.onActivityResumed();
+        assertEquals(1, getCount(AppStartTracker.COLD, 800));
+
+        /* Configuration changes and navigation are not starts. */
+        tracker.onActivityCreated();
+        tracker.onActivityStarted();
+        tracker.onActivityResumed();
+        assertEquals(0, getCount(AppStartTracker.WARM, 0));
+        assertEquals(0, getCount(AppStartTracker.HOT, 0));
+
+        /* Hot start. */
+        tracker.onApplicationEnterBackground();
+        setTime(5000);
+        tracker.onActivityStarted();
+        setTime(5100);
+        tracker.onActivityResumed();
+        assertEquals(1, getCount(AppStartTracker.HOT, 100));
+
+        /* Warm start. */
+        tracker.onApplicationEnterBackground();
+        setTime(6000);
+        tracker.onActivityCreated();
+        tracker.onActivityStarted();
+        setTime(6300);
+        tracker.onActivityResumed();
+        assertEquals(1, getCount(AppStartTracker.WARM, 300));
+
+        /* Background before resume: nothing measured. */
+        tracker.onApplicationEnterBackground();
+        tracker.onActivityCreated();
+        tracker.onApplicationEnterBackground();
+        tracker.onActivityResumed();
+        assertEquals(0, getCount(AppStartTracker.WARM, 0));
+    }
+
+    @Test
+    public void processStartedForSomethingElse() {
+        AppStartTracker tracker = new AppStartTracker(mMetricsRegistry, 1000);
+        setTime(1000 + AppStartTracker.MAX_COLD_START_DELAY + 1);
+        tracker.onActivityCreated();
+        setTime(1000 + AppStartTracker.MAX_COLD_START_DELAY + 201);
+        tracker.onActivityResumed();
+        assertEquals(0, getCount(AppStartTracker.COLD, 0));
+        assertEquals(1, getCount(AppStartTracker.WARM, 200));
+    }
+
+    @Test
+    public void unknownProcessStartTime() {
+        AppStartTracker tracker = new AppStartTracker(mMetricsRegistry, AppStartTracker.UNKNOWN_PROCESS_START_TIME);
+        tracker.onActivityCreated();
+        tracker.onActivityStarted();
+        tracker.onActivityResumed();
+        assertEquals(0, getCount(AppStartTracker.WARM, 0));
+        assertEquals(0, getCount(AppStartTracker.HOT, 0));
+        assertEquals(0, getCount(AppStartTracker.COLD, 0));
+    }
+
+    @Test
+    public void sdkStartedAfterActivityCreated() {
+        AppStartTracker tracker = new AppStartTracker(mMetricsRegistry, 1000);
+        tracker.onActivityStarted();
+        tracker.onActivityResumed();
+        assertEquals(0, getCount(AppStartTracker.HOT, 0));
+        assertEquals(0, getCount(AppStartTracker.COLD, 0));
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventBatchTest {
+
+    @Test
+    public void offerUntilFull() {
+        EventBatch<String> batch = new EventBatch<>(2);
+        assertTrue(batch.offer("a"));
+        assertTrue(batch.offer("b"));
+        assertFalse(batch.offer("c"));
+        assertEquals(2, batch.seal());
+        assertEquals("a", batch.get(0));
+        assertEquals("b", batch.get(1));
+    }
+
+    @Test
+    public void sealTwice() {
+        EventBatch<String> batch = new EventBatch<>(2);
+        assertTrue(batch.offer("a"));
+        assertEquals(1, batch.seal());
+        assertFalse(batch.offer("b"));
+        assertEquals(1, batch.seal());
+    }
+
+    @Test
+    public void sealEmpty() {
+        EventBatch<String> batch = new EventBatch<>(2);
+        assertEquals(0, batch.seal());
+        assertFalse(batch.offer("a"));
+        assertEquals(0, batch.seal());
+    }
+}
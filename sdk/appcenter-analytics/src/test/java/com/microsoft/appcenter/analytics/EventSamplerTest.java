@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import android.os.SystemClock;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.UUID;
+
+import static com.microsoft.appcenter.analytics.EventSampler.DISCARDED;
+import static com.microsoft.appcenter.analytics.EventSampler.NOT_SAMPLED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({SystemClock.class, AppCenterLog.class})
+public class EventSamplerTest {
+
+    @Before
+    public void setUp() {
+        mockStatic(SystemClock.class);
+        mockStatic(AppCenterLog.class);
+    }
+
+    @After
+    public void tearDown() {
+        EventSampler.unsetInstallId();
+    }
+
+    @Test
+    public void invalidRules() {
+        EventSampler sampler = new EventSampler();
+        assertFalse(sampler.setSampleRate(null, -1));
+        assertFalse(sampler.setSampleRate(null, 101));
+        assertFalse(sampler.setSampleRate(null, Double.NaN));
+        assertFalse(sampler.setRateLimit(null, 1, 0));
+        verifyStatic(times(4));
+        AppCenterLog.error(eq(Analytics.LOG_TAG), anyString());
+        assertNull(sampler.getRule(null, true));
+        assertNull(sampler.getRule("a", true));
+    }
+
+    @Test
+    public void ruleLookup() {
+        EventSampler sampler = new EventSampler();
+        assertTrue(sampler.setSampleRate(null, 50));
+        assertTrue(sampler.setRateLimit("a", 10, 1000));
+        EventSampler.Rule defaultRule = sampler.getRule(null, false);
+        EventSampler.Rule rule = sampler.getRule("a", false);
+        assertNotNull(defaultRule);
+        assertNotNull(rule);
+        assertSame(defaultRule, sampler.getRule("b", true));
+        assertNull(sampler.getRule("b", false));
+        assertSame(rule, sampler.getRule("a", true));
+
+        /* Setting the other half of a rule keeps the first one. */
+        assertTrue(sampler.setSampleRate("a", 5));
+        assertEquals(5, sampler.getRule("a", false).mSampleRate, 0);
+        assertSame(rule.mBucket, sampler.getRule("a", false).mBucket);
+
+        /* Keeping all events still overrides less specific rules. */
+        assertTrue(sampler.setRateLimit("a", 0, 0));
+        assertTrue(sampler.setSampleRate("a", NOT_SAMPLED));
+        assertEquals(NOT_SAMPLED, sampler.getRule("a", true).sample("a"), 0);
+        assertNull(sampler.getRule("a", true).mBucket);
+    }
+
+    @Test
+    public void sampleRateIsStablePerInstall() {
+        EventSampler sampler = new EventSampler();
+        sampler.setSampleRate(null, 10);
+        EventSampler.Rule rule = sampler.getRule(null, false);
+
+        /* Events are kept until the install identifier is known. */
+        assertEquals(NOT_SAMPLED, rule.sample("a"), 0);
+
+        /* Same decision for the same install, about 10% of installs keep the event. */
+        int kept = 0;
+        for (int i = 0; i < 10000; i++) {
+            EventSampler.setInstallId(UUID.randomUUID());
+            double sampleRate = rule.sample("event");
+            assertEquals(sampleRate, rule.sample("event"), 0);
+            if (sampleRate != DISCARDED) {
+                assertEquals(10, sampleRate, 0);
+                kept++;
+            }
+        }
+        assertTrue(String.valueOf(kept), kept > 800 && kept < 1200);
+
+        /* Check bounds. */
+        sampler.setSampleRate("none", 0);
+        assertEquals(DISCARDED, sampler.getRule("none", false).sample("none"), 0);
+        EventSampler.setInstallId(new UUID(0, 0));
+        sampler.setSampleRate("all", 99.999999);
+        assertEquals(99.999999, sampler.getRule("all", false).sample("all"), 0);
+    }
+
+    @Test
+    public void rateLimit() {
+        EventSampler sampler = new EventSampler();
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L);
+        sampler.setRateLimit("a", 2, 1000);
+        EventSampler.Rule rule = sampler.getRule("a", false);
+
+        /* Burst up to the limit. */
+        assertEquals(NOT_SAMPLED, rule.sample("a"), 0);
+        assertEquals(NOT_SAMPLED, rule.sample("a"), 0);
+        assertEquals(DISCARDED, rule.sample("a"), 0);
+
+        /* Refilled over time. */
+        when(SystemClock.elapsedRealtime()).thenReturn(1500L);
+        assertEquals(NOT_SAMPLED, rule.sample("a"), 0);
+        assertEquals(DISCARDED, rule.sample("a"), 0);
+        when(SystemClock.elapsedRealtime()).thenReturn(10000L);
+        assertEquals(NOT_SAMPLED, rule.sample("a"), 0);
+        assertEquals(NOT_SAMPLED, rule.sample("a"), 0);
+        assertEquals(DISCARDED, rule.sample("a"), 0);
+    }
+
+    @Test
+    public void sampledOutEventsDoNotUseTokens() {
+        EventSampler sampler = new EventSampler();
+        sampler.setSampleRate("a", 0);
+        sampler.setRateLimit("a", 1, 1000);
+        EventSampler.setInstallId(UUID.randomUUID());
+        EventSampler.Rule rule = sampler.getRule("a", false);
+        assertEquals(DISCARDED, rule.sample("a"), 0);
+        assertTrue(rule.mBucket.tryAcquire());
+    }
+}
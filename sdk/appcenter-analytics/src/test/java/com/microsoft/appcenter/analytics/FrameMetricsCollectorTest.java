@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import android.os.Handler;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+import com.microsoft.appcenter.utils.HandlerUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({FrameMetrics.class, HandlerUtils.class})
+public class FrameMetricsCollectorTest {
+
+    private static final long MILLIS = 1000000;
+
+    @Mock
+    private Window mWindow;
+
+    @Mock
+    private Handler mMainHandler;
+
+    @Before
+    public void setUp() {
+        mockStatic(HandlerUtils.class);
+        when(HandlerUtils.getMainHandler()).thenReturn(mMainHandler);
+    }
+
+    private static FrameMetrics frame(long durationMillis) {
+        FrameMetrics frameMetrics = mock(FrameMetrics.class);
+        when(frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION)).thenReturn(durationMillis * MILLIS);
+        return frameMetrics;
+    }
+
+    @Test
+    public void collectFrames() {
+        FrameMetricsCollector collector = new FrameMetricsCollector();
+        assertNull(collector.stop());
+        collector.start(mWindow, "Page");
+        verify(mWindow).addOnFrameMetricsAvailableListener(collector, mMainHandler);
+        collector.onFrameMetricsAvailable(mWindow, frame(10), 0);
+        collector.onFrameMetricsAvailable(mWindow, frame(16), 0);
+        collector.onFrameMetricsAvailable(mWindow, frame(40), 0);
+        collector.onFrameMetricsAvailable(mWindow, frame(800), 0);
+        List<TypedProperty> properties = collector.stop();
+        verify(mWindow).removeOnFrameMetricsAvailableListener(collector);
+        assertEquals(6, properties.size());
+        assertEquals("Page", ((StringTypedProperty) properties.get(0)).getValue());
+        assertEquals(4, ((LongTypedProperty) properties.get(1)).getValue());
+        assertEquals(2, ((LongTypedProperty) properties.get(2)).getValue());
+        assertEquals(1, ((LongTypedProperty) properties.get(3)).getValue());
+        assertEquals(800, ((DoubleTypedProperty) properties.get(4)).getValue(), 0);
+        assertEquals("dropped_frame_reports", properties.get(5).getName());
+        assertEquals(0, ((LongTypedProperty) properties.get(5)).getValue());
+
+        /* Frames delivered after stopping are ignored. */
+        collector.onFrameMetricsAvailable(mWindow, frame(10), 0);
+        assertNull(collector.stop());
+    }
+
+    @Test
+    public void droppedFrameReports() {
+        FrameMetricsCollector collector = new FrameMetricsCollector();
+        collector.start(mWindow, "Page");
+        collector.onFrameMetricsAvailable(mWindow, frame(10), 0);
+        collector.onFrameMetricsAvailable(mWindow, frame(40), 3);
+        List<TypedProperty> properties = collector.stop();
+
+        /* Frames whose report was dropped are counted, but not as slow as their duration is unknown. */
+        assertEquals(5, ((LongTypedProperty) properties.get(1)).getValue());
+        assertEquals(1, ((LongTypedProperty) properties.get(2)).getValue());
+        assertEquals(3, ((LongTypedProperty) properties.get(5)).getValue());
+
+        /* Reset for the next visit. */
+        collector.start(mWindow, "Page");
+        collector.onFrameMetricsAvailable(mWindow, frame(10), 0);
+        properties = collector.stop();
+        assertEquals(1, ((LongTypedProperty) properties.get(1)).getValue());
+        assertEquals(0, ((LongTypedProperty) properties.get(5)).getValue());
+    }
+
+    @Test
+    public void thresholds() {
+        FrameMetricsCollector collector = new FrameMetricsCollector();
+        collector.setThresholds(10, 20);
+        collector.start(mWindow, "Page");
+        collector.onFrameMetricsAvailable(mWindow, frame(10), 0);
+        collector.onFrameMetricsAvailable(mWindow, frame(11), 0);
+        collector.onFrameMetricsAvailable(mWindow, frame(21), 0);
+        List<TypedProperty> properties = collector.stop();
+        assertEquals(3, ((LongTypedProperty) properties.get(1)).getValue());
+        assertEquals(2, ((LongTypedProperty) properties.get(2)).getValue());
+        assertEquals(1, ((LongTypedProperty) properties.get(3)).getValue());
+    }
+
+    @Test
+    public void restartDiscardsVisit() {
+        FrameMetricsCollector collector = new FrameMetricsCollector();
+        collector.start(mWindow, "First");
+        collector.onFrameMetricsAvailable(mWindow, frame(10), 0);
+
+        /* Same window keeps the listener. */
+        collector.start(mWindow, "Second");
+        verify(mWindow).addOnFrameMetricsAvailableListener(collector, mMainHandler);
+        assertNull(collector.stop());
+
+        /* Another window replaces the listener and frames of the previous one are ignored. */
+        Window otherWindow = mock(Window.class);
+        collector.start(mWindow, "Third");
+        collector.start(otherWindow, "Fourth");
+        verify(mWindow, times(2)).removeOnFrameMetricsAvailableListener(collector);
+        verify(otherWindow).addOnFrameMetricsAvailableListener(collector, mMainHandler);
+        collector.onFrameMetricsAvailable(mWindow, frame(10), 0);
+        assertNull(collector.stop());
+    }
+}
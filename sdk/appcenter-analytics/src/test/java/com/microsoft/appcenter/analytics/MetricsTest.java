@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics;
+
+import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(AppCenterLog.class)
+public class MetricsTest {
+
+    @Before
+    public void setUp() {
+        mockStatic(AppCenterLog.class);
+    }
+
+    private static Map<String, Object> toMap(List<TypedProperty> properties) {
+        Map<String, Object> values = new HashMap<>();
+        for (TypedProperty property : properties) {
+            Object value;
+            if (property instanceof StringTypedProperty) {
+                value = ((StringTypedProperty) property).getValue();
+            } else if (property instanceof LongTypedProperty) {
+                value = ((LongTypedProperty) property).getValue();
+            } else {
+                value = ((DoubleTypedProperty) property).getValue();
+            }
+            values.put(property.getName(), value);
+        }
+        return values;
+    }
+
+    @Test
+    public void counter() {
+        Map<String, String> dimensions = new HashMap<>();
+        dimensions.put("screen", "home");
+        Counter counter = new MetricsRegistry().getCounter("taps", dimensions);
+        assertNull(counter.getSummary());
+        counter.increment();
+        counter.add(4);
+        Map<String, Object> summary = toMap(counter.getSummary());
+        assertEquals(Counter.TYPE, summary.get("metric.type"));
+        assertEquals(5L, summary.get("metric.value"));
+        assertEquals("home", summary.get("screen"));
+
+        /* Reset after each summary, but zero is sent if updated. */
+        assertNull(counter.getSummary());
+        counter.add(0);
+        assertEquals(0L, toMap(counter.getSummary()).get("metric.value"));
+    }
+
+    @Test
+    public void gauge() {
+        Gauge gauge = new MetricsRegistry().getGauge("queue", null);
+        gauge.set(Double.NaN);
+        assertNull(gauge.getSummary());
+        gauge.set(3);
+        gauge.set(2.5);
+        assertEquals(2.5, toMap(gauge.getSummary()).get("metric.value"));
+        assertNull(gauge.getSummary());
+    }
+
+    @Test
+    public void histogram() {
+        Histogram histogram = new MetricsRegistry().getHistogram("latency", null);
+        histogram.record(Double.POSITIVE_INFINITY);
+        assertNull(histogram.getSummary());
+
+        /* Check quantiles have the relative accuracy. */
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            histogram.record(Math.exp(random.nextGaussian() * 2 + 4));
+        }
+        histogram.record(0);
+        Map<String, Object> summary = toMap(histogram.getSummary());
+        assertEquals(Histogram.TYPE, summary.get("metric.type"));
+        assertEquals(10001L, summary.get("metric.count"));
+        assertEquals(0.0, summary.get("metric.min"));
+        double p50 = (Double) summary.get("metric.p50");
+        double p90 = (Double) summary.get("metric.p90");
+        double p99 = (Double) summary.get("metric.p99");
+        double max = (Double) summary.get("metric.max");
+        double sum = (Double) summary.get("metric.sum");
+        assertEquals(Math.exp(4), p50, Math.exp(4) * 0.05);
+        assertEquals(Math.exp(4 + 2 * 1.2816), p90, Math.exp(4 + 2 * 1.2816) * 0.1);
+        assertTrue(p99 > p90 && p99 <= max);
+        assertTrue(sum > p50 * 10000);
+        assertNull(histogram.getSummary());
+    }
+
+    @Test
+    public void histogramBuckets() {
+        assertEquals(0, Histogram.getBucket(-1));
+        assertEquals(0, Histogram.getBucket(Histogram.MIN_VALUE));
+        assertEquals(Histogram.BUCKET_COUNT - 1, Histogram.getBucket(Histogram.MAX_VALUE * 10));
+        for (double value = Histogram.MIN_VALUE * 1.5; value < Histogram.MAX_VALUE; value *= 1.7) {
+            long[] counts = new long[Histogram.BUCKET_COUNT];
+            counts[Histogram.getBucket(value)] = 1;
+            assertEquals(value, Histogram.getQuantile(counts, 1, 0.5), value * Histogram.RELATIVE_ACCURACY * 1.001);
+        }
+    }
+
+    @Test
+    public void registry() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Map<String, String> dimensions = new HashMap<>();
+        dimensions.put("a", "1");
+        dimensions.put("b", "2");
+        Map<String, String> sameDimensions = new HashMap<>();
+        sameDimensions.put("b", "2");
+        sameDimensions.put("a", "1");
+        Counter counter = registry.getCounter("name", dimensions);
+        assertSame(counter, registry.getCounter("name", sameDimensions));
+        assertNotSame(counter, registry.getCounter("name", null));
+        assertNotNull(registry.getHistogram("name", dimensions));
+        assertEquals(3, registry.getMetrics().size());
+
+        /* Invalid metrics work but are not registered. */
+        Map<String, String> nullDimension = new HashMap<>();
+        nullDimension.put("a", null);
+        registry.getGauge(null, null).set(1);
+        registry.getGauge("", null).set(1);
+        registry.getGauge("name", nullDimension).set(1);
+        verifyStatic(times(3));
+        AppCenterLog.error(eq(Analytics.LOG_TAG), anyString());
+        assertEquals(3, registry.getMetrics().size());
+
+        /* Number of metrics is limited. */
+        for (int i = 3; i < MetricsRegistry.MAX_METRICS + 1; i++) {
+            registry.getCounter("counter" + i, null);
+        }
+        assertEquals(MetricsRegistry.MAX_METRICS, registry.getMetrics().size());
+
+        /* Clear discards values. */
+        counter.increment();
+        registry.clear();
+        assertNull(counter.getSummary());
+    }
+
+    @Test
+    public void span() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Span span = new Span(registry, "checkout", 50);
+        Span child = span.startChild("submit");
+        assertEquals("checkout" + Span.CHILD_SEPARATOR + "submit", child.getName());
+        child.setAttribute("payment", "card").incrementCounter("items").addToCounter("items", 2);
+        double duration = child.stop();
+        assertTrue(duration >= 0);
+
+        /* Stopped spans ignore updates. */
+        child.setAttribute("other", "value").incrementCounter("items");
+        assertTrue(child.stop() >= duration);
+        span.stop();
+        assertEquals(3, registry.getMetrics().size());
+        Map<String, String> dimensions = new HashMap<>();
+        dimensions.put("payment", "card");
+        Histogram histogram = registry.getHistogram(child.getName(), dimensions);
+        assertEquals(50, histogram.getSampleRate(), 0);
+        assertEquals(1L, toMap(histogram.getSummary()).get("metric.count"));
+        Counter counter = registry.getCounter(child.getName() + Span.COUNTER_SEPARATOR + "items", dimensions);
+        assertEquals(3L, toMap(counter.getSummary()).get("metric.value"));
+        assertSame(registry.getHistogram("checkout", null), registry.getHistogram("checkout", null));
+
+        /* Invalid values are ignored. */
+        span = new Span(registry, "invalid", 100);
+        span.setAttribute(null, "value").setAttribute("key", null).incrementCounter(null).addToCounter("", 1);
+        span.startChild("").stop();
+        span.stop();
+        verifyStatic(times(5));
+        AppCenterLog.error(eq(Analytics.LOG_TAG), anyString());
+        assertEquals(4, registry.getMetrics().size());
+    }
+}
@@ -353,6 +353,45 @@ public class PropertyConfiguratorTest extends AbstractAnalyticsTest {
         assertEquals("c:alice", log.getExt().getUser().getLocalId());
     }
 
+    @Test
+    public void inheritedPropertiesFollowParentChanges() {
+        AnalyticsTransmissionTarget parent = Analytics.getTransmissionTarget("parent");
+        AnalyticsTransmissionTarget child = parent.getTransmissionTarget("child");
+        parent.getPropertyConfigurator().setAppName("parentName");
+        parent.getPropertyConfigurator().setUserId("c:alice");
+        CommonSchemaLog log = newTargetLog(child);
+        child.getPropertyConfigurator().onPreparingLog(log, "groupName");
+        assertEquals("parentName", log.getExt().getApp().getName());
+        assertEquals("c:alice", log.getExt().getUser().getLocalId());
+
+        /* Change on parent is inherited by next logs. */
+        parent.getPropertyConfigurator().setAppName("newParentName");
+        log = newTargetLog(child);
+        child.getPropertyConfigurator().onPreparingLog(log, "groupName");
+        assertEquals("newParentName", log.getExt().getApp().getName());
+
+        /* Child property overrides the parent one, unset child property inherits again. */
+        child.getPropertyConfigurator().setAppName("childName");
+        log = newTargetLog(child);
+        child.getPropertyConfigurator().onPreparingLog(log, "groupName");
+        assertEquals("childName", log.getExt().getApp().getName());
+        child.getPropertyConfigurator().setAppName(null);
+        parent.getPropertyConfigurator().setUserId(null);
+        log = newTargetLog(child);
+        child.getPropertyConfigurator().onPreparingLog(log, "groupName");
+        assertEquals("newParentName", log.getExt().getApp().getName());
+        assertNull(log.getExt().getUser().getLocalId());
+    }
+
+    private static CommonSchemaLog newTargetLog(AnalyticsTransmissionTarget target) {
+        CommonSchemaLog log = new CommonSchemaEventLog();
+        log.setExt(new Extensions());
+        log.getExt().setApp(new AppExtension());
+        log.getExt().setUser(new UserExtension());
+        log.setTag(target);
+        return log;
+    }
+
     @Test
     public void checkGrandParentNotOverriddenByDescendants() {
         CommonSchemaLog log = new CommonSchemaEventLog();
@@ -116,4 +116,18 @@ public class EventLogFactoryTest {
         verifyStatic(times(2));
         CommonSchemaDataUtils.addCommonSchemaData(eq(properties), notNull(CommonSchemaLog.class));
     }
+
+    @Test
+    @PrepareForTest({PartAUtils.class, CommonSchemaDataUtils.class})
+    public void convertSampledEvent() {
+        mockStatic(PartAUtils.class);
+        mockStatic(CommonSchemaDataUtils.class);
+        EventLog log = new EventLog();
+        log.setName("test");
+        log.addTransmissionTarget("t1");
+        log.setSampleRate(5.0);
+        Collection<CommonSchemaLog> convertedLogs = new EventLogFactory().toCommonSchemaLogs(log);
+        assertEquals(1, convertedLogs.size());
+        assertEquals(5.0, convertedLogs.iterator().next().getPopSample(), 0);
+    }
 }
@@ -14,6 +14,7 @@ import com.microsoft.appcenter.AppCenterPrivateHelper;
 import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.channel.Channel;
 import com.microsoft.appcenter.crashes.ingestion.models.ErrorAttachmentLog;
+import com.microsoft.appcenter.crashes.ingestion.models.HandledErrorLog;
 import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
 import com.microsoft.appcenter.crashes.model.ErrorReport;
 import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
@@ -235,6 +236,61 @@ public class CrashesAndroidTest {
         assertTrue(Crashes.hasCrashedInLastSession().get());
     }
 
+    @Test
+    public void trackErrorThroughput() throws Exception {
+        startFresh(null);
+        Crashes.setHandledErrorRateLimit(1, 0);
+        int iterations = 2000;
+
+        /* Measure conversion of the same error from the same call site. */
+        long startTime = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            ErrorLogHelper.getModelExceptionFromThrowable(newHandledError());
+        }
+        long regularDuration = System.nanoTime() - startTime;
+        startTime = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            ErrorLogHelper.getSharedModelExceptionFromThrowable(newHandledError());
+        }
+        long sharedDuration = System.nanoTime() - startTime;
+
+        /* Measure trackError until every error is enqueued. */
+        startTime = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            Crashes.trackError(newHandledError());
+        }
+        assertTrue(Crashes.isEnabled().get());
+        long trackDuration = System.nanoTime() - startTime;
+        verify(mChannel, times(iterations)).enqueue(isA(HandledErrorLog.class), anyString(), eq(DEFAULTS));
+        String message = "conversion: " + regularDuration / iterations / 1000 + "us, " +
+                "shared conversion: " + sharedDuration / iterations / 1000 + "us, " +
+                "trackError: " + iterations * 1000000000L / trackDuration + " errors/s";
+        android.util.Log.i(TAG, message);
+        assertTrue(message, sharedDuration < regularDuration);
+    }
+
+    @Test
+    public void leaveBreadcrumbCost() throws Exception {
+        startFresh(null);
+        assertTrue(Crashes.isEnabled().get());
+        int iterations = 100000;
+
+        /* Warm up then measure appends, wrapping the ring many times. */
+        for (int i = 0; i < Crashes.BREADCRUMB_CAPACITY; i++) {
+            Crashes.leaveBreadcrumb("Warm up");
+        }
+        long startTime = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            Crashes.leaveBreadcrumb("User tapped the checkout button");
+        }
+        long duration = System.nanoTime() - startTime;
+        android.util.Log.i(TAG, "leaveBreadcrumb: " + duration / iterations + "ns");
+    }
+
+    private static Throwable newHandledError() {
+        return new IllegalStateException("Handled error", new IllegalArgumentException("Cause"));
+    }
+
     @Test
     public void getLastSessionCrashReportNative() throws Exception {
 
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.microsoft.appcenter.utils.HandlerUtils;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.microsoft.appcenter.test.TestUtils.TAG;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MainThreadWatchdogAndroidTest {
+
+    @Test
+    public void overheadWhileIdle() throws InterruptedException {
+        final AtomicLong stallCount = new AtomicLong();
+        MainThreadWatchdog watchdog = new MainThreadWatchdog(20, 1000, new MainThreadWatchdog.Listener() {
+
+            @Override
+            public void onStall(long duration) {
+                stallCount.incrementAndGet();
+            }
+        });
+
+        /* Watch an idle main thread. */
+        long duration = 2000;
+        watchdog.start();
+        Thread.sleep(duration);
+        watchdog.stop();
+
+        /* The watchdog thread must use a negligible share of CPU. */
+        long cpuTime = watchdog.getCpuTime();
+        String message = "watchdog CPU time: " + cpuTime + "ms for " + duration + "ms";
+        Log.i(TAG, message);
+        assertTrue(message, cpuTime * 100 < duration);
+        assertEquals(0, stallCount.get());
+    }
+
+    @Test
+    public void detectStall() throws InterruptedException {
+        final CountDownLatch stallLatch = new CountDownLatch(1);
+        final AtomicLong stallDuration = new AtomicLong();
+        MainThreadWatchdog watchdog = new MainThreadWatchdog(20, 200, new MainThreadWatchdog.Listener() {
+
+            @Override
+            public void onStall(long duration) {
+                stallDuration.set(duration);
+                stallLatch.countDown();
+            }
+        });
+        watchdog.start();
+
+        /* Block the main thread. */
+        HandlerUtils.runOnUiThread(new Runnable() {
+
+            @Override
+            public void run() {
+                SystemClock.sleep(500);
+            }
+        });
+        assertTrue(stallLatch.await(2, TimeUnit.SECONDS));
+        watchdog.stop();
+        assertTrue(stallDuration.get() >= 200);
+    }
+}
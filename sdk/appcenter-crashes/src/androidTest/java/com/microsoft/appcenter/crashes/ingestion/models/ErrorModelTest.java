@@ -9,8 +9,10 @@ import com.microsoft.appcenter.crashes.ingestion.models.json.ErrorAttachmentLogF
 import com.microsoft.appcenter.crashes.ingestion.models.json.HandledErrorLogFactory;
 import com.microsoft.appcenter.crashes.ingestion.models.json.ManagedErrorLogFactory;
 import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.utils.HashUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -18,16 +20,23 @@ import org.json.JSONStringer;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.util.Date;
+import java.util.Random;
 import java.util.UUID;
 
 import static com.microsoft.appcenter.crashes.ingestion.models.ErrorAttachmentLog.CHARSET;
 import static com.microsoft.appcenter.crashes.ingestion.models.ErrorAttachmentLog.DATA;
+import static com.microsoft.appcenter.crashes.ingestion.models.ErrorAttachmentLog.DATA_FILE;
 import static com.microsoft.appcenter.test.TestUtils.checkEquals;
 import static com.microsoft.appcenter.test.TestUtils.checkNotEquals;
 import static com.microsoft.appcenter.test.TestUtils.compareSelfNullClass;
 import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 @SuppressWarnings("unused")
@@ -474,6 +483,32 @@ public class ErrorModelTest {
                     checkEquals(frame1, frame2);
                 }
             }
+            {
+                thread1.setFrameIndexes(singletonList(0));
+                checkNotEquals(thread1, thread2);
+                checkThreads(serializer, errorLog1, errorLog2, thread1, thread2);
+
+                thread2.setFrameIndexes(singletonList(1));
+                checkNotEquals(thread1, thread2);
+
+                thread2.setFrameIndexes(thread1.getFrameIndexes());
+                checkEquals(thread1, thread2);
+            }
+        }
+        {
+            StackFrame frame1 = new StackFrame();
+            frame1.setClassName("1");
+            StackFrame frame2 = new StackFrame();
+            frame2.setClassName("2");
+            errorLog1.setFrameTable(singletonList(frame1));
+            checkNotEquals(errorLog1, errorLog2);
+            checkSerialization(errorLog1, serializer);
+
+            errorLog2.setFrameTable(singletonList(frame2));
+            checkNotEquals(errorLog1, errorLog2);
+
+            errorLog2.setFrameTable(errorLog1.getFrameTable());
+            checkEquals(errorLog1, errorLog2);
         }
         checkSerialization(errorLog1, serializer);
     }
@@ -630,6 +665,99 @@ public class ErrorModelTest {
         }
     }
 
+    @Test
+    public void errorAttachmentLogWithFile() throws java.lang.Exception {
+        File file = File.createTempFile("attachment", ".txt");
+        try {
+            byte[] data = "Hello File!".getBytes(CHARSET);
+            FileOutputStream outputStream = new FileOutputStream(file);
+            outputStream.write(data);
+            outputStream.close();
+            ErrorAttachmentLog log = ErrorAttachmentLog.attachmentWithFile(file, "text/plain");
+            log.setTimestamp(new Date());
+            log.setId(UUID.randomUUID());
+            log.setErrorId(UUID.randomUUID());
+            log.setDataHash(HashUtils.sha256(file));
+
+            /* Only the reference is stored. */
+            LogSerializer serializer = new DefaultLogSerializer();
+            serializer.addLogFactory(ErrorAttachmentLog.TYPE, ErrorAttachmentLogFactory.getInstance());
+            String payload = serializer.serializeLog(log);
+            JSONObject json = new JSONObject(payload);
+            assertFalse(json.has(DATA));
+            assertEquals(file.getAbsolutePath(), json.getString(DATA_FILE));
+
+            /* The file is loaded when reading the log back. */
+            ErrorAttachmentLog readLog = (ErrorAttachmentLog) serializer.deserializeLog(payload, null);
+            assertArrayEquals(data, readLog.getData());
+            assertEquals(file, readLog.getDataFile());
+            assertTrue(new JSONObject(serializer.serializeLog(readLog)).has(DATA));
+
+            /* A changed file discards the log. */
+            outputStream = new FileOutputStream(file, true);
+            outputStream.write(data);
+            outputStream.close();
+            try {
+                serializer.deserializeLog(payload, null);
+                fail("Expected json exception here");
+            } catch (JSONException ignored) {
+            }
+        } finally {
+
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Test
+    public void errorAttachmentLogWithFileHeap() throws java.lang.Exception {
+        File file = File.createTempFile("attachment", ".bin");
+        try {
+            int size = 5 * 1024 * 1024;
+            byte[] chunk = new byte[64 * 1024];
+            new Random().nextBytes(chunk);
+            FileOutputStream outputStream = new FileOutputStream(file);
+            for (int i = 0; i < size / chunk.length; i++) {
+                outputStream.write(chunk);
+            }
+            outputStream.close();
+            LogSerializer serializer = new DefaultLogSerializer();
+            serializer.addLogFactory(ErrorAttachmentLog.TYPE, ErrorAttachmentLogFactory.getInstance());
+            long baseline = usedHeap();
+
+            /* Attaching and storing the log only holds the reference. */
+            ErrorAttachmentLog log = ErrorAttachmentLog.attachmentWithFile(file, "application/octet-stream");
+            log.setTimestamp(new Date());
+            log.setId(UUID.randomUUID());
+            log.setErrorId(UUID.randomUUID());
+            log.setDataHash(HashUtils.sha256(file));
+            String payload = serializer.serializeLog(log);
+            long stored = usedHeap() - baseline;
+
+            /* Sending loads the file and builds the request body as a string. */
+            Log readLog = serializer.deserializeLog(payload, null);
+            long read = usedHeap() - baseline;
+            LogContainer container = new LogContainer();
+            container.setLogs(singletonList(readLog));
+            String body = serializer.serializeContainer(container);
+            long sent = usedHeap() - baseline;
+            android.util.Log.i("ErrorAttachmentLog", "Heap held for a " + size / 1024 + "KB file attachment, stored: " + stored / 1024
+                    + "KB, read: " + read / 1024 + "KB, request body: " + sent / 1024 + "KB");
+            assertTrue(stored < size / 10);
+            assertTrue(body.length() > size);
+        } finally {
+
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
     private static class MockErrorLog extends AbstractErrorLog {
 
         @Override
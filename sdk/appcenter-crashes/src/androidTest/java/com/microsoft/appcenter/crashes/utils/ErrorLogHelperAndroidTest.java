@@ -6,9 +6,16 @@
 package com.microsoft.appcenter.crashes.utils;
 
 import android.support.test.InstrumentationRegistry;
+import android.util.Log;
 
 import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.crashes.Crashes;
+import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.appcenter.crashes.ingestion.models.Thread;
+import com.microsoft.appcenter.crashes.ingestion.models.json.ManagedErrorLogFactory;
 import com.microsoft.appcenter.ingestion.models.Device;
+import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.utils.storage.FileManager;
 
 import org.junit.After;
@@ -17,7 +24,9 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -174,4 +183,74 @@ public class ErrorLogHelperAndroidTest {
         Device device3 = ErrorLogHelper.parseDevice(deviceInfo3);
         assertNull(device3);
     }
+
+    @Test
+    public void compactThreadsWithManyThreads() throws Exception {
+
+        /* Start idle threads, they share most of their frames. */
+        final int threadCount = 150;
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        final CountDownLatch startedLatch = new CountDownLatch(threadCount);
+        java.lang.Thread[] threads = new java.lang.Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new java.lang.Thread() {
+
+                @Override
+                public void run() {
+                    startedLatch.countDown();
+                    try {
+                        releaseLatch.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        startedLatch.await();
+        try {
+            LogSerializer serializer = new DefaultLogSerializer();
+            serializer.addLogFactory(ManagedErrorLog.TYPE, ManagedErrorLogFactory.getInstance());
+            ManagedErrorLog errorLog = ErrorLogHelper.createErrorLog(InstrumentationRegistry.getContext(), java.lang.Thread.currentThread(), new RuntimeException(), java.lang.Thread.getAllStackTraces(), 0);
+            List<Thread> expectedThreads = errorLog.getThreads();
+            int iterations = 20;
+
+            /* Measure regular serialization. */
+            String regular = serializer.serializeLog(errorLog);
+            long startTime = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                serializer.serializeLog(errorLog);
+            }
+            long regularDuration = System.nanoTime() - startTime;
+
+            /* Measure compact serialization, including the time to compact. */
+            ErrorLogHelper.compactThreads(errorLog);
+            String compact = serializer.serializeLog(errorLog);
+            ErrorLogHelper.expandThreads(errorLog);
+            startTime = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                ErrorLogHelper.compactThreads(errorLog);
+                serializer.serializeLog(errorLog);
+                ErrorLogHelper.expandThreads(errorLog);
+            }
+            long compactDuration = System.nanoTime() - startTime;
+            String message = "regular: " + regular.length() + " chars in " + regularDuration / iterations / 1000 + "us, " +
+                    "compact: " + compact.length() + " chars in " + compactDuration / iterations / 1000 + "us";
+            Log.i(Crashes.LOG_TAG, message);
+            assertTrue(message, compact.length() * 2 < regular.length());
+            assertTrue(message, compactDuration < regularDuration);
+
+            /* Stored log reads back as the regular one. */
+            ManagedErrorLog readLog = (ManagedErrorLog) serializer.deserializeLog(compact, null);
+            assertNotNull(readLog.getFrameTable());
+            ErrorLogHelper.expandThreads(readLog);
+            assertNull(readLog.getFrameTable());
+            assertEquals(expectedThreads, readLog.getThreads());
+            assertEquals(regular, serializer.serializeLog(readLog));
+        } finally {
+            releaseLatch.countDown();
+            for (java.lang.Thread thread : threads) {
+                thread.join();
+            }
+        }
+    }
 }
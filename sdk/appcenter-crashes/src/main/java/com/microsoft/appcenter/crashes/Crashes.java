@@ -9,6 +9,8 @@ import android.annotation.SuppressLint;
 import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.res.Configuration;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
@@ -26,17 +28,22 @@ import com.microsoft.appcenter.crashes.ingestion.models.json.ErrorAttachmentLogF
 import com.microsoft.appcenter.crashes.ingestion.models.json.HandledErrorLogFactory;
 import com.microsoft.appcenter.crashes.ingestion.models.json.ManagedErrorLogFactory;
 import com.microsoft.appcenter.crashes.model.ErrorReport;
+import com.microsoft.appcenter.crashes.model.MainThreadStallException;
 import com.microsoft.appcenter.crashes.model.NativeException;
 import com.microsoft.appcenter.crashes.model.TestCrashException;
+import com.microsoft.appcenter.crashes.utils.BreadcrumbBuffer;
 import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
+import com.microsoft.appcenter.crashes.utils.MappedRingBuffer;
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.JSONDateUtils;
 import com.microsoft.appcenter.ingestion.models.json.LogFactory;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.HandlerUtils;
+import com.microsoft.appcenter.utils.HashUtils;
 import com.microsoft.appcenter.utils.async.AppCenterFuture;
 import com.microsoft.appcenter.utils.async.DefaultAppCenterFuture;
 import com.microsoft.appcenter.utils.context.SessionContext;
@@ -49,6 +56,7 @@ import org.json.JSONException;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -56,6 +64,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
@@ -116,6 +125,68 @@ public class Crashes extends AbstractAppCenterService {
      */
     public static final String LOG_TAG = AppCenterLog.LOG_TAG + SERVICE_NAME;
 
+    /**
+     * Handled error property holding the number of occurrences reported by the error.
+     */
+    public static final String PROPERTY_OCCURRENCE_COUNT = "occurrenceCount";
+
+    /**
+     * Handled error property holding the time of the first occurrence reported by the error.
+     */
+    public static final String PROPERTY_FIRST_OCCURRENCE = "firstOccurrence";
+
+    /**
+     * Handled error property holding the time of the last occurrence reported by the error.
+     */
+    public static final String PROPERTY_LAST_OCCURRENCE = "lastOccurrence";
+
+    /**
+     * Main thread stall property holding how long the main thread was blocked in milliseconds.
+     */
+    public static final String PROPERTY_STALL_DURATION = "stallDuration";
+
+    /**
+     * File name of the attachment holding the stack traces of the other threads when the main thread stalled.
+     */
+    @VisibleForTesting
+    static final String STALL_THREADS_FILE_NAME = "threads.txt";
+
+    /**
+     * Window in milliseconds during which main thread stalls with the same stack trace are reported once.
+     */
+    @VisibleForTesting
+    static final long STALL_DEDUPLICATION_WINDOW = 60 * 60 * 1000;
+
+    /**
+     * Interval between heap samples of the memory history in milliseconds.
+     */
+    @VisibleForTesting
+    static final long MEMORY_SAMPLE_INTERVAL = 30 * 1000;
+
+    /**
+     * File name of the memory history attached to crash reports.
+     */
+    @VisibleForTesting
+    static final String MEMORY_HISTORY_ATTACHMENT_FILE_NAME = "memory.csv";
+
+    /**
+     * Number of latest breadcrumbs kept and attached to crash reports.
+     */
+    @VisibleForTesting
+    static final int BREADCRUMB_CAPACITY = 100;
+
+    /**
+     * Maximum breadcrumb message length, longer messages are truncated.
+     */
+    @VisibleForTesting
+    static final int BREADCRUMB_MAX_LENGTH = 100;
+
+    /**
+     * File name of the breadcrumbs attached to crash reports.
+     */
+    @VisibleForTesting
+    static final String BREADCRUMBS_ATTACHMENT_FILE_NAME = "breadcrumbs.txt";
+
     /**
      * Maximum size for attachment data in bytes.
      */
@@ -138,7 +209,7 @@ public class Crashes extends AbstractAppCenterService {
     private final Map<String, LogFactory> mFactories;
 
     /**
-     * Crash reports not processed yet.
+     * Crash reports not processed yet, values are null until loaded.
      */
     private final Map<UUID, ErrorLogReport> mUnprocessedErrorReports;
 
@@ -152,6 +223,97 @@ public class Crashes extends AbstractAppCenterService {
      */
     private LogSerializer mLogSerializer;
 
+    /**
+     * Aggregates and rate limits repeated handled errors.
+     */
+    private final HandledErrorAggregator mHandledErrorAggregator = new HandledErrorAggregator();
+
+    /**
+     * Deduplicates main thread stalls with the same stack trace.
+     */
+    private final HandledErrorAggregator mStallAggregator = new HandledErrorAggregator();
+
+    /**
+     * Sends the summaries of handled errors not reported for a window.
+     */
+    private final Runnable mHandledErrorSummarySender = new Runnable() {
+
+        @Override
+        public void run() {
+            sendHandledErrorSummaries(false);
+        }
+    };
+
+    /**
+     * Whether {@link #mHandledErrorSummarySender} is scheduled.
+     */
+    private boolean mHandledErrorSummaryScheduled;
+
+    /**
+     * Main thread watchdog check interval in milliseconds, 0 when disabled.
+     */
+    private long mWatchdogInterval;
+
+    /**
+     * Main thread blocked duration in milliseconds after which a stall is reported.
+     */
+    private long mWatchdogThreshold;
+
+    /**
+     * Whether stall reports include the stack traces of all threads.
+     */
+    private boolean mWatchdogAllThreads;
+
+    /**
+     * Main thread watchdog, null when not running.
+     */
+    private MainThreadWatchdog mMainThreadWatchdog;
+
+    /**
+     * Memory history of the current process, null when disabled or if it cannot be stored.
+     */
+    private volatile MemoryHistory mMemoryHistory;
+
+    /**
+     * Memory history of the previous process while processing its crash, as CSV.
+     */
+    private String mPreviousMemoryHistory;
+
+    /**
+     * Time of the oldest record of {@link #mPreviousMemoryHistory}.
+     */
+    private long mPreviousMemoryHistoryStartTime;
+
+    /**
+     * Breadcrumbs of the current process, null when disabled or if they cannot be stored.
+     */
+    private volatile BreadcrumbBuffer mBreadcrumbs;
+
+    /**
+     * Breadcrumbs of the previous process while processing its crash, as text.
+     */
+    private String mPreviousBreadcrumbs;
+
+    /**
+     * Time of the oldest breadcrumb of {@link #mPreviousBreadcrumbs}.
+     */
+    private long mPreviousBreadcrumbsStartTime;
+
+    /**
+     * Records a heap sample in the memory history periodically.
+     */
+    private final Runnable mMemorySampler = new Runnable() {
+
+        @Override
+        public void run() {
+            MemoryHistory memoryHistory = mMemoryHistory;
+            if (memoryHistory != null) {
+                memoryHistory.recordSample();
+                HandlerUtils.getMainHandler().postDelayed(this, MEMORY_SAMPLE_INTERVAL);
+            }
+        }
+    };
+
     /**
      * Application context.
      */
@@ -216,6 +378,7 @@ public class Crashes extends AbstractAppCenterService {
         mCrashesListener = DEFAULT_ERROR_REPORTING_LISTENER;
         mUnprocessedErrorReports = new LinkedHashMap<>();
         mErrorReportCache = new LinkedHashMap<>();
+        mStallAggregator.setRateLimit(1, STALL_DEDUPLICATION_WINDOW);
     }
 
     @NonNull
@@ -279,6 +442,61 @@ public class Crashes extends AbstractAppCenterService {
         getInstance().queueException(throwable, properties, attachments);
     }
 
+    /**
+     * Set how many handled errors with the same stack trace can be reported within a time window.
+     * Errors over the limit are counted and the next reported one includes the number of occurrences
+     * it stands for in its {@value #PROPERTY_OCCURRENCE_COUNT}, {@value #PROPERTY_FIRST_OCCURRENCE} and {@value #PROPERTY_LAST_OCCURRENCE} properties.
+     * Occurrences that are still not reported a window after the first of them are sent as a summary error
+     * with the stack trace of the last one. Summaries are also sent when the limit changes and when the application
+     * goes to background, counts not sent yet are lost if the process is killed in foreground.
+     * By default, handled errors are not limited.
+     *
+     * @param limit         number of errors with the same stack trace reported per window, at least 1.
+     * @param windowSeconds window duration in seconds, 0 to disable the limit.
+     * @return <code>true</code> if the limit is set, <code>false</code> if parameters are invalid.
+     */
+    public static boolean setHandledErrorRateLimit(int limit, int windowSeconds) {
+        if (limit < 1 || windowSeconds < 0) {
+            AppCenterLog.error(LOG_TAG, "Invalid handled error rate limit: " + limit + " per " + windowSeconds + " seconds.");
+            return false;
+        }
+        getInstance().setInstanceHandledErrorRateLimit(limit, windowSeconds * 1000L);
+        return true;
+    }
+
+    /**
+     * Leave a breadcrumb describing what the application is doing. The latest {@value #BREADCRUMB_CAPACITY} breadcrumbs
+     * are kept on disk and sent with the report of the next crash, including native crashes, as an attachment.
+     * Messages longer than {@value #BREADCRUMB_MAX_LENGTH} characters are truncated.
+     * Leaving a breadcrumb is lock-free and does not allocate memory so it can be called from performance-sensitive code.
+     *
+     * @param message breadcrumb message.
+     */
+    public static void leaveBreadcrumb(@NonNull String message) {
+        getInstance().leaveInstanceBreadcrumb(message);
+    }
+
+    /**
+     * Report main thread stalls as non fatal errors. A watchdog thread checks the main thread at the given interval,
+     * when it stays blocked past the threshold its stack trace is reported along with the blocked duration.
+     * Stalls are reported as handled errors with a {@value #PROPERTY_STALL_DURATION} property, the stack traces of
+     * the other threads are attached as text. Stalls with the same stack trace are reported once per hour,
+     * the next report counts the other ones like rate limited handled errors. The watchdog is disabled by default.
+     *
+     * @param intervalMillis    check interval in milliseconds, 0 to disable the watchdog.
+     * @param thresholdMillis   blocked duration in milliseconds after which a stall is reported, at least the interval.
+     * @param captureAllThreads <code>true</code> to also report the stack traces of all the other threads.
+     * @return <code>true</code> if the watchdog is configured, <code>false</code> if parameters are invalid.
+     */
+    public static boolean setMainThreadWatchdog(long intervalMillis, long thresholdMillis, boolean captureAllThreads) {
+        if (intervalMillis < 0 || (intervalMillis > 0 && thresholdMillis < intervalMillis)) {
+            AppCenterLog.error(LOG_TAG, "Invalid main thread watchdog: interval=" + intervalMillis + "ms, threshold=" + thresholdMillis + "ms.");
+            return false;
+        }
+        getInstance().setInstanceMainThreadWatchdog(intervalMillis, thresholdMillis, captureAllThreads);
+        return true;
+    }
+
     /**
      * Generates crash for test purpose.
      */
@@ -421,15 +639,26 @@ public class Crashes extends AbstractAppCenterService {
                 @Override
                 public void onTrimMemory(int level) {
                     saveMemoryRunningLevel(level);
+                    recordMemoryTrim(level);
                 }
 
                 @Override
                 public void onConfigurationChanged(@NonNull Configuration newConfig) {
+
+                    /* Locale or screen size may have changed. */
+                    post(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            ErrorLogHelper.prepareCrashContext(mContext);
+                        }
+                    });
                 }
 
                 @Override
                 public void onLowMemory() {
                     saveMemoryRunningLevel(TRIM_MEMORY_COMPLETE);
+                    recordMemoryTrim(TRIM_MEMORY_COMPLETE);
                 }
             };
             mContext.registerComponentCallbacks(mMemoryWarningListener);
@@ -445,6 +674,9 @@ public class Crashes extends AbstractAppCenterService {
                     }
                 }
             }
+            ErrorLogHelper.removeErrorAttachmentFiles();
+            ErrorLogHelper.removeMemoryHistoryFiles();
+            ErrorLogHelper.removeBreadcrumbsFiles();
             AppCenterLog.info(LOG_TAG, "Deleted crashes local files");
 
             /* Delete cache and in memory last session report. */
@@ -475,6 +707,26 @@ public class Crashes extends AbstractAppCenterService {
         }
     }
 
+    @Override
+    public void onApplicationEnterBackground() {
+
+        /* Best effort to not lose counts of handled errors when the process is killed. */
+        sendHandledErrorSummaries(true);
+    }
+
+    @Override
+    public void onApplicationEnterForeground() {
+
+        /* Carrier or other device properties may have changed while in background. */
+        post(new Runnable() {
+
+            @Override
+            public void run() {
+                ErrorLogHelper.prepareCrashContext(mContext);
+            }
+        });
+    }
+
     @Override
     public Map<String, LogFactory> getLogFactories() {
         return mFactories;
@@ -557,6 +809,7 @@ public class Crashes extends AbstractAppCenterService {
 
             @Override
             public void onSuccess(Log log) {
+                removeErrorAttachmentCopy(log);
                 processCallback(log, new CallbackProcessor() {
 
                     @Override
@@ -573,6 +826,7 @@ public class Crashes extends AbstractAppCenterService {
 
             @Override
             public void onFailure(Log log, final java.lang.Exception e) {
+                removeErrorAttachmentCopy(log);
                 processCallback(log, new CallbackProcessor() {
 
                     @Override
@@ -613,15 +867,125 @@ public class Crashes extends AbstractAppCenterService {
      * @param attachments optional attachments.
      */
     private synchronized void queueException(@NonNull final Throwable throwable, Map<String, String> properties, Iterable<ErrorAttachmentLog> attachments) {
+
+        /* Check rate limit before converting the stack trace. */
+        HandledErrorAggregator.Occurrences occurrences = mHandledErrorAggregator.onError(throwable, SystemClock.elapsedRealtime());
+        if (occurrences == null) {
+            AppCenterLog.debug(LOG_TAG, "Handled error rate limit reached, the error will be counted in the next report of the same stack trace.");
+            scheduleHandledErrorSummaries();
+            return;
+        }
+        if (occurrences.count > 1) {
+            properties = getPropertiesWithOccurrences(properties, occurrences);
+        }
         queueException(new ExceptionModelBuilder() {
 
             @Override
             public Exception buildExceptionModel() {
-                return ErrorLogHelper.getModelExceptionFromThrowable(throwable);
+                return ErrorLogHelper.getSharedModelExceptionFromThrowable(throwable);
             }
         }, properties, attachments);
     }
 
+    /**
+     * Add occurrences to handled error properties. They come first so that they are kept if there are too many properties.
+     *
+     * @param properties  properties, can be null.
+     * @param occurrences occurrences reported by the error.
+     * @return new properties.
+     */
+    private static Map<String, String> getPropertiesWithOccurrences(Map<String, String> properties, HandledErrorAggregator.Occurrences occurrences) {
+        Map<String, String> result = new LinkedHashMap<>();
+        result.put(PROPERTY_OCCURRENCE_COUNT, String.valueOf(occurrences.count));
+        try {
+            result.put(PROPERTY_FIRST_OCCURRENCE, JSONDateUtils.toString(toDate(occurrences.firstTime)));
+            result.put(PROPERTY_LAST_OCCURRENCE, JSONDateUtils.toString(toDate(occurrences.lastTime)));
+        } catch (JSONException e) {
+
+            /* Cannot happen with a non null date. */
+            AppCenterLog.error(LOG_TAG, "Cannot format occurrence time.", e);
+        }
+        if (properties != null) {
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                if (!result.containsKey(property.getKey())) {
+                    result.put(property.getKey(), property.getValue());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Convert an {@link SystemClock#elapsedRealtime()} time to a date.
+     *
+     * @param elapsedRealtime time since boot in milliseconds.
+     * @return date.
+     */
+    private static Date toDate(long elapsedRealtime) {
+        return new Date(System.currentTimeMillis() - (SystemClock.elapsedRealtime() - elapsedRealtime));
+    }
+
+    /**
+     * Change the handled error rate limit, sending the summaries of the errors not reported yet.
+     *
+     * @param limit  number of errors with the same stack trace reported per window.
+     * @param window window in milliseconds, 0 to disable the limit.
+     */
+    private synchronized void setInstanceHandledErrorRateLimit(int limit, long window) {
+        queueHandledErrorSummaries(mHandledErrorAggregator.setRateLimit(limit, window));
+    }
+
+    /**
+     * Schedule sending the summaries of the handled errors not reported if not already scheduled.
+     */
+    private synchronized void scheduleHandledErrorSummaries() {
+        if (!mHandledErrorSummaryScheduled) {
+            mHandledErrorSummaryScheduled = true;
+            long next = Math.min(mHandledErrorAggregator.getNextSummaryTime(), mStallAggregator.getNextSummaryTime());
+            long delay = next - SystemClock.elapsedRealtime();
+            HandlerUtils.getMainHandler().postDelayed(mHandledErrorSummarySender, Math.max(0, delay));
+        }
+    }
+
+    /**
+     * Send the summaries of the handled errors not reported.
+     *
+     * @param all true to send all of them, false to send only the ones not reported for a window.
+     */
+    private synchronized void sendHandledErrorSummaries(boolean all) {
+        if (mHandledErrorSummaryScheduled) {
+            mHandledErrorSummaryScheduled = false;
+            HandlerUtils.getMainHandler().removeCallbacks(mHandledErrorSummarySender);
+        }
+        long now = SystemClock.elapsedRealtime();
+        queueHandledErrorSummaries(mHandledErrorAggregator.getSummaries(now, all));
+        queueHandledErrorSummaries(mStallAggregator.getSummaries(now, all));
+        if (mHandledErrorAggregator.hasSuppressedErrors() || mStallAggregator.hasSuppressedErrors()) {
+            scheduleHandledErrorSummaries();
+        }
+    }
+
+    /**
+     * Send summaries of handled errors that were not reported, without checking the rate limit again.
+     *
+     * @param summaries summaries.
+     */
+    private synchronized void queueHandledErrorSummaries(List<HandledErrorAggregator.Occurrences> summaries) {
+        for (final HandledErrorAggregator.Occurrences summary : summaries) {
+            Map<String, String> properties = null;
+            if (summary.error instanceof MainThreadStallException) {
+                properties = getStallProperties((MainThreadStallException) summary.error);
+            }
+            queueException(new ExceptionModelBuilder() {
+
+                @Override
+                public Exception buildExceptionModel() {
+                    return ErrorLogHelper.getSharedModelExceptionFromThrowable(summary.error);
+                }
+            }, getPropertiesWithOccurrences(properties, summary), null);
+        }
+    }
+
     /**
      * Send an handled exception (used by wrapper SDKs).
      *
@@ -646,7 +1010,10 @@ public class Crashes extends AbstractAppCenterService {
         final String userId = UserIdContext.getInstance().getUserId();
         final UUID errorId = UUID.randomUUID();
         final Map<String, String> validatedProperties = ErrorLogHelper.validateProperties(properties, "HandledError");
-        post(new Runnable() {
+
+        /* Keep original time if the call is buffered until the service starts. */
+        final Date timestamp = isPreStart() ? new Date() : null;
+        postOrBuffer(new Runnable() {
 
             @Override
             public void run() {
@@ -654,6 +1021,7 @@ public class Crashes extends AbstractAppCenterService {
                 /* First send the handled error. */
                 HandledErrorLog errorLog = new HandledErrorLog();
                 errorLog.setId(errorId);
+                errorLog.setTimestamp(timestamp);
                 errorLog.setUserId(userId);
                 errorLog.setException(exceptionModelBuilder.buildExceptionModel());
                 errorLog.setProperties(validatedProperties);
@@ -669,22 +1037,251 @@ public class Crashes extends AbstractAppCenterService {
     private void initialize() {
         boolean enabled = isInstanceEnabled();
         mInitializeTimestamp = enabled ? System.currentTimeMillis() : -1;
+        updateMainThreadWatchdog(enabled);
         if (!enabled) {
+            closeMemoryHistory();
+            mBreadcrumbs = null;
+            mPreviousMemoryHistory = null;
+            mPreviousBreadcrumbs = null;
             if (mUncaughtExceptionHandler != null) {
                 mUncaughtExceptionHandler.unregister();
                 mUncaughtExceptionHandler = null;
             }
+            ErrorLogHelper.clearCrashContext();
         } else {
 
+            /* Prepare what does not depend on the crash so that saving one is faster. */
+            ErrorLogHelper.prepareCrashContext(mContext);
+
             /* Register Java crash handler. */
             mUncaughtExceptionHandler = new UncaughtExceptionHandler();
             mUncaughtExceptionHandler.register();
 
+            /* Keep the memory history and breadcrumbs of the previous process for its crash report before recording new ones. */
+            openMemoryHistory();
+            openBreadcrumbs();
+
             /* Process minidump files. */
             processMinidumpFiles();
         }
     }
 
+    /**
+     * Open the breadcrumbs of the current process.
+     */
+    private void openBreadcrumbs() {
+        BreadcrumbBuffer breadcrumbs = ErrorLogHelper.openBreadcrumbs(BREADCRUMB_CAPACITY, BREADCRUMB_MAX_LENGTH);
+        if (breadcrumbs == null) {
+            return;
+        }
+        Long startTime = breadcrumbs.getStartTime();
+        if (startTime != null) {
+            mPreviousBreadcrumbs = breadcrumbs.toText();
+            mPreviousBreadcrumbsStartTime = startTime;
+        }
+        breadcrumbs.clear();
+        mBreadcrumbs = breadcrumbs;
+    }
+
+    /**
+     * Implements {@link #leaveBreadcrumb(String)} at instance level.
+     */
+    private void leaveInstanceBreadcrumb(String message) {
+        if (message == null) {
+            AppCenterLog.error(LOG_TAG, "Breadcrumb message cannot be null.");
+            return;
+        }
+        BreadcrumbBuffer breadcrumbs = mBreadcrumbs;
+        if (breadcrumbs != null) {
+            breadcrumbs.add(System.currentTimeMillis(), message);
+        }
+    }
+
+    /**
+     * Open the memory history and start sampling the heap.
+     */
+    private void openMemoryHistory() {
+        closeMemoryHistory();
+        MappedRingBuffer buffer = ErrorLogHelper.openMemoryHistory(MemoryHistory.RECORD_SIZE, MemoryHistory.CAPACITY);
+        if (buffer == null) {
+            return;
+        }
+        MemoryHistory memoryHistory = new MemoryHistory(buffer);
+        Long startTime = memoryHistory.getStartTime();
+        if (startTime != null) {
+            mPreviousMemoryHistory = memoryHistory.toCsv();
+            mPreviousMemoryHistoryStartTime = startTime;
+        }
+        memoryHistory.clear();
+        mMemoryHistory = memoryHistory;
+        HandlerUtils.getMainHandler().post(mMemorySampler);
+    }
+
+    /**
+     * Stop sampling the heap.
+     */
+    private void closeMemoryHistory() {
+        if (mMemoryHistory != null) {
+            mMemoryHistory = null;
+            HandlerUtils.getMainHandler().removeCallbacks(mMemorySampler);
+        }
+    }
+
+    /**
+     * Record a trim memory event in the memory history.
+     *
+     * @param level trim memory level.
+     */
+    private void recordMemoryTrim(int level) {
+        MemoryHistory memoryHistory = mMemoryHistory;
+        if (memoryHistory != null) {
+            memoryHistory.recordTrim(level);
+        }
+    }
+
+    /**
+     * Save the memory history and breadcrumbs of the previous process if they were recorded before the crash.
+     * This is called for every pending error, as the crash of the previous process is not always the last error file.
+     *
+     * @param id        identifier of a crash of a previous process.
+     * @param timestamp crash time.
+     */
+    private void saveCrashContext(UUID id, Date timestamp) {
+        if (mPreviousMemoryHistory != null && timestamp.getTime() >= mPreviousMemoryHistoryStartTime && ErrorLogHelper.getStoredMemoryHistoryFile(id) == null) {
+            try {
+                ErrorLogHelper.saveMemoryHistory(id, mPreviousMemoryHistory);
+            } catch (IOException e) {
+                AppCenterLog.error(LOG_TAG, "Failed to save memory history.", e);
+            }
+        }
+        if (mPreviousBreadcrumbs != null && timestamp.getTime() >= mPreviousBreadcrumbsStartTime && ErrorLogHelper.getStoredBreadcrumbsFile(id) == null) {
+            try {
+                ErrorLogHelper.saveBreadcrumbs(id, mPreviousBreadcrumbs);
+            } catch (IOException e) {
+                AppCenterLog.error(LOG_TAG, "Failed to save breadcrumbs.", e);
+            }
+        }
+    }
+
+    /**
+     * Implements {@link #setMainThreadWatchdog(long, long, boolean)} at instance level.
+     */
+    private synchronized void setInstanceMainThreadWatchdog(long interval, long threshold, boolean allThreads) {
+        mWatchdogInterval = interval;
+        mWatchdogThreshold = threshold;
+        mWatchdogAllThreads = allThreads;
+
+        /* Apply now if already running, the crash handler is registered only when started and enabled. */
+        updateMainThreadWatchdog(mUncaughtExceptionHandler != null);
+    }
+
+    /**
+     * Stop the main thread watchdog and start it again with the current configuration if enabled.
+     *
+     * @param enabled whether Crashes is enabled.
+     */
+    private synchronized void updateMainThreadWatchdog(boolean enabled) {
+        if (mMainThreadWatchdog != null) {
+            mMainThreadWatchdog.stop();
+            mMainThreadWatchdog = null;
+        }
+        if (enabled && mWatchdogInterval > 0) {
+            final boolean allThreads = mWatchdogAllThreads;
+            mMainThreadWatchdog = new MainThreadWatchdog(mWatchdogInterval, mWatchdogThreshold, new MainThreadWatchdog.Listener() {
+
+                @Override
+                public void onStall(long duration) {
+                    reportMainThreadStall(duration, allThreads);
+                }
+            });
+            mMainThreadWatchdog.start();
+        }
+    }
+
+    /**
+     * Report a main thread stall. This is called on the watchdog thread while the main thread is still blocked.
+     *
+     * @param duration   how long the main thread has been blocked in milliseconds.
+     * @param allThreads whether to include the stack traces of all threads.
+     */
+    @VisibleForTesting
+    @WorkerThread
+    void reportMainThreadStall(long duration, boolean allThreads) {
+        Thread mainThread = Looper.getMainLooper().getThread();
+        StackTraceElement[] mainStackTrace = mainThread.getStackTrace();
+        final MainThreadStallException stall = new MainThreadStallException(duration);
+        stall.setStackTrace(mainStackTrace);
+
+        /* Never wait for the service lock here: the main thread may be blocked holding it. */
+        final HandledErrorAggregator.Occurrences occurrences = mStallAggregator.onError(stall, SystemClock.elapsedRealtime());
+        if (occurrences == null) {
+            AppCenterLog.debug(LOG_TAG, "Main thread stall with the same stack trace was already reported, it will be counted in the next report.");
+            postWithoutLock(new Runnable() {
+
+                @Override
+                public void run() {
+                    scheduleHandledErrorSummaries();
+                }
+            });
+            return;
+        }
+        final Map<Thread, StackTraceElement[]> otherStackTraces = allThreads ? Thread.getAllStackTraces() : null;
+        postWithoutLock(new Runnable() {
+
+            @Override
+            public void run() {
+                Map<String, String> properties = getStallProperties(stall);
+                if (occurrences.count > 1) {
+                    properties = getPropertiesWithOccurrences(properties, occurrences);
+                }
+                Iterable<ErrorAttachmentLog> attachments = null;
+                if (otherStackTraces != null) {
+                    otherStackTraces.remove(Looper.getMainLooper().getThread());
+                    attachments = Collections.singletonList(ErrorAttachmentLog.attachmentWithText(getStackTracesText(otherStackTraces), STALL_THREADS_FILE_NAME));
+                }
+                queueException(new ExceptionModelBuilder() {
+
+                    @Override
+                    public Exception buildExceptionModel() {
+                        return ErrorLogHelper.getSharedModelExceptionFromThrowable(stall);
+                    }
+                }, properties, attachments);
+            }
+        });
+    }
+
+    /**
+     * Get the properties of a main thread stall report.
+     *
+     * @param stall stall.
+     * @return properties.
+     */
+    private static Map<String, String> getStallProperties(MainThreadStallException stall) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put(PROPERTY_STALL_DURATION, String.valueOf(stall.getDuration()));
+        return properties;
+    }
+
+    /**
+     * Format stack traces of threads as text, in the usual Java format.
+     *
+     * @param stackTraces stack traces by thread.
+     * @return text.
+     */
+    @VisibleForTesting
+    static String getStackTracesText(Map<Thread, StackTraceElement[]> stackTraces) {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<Thread, StackTraceElement[]> entry : stackTraces.entrySet()) {
+            Thread thread = entry.getKey();
+            text.append('"').append(thread.getName()).append("\" id=").append(thread.getId()).append('\n');
+            for (StackTraceElement frame : entry.getValue()) {
+                text.append("\tat ").append(frame).append('\n');
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
     private void processMinidumpFiles() {
 
         /* Convert minidump files to App Center crash files. */
@@ -728,6 +1325,7 @@ public class Crashes extends AbstractAppCenterService {
             } else {
                 try {
                     ManagedErrorLog log = (ManagedErrorLog) mLogSerializer.deserializeLog(logFileContents, null);
+                    ErrorLogHelper.expandThreads(log);
                     mLastSessionErrorReport = buildErrorReport(log);
                     AppCenterLog.debug(LOG_TAG, "Processed crash report for the last session.");
                 } catch (JSONException e) {
@@ -808,6 +1406,7 @@ public class Crashes extends AbstractAppCenterService {
             if (!minidumpFile.renameTo(dest)) {
                 throw new IOException("Failed to move file");
             }
+            saveCrashContext(errorLog.getId(), errorLog.getTimestamp());
         } catch (java.lang.Exception e) {
 
             //noinspection ResultOfMethodCallIgnored
@@ -817,34 +1416,52 @@ public class Crashes extends AbstractAppCenterService {
         }
     }
 
+    /**
+     * List pending errors and keep the ones to send.
+     * <p>
+     * The error directory listing is used as an index: error logs are named after their identifier,
+     * and their size and modification time are known without reading them.
+     * Error logs and reports are read here only if {@link CrashesListener#shouldProcess(ErrorReport)}
+     * needs them, otherwise they are loaded when sent or when wrapper SDKs get them.
+     */
     private void processPendingErrors() {
+        boolean loadReports = mAutomaticProcessing && overridesShouldProcess(mCrashesListener);
         for (File logFile : ErrorLogHelper.getStoredErrorLogFiles()) {
             AppCenterLog.debug(LOG_TAG, "Process pending error file: " + logFile);
-            String logfileContents = FileManager.read(logFile);
-            if (logfileContents != null) {
-                try {
-                    ManagedErrorLog log = (ManagedErrorLog) mLogSerializer.deserializeLog(logfileContents, null);
-                    UUID id = log.getId();
-                    ErrorReport report = buildErrorReport(log);
-                    if (report == null) {
-                        removeAllStoredErrorLogFiles(id);
-                    } else if (!mAutomaticProcessing || mCrashesListener.shouldProcess(report)) {
-                        if (!mAutomaticProcessing) {
-                            AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned true, continue processing log: " + id.toString());
-                        }
-                        mUnprocessedErrorReports.put(id, mErrorReportCache.get(id));
-                    } else {
-                        AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned false, clean up and ignore log: " + id.toString());
-                        removeAllStoredErrorLogFiles(id);
-                    }
-                } catch (JSONException e) {
-                    AppCenterLog.error(LOG_TAG, "Error parsing error log. Deleting invalid file: " + logFile, e);
+            UUID fileId = ErrorLogHelper.getErrorLogId(logFile);
+            if (!loadReports && fileId != null) {
+                if (logFile.length() == 0) {
+                    AppCenterLog.warn(LOG_TAG, "Deleting empty error file: " + logFile);
+                    removeAllStoredErrorLogFiles(fileId);
+                } else {
 
-                    //noinspection ResultOfMethodCallIgnored
-                    logFile.delete();
+                    /* Reuse the last session error if loaded, otherwise the file is written when crashing. */
+                    ErrorLogReport errorLogReport = mErrorReportCache.get(fileId);
+                    saveCrashContext(fileId, errorLogReport != null ? errorLogReport.log.getTimestamp() : new Date(logFile.lastModified()));
+                    mUnprocessedErrorReports.put(fileId, errorLogReport);
+                }
+                continue;
+            }
+            ManagedErrorLog log = readPendingErrorLog(logFile);
+            if (log != null) {
+                UUID id = log.getId();
+                saveCrashContext(id, log.getTimestamp());
+                ErrorReport report = buildErrorReport(log);
+                if (report == null) {
+                    removeAllStoredErrorLogFiles(id);
+                } else if (!mAutomaticProcessing || mCrashesListener.shouldProcess(report)) {
+                    if (!mAutomaticProcessing) {
+                        AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned true, continue processing log: " + id.toString());
+                    }
+                    mUnprocessedErrorReports.put(id, mErrorReportCache.get(id));
+                } else {
+                    AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned false, clean up and ignore log: " + id.toString());
+                    removeAllStoredErrorLogFiles(id);
                 }
             }
         }
+        mPreviousMemoryHistory = null;
+        mPreviousBreadcrumbs = null;
         mHasReceivedMemoryWarningInLastSession = isMemoryRunningLevelWasReceived(SharedPreferencesManager.getInt(PREF_KEY_MEMORY_RUNNING_LEVEL, -1));
         if (mHasReceivedMemoryWarningInLastSession) {
             AppCenterLog.debug(LOG_TAG, "The application received a low memory warning in the last session.");
@@ -859,6 +1476,71 @@ public class Crashes extends AbstractAppCenterService {
         }
     }
 
+    /**
+     * Get a pending error log, reusing the one already loaded for the last session report if any.
+     *
+     * @param logFile error log file.
+     * @return error log or null if it could not be read, invalid files are deleted.
+     */
+    @Nullable
+    private ManagedErrorLog readPendingErrorLog(File logFile) {
+        UUID id = ErrorLogHelper.getErrorLogId(logFile);
+        ErrorLogReport errorLogReport = id != null ? mErrorReportCache.get(id) : null;
+        if (errorLogReport != null) {
+            return errorLogReport.log;
+        }
+        String logfileContents = FileManager.read(logFile);
+        if (logfileContents != null) {
+            try {
+                ManagedErrorLog log = (ManagedErrorLog) mLogSerializer.deserializeLog(logfileContents, null);
+                ErrorLogHelper.expandThreads(log);
+                return log;
+            } catch (JSONException e) {
+                AppCenterLog.error(LOG_TAG, "Error parsing error log. Deleting invalid file: " + logFile, e);
+
+                //noinspection ResultOfMethodCallIgnored
+                logFile.delete();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get an unprocessed error log and its report, loading them if they were not read at startup.
+     *
+     * @param id             error identifier.
+     * @param errorLogReport error log and report if already loaded.
+     * @return error log and report or null if they cannot be loaded, the error files are then deleted.
+     */
+    @Nullable
+    private ErrorLogReport loadUnprocessedErrorReport(UUID id, @Nullable ErrorLogReport errorLogReport) {
+        if (errorLogReport != null) {
+            return errorLogReport;
+        }
+        File logFile = ErrorLogHelper.getStoredErrorLogFile(id);
+        ManagedErrorLog log = logFile != null ? readPendingErrorLog(logFile) : null;
+        if (log != null && buildErrorReport(log) != null) {
+            errorLogReport = mErrorReportCache.get(id);
+        }
+        if (errorLogReport == null) {
+            AppCenterLog.error(LOG_TAG, "Failed to load pending error log: " + id);
+            removeAllStoredErrorLogFiles(id);
+        }
+        return errorLogReport;
+    }
+
+    /**
+     * Check if a listener implements {@link CrashesListener#shouldProcess(ErrorReport)},
+     * in which case it needs every pending report at startup.
+     */
+    private static boolean overridesShouldProcess(CrashesListener listener) {
+        try {
+            return listener.getClass().getMethod("shouldProcess", ErrorReport.class).getDeclaringClass() != AbstractCrashesListener.class;
+        } catch (NoSuchMethodException e) {
+            return true;
+        }
+    }
+
     private static boolean isMemoryRunningLevelWasReceived(int memoryLevel) {
         return memoryLevel == TRIM_MEMORY_RUNNING_MODERATE
                 || memoryLevel == TRIM_MEMORY_RUNNING_LOW
@@ -911,6 +1593,8 @@ public class Crashes extends AbstractAppCenterService {
 
     private void removeAllStoredErrorLogFiles(UUID id) {
         ErrorLogHelper.removeStoredErrorLogFile(id);
+        ErrorLogHelper.removeStoredMemoryHistoryFile(id);
+        ErrorLogHelper.removeStoredBreadcrumbsFile(id);
         removeStoredThrowable(id);
     }
 
@@ -1001,7 +1685,11 @@ public class Crashes extends AbstractAppCenterService {
                         File dumpFile = null;
                         ErrorAttachmentLog dumpAttachment = null;
                         Map.Entry<UUID, ErrorLogReport> unprocessedEntry = unprocessedIterator.next();
-                        ErrorLogReport errorLogReport = unprocessedEntry.getValue();
+                        ErrorLogReport errorLogReport = loadUnprocessedErrorReport(unprocessedEntry.getKey(), unprocessedEntry.getValue());
+                        if (errorLogReport == null) {
+                            unprocessedIterator.remove();
+                            continue;
+                        }
                         if (errorLogReport.report.getDevice() != null && WRAPPER_SDK_NAME_NDK.equals(errorLogReport.report.getDevice().getWrapperSdkName())) {
 
                             /* Get minidump file path. */
@@ -1043,6 +1731,26 @@ public class Crashes extends AbstractAppCenterService {
                             dumpFile.delete();
                         }
 
+                        /* Send memory history and remove file. */
+                        File memoryHistoryFile = ErrorLogHelper.getStoredMemoryHistoryFile(errorLogReport.log.getId());
+                        if (memoryHistoryFile != null) {
+                            String memoryHistory = FileManager.read(memoryHistoryFile);
+                            if (memoryHistory != null) {
+                                sendErrorAttachment(errorLogReport.log.getId(), Collections.singleton(ErrorAttachmentLog.attachmentWithText(memoryHistory, MEMORY_HISTORY_ATTACHMENT_FILE_NAME)));
+                            }
+                            ErrorLogHelper.removeStoredMemoryHistoryFile(errorLogReport.log.getId());
+                        }
+
+                        /* Send breadcrumbs and remove file. */
+                        File breadcrumbsFile = ErrorLogHelper.getStoredBreadcrumbsFile(errorLogReport.log.getId());
+                        if (breadcrumbsFile != null) {
+                            String breadcrumbs = FileManager.read(breadcrumbsFile);
+                            if (breadcrumbs != null) {
+                                sendErrorAttachment(errorLogReport.log.getId(), Collections.singleton(ErrorAttachmentLog.attachmentWithText(breadcrumbs, BREADCRUMBS_ATTACHMENT_FILE_NAME)));
+                            }
+                            ErrorLogHelper.removeStoredBreadcrumbsFile(errorLogReport.log.getId());
+                        }
+
                         /* Get attachments from callback in automatic processing. */
                         if (mAutomaticProcessing) {
                             Iterable<ErrorAttachmentLog> attachments = mCrashesListener.getErrorAttachments(errorLogReport.report);
@@ -1072,10 +1780,8 @@ public class Crashes extends AbstractAppCenterService {
                     attachment.setErrorId(errorId);
                     if (!attachment.isValid()) {
                         AppCenterLog.error(LOG_TAG, "Not all required fields are present in ErrorAttachmentLog.");
-                    } else if (attachment.getData().length > MAX_ATTACHMENT_SIZE) {
-                        AppCenterLog.error(LOG_TAG, String.format(Locale.ENGLISH,
-                                "Discarding attachment with size above %d bytes: size=%d, fileName=%s.",
-                                MAX_ATTACHMENT_SIZE, attachment.getData().length, attachment.getFileName()));
+                    } else if (!prepareErrorAttachmentData(attachment)) {
+                        removeErrorAttachmentCopy(attachment);
                     } else {
                         mChannel.enqueue(attachment, ERROR_GROUP, Flags.DEFAULTS);
                     }
@@ -1086,6 +1792,55 @@ public class Crashes extends AbstractAppCenterService {
         }
     }
 
+    /**
+     * Check attachment size and make file and stream attachments reference their content instead of holding it.
+     * Streams are copied to a file and files are hashed to detect changes before sending.
+     *
+     * @param attachment attachment.
+     * @return true if the attachment can be sent.
+     */
+    @WorkerThread
+    private static boolean prepareErrorAttachmentData(ErrorAttachmentLog attachment) {
+        try {
+            InputStream dataStream = attachment.getDataStream();
+            if (dataStream != null) {
+                attachment.setDataStream(null);
+                attachment.setDataFile(ErrorLogHelper.saveErrorAttachmentStream(attachment.getId(), dataStream, MAX_ATTACHMENT_SIZE));
+            }
+            File dataFile = attachment.getDataFile();
+            long size = dataFile != null ? dataFile.length() : attachment.getData().length;
+            if (size > MAX_ATTACHMENT_SIZE) {
+                AppCenterLog.error(LOG_TAG, String.format(Locale.ENGLISH,
+                        "Discarding attachment with size above %d bytes: size=%d, fileName=%s.",
+                        MAX_ATTACHMENT_SIZE, size, attachment.getFileName()));
+                return false;
+            }
+            if (dataFile != null) {
+                attachment.setDataHash(HashUtils.sha256(dataFile));
+            }
+            return true;
+        } catch (IOException e) {
+            AppCenterLog.error(LOG_TAG, "Discarding attachment that could not be read: fileName=" + attachment.getFileName(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Delete the copy of an attachment stream once the attachment is sent or discarded.
+     *
+     * @param log log.
+     */
+    private static void removeErrorAttachmentCopy(Log log) {
+        if (log instanceof ErrorAttachmentLog) {
+            File dataFile = ((ErrorAttachmentLog) log).getDataFile();
+            if (dataFile != null && ErrorLogHelper.isErrorAttachmentFile(dataFile)) {
+
+                //noinspection ResultOfMethodCallIgnored
+                dataFile.delete();
+            }
+        }
+    }
+
     @VisibleForTesting
     void setLogSerializer(LogSerializer logSerializer) {
         mLogSerializer = logSerializer;
@@ -1098,6 +1853,12 @@ public class Crashes extends AbstractAppCenterService {
      * @param throwable uncaught exception or error.
      */
     void saveUncaughtException(Thread thread, Throwable throwable) {
+
+        /* Record the heap at crash time. */
+        MemoryHistory memoryHistory = mMemoryHistory;
+        if (memoryHistory != null) {
+            memoryHistory.recordSample();
+        }
         try {
             saveUncaughtException(thread, throwable, ErrorLogHelper.getModelExceptionFromThrowable(throwable));
         } catch (JSONException e) {
@@ -1119,8 +1880,11 @@ public class Crashes extends AbstractAppCenterService {
      */
     UUID saveUncaughtException(Thread thread, Throwable throwable, Exception modelException) throws JSONException, IOException {
 
-        /* Ignore call if Crash is disabled. */
-        if (!Crashes.isEnabled().get()) {
+        /*
+         * Ignore call if Crash is disabled or not started.
+         * Read in-memory state as blocking on the background thread is not an option while crashing.
+         */
+        if (!hasHandler() || !isInstanceEnabled()) {
             return null;
         }
 
@@ -1145,7 +1909,15 @@ public class Crashes extends AbstractAppCenterService {
         String filename = errorLogId.toString();
         AppCenterLog.debug(Crashes.LOG_TAG, "Saving uncaught exception.");
         File errorLogFile = new File(errorStorageDirectory, filename + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
-        String errorLogString = mLogSerializer.serializeLog(errorLog);
+
+        /* Store thread states with a shared frame table, they are expanded back when read. */
+        ErrorLogHelper.compactThreads(errorLog);
+        String errorLogString;
+        try {
+            errorLogString = mLogSerializer.serializeLog(errorLog);
+        } finally {
+            ErrorLogHelper.expandThreads(errorLog);
+        }
         FileManager.write(errorLogFile, errorLogString);
         AppCenterLog.debug(Crashes.LOG_TAG, "Saved JSON content for ingestion into " + errorLogFile);
         File throwableFile = new File(errorStorageDirectory, filename + ErrorLogHelper.THROWABLE_FILE_EXTENSION);
@@ -1193,8 +1965,16 @@ public class Crashes extends AbstractAppCenterService {
             @Override
             public void run() {
                 Collection<ErrorReport> reports = new ArrayList<>(mUnprocessedErrorReports.size());
-                for (ErrorLogReport entry : mUnprocessedErrorReports.values()) {
-                    reports.add(entry.report);
+                Iterator<Map.Entry<UUID, ErrorLogReport>> iterator = mUnprocessedErrorReports.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<UUID, ErrorLogReport> entry = iterator.next();
+                    ErrorLogReport errorLogReport = loadUnprocessedErrorReport(entry.getKey(), entry.getValue());
+                    if (errorLogReport == null) {
+                        iterator.remove();
+                    } else {
+                        entry.setValue(errorLogReport);
+                        reports.add(errorLogReport.report);
+                    }
                 }
                 future.complete(reports);
             }
@@ -1217,7 +1997,8 @@ public class Crashes extends AbstractAppCenterService {
                 while (iterator.hasNext()) {
                     Map.Entry<UUID, ErrorLogReport> entry = iterator.next();
                     UUID id = entry.getKey();
-                    String idString = entry.getValue().report.getId();
+                    ErrorLogReport errorLogReport = entry.getValue();
+                    String idString = errorLogReport != null ? errorLogReport.report.getId() : id.toString();
                     if (filteredReportIds != null && filteredReportIds.contains(idString)) {
                         AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned true, continue processing log: " + idString);
                     } else {
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Limit how many handled errors with the same stack trace are reported within a time window.
+ * <p>
+ * Each stack fingerprint has a token bucket holding up to the limit and refilled at the limit per window.
+ * Errors over the limit are not reported but counted. The next reported error with the same
+ * fingerprint carries the number of occurrences it stands for. Occurrences that are still not
+ * reported are returned as summaries by {@link #getSummaries(long, boolean)} once a window passed
+ * since the first of them, when their fingerprint is forgotten or when the limit changes.
+ * <p>
+ * Times are expected from {@link android.os.SystemClock#elapsedRealtime()}.
+ */
+class HandledErrorAggregator {
+
+    /**
+     * Maximum number of fingerprints tracked, least recently seen ones are forgotten first.
+     */
+    @VisibleForTesting
+    static final int MAX_FINGERPRINTS = 100;
+
+    /**
+     * Maximum number of causes included in a fingerprint.
+     */
+    private static final int FINGERPRINT_CAUSE_LIMIT = 16;
+
+    /**
+     * Buckets by fingerprint, in access order.
+     */
+    private final Map<Long, Bucket> mBuckets = new LinkedHashMap<Long, Bucket>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Bucket> eldest) {
+            if (size() > MAX_FINGERPRINTS) {
+                Bucket bucket = eldest.getValue();
+                if (bucket.suppressedCount > 0) {
+                    mPendingSummaries.add(bucket.removeSummary());
+                    mSuppressingBucketCount--;
+                }
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * Summaries of forgotten fingerprints not returned yet.
+     */
+    private final List<Occurrences> mPendingSummaries = new ArrayList<>();
+
+    /**
+     * Number of buckets with occurrences not reported.
+     */
+    private int mSuppressingBucketCount;
+
+    /**
+     * Number of errors with the same fingerprint reported per window.
+     */
+    private int mLimit;
+
+    /**
+     * Window in milliseconds, 0 when there is no limit.
+     */
+    private long mWindow;
+
+    /**
+     * Change the rate limit. Existing buckets are reset.
+     *
+     * @param limit  number of errors with the same stack trace reported per window.
+     * @param window window in milliseconds, 0 to disable the limit.
+     * @return summaries of the occurrences that were not reported.
+     */
+    @NonNull
+    synchronized List<Occurrences> setRateLimit(int limit, long window) {
+        List<Occurrences> summaries = getSummaries(0, true);
+        mLimit = limit;
+        mWindow = window;
+        mBuckets.clear();
+        return summaries;
+    }
+
+    /**
+     * Account for a new occurrence of an error.
+     *
+     * @param throwable error.
+     * @param time      time of the occurrence.
+     * @return occurrences to report with this error or null if it must not be reported.
+     */
+    @Nullable
+    synchronized Occurrences onError(@NonNull Throwable throwable, long time) {
+        if (mWindow <= 0) {
+            return new Occurrences(1, time, time, null);
+        }
+        long fingerprint = getFingerprint(throwable);
+        Bucket bucket = mBuckets.get(fingerprint);
+        if (bucket == null) {
+            bucket = new Bucket(mLimit, time);
+            mBuckets.put(fingerprint, bucket);
+        } else {
+            bucket.tokens = Math.min(mLimit, bucket.tokens + (double) (time - bucket.refillTime) * mLimit / mWindow);
+            bucket.refillTime = time;
+        }
+
+        /* Over the limit: only count. */
+        if (bucket.tokens < 1) {
+            if (bucket.suppressedCount == 0) {
+                bucket.firstSuppressedTime = time;
+                mSuppressingBucketCount++;
+            }
+            bucket.suppressedCount++;
+            bucket.lastSuppressedTime = time;
+            bucket.lastSuppressedError = throwable;
+            return null;
+        }
+
+        /* Report, including the occurrences that were not reported. */
+        bucket.tokens--;
+        if (bucket.suppressedCount == 0) {
+            return new Occurrences(1, time, time, null);
+        }
+        Occurrences occurrences = bucket.removeSummary();
+        mSuppressingBucketCount--;
+        return new Occurrences(occurrences.count + 1, occurrences.firstTime, time, null);
+    }
+
+    /**
+     * Check if some occurrences are not reported yet.
+     *
+     * @return true if {@link #getSummaries(long, boolean)} can return summaries now or later.
+     */
+    synchronized boolean hasSuppressedErrors() {
+        return mSuppressingBucketCount > 0 || !mPendingSummaries.isEmpty();
+    }
+
+    /**
+     * Get when the next summary is due.
+     *
+     * @return time at which {@link #getSummaries(long, boolean)} returns at least one summary.
+     */
+    synchronized long getNextSummaryTime() {
+        if (!mPendingSummaries.isEmpty()) {
+            return 0;
+        }
+        long next = Long.MAX_VALUE;
+        for (Bucket bucket : mBuckets.values()) {
+            if (bucket.suppressedCount > 0) {
+                next = Math.min(next, bucket.firstSuppressedTime + mWindow);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Get and forget the summaries of the occurrences that were not reported.
+     *
+     * @param time current time.
+     * @param all  true to get all summaries, false to get only the ones of fingerprints with a
+     *             first occurrence not reported at least a window ago.
+     * @return summaries, each one holding the last error not reported.
+     */
+    @NonNull
+    synchronized List<Occurrences> getSummaries(long time, boolean all) {
+        List<Occurrences> summaries = new ArrayList<>(mPendingSummaries);
+        mPendingSummaries.clear();
+        if (mSuppressingBucketCount > 0) {
+            for (Bucket bucket : mBuckets.values()) {
+                if (bucket.suppressedCount > 0 && (all || time - bucket.firstSuppressedTime >= mWindow)) {
+                    summaries.add(bucket.removeSummary());
+                    mSuppressingBucketCount--;
+                }
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * Compute a fingerprint from the exception types and stack frames of an error and its causes,
+     * without converting them to the log model.
+     *
+     * @param throwable error.
+     * @return fingerprint.
+     */
+    @VisibleForTesting
+    static long getFingerprint(@NonNull Throwable throwable) {
+        long hash = 17;
+        int causes = 0;
+        for (Throwable cause = throwable; cause != null && causes < FINGERPRINT_CAUSE_LIMIT; cause = cause.getCause(), causes++) {
+            hash = 31 * hash + cause.getClass().getName().hashCode();
+            for (StackTraceElement frame : cause.getStackTrace()) {
+                hash = 31 * hash + frame.getClassName().hashCode();
+                hash = 31 * hash + frame.getMethodName().hashCode();
+                hash = 31 * hash + frame.getLineNumber();
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Occurrences of an error reported by a single log.
+     */
+    static class Occurrences {
+
+        /**
+         * Number of occurrences, including the reported one.
+         */
+        final int count;
+
+        /**
+         * Time of the first occurrence.
+         */
+        final long firstTime;
+
+        /**
+         * Time of the last occurrence.
+         */
+        final long lastTime;
+
+        /**
+         * Last error not reported for a summary, null when reported with an error.
+         */
+        final Throwable error;
+
+        /**
+         * Init.
+         *
+         * @param count     number of occurrences.
+         * @param firstTime time of the first occurrence.
+         * @param lastTime  time of the last occurrence.
+         * @param error     last error not reported for a summary.
+         */
+        Occurrences(int count, long firstTime, long lastTime, Throwable error) {
+            this.count = count;
+            this.firstTime = firstTime;
+            this.lastTime = lastTime;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Token bucket of a fingerprint.
+     */
+    private static class Bucket {
+
+        /**
+         * Available tokens.
+         */
+        double tokens;
+
+        /**
+         * Last time tokens were refilled.
+         */
+        long refillTime;
+
+        /**
+         * Number of occurrences not reported since the last reported one.
+         */
+        int suppressedCount;
+
+        /**
+         * Time of the first occurrence not reported.
+         */
+        long firstSuppressedTime;
+
+        /**
+         * Time of the last occurrence not reported.
+         */
+        long lastSuppressedTime;
+
+        /**
+         * Last error not reported.
+         */
+        Throwable lastSuppressedError;
+
+        /**
+         * Init.
+         *
+         * @param tokens     initial tokens.
+         * @param refillTime current time.
+         */
+        Bucket(double tokens, long refillTime) {
+            this.tokens = tokens;
+            this.refillTime = refillTime;
+        }
+
+        /**
+         * Get the summary of the occurrences not reported and reset them.
+         *
+         * @return summary.
+         */
+        Occurrences removeSummary() {
+            Occurrences summary = new Occurrences(suppressedCount, firstSuppressedTime, lastSuppressedTime, lastSuppressedError);
+            suppressedCount = 0;
+            lastSuppressedError = null;
+            return summary;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HandlerUtils;
+
+import static com.microsoft.appcenter.crashes.Crashes.LOG_TAG;
+
+/**
+ * Detect main thread stalls by posting a tick to the main looper at a fixed interval
+ * and checking it ran before the next check.
+ * <p>
+ * The main thread only runs a reused runnable per interval, the watchdog thread sleeps in between.
+ */
+class MainThreadWatchdog implements Runnable {
+
+    /**
+     * Name of the watchdog thread.
+     */
+    @VisibleForTesting
+    static final String THREAD_NAME = "AppCenter.MainThreadWatchdog";
+
+    /**
+     * Listener for stalls.
+     */
+    interface Listener {
+
+        /**
+         * Called on the watchdog thread once per stall, when the main thread is blocked past the threshold.
+         * The main thread is still blocked when this is called.
+         *
+         * @param duration how long the main thread has been blocked in milliseconds.
+         */
+        @WorkerThread
+        void onStall(long duration);
+    }
+
+    /**
+     * Main thread handler.
+     */
+    private final Handler mMainHandler;
+
+    /**
+     * Check interval in milliseconds.
+     */
+    private final long mInterval;
+
+    /**
+     * Blocked duration in milliseconds after which a stall is reported.
+     */
+    private final long mThreshold;
+
+    /**
+     * Stall listener.
+     */
+    private final Listener mListener;
+
+    /**
+     * Tick posted to the main thread, reused for every check.
+     */
+    private final Runnable mTick = new Runnable() {
+
+        @Override
+        public void run() {
+            mTickPending = false;
+        }
+    };
+
+    /**
+     * True while the last posted tick did not run on the main thread.
+     */
+    private volatile boolean mTickPending;
+
+    /**
+     * Uptime when the pending tick was posted.
+     */
+    private long mTickTime;
+
+    /**
+     * True if the current stall was already reported.
+     */
+    private boolean mStallReported;
+
+    /**
+     * CPU time used by the watchdog thread so far, in milliseconds.
+     */
+    private volatile long mCpuTime;
+
+    /**
+     * Watchdog thread, null when stopped.
+     */
+    private Thread mThread;
+
+    /**
+     * Init.
+     *
+     * @param interval  check interval in milliseconds.
+     * @param threshold blocked duration in milliseconds after which a stall is reported.
+     * @param listener  stall listener.
+     */
+    MainThreadWatchdog(long interval, long threshold, @NonNull Listener listener) {
+        mMainHandler = HandlerUtils.getMainHandler();
+        mInterval = interval;
+        mThreshold = threshold;
+        mListener = listener;
+    }
+
+    /**
+     * Start watching the main thread.
+     */
+    synchronized void start() {
+        if (mThread == null) {
+            mThread = new Thread(this, THREAD_NAME);
+            mThread.setDaemon(true);
+            mThread.start();
+            AppCenterLog.debug(LOG_TAG, "Main thread watchdog started with interval=" + mInterval + "ms, threshold=" + mThreshold + "ms.");
+        }
+    }
+
+    /**
+     * Stop watching the main thread.
+     */
+    synchronized void stop() {
+        if (mThread != null) {
+            mThread.interrupt();
+            mThread = null;
+            mMainHandler.removeCallbacks(mTick);
+            AppCenterLog.debug(LOG_TAG, "Main thread watchdog stopped.");
+        }
+    }
+
+    /**
+     * Get the CPU time used by the watchdog thread, to check its overhead.
+     *
+     * @return CPU time in milliseconds.
+     */
+    long getCpuTime() {
+        return mCpuTime;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                check();
+                Thread.sleep(mInterval);
+            }
+        } catch (InterruptedException ignored) {
+
+            /* Stopped. */
+        }
+    }
+
+    /**
+     * Post a new tick if the previous one ran, or report a stall if it is pending for too long.
+     */
+    @VisibleForTesting
+    void check() {
+        long now = SystemClock.uptimeMillis();
+        if (!mTickPending) {
+            mTickPending = true;
+            mTickTime = now;
+            mStallReported = false;
+            mMainHandler.post(mTick);
+        } else {
+            long duration = now - mTickTime;
+            if (duration >= mThreshold && !mStallReported) {
+                mStallReported = true;
+                AppCenterLog.warn(LOG_TAG, "Main thread blocked for " + duration + "ms.");
+                mListener.onStall(duration);
+            }
+        }
+        mCpuTime = SystemClock.currentThreadTimeMillis();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes;
+
+import android.os.Debug;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.crashes.utils.MappedRingBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Recent memory usage of the process: periodic heap samples and trim memory events.
+ * <p>
+ * Records are kept in a memory-mapped ring buffer so that the history of a crashed process
+ * can be attached to its report by the next process.
+ */
+class MemoryHistory {
+
+    /**
+     * Maximum number of records.
+     */
+    @VisibleForTesting
+    static final int CAPACITY = 64;
+
+    /**
+     * Event of a periodic sample, other events are trim memory levels.
+     */
+    @VisibleForTesting
+    static final int EVENT_SAMPLE = -1;
+
+    /**
+     * Record: time, event, Java heap used, Java heap max and native heap allocated.
+     */
+    static final int RECORD_SIZE = 8 + 4 + 8 + 8 + 8;
+
+    /**
+     * Header of the CSV export.
+     */
+    @VisibleForTesting
+    static final String CSV_HEADER = "timestamp,event,javaHeapUsed,javaHeapMax,nativeHeapAllocated\n";
+
+    /**
+     * Records.
+     */
+    private final MappedRingBuffer mBuffer;
+
+    /**
+     * Init.
+     *
+     * @param buffer ring buffer of {@link #RECORD_SIZE} records, possibly holding the records of the previous process.
+     */
+    MemoryHistory(@NonNull MappedRingBuffer buffer) {
+        mBuffer = buffer;
+    }
+
+    /**
+     * Record a periodic heap sample.
+     */
+    void recordSample() {
+        record(EVENT_SAMPLE);
+    }
+
+    /**
+     * Record a trim memory event along with a heap sample.
+     *
+     * @param level trim memory level.
+     */
+    void recordTrim(int level) {
+        record(level);
+    }
+
+    private void record(int event) {
+        Runtime runtime = Runtime.getRuntime();
+        long javaHeapMax = runtime.maxMemory();
+        long javaHeapUsed = runtime.totalMemory() - runtime.freeMemory();
+        long nativeHeapAllocated = Debug.getNativeHeapAllocatedSize();
+        synchronized (mBuffer) {
+            ByteBuffer record = mBuffer.next();
+            record.putLong(System.currentTimeMillis());
+            record.putInt(event);
+            record.putLong(javaHeapUsed);
+            record.putLong(javaHeapMax);
+            record.putLong(nativeHeapAllocated);
+            mBuffer.commit();
+        }
+    }
+
+    /**
+     * Get the time of the oldest record.
+     *
+     * @return time in milliseconds or null if there is no record.
+     */
+    @Nullable
+    Long getStartTime() {
+        List<ByteBuffer> records = mBuffer.getRecords();
+        return records.isEmpty() ? null : records.get(0).getLong(0);
+    }
+
+    /**
+     * Export records as CSV, oldest first. Events are "sample" or a trim memory level.
+     *
+     * @return CSV text or null if there is no record.
+     */
+    @Nullable
+    String toCsv() {
+        List<ByteBuffer> records = mBuffer.getRecords();
+        if (records.isEmpty()) {
+            return null;
+        }
+        StringBuilder csv = new StringBuilder(CSV_HEADER);
+        for (ByteBuffer record : records) {
+            csv.append(record.getLong()).append(',');
+            int event = record.getInt();
+            csv.append(event == EVENT_SAMPLE ? "sample" : String.valueOf(event)).append(',');
+            csv.append(record.getLong()).append(',');
+            csv.append(record.getLong()).append(',');
+            csv.append(record.getLong()).append('\n');
+        }
+        return csv.toString();
+    }
+
+    /**
+     * Remove all records.
+     */
+    void clear() {
+        mBuffer.clear();
+    }
+}
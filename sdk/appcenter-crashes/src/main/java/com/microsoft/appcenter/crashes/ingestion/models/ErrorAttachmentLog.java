@@ -10,11 +10,15 @@ import android.util.Base64;
 
 import com.microsoft.appcenter.ingestion.models.AbstractLog;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
+import com.microsoft.appcenter.utils.HashUtils;
+import com.microsoft.appcenter.utils.storage.FileManager;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.File;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.UUID;
@@ -46,6 +50,18 @@ public class ErrorAttachmentLog extends AbstractLog {
     @VisibleForTesting
     static final String DATA = "data";
 
+    /**
+     * Stored instead of data until the attachment is read to be sent, never sent.
+     */
+    @VisibleForTesting
+    static final String DATA_FILE = "dataFile";
+
+    /**
+     * Stored with the data file to detect changes, never sent.
+     */
+    @VisibleForTesting
+    static final String DATA_HASH = "dataHash";
+
     /**
      * Error attachment identifier.
      */
@@ -71,6 +87,21 @@ public class ErrorAttachmentLog extends AbstractLog {
      */
     private byte[] data;
 
+    /**
+     * File to send instead of data, loaded only when the log is read from storage to be sent.
+     */
+    private File dataFile;
+
+    /**
+     * Hash of the data file content.
+     */
+    private String dataHash;
+
+    /**
+     * Stream to send instead of data, saved to a data file before the log is stored.
+     */
+    private InputStream dataStream;
+
     /**
      * Build an error attachment log with text suitable for using in {link CrashesListener#getErrorAttachments(ErrorReport)}.
      *
@@ -98,6 +129,40 @@ public class ErrorAttachmentLog extends AbstractLog {
         return attachmentLog;
     }
 
+    /**
+     * Build an error attachment log with a file suitable for using in {link CrashesListener#getErrorAttachments(ErrorReport)}.
+     * Only a reference to the file is stored: it is loaded in memory and encoded as base64 while the attachment is sent,
+     * as request bodies are built as strings, and must not be modified or deleted before that.
+     *
+     * @param file        file to attach.
+     * @param contentType file MIME type.
+     * @return ErrorAttachmentLog built attachment.
+     */
+    public static ErrorAttachmentLog attachmentWithFile(File file, String contentType) {
+        ErrorAttachmentLog attachmentLog = new ErrorAttachmentLog();
+        attachmentLog.setDataFile(file);
+        attachmentLog.setFileName(file.getName());
+        attachmentLog.setContentType(contentType);
+        return attachmentLog;
+    }
+
+    /**
+     * Build an error attachment log with a stream suitable for using in {link CrashesListener#getErrorAttachments(ErrorReport)}.
+     * The stream is copied to a file, without being loaded in memory, and closed when the attachment is processed.
+     *
+     * @param stream      stream to attach.
+     * @param fileName    file name to use in error attachment log.
+     * @param contentType stream MIME type.
+     * @return ErrorAttachmentLog built attachment.
+     */
+    public static ErrorAttachmentLog attachmentWithStream(InputStream stream, String fileName, String contentType) {
+        ErrorAttachmentLog attachmentLog = new ErrorAttachmentLog();
+        attachmentLog.setDataStream(stream);
+        attachmentLog.setFileName(fileName);
+        attachmentLog.setContentType(contentType);
+        return attachmentLog;
+    }
+
     @Override
     public String getType() {
         return TYPE;
@@ -195,13 +260,67 @@ public class ErrorAttachmentLog extends AbstractLog {
         this.data = data;
     }
 
+    /**
+     * Get the dataFile value.
+     *
+     * @return the dataFile value
+     */
+    public File getDataFile() {
+        return this.dataFile;
+    }
+
+    /**
+     * Set the dataFile value.
+     *
+     * @param dataFile the dataFile value to set
+     */
+    public void setDataFile(File dataFile) {
+        this.dataFile = dataFile;
+    }
+
+    /**
+     * Get the dataHash value.
+     *
+     * @return the dataHash value
+     */
+    public String getDataHash() {
+        return this.dataHash;
+    }
+
+    /**
+     * Set the dataHash value.
+     *
+     * @param dataHash the dataHash value to set
+     */
+    public void setDataHash(String dataHash) {
+        this.dataHash = dataHash;
+    }
+
+    /**
+     * Get the dataStream value.
+     *
+     * @return the dataStream value
+     */
+    public InputStream getDataStream() {
+        return this.dataStream;
+    }
+
+    /**
+     * Set the dataStream value.
+     *
+     * @param dataStream the dataStream value to set
+     */
+    public void setDataStream(InputStream dataStream) {
+        this.dataStream = dataStream;
+    }
+
     /**
      * Checks if the log's values are valid.
      *
      * @return true if validation succeeded, otherwise false.
      */
     public boolean isValid() {
-        return getId() != null && getErrorId() != null && getContentType() != null && getData() != null;
+        return getId() != null && getErrorId() != null && getContentType() != null && (getData() != null || getDataFile() != null || getDataStream() != null);
     }
 
     @SuppressWarnings("ConstantConditions")
@@ -212,6 +331,20 @@ public class ErrorAttachmentLog extends AbstractLog {
         setErrorId(UUID.fromString(object.getString(ERROR_ID)));
         setContentType(object.getString(CONTENT_TYPE));
         setFileName(object.optString(FILE_NAME, null));
+        if (object.has(DATA_FILE)) {
+            File dataFile = new File(object.getString(DATA_FILE));
+            String dataHash = object.getString(DATA_HASH);
+            setDataFile(dataFile);
+            setDataHash(dataHash);
+
+            /* Failing here discards only this attachment. */
+            byte[] data = FileManager.readBytes(dataFile);
+            if (data == null || !HashUtils.sha256(data).equals(dataHash)) {
+                throw new JSONException("Attachment file cannot be read or changed since it was attached: " + dataFile);
+            }
+            setData(data);
+            return;
+        }
         try {
             setData(Base64.decode(object.getString(DATA), Base64.DEFAULT));
         } catch (IllegalArgumentException e) {
@@ -226,7 +359,14 @@ public class ErrorAttachmentLog extends AbstractLog {
         JSONUtils.write(writer, ERROR_ID, getErrorId());
         JSONUtils.write(writer, CONTENT_TYPE, getContentType());
         JSONUtils.write(writer, FILE_NAME, getFileName());
-        JSONUtils.write(writer, DATA, Base64.encodeToString(getData(), Base64.NO_WRAP));
+        if (getData() == null && getDataFile() != null) {
+
+            /* Store only the file reference, the file is loaded when reading the log to send it. */
+            JSONUtils.write(writer, DATA_FILE, getDataFile().getAbsolutePath());
+            JSONUtils.write(writer, DATA_HASH, getDataHash());
+        } else {
+            JSONUtils.write(writer, DATA, Base64.encodeToString(getData(), Base64.NO_WRAP));
+        }
     }
 
     @SuppressWarnings({"SimplifiableIfStatement", "EqualsReplaceableByObjectsCall"})
@@ -254,7 +394,13 @@ public class ErrorAttachmentLog extends AbstractLog {
         if (fileName != null ? !fileName.equals(that.fileName) : that.fileName != null) {
             return false;
         }
-        return Arrays.equals(data, that.data);
+        if (!Arrays.equals(data, that.data)) {
+            return false;
+        }
+        if (dataFile != null ? !dataFile.equals(that.dataFile) : that.dataFile != null) {
+            return false;
+        }
+        return dataHash != null ? dataHash.equals(that.dataHash) : that.dataHash == null;
 
     }
 
@@ -266,6 +412,8 @@ public class ErrorAttachmentLog extends AbstractLog {
         result = 31 * result + (contentType != null ? contentType.hashCode() : 0);
         result = 31 * result + (fileName != null ? fileName.hashCode() : 0);
         result = 31 * result + Arrays.hashCode(data);
+        result = 31 * result + (dataFile != null ? dataFile.hashCode() : 0);
+        result = 31 * result + (dataHash != null ? dataHash.hashCode() : 0);
         return result;
     }
 }
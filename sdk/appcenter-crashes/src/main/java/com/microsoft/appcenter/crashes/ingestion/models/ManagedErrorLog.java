@@ -5,6 +5,7 @@
 
 package com.microsoft.appcenter.crashes.ingestion.models;
 
+import com.microsoft.appcenter.crashes.ingestion.models.json.StackFrameFactory;
 import com.microsoft.appcenter.crashes.ingestion.models.json.ThreadFactory;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
@@ -28,6 +29,8 @@ public class ManagedErrorLog extends AbstractErrorLog {
 
     private static final String THREADS = "threads";
 
+    private static final String FRAME_TABLE = "frameTable";
+
     /**
      * Exception.
      */
@@ -38,6 +41,11 @@ public class ManagedErrorLog extends AbstractErrorLog {
      */
     private List<Thread> threads;
 
+    /**
+     * Distinct stack frames referenced by thread frame indexes, only used in compact storage.
+     */
+    private List<StackFrame> frameTable;
+
     @Override
     public String getType() {
         return TYPE;
@@ -79,6 +87,24 @@ public class ManagedErrorLog extends AbstractErrorLog {
         this.threads = threads;
     }
 
+    /**
+     * Get the frameTable value.
+     *
+     * @return the frameTable value
+     */
+    public List<StackFrame> getFrameTable() {
+        return this.frameTable;
+    }
+
+    /**
+     * Set the frameTable value.
+     *
+     * @param frameTable the frameTable value to set
+     */
+    public void setFrameTable(List<StackFrame> frameTable) {
+        this.frameTable = frameTable;
+    }
+
     @Override
     public void read(JSONObject object) throws JSONException {
         super.read(object);
@@ -89,6 +115,7 @@ public class ManagedErrorLog extends AbstractErrorLog {
             setException(exception);
         }
         setThreads(JSONUtils.readArray(object, THREADS, ThreadFactory.getInstance()));
+        setFrameTable(JSONUtils.readArray(object, FRAME_TABLE, StackFrameFactory.getInstance()));
     }
 
     @Override
@@ -100,6 +127,7 @@ public class ManagedErrorLog extends AbstractErrorLog {
             writer.endObject();
         }
         JSONUtils.writeArray(writer, THREADS, getThreads());
+        JSONUtils.writeArray(writer, FRAME_TABLE, getFrameTable());
     }
 
     @Override
@@ -118,7 +146,10 @@ public class ManagedErrorLog extends AbstractErrorLog {
         if (exception != null ? !exception.equals(that.exception) : that.exception != null) {
             return false;
         }
-        return threads != null ? threads.equals(that.threads) : that.threads == null;
+        if (threads != null ? !threads.equals(that.threads) : that.threads != null) {
+            return false;
+        }
+        return frameTable != null ? frameTable.equals(that.frameTable) : that.frameTable == null;
     }
 
     @Override
@@ -126,6 +157,7 @@ public class ManagedErrorLog extends AbstractErrorLog {
         int result = super.hashCode();
         result = 31 * result + (exception != null ? exception.hashCode() : 0);
         result = 31 * result + (threads != null ? threads.hashCode() : 0);
+        result = 31 * result + (frameTable != null ? frameTable.hashCode() : 0);
         return result;
     }
 }
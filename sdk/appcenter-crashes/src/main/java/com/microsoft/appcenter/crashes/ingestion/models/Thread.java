@@ -9,10 +9,12 @@ import com.microsoft.appcenter.crashes.ingestion.models.json.StackFrameFactory;
 import com.microsoft.appcenter.ingestion.models.Model;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.FRAMES;
@@ -24,6 +26,8 @@ import static com.microsoft.appcenter.ingestion.models.CommonProperties.NAME;
  */
 public class Thread implements Model {
 
+    private static final String FRAME_INDEXES = "frameIndexes";
+
     /**
      * Thread identifier.
      */
@@ -39,6 +43,11 @@ public class Thread implements Model {
      */
     private List<StackFrame> frames;
 
+    /**
+     * Stack frames as indexes in the frame table of the error log, used instead of frames in compact storage.
+     */
+    private List<Integer> frameIndexes;
+
     /**
      * Get the id value.
      *
@@ -93,11 +102,37 @@ public class Thread implements Model {
         this.frames = frames;
     }
 
+    /**
+     * Get the frameIndexes value.
+     *
+     * @return the frameIndexes value
+     */
+    public List<Integer> getFrameIndexes() {
+        return this.frameIndexes;
+    }
+
+    /**
+     * Set the frameIndexes value.
+     *
+     * @param frameIndexes the frameIndexes value to set
+     */
+    public void setFrameIndexes(List<Integer> frameIndexes) {
+        this.frameIndexes = frameIndexes;
+    }
+
     @Override
     public void read(JSONObject object) throws JSONException {
         setId(object.getLong(ID));
         setName(object.optString(NAME, null));
         setFrames(JSONUtils.readArray(object, FRAMES, StackFrameFactory.getInstance()));
+        JSONArray jFrameIndexes = object.optJSONArray(FRAME_INDEXES);
+        if (jFrameIndexes != null) {
+            List<Integer> frameIndexes = new ArrayList<>(jFrameIndexes.length());
+            for (int i = 0; i < jFrameIndexes.length(); i++) {
+                frameIndexes.add(jFrameIndexes.getInt(i));
+            }
+            setFrameIndexes(frameIndexes);
+        }
     }
 
     @Override
@@ -105,6 +140,13 @@ public class Thread implements Model {
         JSONUtils.write(writer, ID, getId());
         JSONUtils.write(writer, NAME, getName());
         JSONUtils.writeArray(writer, FRAMES, getFrames());
+        if (getFrameIndexes() != null) {
+            writer.key(FRAME_INDEXES).array();
+            for (Integer frameIndex : getFrameIndexes()) {
+                writer.value(frameIndex);
+            }
+            writer.endArray();
+        }
     }
 
     @Override
@@ -123,7 +165,10 @@ public class Thread implements Model {
         if (name != null ? !name.equals(that.name) : that.name != null) {
             return false;
         }
-        return frames != null ? frames.equals(that.frames) : that.frames == null;
+        if (frames != null ? !frames.equals(that.frames) : that.frames != null) {
+            return false;
+        }
+        return frameIndexes != null ? frameIndexes.equals(that.frameIndexes) : that.frameIndexes == null;
     }
 
     @Override
@@ -131,6 +176,7 @@ public class Thread implements Model {
         int result = (int) (id ^ (id >>> 32));
         result = 31 * result + (name != null ? name.hashCode() : 0);
         result = 31 * result + (frames != null ? frames.hashCode() : 0);
+        result = 31 * result + (frameIndexes != null ? frameIndexes.hashCode() : 0);
         return result;
     }
 }
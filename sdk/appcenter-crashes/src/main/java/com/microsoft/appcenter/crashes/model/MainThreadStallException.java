@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes.model;
+
+import java.util.Locale;
+
+/**
+ * Error reported when the main thread is blocked, its stack trace is the main thread one.
+ */
+public class MainThreadStallException extends RuntimeException {
+
+    private static final String STALL_MESSAGE = "Main thread blocked for at least %d ms";
+
+    /**
+     * How long the main thread was blocked in milliseconds.
+     */
+    private final long mDuration;
+
+    public MainThreadStallException(long duration) {
+        super(String.format(Locale.ENGLISH, STALL_MESSAGE, duration));
+        mDuration = duration;
+    }
+
+    /**
+     * Get how long the main thread was blocked when the stall was reported.
+     *
+     * @return duration in milliseconds.
+     */
+    public long getDuration() {
+        return mDuration;
+    }
+}
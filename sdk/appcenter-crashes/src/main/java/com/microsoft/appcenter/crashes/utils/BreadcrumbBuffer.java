@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latest breadcrumbs stored in a memory-mapped file so that they survive a crash.
+ * <p>
+ * Adding a breadcrumb is lock-free and does not allocate: a slot is reserved with an atomic counter
+ * and written with absolute puts. Each slot holds its sequence number, written last,
+ * so that readers can order breadcrumbs and skip slots that were being written.
+ */
+public class BreadcrumbBuffer {
+
+    /**
+     * Identifies the file format.
+     */
+    private static final int MAGIC = 0x41434243;
+
+    /**
+     * Header: magic, capacity and maximum message length.
+     */
+    @VisibleForTesting
+    static final int HEADER_SIZE = 3 * 4;
+
+    /**
+     * Slot: sequence number, time and message length, followed by message characters.
+     */
+    private static final int SLOT_HEADER_SIZE = 8 + 8 + 2;
+
+    /**
+     * Maximum number of breadcrumbs, the oldest ones are overwritten first.
+     */
+    private final int mCapacity;
+
+    /**
+     * Maximum message length, longer messages are truncated.
+     */
+    private final int mMaxLength;
+
+    /**
+     * Size of a slot in bytes.
+     */
+    private final int mSlotSize;
+
+    /**
+     * Mapped file content.
+     */
+    private final ByteBuffer mBuffer;
+
+    /**
+     * Sequence number of the last breadcrumb.
+     */
+    private final AtomicLong mSequence = new AtomicLong();
+
+    /**
+     * Open a breadcrumb buffer, keeping the breadcrumbs of a previous process readable if the file has the same layout.
+     * They must be read then cleared with {@link #clear()} before adding breadcrumbs.
+     *
+     * @param file      file to map, created if missing.
+     * @param capacity  maximum number of breadcrumbs.
+     * @param maxLength maximum message length in characters.
+     * @throws IOException if the file cannot be mapped.
+     */
+    public BreadcrumbBuffer(@NonNull File file, int capacity, int maxLength) throws IOException {
+        mCapacity = capacity;
+        mMaxLength = maxLength;
+        mSlotSize = SLOT_HEADER_SIZE + 2 * maxLength;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+
+        /* The mapping stays valid after closing the file. */
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            long size = HEADER_SIZE + (long) mSlotSize * capacity;
+            mBuffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            randomAccessFile.close();
+        }
+        if (mBuffer.getInt(0) != MAGIC || mBuffer.getInt(4) != capacity || mBuffer.getInt(8) != maxLength) {
+            mBuffer.putInt(4, capacity);
+            mBuffer.putInt(8, maxLength);
+            clear();
+            mBuffer.putInt(0, MAGIC);
+        }
+    }
+
+    /**
+     * Add a breadcrumb, overwriting the oldest one if full.
+     *
+     * @param time    time in milliseconds.
+     * @param message message, truncated to the maximum length.
+     */
+    public void add(long time, @NonNull String message) {
+        long sequence = mSequence.incrementAndGet();
+        int offset = getOffset((int) ((sequence - 1) % mCapacity));
+
+        /* Invalidate the slot while writing it. */
+        mBuffer.putLong(offset, 0);
+        mBuffer.putLong(offset + 8, time);
+        int length = Math.min(message.length(), mMaxLength);
+        mBuffer.putShort(offset + 16, (short) length);
+        int charOffset = offset + SLOT_HEADER_SIZE;
+        for (int i = 0; i < length; i++) {
+            mBuffer.putChar(charOffset + 2 * i, message.charAt(i));
+        }
+        mBuffer.putLong(offset, sequence);
+    }
+
+    /**
+     * Get the time of the oldest breadcrumb.
+     *
+     * @return time in milliseconds or null if there is no breadcrumb.
+     */
+    @Nullable
+    public Long getStartTime() {
+        Map<Long, Integer> slots = getSlots();
+        return slots.isEmpty() ? null : mBuffer.getLong(slots.values().iterator().next() + 8);
+    }
+
+    /**
+     * Export breadcrumbs as text, oldest first, one breadcrumb per line prefixed by its time in milliseconds.
+     *
+     * @return text or null if there is no breadcrumb.
+     */
+    @Nullable
+    public String toText() {
+        Map<Long, Integer> slots = getSlots();
+        if (slots.isEmpty()) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder();
+        for (int offset : slots.values()) {
+            text.append(mBuffer.getLong(offset + 8)).append(' ');
+            int length = Math.min(mBuffer.getShort(offset + 16), mMaxLength);
+            int charOffset = offset + SLOT_HEADER_SIZE;
+            for (int i = 0; i < length; i++) {
+
+                /* Keep one breadcrumb per line. */
+                char c = mBuffer.getChar(charOffset + 2 * i);
+                text.append(c == '\n' || c == '\r' ? ' ' : c);
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Remove all breadcrumbs. This must not be called while adding breadcrumbs.
+     */
+    public void clear() {
+        for (int i = 0; i < mCapacity; i++) {
+            mBuffer.putLong(getOffset(i), 0);
+        }
+        mSequence.set(0);
+    }
+
+    /**
+     * Get the offsets of written slots by sequence number.
+     */
+    private Map<Long, Integer> getSlots() {
+        Map<Long, Integer> slots = new TreeMap<>();
+        for (int i = 0; i < mCapacity; i++) {
+            int offset = getOffset(i);
+            long sequence = mBuffer.getLong(offset);
+            if (sequence > 0) {
+                slots.put(sequence, offset);
+            }
+        }
+        return slots;
+    }
+
+    private int getOffset(int slot) {
+        return HEADER_SIZE + slot * mSlotSize;
+    }
+}
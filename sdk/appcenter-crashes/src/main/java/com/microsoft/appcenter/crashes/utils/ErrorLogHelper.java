@@ -13,6 +13,7 @@ import android.os.Process;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
 
 import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.crashes.Crashes;
@@ -22,6 +23,7 @@ import com.microsoft.appcenter.crashes.ingestion.models.StackFrame;
 import com.microsoft.appcenter.crashes.ingestion.models.Thread;
 import com.microsoft.appcenter.crashes.model.ErrorReport;
 import com.microsoft.appcenter.ingestion.models.Device;
+import com.microsoft.appcenter.ingestion.models.WrapperSdk;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.context.UserIdContext;
@@ -32,15 +34,22 @@ import org.json.JSONObject;
 import org.json.JSONStringer;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TimeZone;
 import java.util.UUID;
 
 import static com.microsoft.appcenter.Constants.WRAPPER_SDK_NAME_NDK;
@@ -80,6 +89,48 @@ public class ErrorLogHelper {
      */
     private static final String PENDING_MINIDUMP_DIRECTORY = "pending";
 
+    /**
+     * For copies of error attachment streams.
+     */
+    private static final String ATTACHMENTS_DIRECTORY = "attachments";
+
+    /**
+     * For the memory history of the current process and the ones of crashed processes.
+     */
+    private static final String MEMORY_DIRECTORY = "memory";
+
+    /**
+     * Memory history of the current process.
+     */
+    private static final String MEMORY_HISTORY_FILE = "history";
+
+    /**
+     * Memory history file extension of a crashed process.
+     */
+    @VisibleForTesting
+    static final String MEMORY_HISTORY_FILE_EXTENSION = ".csv";
+
+    /**
+     * For the breadcrumbs of the current process and the ones of crashed processes.
+     */
+    private static final String BREADCRUMBS_DIRECTORY = "breadcrumbs";
+
+    /**
+     * Breadcrumbs of the current process.
+     */
+    private static final String BREADCRUMBS_FILE = "breadcrumbs";
+
+    /**
+     * Breadcrumbs file extension of a crashed process.
+     */
+    @VisibleForTesting
+    static final String BREADCRUMBS_FILE_EXTENSION = ".txt";
+
+    /**
+     * Buffer size when copying error attachment streams.
+     */
+    private static final int ATTACHMENT_BUFFER_SIZE = 8192;
+
     /**
      * For huge stack traces such as giant StackOverflowError, we keep only beginning and end of frames according to this limit.
      */
@@ -102,6 +153,18 @@ public class ErrorLogHelper {
      */
     private static final int CAUSE_LIMIT_HALF = CAUSE_LIMIT / 2;
 
+    /**
+     * Maximum number of stack frames shared between handled error models.
+     */
+    @VisibleForTesting
+    static final int SHARED_STACK_FRAME_CACHE_SIZE = 1024;
+
+    /**
+     * Maximum number of handled error models shared between errors with the same structure.
+     */
+    @VisibleForTesting
+    static final int SHARED_EXCEPTION_CACHE_SIZE = 32;
+
     /**
      * Error log directory within application files.
      */
@@ -128,6 +191,28 @@ public class ErrorLogHelper {
      */
     public static final String MINIDUMP_FILE_EXTENSION = ".dmp";
 
+    /**
+     * Maximum time spent converting the stack traces of the other threads when a crash occurs.
+     * The thread in error is always included.
+     */
+    @VisibleForTesting
+    static final long THREADS_TIME_BUDGET = 1000;
+
+    /**
+     * Device properties prepared ahead of a crash, null if not prepared.
+     */
+    private static volatile Device sDevice;
+
+    /**
+     * Wrapper SDK information used to prepare {@link #sDevice}.
+     */
+    private static volatile WrapperSdk sDeviceWrapperSdk;
+
+    /**
+     * Process name prepared ahead of a crash, null if not prepared.
+     */
+    private static volatile String sProcessName;
+
     /**
      * Directory for new minidump files.
      */
@@ -138,6 +223,29 @@ public class ErrorLogHelper {
      */
     private static File sPendingMinidumpDirectory;
 
+    /**
+     * Stack frames shared between handled error models, least recently used ones are evicted first.
+     * Guarded by {@link #sSharedExceptionCache}.
+     */
+    private static final Map<StackTraceElement, StackFrame> sSharedStackFrameCache = new LinkedHashMap<StackTraceElement, StackFrame>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<StackTraceElement, StackFrame> eldest) {
+            return size() > SHARED_STACK_FRAME_CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Handled error models by structure hash, least recently used ones are evicted first.
+     */
+    private static final Map<Long, Exception> sSharedExceptionCache = new LinkedHashMap<Long, Exception>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Exception> eldest) {
+            return size() > SHARED_EXCEPTION_CACHE_SIZE;
+        }
+    };
+
     @NonNull
     public static ManagedErrorLog createErrorLog(@NonNull Context context, @NonNull final java.lang.Thread thread, @NonNull final Throwable throwable, @NonNull final Map<java.lang.Thread, StackTraceElement[]> allStackTraces, final long initializeTimestamp) {
         return createErrorLog(context, thread, getModelExceptionFromThrowable(throwable), allStackTraces, initializeTimestamp, true);
@@ -156,34 +264,27 @@ public class ErrorLogHelper {
         /* Set user identifier. */
         errorLog.setUserId(UserIdContext.getInstance().getUserId());
 
-        /* Snapshot device properties. */
-        try {
-            errorLog.setDevice(DeviceInfoHelper.getDeviceInfo(context));
-        } catch (DeviceInfoHelper.DeviceInfoException e) {
-            AppCenterLog.error(Crashes.LOG_TAG, "Could not attach device properties snapshot to error log, will attach at sending time", e);
+        /* Snapshot device properties, using the prepared ones if any to avoid IPC while crashing. */
+        Device device = sDevice;
+        if (device != null && !isPreparedDeviceCurrent(device)) {
+            device = null;
         }
-
-        /* Process information. Parent one is not available on Android. */
-        errorLog.setProcessId(Process.myPid());
-        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
-        if (activityManager != null) {
-            List<ActivityManager.RunningAppProcessInfo> runningAppProcesses = activityManager.getRunningAppProcesses();
-            if (runningAppProcesses != null) {
-                for (ActivityManager.RunningAppProcessInfo info : runningAppProcesses) {
-                    if (info.pid == Process.myPid()) {
-                        errorLog.setProcessName(info.processName);
-                    }
-                }
+        if (device == null) {
+            try {
+                device = DeviceInfoHelper.getDeviceInfo(context);
+            } catch (DeviceInfoHelper.DeviceInfoException e) {
+                AppCenterLog.error(Crashes.LOG_TAG, "Could not attach device properties snapshot to error log, will attach at sending time", e);
             }
         }
+        errorLog.setDevice(device);
 
-        /*
-         * Process name is required field for crash processing but cannot always be available,
-         * make sure we send a default value if not found.
-         */
-        if (errorLog.getProcessName() == null) {
-            errorLog.setProcessName("");
+        /* Process information. Parent one is not available on Android. */
+        errorLog.setProcessId(Process.myPid());
+        String processName = sProcessName;
+        if (processName == null) {
+            processName = getProcessName(context);
         }
+        errorLog.setProcessName(processName);
 
         /* CPU architecture. */
         errorLog.setArchitecture(getArchitecture());
@@ -201,19 +302,194 @@ public class ErrorLogHelper {
         /* Attach exceptions. */
         errorLog.setException(exception);
 
-        /* Attach thread states. */
+        /*
+         * Attach thread states, starting with the thread in error.
+         * Stop converting the other threads if it takes too long, the process may be killed anytime.
+         */
         List<Thread> threads = new ArrayList<>(allStackTraces.size());
+        Map<StackTraceElement, StackFrame> frameCache = new HashMap<>();
+        StackTraceElement[] errorThreadStackTrace = allStackTraces.get(thread);
+        if (errorThreadStackTrace != null) {
+            threads.add(getModelThread(thread, errorThreadStackTrace, frameCache));
+        }
+        long deadline = System.currentTimeMillis() + THREADS_TIME_BUDGET;
         for (Map.Entry<java.lang.Thread, StackTraceElement[]> entry : allStackTraces.entrySet()) {
-            Thread javaThread = new Thread();
-            javaThread.setId(entry.getKey().getId());
-            javaThread.setName(entry.getKey().getName());
-            javaThread.setFrames(getModelFramesFromStackTrace(entry.getValue()));
-            threads.add(javaThread);
+            if (entry.getKey() == thread) {
+                continue;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                AppCenterLog.warn(Crashes.LOG_TAG, "Skipping remaining thread states after " + threads.size() + " threads.");
+                break;
+            }
+            threads.add(getModelThread(entry.getKey(), entry.getValue(), frameCache));
         }
         errorLog.setThreads(threads);
         return errorLog;
     }
 
+    /**
+     * Convert a thread state to the model, sharing frames that were already converted for other threads.
+     *
+     * @param thread     thread.
+     * @param stackTrace thread stack trace.
+     * @param frameCache frames converted so far in this error log.
+     * @return thread model.
+     */
+    @NonNull
+    private static Thread getModelThread(@NonNull java.lang.Thread thread, @NonNull StackTraceElement[] stackTrace, @NonNull Map<StackTraceElement, StackFrame> frameCache) {
+        Thread javaThread = new Thread();
+        javaThread.setId(thread.getId());
+        javaThread.setName(thread.getName());
+        List<StackFrame> stackFrames = new ArrayList<>(stackTrace.length);
+        for (StackTraceElement stackTraceElement : stackTrace) {
+            StackFrame stackFrame = frameCache.get(stackTraceElement);
+            if (stackFrame == null) {
+                stackFrame = getModelStackFrame(stackTraceElement);
+                frameCache.put(stackTraceElement, stackFrame);
+            }
+            stackFrames.add(stackFrame);
+        }
+        javaThread.setFrames(stackFrames);
+        return javaThread;
+    }
+
+    /**
+     * Switch the thread states of an error log to the compact storage representation:
+     * each distinct frame is stored once in the frame table and threads only list frame indexes.
+     *
+     * @param errorLog error log.
+     */
+    public static void compactThreads(@NonNull ManagedErrorLog errorLog) {
+        List<Thread> threads = errorLog.getThreads();
+        if (threads == null || errorLog.getFrameTable() != null) {
+            return;
+        }
+        List<StackFrame> frameTable = new ArrayList<>();
+        Map<StackFrame, Integer> frameIndexes = new HashMap<>();
+        for (Thread thread : threads) {
+            List<StackFrame> frames = thread.getFrames();
+            if (frames == null) {
+                continue;
+            }
+            List<Integer> indexes = new ArrayList<>(frames.size());
+            for (StackFrame frame : frames) {
+                Integer index = frameIndexes.get(frame);
+                if (index == null) {
+                    index = frameTable.size();
+                    frameTable.add(frame);
+                    frameIndexes.put(frame, index);
+                }
+                indexes.add(index);
+            }
+            thread.setFrameIndexes(indexes);
+            thread.setFrames(null);
+        }
+        errorLog.setFrameTable(frameTable);
+    }
+
+    /**
+     * Switch the thread states of an error log from the compact storage representation back to
+     * the regular one, which is the only one sent to the backend.
+     *
+     * @param errorLog error log.
+     * @throws JSONException if a frame index is not in the frame table.
+     */
+    public static void expandThreads(@NonNull ManagedErrorLog errorLog) throws JSONException {
+        List<StackFrame> frameTable = errorLog.getFrameTable();
+        if (frameTable == null) {
+            return;
+        }
+        List<Thread> threads = errorLog.getThreads();
+        if (threads != null) {
+            for (Thread thread : threads) {
+                List<Integer> indexes = thread.getFrameIndexes();
+                if (indexes == null) {
+                    continue;
+                }
+                List<StackFrame> frames = new ArrayList<>(indexes.size());
+                for (Integer index : indexes) {
+                    if (index == null || index < 0 || index >= frameTable.size()) {
+                        throw new JSONException("Invalid frame index: " + index);
+                    }
+                    frames.add(frameTable.get(index));
+                }
+                thread.setFrames(frames);
+                thread.setFrameIndexes(null);
+            }
+        }
+        errorLog.setFrameTable(null);
+    }
+
+    /**
+     * Get the name of the current process.
+     *
+     * @param context context.
+     * @return process name, empty if not found.
+     */
+    @NonNull
+    private static String getProcessName(@NonNull Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager != null) {
+            List<ActivityManager.RunningAppProcessInfo> runningAppProcesses = activityManager.getRunningAppProcesses();
+            if (runningAppProcesses != null) {
+                for (ActivityManager.RunningAppProcessInfo info : runningAppProcesses) {
+                    if (info.pid == Process.myPid() && info.processName != null) {
+                        return info.processName;
+                    }
+                }
+            }
+        }
+
+        /*
+         * Process name is required field for crash processing but cannot always be available,
+         * make sure we send a default value if not found.
+         */
+        return "";
+    }
+
+    /**
+     * Prepare the parts of the error log that do not depend on the crash, so that saving a crash
+     * does not need to query system services. Must be called again when device properties change.
+     *
+     * @param context context.
+     */
+    @WorkerThread
+    public static void prepareCrashContext(@NonNull Context context) {
+        try {
+            sDeviceWrapperSdk = DeviceInfoHelper.getWrapperSdk();
+            sDevice = DeviceInfoHelper.getDeviceInfo(context);
+        } catch (DeviceInfoHelper.DeviceInfoException e) {
+            AppCenterLog.error(Crashes.LOG_TAG, "Could not prepare device properties for crashes.", e);
+            sDevice = null;
+        }
+        sProcessName = getProcessName(context);
+    }
+
+    /**
+     * Check that prepared device properties are still valid. Only the properties that can be read
+     * without querying system services are checked, other ones are refreshed by preparing again.
+     *
+     * @param device prepared device properties.
+     * @return true if the wrapper SDK, locale and time zone offset did not change.
+     */
+    private static boolean isPreparedDeviceCurrent(@NonNull Device device) {
+        if (sDeviceWrapperSdk != DeviceInfoHelper.getWrapperSdk()) {
+            return false;
+        }
+        Integer timeZoneOffset = device.getTimeZoneOffset();
+        return Locale.getDefault().toString().equals(device.getLocale())
+                && timeZoneOffset != null
+                && timeZoneOffset == TimeZone.getDefault().getOffset(System.currentTimeMillis()) / 60 / 1000;
+    }
+
+    /**
+     * Forget the prepared parts of the error log, they will be queried when a crash occurs.
+     */
+    public static void clearCrashContext() {
+        sDevice = null;
+        sProcessName = null;
+    }
+
     @SuppressWarnings("deprecation")
     @TargetApi(Build.VERSION_CODES.LOLLIPOP)
     private static String getArchitecture() {
@@ -310,6 +586,192 @@ public class ErrorLogHelper {
         return sPendingMinidumpDirectory;
     }
 
+    /**
+     * Folder where the SDK keeps copies of error attachment streams until they are sent.
+     *
+     * @return a folder name e.g. /lib/files/error/attachments
+     */
+    @NonNull
+    public static File getErrorAttachmentsDirectory() {
+        File attachmentsDirectory = new File(getErrorStorageDirectory(), ATTACHMENTS_DIRECTORY);
+        FileManager.mkdir(attachmentsDirectory.getPath());
+        return attachmentsDirectory;
+    }
+
+    /**
+     * Copy an error attachment stream to a file, without loading it in memory. The stream is closed.
+     *
+     * @param id      attachment identifier.
+     * @param stream  attachment stream.
+     * @param maxSize size above which copying stops, the copy is then 1 byte larger than this size.
+     * @return copied file.
+     * @throws IOException if copying failed, the partial copy is deleted.
+     */
+    @NonNull
+    public static File saveErrorAttachmentStream(@NonNull UUID id, @NonNull InputStream stream, long maxSize) throws IOException {
+        File file = new File(getErrorAttachmentsDirectory(), id.toString());
+        try {
+            OutputStream outputStream = new FileOutputStream(file);
+
+            //noinspection TryFinallyCanBeTryWithResources
+            try {
+                byte[] buffer = new byte[ATTACHMENT_BUFFER_SIZE];
+                long remaining = maxSize + 1;
+                int length;
+                while (remaining > 0 && (length = stream.read(buffer, 0, (int) Math.min(buffer.length, remaining))) >= 0) {
+                    outputStream.write(buffer, 0, length);
+                    remaining -= length;
+                }
+            } finally {
+                outputStream.close();
+            }
+        } catch (IOException e) {
+
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            throw e;
+        } finally {
+            stream.close();
+        }
+        return file;
+    }
+
+    /**
+     * Check if a file is a copy of an error attachment stream, to delete once sent.
+     *
+     * @param file file.
+     * @return true if the SDK owns the file.
+     */
+    public static boolean isErrorAttachmentFile(@NonNull File file) {
+        return new File(getErrorStorageDirectory(), ATTACHMENTS_DIRECTORY).equals(file.getParentFile());
+    }
+
+    /**
+     * Delete all copies of error attachment streams.
+     */
+    public static void removeErrorAttachmentFiles() {
+        FileManager.deleteDirectory(new File(getErrorStorageDirectory(), ATTACHMENTS_DIRECTORY));
+    }
+
+    /**
+     * Open the ring buffer holding the memory history of the process, keeping the records of the previous process.
+     *
+     * @param recordSize size of a record in bytes.
+     * @param capacity   maximum number of records.
+     * @return ring buffer or null if it cannot be opened.
+     */
+    @Nullable
+    public static MappedRingBuffer openMemoryHistory(int recordSize, int capacity) {
+        File file = getCrashContextFile(MEMORY_DIRECTORY, MEMORY_HISTORY_FILE);
+        FileManager.mkdir(file.getParent());
+        try {
+            return new MappedRingBuffer(file, recordSize, capacity);
+        } catch (IOException e) {
+            AppCenterLog.warn(Crashes.LOG_TAG, "Cannot open memory history.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Save the memory history of a crashed process, to send with its report.
+     *
+     * @param id      error identifier.
+     * @param history memory history.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void saveMemoryHistory(@NonNull UUID id, @NonNull String history) throws IOException {
+        FileManager.write(getCrashContextFile(MEMORY_DIRECTORY, id + MEMORY_HISTORY_FILE_EXTENSION), history);
+    }
+
+    /**
+     * Get the saved memory history of a crashed process.
+     *
+     * @param id error identifier.
+     * @return file or null if there is no memory history for this error.
+     */
+    @Nullable
+    public static File getStoredMemoryHistoryFile(@NonNull UUID id) {
+        File file = getCrashContextFile(MEMORY_DIRECTORY, id + MEMORY_HISTORY_FILE_EXTENSION);
+        return file.exists() ? file : null;
+    }
+
+    public static void removeStoredMemoryHistoryFile(@NonNull UUID id) {
+        File file = getStoredMemoryHistoryFile(id);
+        if (file != null) {
+            AppCenterLog.info(Crashes.LOG_TAG, "Deleting memory history file " + file.getName());
+            FileManager.delete(file);
+        }
+    }
+
+    /**
+     * Delete the memory history of the current process and the ones of crashed processes.
+     */
+    public static void removeMemoryHistoryFiles() {
+        FileManager.deleteDirectory(new File(getErrorStorageDirectory(), MEMORY_DIRECTORY));
+    }
+
+    /**
+     * Open the buffer holding the breadcrumbs of the process, keeping the breadcrumbs of the previous process.
+     *
+     * @param capacity  maximum number of breadcrumbs.
+     * @param maxLength maximum message length in characters.
+     * @return breadcrumb buffer or null if it cannot be opened.
+     */
+    @Nullable
+    public static BreadcrumbBuffer openBreadcrumbs(int capacity, int maxLength) {
+        File file = getCrashContextFile(BREADCRUMBS_DIRECTORY, BREADCRUMBS_FILE);
+        FileManager.mkdir(file.getParent());
+        try {
+            return new BreadcrumbBuffer(file, capacity, maxLength);
+        } catch (IOException e) {
+            AppCenterLog.warn(Crashes.LOG_TAG, "Cannot open breadcrumbs.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Save the breadcrumbs of a crashed process, to send with its report.
+     *
+     * @param id          error identifier.
+     * @param breadcrumbs breadcrumbs.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void saveBreadcrumbs(@NonNull UUID id, @NonNull String breadcrumbs) throws IOException {
+        FileManager.write(getCrashContextFile(BREADCRUMBS_DIRECTORY, id + BREADCRUMBS_FILE_EXTENSION), breadcrumbs);
+    }
+
+    /**
+     * Get the saved breadcrumbs of a crashed process.
+     *
+     * @param id error identifier.
+     * @return file or null if there are no breadcrumbs for this error.
+     */
+    @Nullable
+    public static File getStoredBreadcrumbsFile(@NonNull UUID id) {
+        File file = getCrashContextFile(BREADCRUMBS_DIRECTORY, id + BREADCRUMBS_FILE_EXTENSION);
+        return file.exists() ? file : null;
+    }
+
+    public static void removeStoredBreadcrumbsFile(@NonNull UUID id) {
+        File file = getStoredBreadcrumbsFile(id);
+        if (file != null) {
+            AppCenterLog.info(Crashes.LOG_TAG, "Deleting breadcrumbs file " + file.getName());
+            FileManager.delete(file);
+        }
+    }
+
+    /**
+     * Delete the breadcrumbs of the current process and the ones of crashed processes.
+     */
+    public static void removeBreadcrumbsFiles() {
+        FileManager.deleteDirectory(new File(getErrorStorageDirectory(), BREADCRUMBS_DIRECTORY));
+    }
+
+    @NonNull
+    private static File getCrashContextFile(@NonNull String directory, @NonNull String name) {
+        return new File(new File(getErrorStorageDirectory(), directory), name);
+    }
+
     @NonNull
     public static File[] getStoredErrorLogFiles() {
         File[] files = getErrorStorageDirectory().listFiles(new FilenameFilter() {
@@ -426,7 +888,7 @@ public class ErrorLogHelper {
     }
 
     @Nullable
-    static File getStoredErrorLogFile(@NonNull UUID id) {
+    public static File getStoredErrorLogFile(@NonNull UUID id) {
         return getStoredFile(id, ERROR_LOG_FILE_EXTENSION);
     }
 
@@ -455,22 +917,71 @@ public class ErrorLogHelper {
         sErrorLogDirectory = file;
     }
 
+    /**
+     * Get a stored file of an error. Files are named after the error identifier,
+     * so there is no need to list the directory.
+     *
+     * @param id        error identifier.
+     * @param extension file extension.
+     * @return file or null if it does not exist.
+     */
     @Nullable
     private static File getStoredFile(@NonNull final UUID id, @NonNull final String extension) {
-        File[] files = getErrorStorageDirectory().listFiles(new FilenameFilter() {
-            @Override
-            public boolean accept(File dir, String filename) {
-                return filename.startsWith(id.toString()) && filename.endsWith(extension);
-            }
-        });
+        File file = new File(getErrorStorageDirectory(), id.toString() + extension);
+        return file.exists() ? file : null;
+    }
 
-        return files != null && files.length > 0 ? files[0] : null;
+    /**
+     * Get the error identifier of a stored error log file from its name, without reading it.
+     *
+     * @param logFile error log file.
+     * @return error identifier or null if the file is not named after one.
+     */
+    @Nullable
+    public static UUID getErrorLogId(@NonNull File logFile) {
+        String name = logFile.getName();
+        if (name == null || !name.endsWith(ERROR_LOG_FILE_EXTENSION)) {
+            return null;
+        }
+        try {
+            return UUID.fromString(name.substring(0, name.length() - ERROR_LOG_FILE_EXTENSION.length()));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
     }
 
     @NonNull
     public static Exception getModelExceptionFromThrowable(@NonNull Throwable t) {
-        Exception topException = null;
-        Exception parentException = null;
+        List<Throwable> causeChain = getCauseChain(t);
+        return getModelException(causeChain, getStackTraces(causeChain), null);
+    }
+
+    /**
+     * Convert a handled error to an exception model, reusing the models of previous errors.
+     * Errors reported repeatedly from the same call sites are converted only once.
+     * The model and its frames are shared and must not be modified.
+     *
+     * @param t handled error.
+     * @return shared exception model.
+     */
+    @NonNull
+    public static Exception getSharedModelExceptionFromThrowable(@NonNull Throwable t) {
+        List<Throwable> causeChain = getCauseChain(t);
+        List<StackTraceElement[]> stackTraces = getStackTraces(causeChain);
+        long structureHash = getStructureHash(causeChain, stackTraces);
+        synchronized (sSharedExceptionCache) {
+            Exception exception = sSharedExceptionCache.get(structureHash);
+            if (exception != null && isModelOf(exception, causeChain, stackTraces)) {
+                return exception;
+            }
+            exception = getModelException(causeChain, stackTraces, sSharedStackFrameCache);
+            sSharedExceptionCache.put(structureHash, exception);
+            return exception;
+        }
+    }
+
+    @NonNull
+    private static List<Throwable> getCauseChain(@NonNull Throwable t) {
         List<Throwable> causeChain = new LinkedList<>();
         for (Throwable cause = t; cause != null; cause = cause.getCause()) {
             causeChain.add(cause);
@@ -479,25 +990,20 @@ public class ErrorLogHelper {
             AppCenterLog.warn(Crashes.LOG_TAG, "Crash causes truncated from " + causeChain.size() + " to " + CAUSE_LIMIT + " causes.");
             causeChain.subList(CAUSE_LIMIT_HALF, causeChain.size() - CAUSE_LIMIT_HALF).clear();
         }
+        return causeChain;
+    }
+
+    @NonNull
+    private static List<StackTraceElement[]> getStackTraces(@NonNull List<Throwable> causeChain) {
+        List<StackTraceElement[]> stackTraces = new ArrayList<>(causeChain.size());
         for (Throwable cause : causeChain) {
-            Exception exception = new Exception();
-            exception.setType(cause.getClass().getName());
-            exception.setMessage(cause.getMessage());
-            exception.setFrames(getModelFramesFromStackTrace(cause));
-            if (topException == null) {
-                topException = exception;
-            } else {
-                parentException.setInnerExceptions(Collections.singletonList(exception));
-            }
-            parentException = exception;
+            stackTraces.add(getTruncatedStackTrace(cause));
         }
-
-        //noinspection ConstantConditions
-        return topException;
+        return stackTraces;
     }
 
     @NonNull
-    private static List<StackFrame> getModelFramesFromStackTrace(@NonNull Throwable throwable) {
+    private static StackTraceElement[] getTruncatedStackTrace(@NonNull Throwable throwable) {
         StackTraceElement[] stackTrace = throwable.getStackTrace();
         if (stackTrace.length > FRAME_LIMIT) {
             StackTraceElement[] stackTraceTruncated = new StackTraceElement[FRAME_LIMIT];
@@ -507,14 +1013,51 @@ public class ErrorLogHelper {
             AppCenterLog.warn(Crashes.LOG_TAG, "Crash frames truncated from " + stackTrace.length + " to " + stackTraceTruncated.length + " frames.");
             stackTrace = stackTraceTruncated;
         }
-        return getModelFramesFromStackTrace(stackTrace);
+        return stackTrace;
     }
 
+    /**
+     * Convert a cause chain to an exception model.
+     *
+     * @param causeChain  causes, already truncated.
+     * @param stackTraces stack trace of each cause, already truncated.
+     * @param frameCache  frames to reuse and to add converted frames to, or null to convert every frame.
+     * @return exception model.
+     */
     @NonNull
-    private static List<StackFrame> getModelFramesFromStackTrace(@NonNull StackTraceElement[] stackTrace) {
-        List<StackFrame> stackFrames = new ArrayList<>();
+    private static Exception getModelException(@NonNull List<Throwable> causeChain, @NonNull List<StackTraceElement[]> stackTraces, @Nullable Map<StackTraceElement, StackFrame> frameCache) {
+        Exception topException = null;
+        Exception parentException = null;
+        Iterator<StackTraceElement[]> stackTraceIterator = stackTraces.iterator();
+        for (Throwable cause : causeChain) {
+            Exception exception = new Exception();
+            exception.setType(cause.getClass().getName());
+            exception.setMessage(cause.getMessage());
+            exception.setFrames(getModelFramesFromStackTrace(stackTraceIterator.next(), frameCache));
+            if (topException == null) {
+                topException = exception;
+            } else {
+                parentException.setInnerExceptions(Collections.singletonList(exception));
+            }
+            parentException = exception;
+        }
+
+        //noinspection ConstantConditions
+        return topException;
+    }
+
+    @NonNull
+    private static List<StackFrame> getModelFramesFromStackTrace(@NonNull StackTraceElement[] stackTrace, @Nullable Map<StackTraceElement, StackFrame> frameCache) {
+        List<StackFrame> stackFrames = new ArrayList<>(stackTrace.length);
         for (StackTraceElement stackTraceElement : stackTrace) {
-            stackFrames.add(getModelStackFrame(stackTraceElement));
+            StackFrame stackFrame = frameCache == null ? null : frameCache.get(stackTraceElement);
+            if (stackFrame == null) {
+                stackFrame = getModelStackFrame(stackTraceElement);
+                if (frameCache != null) {
+                    frameCache.put(stackTraceElement, stackFrame);
+                }
+            }
+            stackFrames.add(stackFrame);
         }
         return stackFrames;
     }
@@ -529,6 +1072,59 @@ public class ErrorLogHelper {
         return stackFrame;
     }
 
+    /**
+     * Hash the types, messages and frames of a cause chain without converting it.
+     */
+    private static long getStructureHash(@NonNull List<Throwable> causeChain, @NonNull List<StackTraceElement[]> stackTraces) {
+        long hash = 17;
+        Iterator<StackTraceElement[]> stackTraceIterator = stackTraces.iterator();
+        for (Throwable cause : causeChain) {
+            hash = 31 * hash + cause.getClass().getName().hashCode();
+            String message = cause.getMessage();
+            hash = 31 * hash + (message != null ? message.hashCode() : 0);
+            for (StackTraceElement stackTraceElement : stackTraceIterator.next()) {
+                hash = 31 * hash + stackTraceElement.hashCode();
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Check that an exception model was converted from the same cause chain, as hashes can collide.
+     */
+    private static boolean isModelOf(@NonNull Exception exception, @NonNull List<Throwable> causeChain, @NonNull List<StackTraceElement[]> stackTraces) {
+        Iterator<StackTraceElement[]> stackTraceIterator = stackTraces.iterator();
+        for (Throwable cause : causeChain) {
+            if (exception == null
+                    || !cause.getClass().getName().equals(exception.getType())
+                    || !equals(cause.getMessage(), exception.getMessage())) {
+                return false;
+            }
+            StackTraceElement[] stackTrace = stackTraceIterator.next();
+            List<StackFrame> frames = exception.getFrames();
+            if (frames.size() != stackTrace.length) {
+                return false;
+            }
+            for (int i = 0; i < stackTrace.length; i++) {
+                StackFrame frame = frames.get(i);
+                StackTraceElement stackTraceElement = stackTrace[i];
+                if (!stackTraceElement.getClassName().equals(frame.getClassName())
+                        || !stackTraceElement.getMethodName().equals(frame.getMethodName())
+                        || !equals(stackTraceElement.getFileName(), frame.getFileName())
+                        || stackTraceElement.getLineNumber() != frame.getLineNumber()) {
+                    return false;
+                }
+            }
+            List<Exception> innerExceptions = exception.getInnerExceptions();
+            exception = innerExceptions == null ? null : innerExceptions.get(0);
+        }
+        return exception == null;
+    }
+
+    private static boolean equals(@Nullable String a, @Nullable String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
     /**
      * Validates properties.
      *
@@ -606,5 +1202,9 @@ public class ErrorLogHelper {
         sNewMinidumpDirectory = null;
         sErrorLogDirectory = null;
         sPendingMinidumpDirectory = null;
+        synchronized (sSharedExceptionCache) {
+            sSharedExceptionCache.clear();
+            sSharedStackFrameCache.clear();
+        }
     }
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-size ring buffer of fixed-size records stored in a memory-mapped file.
+ * <p>
+ * Writes go to the page cache without any system call, so records written before the process dies,
+ * including from a crash, can be read by the next process.
+ */
+public class MappedRingBuffer {
+
+    /**
+     * Identifies the file format.
+     */
+    private static final int MAGIC = 0x41435242;
+
+    /**
+     * Header: magic, record size, capacity and number of records written, bounded once full.
+     */
+    @VisibleForTesting
+    static final int HEADER_SIZE = 4 * 4;
+
+    /**
+     * Offset of the number of records written in the header.
+     */
+    private static final int COUNT_OFFSET = 3 * 4;
+
+    /**
+     * Size of a record in bytes.
+     */
+    private final int mRecordSize;
+
+    /**
+     * Maximum number of records, the oldest ones are overwritten first.
+     */
+    private final int mCapacity;
+
+    /**
+     * Mapped file content.
+     */
+    private final ByteBuffer mBuffer;
+
+    /**
+     * Open a ring buffer, keeping the records of a previous process if the file has the same layout.
+     *
+     * @param file       file to map, created if missing.
+     * @param recordSize size of a record in bytes.
+     * @param capacity   maximum number of records.
+     * @throws IOException if the file cannot be mapped.
+     */
+    public MappedRingBuffer(@NonNull File file, int recordSize, int capacity) throws IOException {
+        mRecordSize = recordSize;
+        mCapacity = capacity;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+
+        /* The mapping stays valid after closing the file. */
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            long size = HEADER_SIZE + (long) recordSize * capacity;
+            mBuffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            randomAccessFile.close();
+        }
+        if (mBuffer.getInt(0) != MAGIC || mBuffer.getInt(4) != recordSize || mBuffer.getInt(8) != capacity || mBuffer.getInt(COUNT_OFFSET) < 0 || mBuffer.getInt(COUNT_OFFSET) >= 2 * capacity) {
+            mBuffer.putInt(4, recordSize);
+            mBuffer.putInt(8, capacity);
+            mBuffer.putInt(COUNT_OFFSET, 0);
+            mBuffer.putInt(0, MAGIC);
+        }
+    }
+
+    /**
+     * Get the buffer to write the next record to, overwriting the oldest one if full.
+     * The record is added once {@link #commit()} is called, writers on several threads
+     * must synchronize on this object from {@link #next()} to {@link #commit()}.
+     *
+     * @return buffer of the record size.
+     */
+    @NonNull
+    public synchronized ByteBuffer next() {
+        return slice(mBuffer.duplicate(), getCount() % mCapacity);
+    }
+
+    /**
+     * Add the record written to the buffer returned by {@link #next()}.
+     */
+    public synchronized void commit() {
+        int count = getCount() + 1;
+
+        /* Once full, only the position in the ring matters: keep the counter bounded. */
+        if (count >= 2 * mCapacity) {
+            count -= mCapacity;
+        }
+        mBuffer.putInt(COUNT_OFFSET, count);
+    }
+
+    /**
+     * Get the records, oldest first.
+     *
+     * @return read-only buffers of the record size.
+     */
+    @NonNull
+    public synchronized List<ByteBuffer> getRecords() {
+        int count = getCount();
+        int size = Math.min(count, mCapacity);
+        List<ByteBuffer> records = new ArrayList<>(size);
+        for (int i = count - size; i < count; i++) {
+            records.add(slice(mBuffer.asReadOnlyBuffer(), i % mCapacity));
+        }
+        return records;
+    }
+
+    /**
+     * Remove all records.
+     */
+    public synchronized void clear() {
+        mBuffer.putInt(COUNT_OFFSET, 0);
+    }
+
+    private ByteBuffer slice(ByteBuffer buffer, int index) {
+        int offset = HEADER_SIZE + index * mRecordSize;
+
+        /* Use Buffer methods: the ByteBuffer overrides do not exist on older Android versions. */
+        ((Buffer) buffer).limit(offset + mRecordSize);
+        ((Buffer) buffer).position(offset);
+        return buffer.slice();
+    }
+
+    private int getCount() {
+        return mBuffer.getInt(COUNT_OFFSET);
+    }
+}
@@ -9,6 +9,7 @@ import android.content.ComponentCallbacks;
 import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.res.Configuration;
+import android.os.Handler;
 import android.os.Looper;
 
 import com.microsoft.appcenter.AppCenter;
@@ -22,7 +23,9 @@ import com.microsoft.appcenter.crashes.ingestion.models.json.HandledErrorLogFact
 import com.microsoft.appcenter.crashes.ingestion.models.json.ManagedErrorLogFactory;
 import com.microsoft.appcenter.crashes.model.ErrorReport;
 import com.microsoft.appcenter.crashes.model.TestCrashException;
+import com.microsoft.appcenter.crashes.utils.BreadcrumbBuffer;
 import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
+import com.microsoft.appcenter.crashes.utils.MappedRingBuffer;
 import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
@@ -31,6 +34,8 @@ import com.microsoft.appcenter.ingestion.models.json.LogFactory;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
+import com.microsoft.appcenter.utils.HandlerUtils;
+import com.microsoft.appcenter.utils.HashUtils;
 import com.microsoft.appcenter.utils.async.AppCenterConsumer;
 import com.microsoft.appcenter.utils.async.AppCenterFuture;
 import com.microsoft.appcenter.utils.context.SessionContext;
@@ -55,6 +60,8 @@ import org.powermock.reflect.Whitebox;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -161,8 +168,8 @@ public class CrashesTest extends AbstractCrashesTest {
         crashes.onStarting(mAppCenterHandler);
         crashes.onStarted(mock(Context.class), mock(Channel.class), "", null, true);
 
-        /* Test. */
-        verifyStatic(times(4));
+        /* Test, enabled state is read from storage only once. */
+        verifyStatic();
         SharedPreferencesManager.getBoolean(CRASHES_ENABLED_KEY, true);
         assertFalse(Crashes.isEnabled().get());
         assertEquals(crashes.getInitializeTimestamp(), -1);
@@ -835,6 +842,87 @@ public class CrashesTest extends AbstractCrashesTest {
         assertEquals(STACK_TRACE, result.getStackTrace());
     }
 
+    @Test
+    public void lastSessionErrorLogReadOnce() throws JSONException, IOException {
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        errorLog.setId(UUID.randomUUID());
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString(), anyString())).thenReturn(errorLog);
+        mockStatic(ErrorLogHelper.class);
+        File lastErrorLogFile = errorStorageDirectory.newFile(errorLog.getId() + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
+        new FileWriter(lastErrorLogFile).append("fake_data").close();
+        when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(lastErrorLogFile);
+        when(ErrorLogHelper.getErrorLogId(lastErrorLogFile)).thenReturn(errorLog.getId());
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(errorStorageDirectory.newFile());
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(new ErrorReport());
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{lastErrorLogFile});
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(FileManager.read(any(File.class))).thenReturn("fake_data");
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), mock(Channel.class), "", null, true);
+        assertTrue(Crashes.hasCrashedInLastSession().get());
+
+        /* Pending error processing reuses the log read for the last session. */
+        verifyStatic();
+        FileManager.read(lastErrorLogFile);
+        verify(logSerializer).deserializeLog(anyString(), anyString());
+    }
+
+    @Test
+    public void pendingErrorsLoadedWhenSent() throws JSONException, IOException {
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        errorLog.setId(UUID.randomUUID());
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString(), anyString())).thenReturn(errorLog);
+        mockStatic(ErrorLogHelper.class);
+        File errorLogFile = errorStorageDirectory.newFile(errorLog.getId() + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
+        new FileWriter(errorLogFile).append("fake_data").close();
+        UUID emptyId = UUID.randomUUID();
+        File emptyErrorLogFile = errorStorageDirectory.newFile(emptyId + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
+        when(ErrorLogHelper.getErrorLogId(errorLogFile)).thenReturn(errorLog.getId());
+        when(ErrorLogHelper.getErrorLogId(emptyErrorLogFile)).thenReturn(emptyId);
+        when(ErrorLogHelper.getStoredErrorLogFile(errorLog.getId())).thenReturn(errorLogFile);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(errorStorageDirectory.newFile());
+        ErrorReport report = new ErrorReport();
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(report);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{errorLogFile, emptyErrorLogFile});
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(FileManager.read(any(File.class))).thenReturn("fake_data");
+
+        /* Listener not implementing shouldProcess. */
+        final CrashesListener listener = mock(CrashesListener.class);
+        Crashes.setListener(new AbstractCrashesListener() {
+
+            @Override
+            public boolean shouldAwaitUserConfirmation() {
+                return true;
+            }
+
+            @Override
+            public Iterable<ErrorAttachmentLog> getErrorAttachments(ErrorReport report) {
+                return listener.getErrorAttachments(report);
+            }
+        });
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        Channel channel = mock(Channel.class);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), channel, "", null, true);
+
+        /* Pending errors are only listed at startup, the empty one is deleted. */
+        verify(logSerializer, never()).deserializeLog(anyString(), anyString());
+        verifyStatic();
+        ErrorLogHelper.removeStoredErrorLogFile(emptyId);
+
+        /* The error log and its report are loaded when sent. */
+        Crashes.notifyUserConfirmation(Crashes.SEND);
+        verify(logSerializer).deserializeLog(anyString(), anyString());
+        verify(channel).enqueue(errorLog, crashes.getGroupName(), CRITICAL);
+        verify(listener).getErrorAttachments(report);
+    }
+
     @Test
     @SuppressWarnings("deprecation")
     public void getThrowableDeprecated() {
@@ -969,6 +1057,68 @@ public class CrashesTest extends AbstractCrashesTest {
         verify(channel, never()).enqueue(eq(binaryAttachment), anyString(), anyInt());
     }
 
+    @Test
+    public void sendFileAndStreamErrorAttachments() throws Exception {
+
+        /* Prepare a file attachment, a missing file, a stream and a stream too big. */
+        File file = mTemporaryFolder.newFile("log.txt");
+        new FileWriter(file).append("hello").close();
+        ErrorAttachmentLog fileAttachment = ErrorAttachmentLog.attachmentWithFile(file, "text/plain");
+        ErrorAttachmentLog missingFileAttachment = ErrorAttachmentLog.attachmentWithFile(new File(mTemporaryFolder.getRoot(), "missing"), "text/plain");
+        File streamCopy = mTemporaryFolder.newFile("streamCopy");
+        new FileWriter(streamCopy).append("world").close();
+        ErrorAttachmentLog streamAttachment = ErrorAttachmentLog.attachmentWithStream(mock(InputStream.class), "stream.txt", "text/plain");
+        File hugeStreamCopy = mTemporaryFolder.newFile("hugeStreamCopy");
+        RandomAccessFile hugeFile = new RandomAccessFile(hugeStreamCopy, "rw");
+        hugeFile.setLength(7 * 1024 * 1024 + 1);
+        hugeFile.close();
+        ErrorAttachmentLog hugeStreamAttachment = ErrorAttachmentLog.attachmentWithStream(mock(InputStream.class), "huge.bin", "application/octet-stream");
+
+        /* Set up callbacks. */
+        CrashesListener listener = mock(CrashesListener.class);
+        when(listener.shouldProcess(any(ErrorReport.class))).thenReturn(true);
+        when(listener.getErrorAttachments(any(ErrorReport.class))).thenReturn(Arrays.asList(fileAttachment, missingFileAttachment, streamAttachment, hugeStreamAttachment));
+
+        /* Mock a crash log to process. */
+        ManagedErrorLog log = mock(ManagedErrorLog.class);
+        when(log.getId()).thenReturn(UUID.randomUUID());
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString(), anyString())).thenReturn(log);
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(new ErrorReport());
+        when(ErrorLogHelper.saveErrorAttachmentStream(any(UUID.class), any(InputStream.class), anyLong())).thenReturn(streamCopy, hugeStreamCopy);
+        when(ErrorLogHelper.isErrorAttachmentFile(any(File.class))).thenReturn(true);
+        when(FileManager.read(any(File.class))).thenReturn("");
+
+        /* Mock starting crashes so that attachments are processed. */
+        Crashes crashes = Crashes.getInstance();
+        crashes.setInstanceListener(listener);
+        crashes.setLogSerializer(logSerializer);
+        crashes.onStarting(mAppCenterHandler);
+        Channel channel = mock(Channel.class);
+        crashes.onStarted(mock(Context.class), channel, "", null, true);
+
+        /* Files are referenced with their hash. */
+        verify(channel).enqueue(fileAttachment, crashes.getGroupName(), NORMAL);
+        assertEquals(HashUtils.sha256(file), fileAttachment.getDataHash());
+        verify(channel).enqueue(streamAttachment, crashes.getGroupName(), NORMAL);
+        assertNull(streamAttachment.getDataStream());
+        assertEquals(streamCopy, streamAttachment.getDataFile());
+        assertEquals(HashUtils.sha256(streamCopy), streamAttachment.getDataHash());
+
+        /* Attachments that cannot be read or are too big are discarded. */
+        verify(channel, never()).enqueue(eq(missingFileAttachment), anyString(), anyInt());
+        verify(channel, never()).enqueue(eq(hugeStreamAttachment), anyString(), anyInt());
+        assertFalse(hugeStreamCopy.exists());
+
+        /* Stream copy is deleted once sent. */
+        crashes.getChannelListener().onSuccess(streamAttachment);
+        assertFalse(streamCopy.exists());
+    }
+
     @Test
     public void manualProcessing() throws Exception {
 
@@ -1297,6 +1447,230 @@ public class CrashesTest extends AbstractCrashesTest {
         attachmentWithBinary(new byte[]{anyByte()}, anyString(), anyString());
     }
 
+    @Test
+    public void memoryHistorySentWithCrash() throws Exception {
+
+        /* Memory history recorded by the crashed process. */
+        MappedRingBuffer memoryHistoryBuffer = new MappedRingBuffer(mTemporaryFolder.newFile("history"), MemoryHistory.RECORD_SIZE, MemoryHistory.CAPACITY);
+        new MemoryHistory(memoryHistoryBuffer).recordTrim(TRIM_MEMORY_RUNNING_LOW);
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.openMemoryHistory(MemoryHistory.RECORD_SIZE, MemoryHistory.CAPACITY)).thenReturn(memoryHistoryBuffer);
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(mTemporaryFolder.getRoot());
+        Handler mainHandler = mock(Handler.class);
+        when(HandlerUtils.getMainHandler()).thenReturn(mainHandler);
+
+        /* Set up mock for the crash. */
+        final UUID errorId = UUID.randomUUID();
+        File lastErrorLogFile = mock(File.class);
+        when(lastErrorLogFile.length()).thenReturn(1L);
+        File memoryHistoryFile = mock(File.class);
+        when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(lastErrorLogFile);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{lastErrorLogFile});
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(new ErrorReport());
+        when(ErrorLogHelper.getStoredMemoryHistoryFile(errorId)).thenReturn(null, memoryHistoryFile);
+        when(FileManager.read(any(File.class))).thenReturn("");
+        when(FileManager.read(memoryHistoryFile)).thenReturn("memory history");
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString(), anyString())).thenAnswer(new Answer<ManagedErrorLog>() {
+
+            @Override
+            public ManagedErrorLog answer(InvocationOnMock invocation) {
+                ManagedErrorLog log = mock(ManagedErrorLog.class);
+                when(log.getId()).thenReturn(errorId);
+                when(log.getTimestamp()).thenReturn(new Date());
+                return log;
+            }
+        });
+        when(SharedPreferencesManager.getBoolean(CRASHES_ENABLED_KEY, true)).thenReturn(true);
+
+        /* Start crashes. */
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        crashes.onStarting(mAppCenterHandler);
+        Channel channel = mock(Channel.class);
+        crashes.onStarted(mock(Context.class), channel, "secret-app-mock", null, true);
+
+        /* The history of the crashed process is saved for its report. */
+        ArgumentCaptor<String> savedHistory = ArgumentCaptor.forClass(String.class);
+        verifyStatic();
+        ErrorLogHelper.saveMemoryHistory(eq(errorId), savedHistory.capture());
+        assertTrue(savedHistory.getValue().startsWith(MemoryHistory.CSV_HEADER));
+        assertTrue(savedHistory.getValue().contains("," + TRIM_MEMORY_RUNNING_LOW + ","));
+
+        /* Then sent as an attachment and deleted. */
+        ArgumentCaptor<ErrorAttachmentLog> attachment = ArgumentCaptor.forClass(ErrorAttachmentLog.class);
+        verify(channel).enqueue(attachment.capture(), eq(crashes.getGroupName()), eq(DEFAULTS));
+        assertEquals(errorId, attachment.getValue().getErrorId());
+        assertEquals(Crashes.MEMORY_HISTORY_ATTACHMENT_FILE_NAME, attachment.getValue().getFileName());
+        assertEquals("memory history", new String(attachment.getValue().getData(), "UTF-8"));
+        verifyStatic();
+        ErrorLogHelper.removeStoredMemoryHistoryFile(errorId);
+
+        /* A new history is recorded. */
+        verify(mainHandler).post(any(Runnable.class));
+        assertTrue(memoryHistoryBuffer.getRecords().isEmpty());
+
+        /* Disabling stops recording and deletes histories. */
+        Crashes.setEnabled(false);
+        verify(mainHandler).removeCallbacks(any(Runnable.class));
+        verifyStatic();
+        ErrorLogHelper.removeMemoryHistoryFiles();
+    }
+
+    @Test
+    public void breadcrumbsSentWithCrash() throws Exception {
+
+        /* Breadcrumbs left by the crashed process. */
+        BreadcrumbBuffer breadcrumbBuffer = new BreadcrumbBuffer(mTemporaryFolder.newFile("breadcrumbs"), Crashes.BREADCRUMB_CAPACITY, Crashes.BREADCRUMB_MAX_LENGTH);
+        breadcrumbBuffer.add(System.currentTimeMillis() - 1000, "Opened settings");
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.openBreadcrumbs(Crashes.BREADCRUMB_CAPACITY, Crashes.BREADCRUMB_MAX_LENGTH)).thenReturn(breadcrumbBuffer);
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(mTemporaryFolder.getRoot());
+
+        /* Set up mock for the crash. */
+        final UUID errorId = UUID.randomUUID();
+        File lastErrorLogFile = mock(File.class);
+        when(lastErrorLogFile.length()).thenReturn(1L);
+        File breadcrumbsFile = mock(File.class);
+        when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(lastErrorLogFile);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{lastErrorLogFile});
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(new ErrorReport());
+        when(ErrorLogHelper.getStoredBreadcrumbsFile(errorId)).thenReturn(null, breadcrumbsFile);
+        when(FileManager.read(any(File.class))).thenReturn("");
+        when(FileManager.read(breadcrumbsFile)).thenReturn("breadcrumbs");
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString(), anyString())).thenAnswer(new Answer<ManagedErrorLog>() {
+
+            @Override
+            public ManagedErrorLog answer(InvocationOnMock invocation) {
+                ManagedErrorLog log = mock(ManagedErrorLog.class);
+                when(log.getId()).thenReturn(errorId);
+                when(log.getTimestamp()).thenReturn(new Date());
+                return log;
+            }
+        });
+        when(SharedPreferencesManager.getBoolean(CRASHES_ENABLED_KEY, true)).thenReturn(true);
+
+        /* Breadcrumbs are ignored until started. */
+        Crashes.leaveBreadcrumb("Not started");
+
+        /* Start crashes. */
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        crashes.onStarting(mAppCenterHandler);
+        Channel channel = mock(Channel.class);
+        crashes.onStarted(mock(Context.class), channel, "secret-app-mock", null, true);
+
+        /* The breadcrumbs of the crashed process are saved for its report. */
+        ArgumentCaptor<String> savedBreadcrumbs = ArgumentCaptor.forClass(String.class);
+        verifyStatic();
+        ErrorLogHelper.saveBreadcrumbs(eq(errorId), savedBreadcrumbs.capture());
+        assertTrue(savedBreadcrumbs.getValue().endsWith(" Opened settings\n"));
+        assertFalse(savedBreadcrumbs.getValue().contains("Not started"));
+
+        /* Then sent as an attachment and deleted. */
+        ArgumentCaptor<ErrorAttachmentLog> attachment = ArgumentCaptor.forClass(ErrorAttachmentLog.class);
+        verify(channel).enqueue(attachment.capture(), eq(crashes.getGroupName()), eq(DEFAULTS));
+        assertEquals(errorId, attachment.getValue().getErrorId());
+        assertEquals(Crashes.BREADCRUMBS_ATTACHMENT_FILE_NAME, attachment.getValue().getFileName());
+        assertEquals("breadcrumbs", new String(attachment.getValue().getData(), "UTF-8"));
+        verifyStatic();
+        ErrorLogHelper.removeStoredBreadcrumbsFile(errorId);
+
+        /* New breadcrumbs are recorded. */
+        Crashes.leaveBreadcrumb("Opened about");
+        Crashes.leaveBreadcrumb(null);
+        assertTrue(breadcrumbBuffer.toText().endsWith(" Opened about\n"));
+        assertEquals(1, breadcrumbBuffer.toText().split("\n").length);
+
+        /* Disabling stops recording and deletes breadcrumbs. */
+        Crashes.setEnabled(false);
+        Crashes.leaveBreadcrumb("Disabled");
+        assertFalse(breadcrumbBuffer.toText().contains("Disabled"));
+        verifyStatic();
+        ErrorLogHelper.removeBreadcrumbsFiles();
+    }
+
+    @Test
+    @PrepareForTest(SessionContext.class)
+    public void crashContextSavedForEveryPendingError() throws Exception {
+
+        /* Memory history and breadcrumbs recorded by the crashed process. */
+        long now = System.currentTimeMillis();
+        MappedRingBuffer memoryHistoryBuffer = new MappedRingBuffer(mTemporaryFolder.newFile("history"), MemoryHistory.RECORD_SIZE, MemoryHistory.CAPACITY);
+        new MemoryHistory(memoryHistoryBuffer).recordTrim(TRIM_MEMORY_RUNNING_LOW);
+        BreadcrumbBuffer breadcrumbBuffer = new BreadcrumbBuffer(mTemporaryFolder.newFile("breadcrumbs"), Crashes.BREADCRUMB_CAPACITY, Crashes.BREADCRUMB_MAX_LENGTH);
+        breadcrumbBuffer.add(now - 1000, "Opened settings");
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.openMemoryHistory(MemoryHistory.RECORD_SIZE, MemoryHistory.CAPACITY)).thenReturn(memoryHistoryBuffer);
+        when(ErrorLogHelper.openBreadcrumbs(Crashes.BREADCRUMB_CAPACITY, Crashes.BREADCRUMB_MAX_LENGTH)).thenReturn(breadcrumbBuffer);
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(mTemporaryFolder.getRoot());
+        when(HandlerUtils.getMainHandler()).thenReturn(mock(Handler.class));
+        mockStatic(SessionContext.class);
+        when(SessionContext.getInstance()).thenReturn(mock(SessionContext.class));
+
+        /* A native crash, more recent than the last Java error file. */
+        UUID nativeId = UUID.randomUUID();
+        File minidumpFolder = mTemporaryFolder.newFolder("minidump");
+        File minidumpFile = new File(minidumpFolder, "crash.dmp");
+        assertTrue(minidumpFile.createNewFile());
+        assertTrue(minidumpFile.setLastModified(now + 2000));
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[]{minidumpFolder});
+        when(ErrorLogHelper.getPendingMinidumpDirectory()).thenReturn(mTemporaryFolder.newFolder("pending"));
+        when(ErrorLogHelper.parseLogFolderUuid(minidumpFolder)).thenReturn(nativeId);
+        when(ErrorLogHelper.getStoredDeviceInfo(minidumpFolder)).thenReturn(mock(Device.class));
+
+        /* A pending Java error of the crashed process and an older one recorded before its history. */
+        final UUID pendingId = UUID.randomUUID();
+        final UUID oldId = UUID.randomUUID();
+        File pendingFile = mock(File.class);
+        File oldFile = mock(File.class);
+        when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(null);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{oldFile, pendingFile});
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), anyString())).thenReturn(new ErrorReport());
+        when(FileManager.read(pendingFile)).thenReturn("pending");
+        when(FileManager.read(oldFile)).thenReturn("old");
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.serializeLog(any(Log.class))).thenReturn("{}");
+        when(logSerializer.deserializeLog(anyString(), anyString())).thenAnswer(new Answer<ManagedErrorLog>() {
+
+            @Override
+            public ManagedErrorLog answer(InvocationOnMock invocation) {
+                boolean old = "old".equals(invocation.getArguments()[0]);
+                ManagedErrorLog log = mock(ManagedErrorLog.class);
+                when(log.getId()).thenReturn(old ? oldId : pendingId);
+                when(log.getTimestamp()).thenReturn(new Date(old ? 0 : System.currentTimeMillis()));
+                return log;
+            }
+        });
+        when(SharedPreferencesManager.getBoolean(CRASHES_ENABLED_KEY, true)).thenReturn(true);
+
+        /* Start crashes. */
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), mock(Channel.class), "secret-app-mock", null, true);
+
+        /* The crash context is saved for the native crash and the pending error. */
+        for (UUID id : new UUID[]{nativeId, pendingId}) {
+            verifyStatic();
+            ErrorLogHelper.saveMemoryHistory(eq(id), anyString());
+            verifyStatic();
+            ErrorLogHelper.saveBreadcrumbs(eq(id), anyString());
+        }
+
+        /* But not for the error older than the crash context. */
+        verifyStatic(never());
+        ErrorLogHelper.saveMemoryHistory(eq(oldId), anyString());
+        verifyStatic(never());
+        ErrorLogHelper.saveBreadcrumbs(eq(oldId), anyString());
+    }
+
     @Test
     public void minidumpStoredWithOldSDK() throws Exception {
 
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HandledErrorAggregatorTest {
+
+    private static Throwable newError(int lineNumber) {
+        Throwable error = new RuntimeException("loop");
+        error.setStackTrace(new StackTraceElement[]{new StackTraceElement("Network", "send", "Network.java", lineNumber)});
+        return error;
+    }
+
+    @Test
+    public void limitPerFingerprint() {
+        HandledErrorAggregator aggregator = new HandledErrorAggregator();
+        aggregator.setRateLimit(2, 1000);
+        Throwable error = newError(1);
+
+        /* Within limit. */
+        HandledErrorAggregator.Occurrences occurrences = aggregator.onError(error, 0);
+        assertNotNull(occurrences);
+        assertEquals(1, occurrences.count);
+        assertEquals(0, occurrences.firstTime);
+        assertNotNull(aggregator.onError(error, 10));
+
+        /* Over limit. */
+        assertNull(aggregator.onError(error, 20));
+        assertNull(aggregator.onError(error, 30));
+
+        /* Another stack trace has its own bucket. */
+        assertNotNull(aggregator.onError(newError(2), 40));
+
+        /* Half a window refills one token, reporting the skipped occurrences. */
+        occurrences = aggregator.onError(error, 520);
+        assertNotNull(occurrences);
+        assertEquals(3, occurrences.count);
+        assertEquals(20, occurrences.firstTime);
+        assertEquals(520, occurrences.lastTime);
+        assertNull(aggregator.onError(error, 530));
+    }
+
+    @Test
+    public void disabled() {
+        HandledErrorAggregator aggregator = new HandledErrorAggregator();
+        aggregator.setRateLimit(1, 0);
+        Throwable error = newError(1);
+        for (int i = 0; i < 100; i++) {
+            HandledErrorAggregator.Occurrences occurrences = aggregator.onError(error, i);
+            assertNotNull(occurrences);
+            assertEquals(1, occurrences.count);
+        }
+    }
+
+    @Test
+    public void noLimitByDefault() {
+        HandledErrorAggregator aggregator = new HandledErrorAggregator();
+        Throwable error = newError(1);
+        for (int i = 0; i < 100; i++) {
+            assertNotNull(aggregator.onError(error, 0));
+        }
+        assertFalse(aggregator.hasSuppressedErrors());
+    }
+
+    @Test
+    public void summariesAfterWindow() {
+        HandledErrorAggregator aggregator = new HandledErrorAggregator();
+        aggregator.setRateLimit(1, 1000);
+        Throwable error = newError(1);
+        Throwable lastError = newError(1);
+        assertNotNull(aggregator.onError(error, 0));
+        assertNull(aggregator.onError(error, 100));
+        assertNull(aggregator.onError(lastError, 200));
+        assertNotNull(aggregator.onError(newError(2), 300));
+        assertNull(aggregator.onError(newError(2), 400));
+        assertTrue(aggregator.hasSuppressedErrors());
+        assertEquals(1100, aggregator.getNextSummaryTime());
+
+        /* Not due yet. */
+        assertTrue(aggregator.getSummaries(1099, false).isEmpty());
+
+        /* First stack trace is due. */
+        List<HandledErrorAggregator.Occurrences> summaries = aggregator.getSummaries(1100, false);
+        assertEquals(1, summaries.size());
+        assertEquals(2, summaries.get(0).count);
+        assertEquals(100, summaries.get(0).firstTime);
+        assertEquals(200, summaries.get(0).lastTime);
+        assertSame(lastError, summaries.get(0).error);
+        assertEquals(1400, aggregator.getNextSummaryTime());
+
+        /* Get all remaining ones. */
+        summaries = aggregator.getSummaries(1100, true);
+        assertEquals(1, summaries.size());
+        assertEquals(1, summaries.get(0).count);
+        assertFalse(aggregator.hasSuppressedErrors());
+        assertTrue(aggregator.getSummaries(5000, true).isEmpty());
+    }
+
+    @Test
+    public void summariesOnRateLimitChange() {
+        HandledErrorAggregator aggregator = new HandledErrorAggregator();
+        aggregator.setRateLimit(1, 1000);
+        Throwable error = newError(1);
+        assertNotNull(aggregator.onError(error, 0));
+        assertNull(aggregator.onError(error, 0));
+        List<HandledErrorAggregator.Occurrences> summaries = aggregator.setRateLimit(1, 0);
+        assertEquals(1, summaries.size());
+        assertEquals(1, summaries.get(0).count);
+        assertFalse(aggregator.hasSuppressedErrors());
+    }
+
+    @Test
+    public void forgetLeastRecentFingerprints() {
+        HandledErrorAggregator aggregator = new HandledErrorAggregator();
+        aggregator.setRateLimit(1, 1000);
+        Throwable error = newError(1);
+        assertNotNull(aggregator.onError(error, 0));
+        assertNull(aggregator.onError(error, 0));
+
+        /* Fill with other fingerprints, the first one is forgotten and gets a new bucket. */
+        for (int i = 0; i < HandledErrorAggregator.MAX_FINGERPRINTS; i++) {
+            assertNotNull(aggregator.onError(newError(i + 2), 0));
+        }
+        assertNotNull(aggregator.onError(error, 0));
+
+        /* The occurrence not reported is kept as a summary. */
+        assertTrue(aggregator.hasSuppressedErrors());
+        assertEquals(0, aggregator.getNextSummaryTime());
+        List<HandledErrorAggregator.Occurrences> summaries = aggregator.getSummaries(0, false);
+        assertEquals(1, summaries.size());
+        assertEquals(1, summaries.get(0).count);
+        assertFalse(aggregator.hasSuppressedErrors());
+    }
+
+    @Test
+    public void fingerprint() {
+        Throwable error = newError(1);
+        assertEquals(HandledErrorAggregator.getFingerprint(error), HandledErrorAggregator.getFingerprint(error));
+        assertEquals(HandledErrorAggregator.getFingerprint(error), HandledErrorAggregator.getFingerprint(newError(1)));
+        assertNotEquals(HandledErrorAggregator.getFingerprint(error), HandledErrorAggregator.getFingerprint(newError(2)));
+        assertNotEquals(HandledErrorAggregator.getFingerprint(error), HandledErrorAggregator.getFingerprint(new RuntimeException(error)));
+    }
+}
@@ -6,6 +6,8 @@
 package com.microsoft.appcenter.crashes;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
 
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.channel.Channel;
@@ -17,6 +19,7 @@ import com.microsoft.appcenter.crashes.model.ErrorReport;
 import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HandlerUtils;
 import com.microsoft.appcenter.utils.context.UserIdContext;
 
 import org.junit.Test;
@@ -33,12 +36,14 @@ import static com.microsoft.appcenter.Flags.DEFAULTS;
 import static com.microsoft.appcenter.test.TestUtils.generateString;
 import static java.util.Collections.singletonList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
@@ -47,6 +52,7 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 
 public class HandledErrorTest extends AbstractCrashesTest {
@@ -65,7 +71,7 @@ public class HandledErrorTest extends AbstractCrashesTest {
     @Test
     public void notInit() {
         Crashes.trackError(EXCEPTION, null, null);
-        verifyStatic();
+        verifyStatic(never());
         AppCenterLog.error(eq(AppCenter.LOG_TAG), anyString());
     }
 
@@ -246,6 +252,91 @@ public class HandledErrorTest extends AbstractCrashesTest {
         assertEquals("charlie", log.getValue().getUserId());
     }
 
+    @Test
+    public void trackErrorRateLimit() {
+        Handler mainHandler = mock(Handler.class);
+        when(HandlerUtils.getMainHandler()).thenReturn(mainHandler);
+        startCrashes();
+        assertFalse(Crashes.setHandledErrorRateLimit(0, 60));
+        assertFalse(Crashes.setHandledErrorRateLimit(1, -1));
+        assertTrue(Crashes.setHandledErrorRateLimit(1, 1));
+
+        /* Only the first error of a loop is sent. */
+        for (int i = 0; i < 3; i++) {
+            Crashes.trackError(EXCEPTION);
+        }
+        ArgumentCaptor<HandledErrorLog> log = ArgumentCaptor.forClass(HandledErrorLog.class);
+        verify(mChannel).enqueue(log.capture(), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+        assertNull(log.getValue().getProperties());
+        verify(mainHandler).postDelayed(any(Runnable.class), anyLong());
+
+        /* Another stack trace is not limited. */
+        Crashes.trackError(new IllegalStateException());
+        verify(mChannel, times(2)).enqueue(any(HandledErrorLog.class), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+
+        /* After the window, the next error reports the skipped ones and keeps its properties. */
+        when(SystemClock.elapsedRealtime()).thenReturn(System.currentTimeMillis() + 1100);
+        Crashes.trackError(EXCEPTION, Collections.singletonMap("a", "b"), null);
+        verify(mChannel, times(3)).enqueue(log.capture(), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+        Map<String, String> properties = log.getValue().getProperties();
+        assertEquals(4, properties.size());
+        assertEquals("3", properties.get(Crashes.PROPERTY_OCCURRENCE_COUNT));
+        assertNotNull(properties.get(Crashes.PROPERTY_FIRST_OCCURRENCE));
+        assertNotNull(properties.get(Crashes.PROPERTY_LAST_OCCURRENCE));
+        assertEquals("b", properties.get("a"));
+
+        /* Nothing left to summarize. */
+        mCrashes.onApplicationEnterBackground();
+        verify(mChannel, times(3)).enqueue(any(HandledErrorLog.class), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+    }
+
+    @Test
+    public void trackErrorRateLimitSummaries() {
+        Handler mainHandler = mock(Handler.class);
+        when(HandlerUtils.getMainHandler()).thenReturn(mainHandler);
+        startCrashes();
+        Crashes.setHandledErrorRateLimit(1, 60);
+        for (int i = 0; i < 3; i++) {
+            Crashes.trackError(EXCEPTION);
+        }
+
+        /* The error that never recurs is summarized when the scheduled check runs after the window. */
+        ArgumentCaptor<Runnable> sender = ArgumentCaptor.forClass(Runnable.class);
+        verify(mainHandler).postDelayed(sender.capture(), eq(60000L));
+        when(SystemClock.elapsedRealtime()).thenReturn(System.currentTimeMillis() + 60000);
+        sender.getValue().run();
+        ArgumentCaptor<HandledErrorLog> log = ArgumentCaptor.forClass(HandledErrorLog.class);
+        verify(mChannel, times(2)).enqueue(log.capture(), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+        Map<String, String> properties = log.getValue().getProperties();
+        assertEquals(3, properties.size());
+        assertEquals("2", properties.get(Crashes.PROPERTY_OCCURRENCE_COUNT));
+        assertEquals(EXCEPTION.getMessage(), log.getValue().getException().getMessage());
+
+        /* Going to background sends all summaries. */
+        Crashes.trackError(EXCEPTION);
+        Crashes.trackError(EXCEPTION);
+        verify(mChannel, times(3)).enqueue(any(HandledErrorLog.class), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+        mCrashes.onApplicationEnterBackground();
+        verify(mChannel, times(4)).enqueue(log.capture(), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+        assertEquals("1", log.getValue().getProperties().get(Crashes.PROPERTY_OCCURRENCE_COUNT));
+
+        /* Changing the limit sends the summaries too. */
+        Crashes.trackError(EXCEPTION);
+        Crashes.trackError(EXCEPTION);
+        Crashes.setHandledErrorRateLimit(1, 0);
+        verify(mChannel, times(5)).enqueue(log.capture(), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+        assertEquals("2", log.getValue().getProperties().get(Crashes.PROPERTY_OCCURRENCE_COUNT));
+    }
+
+    @Test
+    public void trackErrorNotLimitedByDefault() {
+        startCrashes();
+        for (int i = 0; i < 20; i++) {
+            Crashes.trackError(EXCEPTION);
+        }
+        verify(mChannel, times(20)).enqueue(any(HandledErrorLog.class), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+    }
+
     @Test
     public void trackErrorWithOneAttachment() {
 
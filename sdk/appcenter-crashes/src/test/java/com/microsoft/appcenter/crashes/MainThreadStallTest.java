@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.microsoft.appcenter.channel.Channel;
+import com.microsoft.appcenter.crashes.ingestion.models.ErrorAttachmentLog;
+import com.microsoft.appcenter.crashes.ingestion.models.HandledErrorLog;
+import com.microsoft.appcenter.crashes.model.MainThreadStallException;
+import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.utils.HandlerUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.microsoft.appcenter.Flags.DEFAULTS;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyNew;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+import static org.powermock.api.mockito.PowerMockito.whenNew;
+
+public class MainThreadStallTest extends AbstractCrashesTest {
+
+    private static final StackTraceElement[] BLOCKED_STACK_TRACE = {
+            new StackTraceElement("java.lang.Thread", "sleep", "Thread.java", 440),
+            new StackTraceElement("com.contoso.MainActivity", "onClick", "MainActivity.java", 42)
+    };
+
+    @Mock
+    private Channel mChannel;
+
+    @Mock
+    private Thread mMainThread;
+
+    @Mock
+    private MainThreadWatchdog mWatchdog;
+
+    @Mock
+    private Handler mMainHandler;
+
+    private Crashes mCrashes;
+
+    @Before
+    public void setUpStall() throws java.lang.Exception {
+        mockStatic(ErrorLogHelper.class);
+        File dir = mock(File.class);
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(dir);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.validateProperties(anyMapOf(String.class, String.class), anyString())).thenCallRealMethod();
+        when(HandlerUtils.getMainHandler()).thenReturn(mMainHandler);
+        mockStatic(Looper.class);
+        Looper mainLooper = mock(Looper.class);
+        when(Looper.getMainLooper()).thenReturn(mainLooper);
+        when(mainLooper.getThread()).thenReturn(mMainThread);
+        when(mMainThread.getStackTrace()).thenReturn(BLOCKED_STACK_TRACE);
+        whenNew(MainThreadWatchdog.class).withAnyArguments().thenReturn(mWatchdog);
+        mCrashes = Crashes.getInstance();
+    }
+
+    private void startCrashes() {
+        mCrashes.onStarting(mAppCenterHandler);
+        mCrashes.onStarted(mock(Context.class), mChannel, "mock", null, true);
+    }
+
+    @Test
+    public void invalidWatchdog() {
+        assertFalse(Crashes.setMainThreadWatchdog(-1, 1000, false));
+        assertFalse(Crashes.setMainThreadWatchdog(100, 50, false));
+        assertTrue(Crashes.setMainThreadWatchdog(0, 0, false));
+        assertTrue(Crashes.setMainThreadWatchdog(100, 100, true));
+    }
+
+    @Test
+    public void watchdogFollowsEnabledState() throws java.lang.Exception {
+
+        /* Disabled by default. */
+        startCrashes();
+        verifyNew(MainThreadWatchdog.class, never()).withArguments(anyLong(), anyLong(), any(MainThreadWatchdog.Listener.class));
+
+        /* Started when configured. */
+        assertTrue(Crashes.setMainThreadWatchdog(100, 1000, false));
+        verifyNew(MainThreadWatchdog.class).withArguments(eq(100L), eq(1000L), any(MainThreadWatchdog.Listener.class));
+        verify(mWatchdog).start();
+
+        /* Restarted when configuration changes. */
+        assertTrue(Crashes.setMainThreadWatchdog(200, 2000, true));
+        verify(mWatchdog).stop();
+        verifyNew(MainThreadWatchdog.class).withArguments(eq(200L), eq(2000L), any(MainThreadWatchdog.Listener.class));
+        verify(mWatchdog, times(2)).start();
+
+        /* Follows enabled state. */
+        Crashes.setEnabled(false);
+        verify(mWatchdog, times(2)).stop();
+        Crashes.setEnabled(true);
+        verify(mWatchdog, times(3)).start();
+
+        /* Stopped when disabled by configuration. */
+        assertTrue(Crashes.setMainThreadWatchdog(0, 0, false));
+        verify(mWatchdog, times(3)).stop();
+        verify(mWatchdog, times(3)).start();
+    }
+
+    @Test
+    public void watchdogConfiguredBeforeStart() throws java.lang.Exception {
+        final MainThreadWatchdog.Listener[] listener = new MainThreadWatchdog.Listener[1];
+        whenNew(MainThreadWatchdog.class).withAnyArguments().thenAnswer(new Answer<MainThreadWatchdog>() {
+
+            @Override
+            public MainThreadWatchdog answer(InvocationOnMock invocation) {
+                listener[0] = (MainThreadWatchdog.Listener) invocation.getArguments()[2];
+                return mWatchdog;
+            }
+        });
+        assertTrue(Crashes.setMainThreadWatchdog(100, 1000, false));
+        verify(mWatchdog, never()).start();
+        startCrashes();
+        verifyNew(MainThreadWatchdog.class).withArguments(eq(100L), eq(1000L), any(MainThreadWatchdog.Listener.class));
+        verify(mWatchdog).start();
+
+        /* Stalls are reported through the listener. */
+        listener[0].onStall(1500);
+        verify(mChannel).enqueue(any(HandledErrorLog.class), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+    }
+
+    @Test
+    public void reportStall() {
+        startCrashes();
+        mCrashes.reportMainThreadStall(5000, false);
+
+        /* Main thread stack is reported as a handled error with the duration. */
+        ArgumentCaptor<Throwable> stall = ArgumentCaptor.forClass(Throwable.class);
+        verifyStatic();
+        ErrorLogHelper.getSharedModelExceptionFromThrowable(stall.capture());
+        assertTrue(stall.getValue() instanceof MainThreadStallException);
+        assertEquals(5000, ((MainThreadStallException) stall.getValue()).getDuration());
+        assertArrayEquals(BLOCKED_STACK_TRACE, stall.getValue().getStackTrace());
+        ArgumentCaptor<Log> log = ArgumentCaptor.forClass(Log.class);
+        verify(mChannel).enqueue(log.capture(), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+        assertTrue(log.getValue() instanceof HandledErrorLog);
+        assertEquals(Collections.singletonMap(Crashes.PROPERTY_STALL_DURATION, "5000"), ((HandledErrorLog) log.getValue()).getProperties());
+
+        /* Same stack is not reported again but counted. */
+        mCrashes.reportMainThreadStall(8000, true);
+        verify(mChannel).enqueue(any(Log.class), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+        verify(mMainHandler).postDelayed(any(Runnable.class), eq(Crashes.STALL_DEDUPLICATION_WINDOW));
+
+        /* Another stack is reported, with the other threads attached. */
+        StackTraceElement[] otherStackTrace = {new StackTraceElement("com.contoso.Storage", "read", "Storage.java", 7)};
+        when(mMainThread.getStackTrace()).thenReturn(otherStackTrace);
+        mCrashes.reportMainThreadStall(3000, true);
+        verify(mChannel, times(3)).enqueue(log.capture(), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+        List<Log> logs = log.getAllValues();
+        HandledErrorLog errorLog = (HandledErrorLog) logs.get(logs.size() - 2);
+        assertEquals("3000", errorLog.getProperties().get(Crashes.PROPERTY_STALL_DURATION));
+        ErrorAttachmentLog attachment = (ErrorAttachmentLog) logs.get(logs.size() - 1);
+        assertEquals(errorLog.getId(), attachment.getErrorId());
+        assertEquals(Crashes.STALL_THREADS_FILE_NAME, attachment.getFileName());
+        assertTrue(new String(attachment.getData()).contains(Thread.currentThread().getName()));
+
+        /* The stall that was counted is sent as a summary when going to background. */
+        mCrashes.onApplicationEnterBackground();
+        verify(mChannel, times(4)).enqueue(log.capture(), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+        Map<String, String> properties = ((HandledErrorLog) log.getValue()).getProperties();
+        assertEquals("8000", properties.get(Crashes.PROPERTY_STALL_DURATION));
+        assertEquals("1", properties.get(Crashes.PROPERTY_OCCURRENCE_COUNT));
+    }
+
+    @Test
+    public void reportStallAfterDeduplicationWindow() {
+        startCrashes();
+        mCrashes.reportMainThreadStall(5000, false);
+        mCrashes.reportMainThreadStall(6000, false);
+
+        /* The next report counts the stall that was not reported. */
+        when(SystemClock.elapsedRealtime()).thenReturn(System.currentTimeMillis() + Crashes.STALL_DEDUPLICATION_WINDOW);
+        mCrashes.reportMainThreadStall(7000, false);
+        ArgumentCaptor<HandledErrorLog> log = ArgumentCaptor.forClass(HandledErrorLog.class);
+        verify(mChannel, times(2)).enqueue(log.capture(), eq(mCrashes.getGroupName()), eq(DEFAULTS));
+        Map<String, String> properties = log.getValue().getProperties();
+        assertEquals("7000", properties.get(Crashes.PROPERTY_STALL_DURATION));
+        assertEquals("2", properties.get(Crashes.PROPERTY_OCCURRENCE_COUNT));
+    }
+
+    @Test
+    public void stackTracesText() {
+        Thread thread = new Thread("worker");
+        StackTraceElement[] stackTrace = {new StackTraceElement("com.contoso.Worker", "run", "Worker.java", 12)};
+        String text = Crashes.getStackTracesText(Collections.singletonMap(thread, stackTrace));
+        assertEquals("\"worker\" id=" + thread.getId() + "\n\tat com.contoso.Worker.run(Worker.java:12)\n\n", text);
+    }
+}
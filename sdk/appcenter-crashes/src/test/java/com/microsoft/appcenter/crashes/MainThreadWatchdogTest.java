@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import com.microsoft.appcenter.utils.HandlerUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+public class MainThreadWatchdogTest extends AbstractCrashesTest {
+
+    @Mock
+    private Handler mMainHandler;
+
+    @Mock
+    private MainThreadWatchdog.Listener mListener;
+
+    @Before
+    public void setUpWatchdog() {
+        when(HandlerUtils.getMainHandler()).thenReturn(mMainHandler);
+    }
+
+    @Test
+    public void reportStallOnce() {
+        MainThreadWatchdog watchdog = new MainThreadWatchdog(100, 1000, mListener);
+
+        /* First check posts a tick. */
+        when(SystemClock.uptimeMillis()).thenReturn(0L);
+        when(SystemClock.currentThreadTimeMillis()).thenReturn(3L);
+        watchdog.check();
+        ArgumentCaptor<Runnable> tick = ArgumentCaptor.forClass(Runnable.class);
+        verify(mMainHandler).post(tick.capture());
+        assertEquals(3L, watchdog.getCpuTime());
+
+        /* Tick pending below the threshold. */
+        when(SystemClock.uptimeMillis()).thenReturn(999L);
+        watchdog.check();
+        verify(mListener, never()).onStall(anyLong());
+
+        /* Stall reported once. */
+        when(SystemClock.uptimeMillis()).thenReturn(1000L);
+        watchdog.check();
+        when(SystemClock.uptimeMillis()).thenReturn(5000L);
+        watchdog.check();
+        verify(mListener).onStall(1000L);
+        verify(mMainHandler).post(tick.getValue());
+
+        /* Main thread runs the tick: the same tick is posted again and a new stall can be reported. */
+        tick.getValue().run();
+        when(SystemClock.uptimeMillis()).thenReturn(6000L);
+        watchdog.check();
+        verify(mMainHandler, times(2)).post(tick.getValue());
+        when(SystemClock.uptimeMillis()).thenReturn(8000L);
+        watchdog.check();
+        verify(mListener).onStall(2000L);
+    }
+
+    @Test
+    public void startAndStop() throws InterruptedException {
+        MainThreadWatchdog watchdog = new MainThreadWatchdog(10, 100, mListener);
+        watchdog.start();
+        watchdog.start();
+        verify(mMainHandler, timeout(1000)).post(any(Runnable.class));
+        assertTrue(isWatchdogThreadAlive());
+        watchdog.stop();
+        watchdog.stop();
+        verify(mMainHandler).removeCallbacks(any(Runnable.class));
+
+        /* Thread exits. */
+        for (int i = 0; i < 100 && isWatchdogThreadAlive(); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(isWatchdogThreadAlive());
+    }
+
+    private static boolean isWatchdogThreadAlive() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (MainThreadWatchdog.THREAD_NAME.equals(thread.getName()) && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
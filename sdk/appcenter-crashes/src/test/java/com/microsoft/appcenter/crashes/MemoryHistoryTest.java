@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes;
+
+import com.microsoft.appcenter.crashes.utils.MappedRingBuffer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryHistoryTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private MemoryHistory openHistory(File file) throws IOException {
+        return new MemoryHistory(new MappedRingBuffer(file, MemoryHistory.RECORD_SIZE, MemoryHistory.CAPACITY));
+    }
+
+    @Test
+    public void recordAndExport() throws IOException {
+        File file = mTemporaryFolder.newFile();
+        MemoryHistory memoryHistory = openHistory(file);
+        assertNull(memoryHistory.getStartTime());
+        assertNull(memoryHistory.toCsv());
+        long startTime = System.currentTimeMillis();
+        memoryHistory.recordSample();
+        memoryHistory.recordTrim(TRIM_MEMORY_RUNNING_CRITICAL);
+        Long recordedStartTime = memoryHistory.getStartTime();
+        assertNotNull(recordedStartTime);
+        assertTrue(recordedStartTime >= startTime);
+
+        /* Export. */
+        String[] lines = memoryHistory.toCsv().split("\n");
+        assertEquals(3, lines.length);
+        assertEquals(MemoryHistory.CSV_HEADER, lines[0] + "\n");
+        String[] sample = lines[1].split(",");
+        assertEquals(5, sample.length);
+        assertEquals(String.valueOf(recordedStartTime), sample[0]);
+        assertEquals("sample", sample[1]);
+        assertTrue(Long.parseLong(sample[2]) > 0);
+        assertEquals(Runtime.getRuntime().maxMemory(), Long.parseLong(sample[3]));
+        assertEquals(String.valueOf(TRIM_MEMORY_RUNNING_CRITICAL), lines[2].split(",")[1]);
+
+        /* Records survive the process. */
+        memoryHistory = openHistory(file);
+        assertEquals(recordedStartTime, memoryHistory.getStartTime());
+        assertEquals(3, memoryHistory.toCsv().split("\n").length);
+        memoryHistory.clear();
+        assertNull(memoryHistory.getStartTime());
+    }
+
+    @Test
+    public void keepLatestRecords() throws IOException {
+        MemoryHistory memoryHistory = openHistory(mTemporaryFolder.newFile());
+        for (int i = 0; i < MemoryHistory.CAPACITY * 2; i++) {
+            memoryHistory.recordTrim(i);
+        }
+        String[] lines = memoryHistory.toCsv().split("\n");
+        assertEquals(MemoryHistory.CAPACITY + 1, lines.length);
+        assertEquals(String.valueOf(MemoryHistory.CAPACITY), lines[1].split(",")[1]);
+        assertEquals(String.valueOf(MemoryHistory.CAPACITY * 2 - 1), lines[lines.length - 1].split(",")[1]);
+    }
+}
@@ -7,6 +7,9 @@ package com.microsoft.appcenter.crashes.ingestion.models;
 
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
 import java.util.UUID;
 
 import static com.microsoft.appcenter.crashes.ingestion.models.ErrorAttachmentLog.CHARSET;
@@ -42,6 +45,28 @@ public class ErrorAttachmentLogTest {
         assertEquals(contentType, attachment.getContentType());
     }
 
+    @Test
+    public void attachmentWithFile() {
+        File file = new File("log.txt");
+        ErrorAttachmentLog attachment = ErrorAttachmentLog.attachmentWithFile(file, ErrorAttachmentLog.CONTENT_TYPE_TEXT_PLAIN);
+        assertNotNull(attachment);
+        assertNull(attachment.getData());
+        assertEquals(file, attachment.getDataFile());
+        assertEquals("log.txt", attachment.getFileName());
+        assertEquals(ErrorAttachmentLog.CONTENT_TYPE_TEXT_PLAIN, attachment.getContentType());
+    }
+
+    @Test
+    public void attachmentWithStream() {
+        InputStream stream = new ByteArrayInputStream(new byte[0]);
+        ErrorAttachmentLog attachment = ErrorAttachmentLog.attachmentWithStream(stream, "image.png", "image/png");
+        assertNotNull(attachment);
+        assertNull(attachment.getData());
+        assertEquals(stream, attachment.getDataStream());
+        assertEquals("image.png", attachment.getFileName());
+        assertEquals("image/png", attachment.getContentType());
+    }
+
     @Test
     public void attachmentWithoutFilename() {
         String text = "Hello World!";
@@ -79,5 +104,15 @@ public class ErrorAttachmentLogTest {
             log.setFileName(null);
             assertTrue(log.isValid());
         }
+        {
+            log.setData(null);
+            log.setDataFile(new File("file"));
+            assertTrue(log.isValid());
+        }
+        {
+            log.setDataFile(null);
+            log.setDataStream(new ByteArrayInputStream(new byte[0]));
+            assertTrue(log.isValid());
+        }
     }
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BreadcrumbBufferTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void addAndExport() throws IOException {
+        BreadcrumbBuffer breadcrumbs = new BreadcrumbBuffer(mTemporaryFolder.newFile(), 3, 5);
+        assertNull(breadcrumbs.getStartTime());
+        assertNull(breadcrumbs.toText());
+        breadcrumbs.add(1, "one");
+        breadcrumbs.add(2, "");
+        assertEquals(Long.valueOf(1), breadcrumbs.getStartTime());
+        assertEquals("1 one\n2 \n", breadcrumbs.toText());
+
+        /* Truncate, keep one line per breadcrumb and overwrite the oldest ones. */
+        breadcrumbs.add(3, "a\nb\rcdef");
+        breadcrumbs.add(4, "four");
+        assertEquals(Long.valueOf(2), breadcrumbs.getStartTime());
+        assertEquals("2 \n3 a b c\n4 four\n", breadcrumbs.toText());
+        for (int i = 5; i <= 100; i++) {
+            breadcrumbs.add(i, String.valueOf(i));
+        }
+        assertEquals("98 98\n99 99\n100 100\n", breadcrumbs.toText());
+        breadcrumbs.clear();
+        assertNull(breadcrumbs.toText());
+        breadcrumbs.add(101, "new");
+        assertEquals("101 new\n", breadcrumbs.toText());
+    }
+
+    @Test
+    public void keepBreadcrumbsOfPreviousProcess() throws IOException {
+        File file = mTemporaryFolder.newFile();
+        BreadcrumbBuffer breadcrumbs = new BreadcrumbBuffer(file, 3, 5);
+        for (int i = 1; i <= 4; i++) {
+            breadcrumbs.add(i, String.valueOf(i));
+        }
+        assertEquals(BreadcrumbBuffer.HEADER_SIZE + 3 * (18 + 2 * 5), file.length());
+
+        /* Same layout keeps breadcrumbs until cleared. */
+        breadcrumbs = new BreadcrumbBuffer(file, 3, 5);
+        assertEquals("2 2\n3 3\n4 4\n", breadcrumbs.toText());
+        breadcrumbs.clear();
+        breadcrumbs.add(5, "5");
+        assertEquals("5 5\n", breadcrumbs.toText());
+
+        /* Another layout resets. */
+        breadcrumbs = new BreadcrumbBuffer(file, 3, 6);
+        assertNull(breadcrumbs.toText());
+    }
+
+    @Test
+    public void concurrentAdd() throws Exception {
+        final int threadCount = 4;
+        final int breadcrumbsPerThread = 1000;
+        final BreadcrumbBuffer breadcrumbs = new BreadcrumbBuffer(mTemporaryFolder.newFile(), threadCount * breadcrumbsPerThread, 10);
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int thread = t;
+            threads[t] = new Thread() {
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < breadcrumbsPerThread; i++) {
+                        breadcrumbs.add(i, thread + "-" + i);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        /* Every breadcrumb is kept once. */
+        String[] lines = breadcrumbs.toText().split("\n");
+        Set<String> messages = new HashSet<>();
+        for (String line : lines) {
+            messages.add(line.split(" ")[1]);
+        }
+        assertEquals(threadCount * breadcrumbsPerThread, lines.length);
+        assertEquals(threadCount * breadcrumbsPerThread, messages.size());
+    }
+}
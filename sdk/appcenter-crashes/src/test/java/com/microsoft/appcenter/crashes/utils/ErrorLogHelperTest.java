@@ -20,6 +20,7 @@ import com.microsoft.appcenter.crashes.ingestion.models.Thread;
 import com.microsoft.appcenter.crashes.model.ErrorReport;
 import com.microsoft.appcenter.crashes.model.TestCrashException;
 import com.microsoft.appcenter.ingestion.models.Device;
+import com.microsoft.appcenter.ingestion.models.WrapperSdk;
 import com.microsoft.appcenter.test.TestUtils;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
@@ -38,29 +39,43 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TimeZone;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 
 import static com.microsoft.appcenter.test.TestUtils.generateString;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.verifyStatic;
@@ -71,6 +86,11 @@ import static org.powermock.api.mockito.PowerMockito.whenNew;
 @PrepareForTest({DeviceInfoHelper.class, Process.class, Build.class, ErrorLogHelper.class, FileManager.class, TextUtils.class, AppCenterLog.class})
 public class ErrorLogHelperTest {
 
+    /**
+     * Number of frames shared by all threads in {@link #createErrorLogWithPoolThreads(int)}.
+     */
+    private static final int POOL_THREAD_FRAMES = 12;
+
     @Rule
     public PowerMockRule mRule = new PowerMockRule();
 
@@ -85,6 +105,8 @@ public class ErrorLogHelperTest {
 
     @After
     public void tearDown() throws java.lang.Exception {
+        ErrorLogHelper.clearCrashContext();
+        ErrorLogHelper.clearStaticState();
         TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", 0);
         TestUtils.setInternalState(Build.class, "SUPPORTED_ABIS", null);
         TestUtils.setInternalState(Build.class, "CPU_ABI", null);
@@ -180,6 +202,122 @@ public class ErrorLogHelperTest {
         }
     }
 
+    @Test
+    public void createErrorLogWithPreparedContext() throws java.lang.Exception {
+
+        /* Mock device and process name. */
+        Context mockContext = mock(Context.class);
+        when(Process.myPid()).thenReturn(123);
+        Device mockDevice = new Device();
+        mockDevice.setLocale(Locale.getDefault().toString());
+        mockDevice.setTimeZoneOffset(TimeZone.getDefault().getOffset(System.currentTimeMillis()) / 60 / 1000);
+        when(DeviceInfoHelper.getDeviceInfo(any(Context.class))).thenReturn(mockDevice);
+        ActivityManager activityManager = mock(ActivityManager.class);
+        RunningAppProcessInfo runningAppProcessInfo = new RunningAppProcessInfo(null, 0, null);
+        runningAppProcessInfo.pid = 123;
+        runningAppProcessInfo.processName = "right.process";
+        when(mockContext.getSystemService(Context.ACTIVITY_SERVICE)).thenReturn(activityManager);
+        when(activityManager.getRunningAppProcesses()).thenReturn(Collections.singletonList(runningAppProcessInfo));
+
+        /* Prepare at startup. */
+        ErrorLogHelper.prepareCrashContext(mockContext);
+        verifyStatic();
+        DeviceInfoHelper.getDeviceInfo(mockContext);
+        verify(activityManager).getRunningAppProcesses();
+
+        /* Crash does not query system services again. */
+        ManagedErrorLog errorLog = ErrorLogHelper.createErrorLog(mockContext, java.lang.Thread.currentThread(), new java.lang.Exception(), java.lang.Thread.getAllStackTraces(), 2000);
+        assertEquals(mockDevice, errorLog.getDevice());
+        assertEquals("right.process", errorLog.getProcessName());
+        verifyStatic();
+        DeviceInfoHelper.getDeviceInfo(mockContext);
+        verify(activityManager).getRunningAppProcesses();
+
+        /* Prepared device is not used after the wrapper SDK changed. */
+        when(DeviceInfoHelper.getWrapperSdk()).thenReturn(new WrapperSdk());
+        ErrorLogHelper.createErrorLog(mockContext, java.lang.Thread.currentThread(), new java.lang.Exception(), java.lang.Thread.getAllStackTraces(), 2000);
+        verifyStatic(times(2));
+        DeviceInfoHelper.getDeviceInfo(mockContext);
+
+        /* Nor after the time zone changed. */
+        ErrorLogHelper.prepareCrashContext(mockContext);
+        mockDevice.setTimeZoneOffset(mockDevice.getTimeZoneOffset() + 60);
+        ErrorLogHelper.createErrorLog(mockContext, java.lang.Thread.currentThread(), new java.lang.Exception(), java.lang.Thread.getAllStackTraces(), 2000);
+        verifyStatic(times(4));
+        DeviceInfoHelper.getDeviceInfo(mockContext);
+
+        /* Failing to prepare device falls back to querying when crashing. */
+        when(DeviceInfoHelper.getDeviceInfo(any(Context.class))).thenThrow(new DeviceInfoHelper.DeviceInfoException("mock", new PackageManager.NameNotFoundException()));
+        ErrorLogHelper.prepareCrashContext(mockContext);
+        errorLog = ErrorLogHelper.createErrorLog(mockContext, java.lang.Thread.currentThread(), new java.lang.Exception(), java.lang.Thread.getAllStackTraces(), 2000);
+        assertNull(errorLog.getDevice());
+        verifyStatic(times(6));
+        DeviceInfoHelper.getDeviceInfo(mockContext);
+    }
+
+    @Test
+    public void createErrorLogWithManyLiveThreads() throws java.lang.Exception {
+
+        /* Start threads that stay alive until the end of the test. */
+        final int threadCount = 200;
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        final CountDownLatch startedLatch = new CountDownLatch(threadCount);
+        java.lang.Thread[] threads = new java.lang.Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new java.lang.Thread() {
+
+                @Override
+                public void run() {
+                    startedLatch.countDown();
+                    try {
+                        releaseLatch.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        startedLatch.await();
+        try {
+            Context mockContext = mock(Context.class);
+            when(DeviceInfoHelper.getDeviceInfo(any(Context.class))).thenReturn(mock(Device.class));
+            ErrorLogHelper.prepareCrashContext(mockContext);
+
+            /* Measure what the crash handler does. */
+            long startTime = System.currentTimeMillis();
+            Map<java.lang.Thread, StackTraceElement[]> allStackTraces = java.lang.Thread.getAllStackTraces();
+            ManagedErrorLog errorLog = ErrorLogHelper.createErrorLog(mockContext, java.lang.Thread.currentThread(), new java.lang.Exception(), allStackTraces, 2000);
+            long duration = System.currentTimeMillis() - startTime;
+            assertTrue("Saving crash took " + duration + "ms", duration < ErrorLogHelper.THREADS_TIME_BUDGET);
+
+            /* Thread in error comes first and all threads are there. */
+            assertTrue(errorLog.getThreads().size() > threadCount);
+            assertEquals(allStackTraces.size(), errorLog.getThreads().size());
+            assertEquals(java.lang.Thread.currentThread().getId(), errorLog.getThreads().get(0).getId());
+        } finally {
+            releaseLatch.countDown();
+            for (java.lang.Thread thread : threads) {
+                thread.join();
+            }
+        }
+    }
+
+    @Test
+    public void createErrorLogOverThreadsTimeBudget() {
+        Context mockContext = mock(Context.class);
+        mockStatic(System.class);
+        when(System.currentTimeMillis()).thenReturn(0L, ErrorLogHelper.THREADS_TIME_BUDGET + 1);
+        java.lang.Thread otherThread = new java.lang.Thread();
+        Map<java.lang.Thread, StackTraceElement[]> allStackTraces = new HashMap<>();
+        allStackTraces.put(otherThread, new StackTraceElement[0]);
+        allStackTraces.put(java.lang.Thread.currentThread(), java.lang.Thread.currentThread().getStackTrace());
+
+        /* Only the thread in error is kept. */
+        ManagedErrorLog errorLog = ErrorLogHelper.createErrorLog(mockContext, java.lang.Thread.currentThread(), new java.lang.Exception(), allStackTraces, 2000);
+        assertEquals(1, errorLog.getThreads().size());
+        assertEquals(java.lang.Thread.currentThread().getId(), errorLog.getThreads().get(0).getId());
+    }
+
     private void sanityCheck(Exception exception) {
         assertNotNull(exception);
         assertNotNull(exception.getType());
@@ -192,6 +330,99 @@ public class ErrorLogHelperTest {
         }
     }
 
+    @Test
+    public void createErrorLogSharesIdenticalFrames() {
+        Context mockContext = mock(Context.class);
+        java.lang.Thread otherThread = new java.lang.Thread();
+        Map<java.lang.Thread, StackTraceElement[]> allStackTraces = new HashMap<>();
+        allStackTraces.put(java.lang.Thread.currentThread(), new StackTraceElement[]{
+                new StackTraceElement("java.lang.Object", "wait", "Object.java", 442),
+                new StackTraceElement("com.example.Main", "run", "Main.java", 1)
+        });
+        allStackTraces.put(otherThread, new StackTraceElement[]{
+                new StackTraceElement("java.lang.Object", "wait", "Object.java", 442),
+                new StackTraceElement("com.example.Main", "run", "Main.java", 2)
+        });
+        ManagedErrorLog errorLog = ErrorLogHelper.createErrorLog(mockContext, java.lang.Thread.currentThread(), new java.lang.Exception(), allStackTraces, 0);
+        List<StackFrame> errorThreadFrames = errorLog.getThreads().get(0).getFrames();
+        List<StackFrame> otherThreadFrames = errorLog.getThreads().get(1).getFrames();
+        assertSame(errorThreadFrames.get(0), otherThreadFrames.get(0));
+        assertNotEquals(errorThreadFrames.get(1), otherThreadFrames.get(1));
+    }
+
+    @Test
+    public void compactAndExpandThreads() throws JSONException {
+        ManagedErrorLog errorLog = createErrorLogWithPoolThreads(10);
+        List<Thread> expectedThreads = createErrorLogWithPoolThreads(10).getThreads();
+
+        /* Threads only keep frame indexes. */
+        ErrorLogHelper.compactThreads(errorLog);
+        assertEquals(POOL_THREAD_FRAMES + 10, errorLog.getFrameTable().size());
+        for (Thread thread : errorLog.getThreads()) {
+            assertNull(thread.getFrames());
+            assertEquals(POOL_THREAD_FRAMES + 1, thread.getFrameIndexes().size());
+        }
+
+        /* Compacting twice does nothing. */
+        List<StackFrame> frameTable = errorLog.getFrameTable();
+        ErrorLogHelper.compactThreads(errorLog);
+        assertSame(frameTable, errorLog.getFrameTable());
+
+        /* Expand back. */
+        ErrorLogHelper.expandThreads(errorLog);
+        assertNull(errorLog.getFrameTable());
+        assertEquals(expectedThreads, errorLog.getThreads());
+
+        /* Expanding a regular log does nothing. */
+        ErrorLogHelper.expandThreads(errorLog);
+        assertEquals(expectedThreads, errorLog.getThreads());
+
+        /* Log without threads. */
+        ManagedErrorLog noThreadsLog = new ManagedErrorLog();
+        ErrorLogHelper.compactThreads(noThreadsLog);
+        assertNull(noThreadsLog.getFrameTable());
+    }
+
+    @Test(expected = JSONException.class)
+    public void expandThreadsWithInvalidFrameIndex() throws JSONException {
+        ManagedErrorLog errorLog = createErrorLogWithPoolThreads(2);
+        ErrorLogHelper.compactThreads(errorLog);
+        errorLog.getThreads().get(0).setFrameIndexes(Collections.singletonList(errorLog.getFrameTable().size()));
+        ErrorLogHelper.expandThreads(errorLog);
+    }
+
+    /**
+     * Create an error log whose threads look like idle pool threads: same frames except the top one.
+     */
+    private static ManagedErrorLog createErrorLogWithPoolThreads(int threadCount) {
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            List<StackFrame> frames = new ArrayList<>();
+            StackFrame topFrame = new StackFrame();
+            topFrame.setClassName("com.example.Task" + i);
+            topFrame.setMethodName("run");
+            topFrame.setLineNumber(i);
+            topFrame.setFileName("Task" + i + ".java");
+            frames.add(topFrame);
+            for (int j = 0; j < POOL_THREAD_FRAMES; j++) {
+                StackFrame frame = new StackFrame();
+                frame.setClassName("java.util.concurrent.ThreadPoolExecutor$Worker" + j);
+                frame.setMethodName("runWorker");
+                frame.setLineNumber(j);
+                frame.setFileName("ThreadPoolExecutor.java");
+                frames.add(frame);
+            }
+            Thread thread = new Thread();
+            thread.setId(i);
+            thread.setName("pool-thread-" + i);
+            thread.setFrames(frames);
+            threads.add(thread);
+        }
+        errorLog.setThreads(threads);
+        return errorLog;
+    }
+
     @Test
     public void createErrorLogWithFailedDeviceGetAndNoActivityManager() throws java.lang.Exception {
 
@@ -331,9 +562,144 @@ public class ErrorLogHelperTest {
         assertNotNull(files);
         assertEquals(0, files.length);
 
-        /* Test getStoredErrorLogFiles. */
-        File file = ErrorLogHelper.getStoredErrorLogFile(UUID.randomUUID());
-        assertNull(file);
+        /* Clean up. */
+        ErrorLogHelper.setErrorLogDirectory(null);
+    }
+
+    @Test
+    public void getStoredFilesById() throws java.lang.Exception {
+        File errorLogFolder = mTemporaryFolder.newFolder("errorLogFolder");
+        ErrorLogHelper.setErrorLogDirectory(errorLogFolder);
+        UUID id = UUID.randomUUID();
+        File errorLogFile = new File(errorLogFolder, id + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
+        File throwableFile = new File(errorLogFolder, id + ErrorLogHelper.THROWABLE_FILE_EXTENSION);
+        assertTrue(errorLogFile.createNewFile());
+        assertTrue(throwableFile.createNewFile());
+
+        /* Look up files. */
+        assertEquals(errorLogFile, ErrorLogHelper.getStoredErrorLogFile(id));
+        assertEquals(throwableFile, ErrorLogHelper.getStoredThrowableFile(id));
+        assertNull(ErrorLogHelper.getStoredErrorLogFile(UUID.randomUUID()));
+        assertNull(ErrorLogHelper.getStoredThrowableFile(UUID.randomUUID()));
+
+        /* Get identifier from file name. */
+        assertEquals(id, ErrorLogHelper.getErrorLogId(errorLogFile));
+        assertNull(ErrorLogHelper.getErrorLogId(throwableFile));
+        assertNull(ErrorLogHelper.getErrorLogId(new File(errorLogFolder, "invalid" + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION)));
+
+        /* Remove files. */
+        ErrorLogHelper.removeStoredErrorLogFile(id);
+        ErrorLogHelper.removeStoredThrowableFile(id);
+        assertFalse(errorLogFile.exists());
+        assertFalse(throwableFile.exists());
+
+        /* Clean up. */
+        ErrorLogHelper.setErrorLogDirectory(null);
+    }
+
+    @Test
+    public void errorAttachmentFiles() throws java.lang.Exception {
+        File errorLogFolder = mTemporaryFolder.newFolder("errorLogFolder");
+        ErrorLogHelper.setErrorLogDirectory(errorLogFolder);
+
+        /* Copy a stream. */
+        UUID id = UUID.randomUUID();
+        InputStream stream = spy(new ByteArrayInputStream("hello".getBytes()));
+        File file = ErrorLogHelper.saveErrorAttachmentStream(id, stream, 10);
+        verify(stream).close();
+        assertEquals("hello", FileManager.read(file));
+        assertTrue(ErrorLogHelper.isErrorAttachmentFile(file));
+        assertFalse(ErrorLogHelper.isErrorAttachmentFile(new File(errorLogFolder, id.toString())));
+
+        /* Copy stops after the limit. */
+        File largeFile = ErrorLogHelper.saveErrorAttachmentStream(UUID.randomUUID(), new ByteArrayInputStream(new byte[100]), 10);
+        assertEquals(11, largeFile.length());
+
+        /* Failed copy is deleted. */
+        InputStream failingStream = mock(InputStream.class);
+        when(failingStream.read(any(byte[].class), anyInt(), anyInt())).thenThrow(new IOException("mock"));
+        UUID failedId = UUID.randomUUID();
+        try {
+            ErrorLogHelper.saveErrorAttachmentStream(failedId, failingStream, 10);
+            fail();
+        } catch (IOException ignored) {
+        }
+        verify(failingStream).close();
+        assertFalse(new File(ErrorLogHelper.getErrorAttachmentsDirectory(), failedId.toString()).exists());
+
+        /* Remove all copies. */
+        ErrorLogHelper.removeErrorAttachmentFiles();
+        assertFalse(file.exists());
+        assertFalse(largeFile.exists());
+
+        /* Clean up. */
+        ErrorLogHelper.setErrorLogDirectory(null);
+    }
+
+    @Test
+    public void memoryHistoryFiles() throws java.lang.Exception {
+        File errorLogFolder = mTemporaryFolder.newFolder("errorLogFolder");
+        ErrorLogHelper.setErrorLogDirectory(errorLogFolder);
+
+        /* Open the history of the current process. */
+        MappedRingBuffer buffer = ErrorLogHelper.openMemoryHistory(8, 4);
+        assertNotNull(buffer);
+        buffer.next().putLong(1);
+        buffer.commit();
+        assertEquals(1, ErrorLogHelper.openMemoryHistory(8, 4).getRecords().size());
+
+        /* Save the history of a crashed process. */
+        mockStatic(TextUtils.class);
+        when(TextUtils.getTrimmedLength(anyString())).thenReturn(1);
+        UUID id = UUID.randomUUID();
+        assertNull(ErrorLogHelper.getStoredMemoryHistoryFile(id));
+        ErrorLogHelper.saveMemoryHistory(id, "history");
+        File file = ErrorLogHelper.getStoredMemoryHistoryFile(id);
+        assertNotNull(file);
+        assertEquals(id + ErrorLogHelper.MEMORY_HISTORY_FILE_EXTENSION, file.getName());
+        assertEquals("history", FileManager.read(file));
+        ErrorLogHelper.removeStoredMemoryHistoryFile(id);
+        assertNull(ErrorLogHelper.getStoredMemoryHistoryFile(id));
+
+        /* Remove all. */
+        ErrorLogHelper.saveMemoryHistory(id, "history");
+        ErrorLogHelper.removeMemoryHistoryFiles();
+        assertNull(ErrorLogHelper.getStoredMemoryHistoryFile(id));
+        assertEquals(0, errorLogFolder.list().length);
+
+        /* Clean up. */
+        ErrorLogHelper.setErrorLogDirectory(null);
+    }
+
+    @Test
+    public void breadcrumbsFiles() throws java.lang.Exception {
+        File errorLogFolder = mTemporaryFolder.newFolder("errorLogFolder");
+        ErrorLogHelper.setErrorLogDirectory(errorLogFolder);
+
+        /* Open the breadcrumbs of the current process. */
+        BreadcrumbBuffer breadcrumbs = ErrorLogHelper.openBreadcrumbs(4, 10);
+        assertNotNull(breadcrumbs);
+        breadcrumbs.add(1, "crumb");
+        assertEquals("1 crumb\n", ErrorLogHelper.openBreadcrumbs(4, 10).toText());
+
+        /* Save the breadcrumbs of a crashed process. */
+        mockStatic(TextUtils.class);
+        when(TextUtils.getTrimmedLength(anyString())).thenReturn(1);
+        UUID id = UUID.randomUUID();
+        assertNull(ErrorLogHelper.getStoredBreadcrumbsFile(id));
+        ErrorLogHelper.saveBreadcrumbs(id, "breadcrumbs");
+        File file = ErrorLogHelper.getStoredBreadcrumbsFile(id);
+        assertNotNull(file);
+        assertEquals(id + ErrorLogHelper.BREADCRUMBS_FILE_EXTENSION, file.getName());
+        assertEquals("breadcrumbs", FileManager.read(file));
+        ErrorLogHelper.removeStoredBreadcrumbsFile(id);
+        assertNull(ErrorLogHelper.getStoredBreadcrumbsFile(id));
+
+        /* Remove all. */
+        ErrorLogHelper.saveBreadcrumbs(id, "breadcrumbs");
+        ErrorLogHelper.removeBreadcrumbsFiles();
+        assertNull(ErrorLogHelper.getStoredBreadcrumbsFile(id));
+        assertEquals(0, errorLogFolder.list().length);
 
         /* Clean up. */
         ErrorLogHelper.setErrorLogDirectory(null);
@@ -400,6 +766,66 @@ public class ErrorLogHelperTest {
         assertEquals(ErrorLogHelper.CAUSE_LIMIT, depth);
     }
 
+    @Test
+    public void sharedModelException() {
+
+        /* Same call site and message share the model. */
+        Exception model = ErrorLogHelper.getSharedModelExceptionFromThrowable(newHandledError("mock"));
+        assertEquals(ErrorLogHelper.getModelExceptionFromThrowable(newHandledError("mock")), model);
+        assertSame(model, ErrorLogHelper.getSharedModelExceptionFromThrowable(newHandledError("mock")));
+        assertSame(model.getInnerExceptions().get(0), ErrorLogHelper.getSharedModelExceptionFromThrowable(newHandledError("mock")).getInnerExceptions().get(0));
+
+        /* Another message is another model but shares the frames. */
+        Exception otherModel = ErrorLogHelper.getSharedModelExceptionFromThrowable(newHandledError("other"));
+        assertNotSame(model, otherModel);
+        assertEquals("other", otherModel.getMessage());
+        assertEquals(model.getFrames().size(), otherModel.getFrames().size());
+        for (int i = 0; i < model.getFrames().size(); i++) {
+            assertSame(model.getFrames().get(i), otherModel.getFrames().get(i));
+        }
+
+        /* Another cause is another model. */
+        RuntimeException error = new RuntimeException("mock", new IllegalStateException("cause"));
+        error.setStackTrace(newHandledError("mock").getStackTrace());
+        Exception causeModel = ErrorLogHelper.getSharedModelExceptionFromThrowable(error);
+        assertNotSame(model, causeModel);
+        assertEquals(IllegalStateException.class.getName(), causeModel.getInnerExceptions().get(0).getType());
+        assertNull(causeModel.getInnerExceptions().get(0).getInnerExceptions());
+
+        /* Least recently used models are evicted. */
+        for (int i = 0; i < ErrorLogHelper.SHARED_EXCEPTION_CACHE_SIZE; i++) {
+            ErrorLogHelper.getSharedModelExceptionFromThrowable(newHandledError("error " + i));
+        }
+        Exception newModel = ErrorLogHelper.getSharedModelExceptionFromThrowable(newHandledError("mock"));
+        assertNotSame(model, newModel);
+        assertEquals(model, newModel);
+
+        /* Shared model is truncated like a regular one. */
+        RuntimeException deepError = new RuntimeException();
+        StackTraceElement[] deepStackTrace = new StackTraceElement[ErrorLogHelper.FRAME_LIMIT + 10];
+        for (int i = 0; i < deepStackTrace.length; i++) {
+            deepStackTrace[i] = new StackTraceElement("Class", "method" + i, "File.java", i);
+        }
+        deepError.setStackTrace(deepStackTrace);
+        Exception deepModel = ErrorLogHelper.getSharedModelExceptionFromThrowable(deepError);
+        assertEquals(ErrorLogHelper.FRAME_LIMIT, deepModel.getFrames().size());
+        deepError.setStackTrace(deepStackTrace);
+        assertSame(deepModel, ErrorLogHelper.getSharedModelExceptionFromThrowable(deepError));
+    }
+
+    private static RuntimeException newHandledError(String message) {
+        RuntimeException error = new RuntimeException(message, new IOException("cause"));
+        error.setStackTrace(new StackTraceElement[]{
+                new StackTraceElement("com.contoso.MainActivity", "onClick", "MainActivity.java", 42),
+                new StackTraceElement("android.view.View", "performClick", "View.java", 6256)
+        });
+        error.getCause().setStackTrace(new StackTraceElement[]{
+                new StackTraceElement("com.contoso.Storage", "read", "Storage.java", 7),
+                new StackTraceElement("com.contoso.MainActivity", "onClick", "MainActivity.java", 41)
+        });
+        return error;
+    }
+
     @Test
     public void getStoredDeviceInfo() throws IOException {
         String deviceInfoString = "{\"sdkName\":\"appcenter.android\",\"sdkVersion\":\"2.5.4.2\",\"model\":\"Android SDK built for x86\",\"oemName\":\"Google\",\"osName\":\"Android\",\"osVersion\":\"9\",\"osBuild\":\"PSR1.180720.075\",\"osApiLevel\":28,\"locale\":\"en_US\",\"timeZoneOffset\":240,\"screenSize\":\"1080x1794\",\"appVersion\":\"2.5.4.2\",\"carrierName\":\"Android\",\"carrierCountry\":\"us\",\"appBuild\":\"59\",\"appNamespace\":\"com.microsoft.appcenter.sasquatch.project\"}";
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.crashes.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MappedRingBufferTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private static void write(MappedRingBuffer buffer, long value) {
+        buffer.next().putLong(value);
+        buffer.commit();
+    }
+
+    private static void assertRecords(MappedRingBuffer buffer, long... values) {
+        List<ByteBuffer> records = buffer.getRecords();
+        assertEquals(values.length, records.size());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(8, records.get(i).remaining());
+            assertEquals(values[i], records.get(i).getLong());
+        }
+    }
+
+    @Test
+    public void wrapAround() throws IOException {
+        MappedRingBuffer buffer = new MappedRingBuffer(mTemporaryFolder.newFile(), 8, 3);
+        assertRecords(buffer);
+        write(buffer, 1);
+        write(buffer, 2);
+        assertRecords(buffer, 1, 2);
+        write(buffer, 3);
+        write(buffer, 4);
+        assertRecords(buffer, 2, 3, 4);
+
+        /* Counter stays bounded once full. */
+        for (long i = 5; i <= 100; i++) {
+            write(buffer, i);
+        }
+        assertRecords(buffer, 98, 99, 100);
+        buffer.clear();
+        assertRecords(buffer);
+    }
+
+    @Test
+    public void keepRecordsOfPreviousProcess() throws IOException {
+        File file = mTemporaryFolder.newFile();
+        MappedRingBuffer buffer = new MappedRingBuffer(file, 8, 3);
+        for (long i = 1; i <= 4; i++) {
+            write(buffer, i);
+        }
+        assertEquals(MappedRingBuffer.HEADER_SIZE + 8 * 3, file.length());
+
+        /* Same layout keeps records. */
+        buffer = new MappedRingBuffer(file, 8, 3);
+        assertRecords(buffer, 2, 3, 4);
+        write(buffer, 5);
+        assertRecords(buffer, 3, 4, 5);
+
+        /* Another layout resets. */
+        buffer = new MappedRingBuffer(file, 8, 5);
+        assertRecords(buffer);
+    }
+
+    @Test
+    public void resetCorruptedHeader() throws IOException {
+        File file = mTemporaryFolder.newFile();
+        MappedRingBuffer buffer = new MappedRingBuffer(file, 8, 3);
+        write(buffer, 1);
+
+        /* Corrupt the counter. */
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.seek(MappedRingBuffer.HEADER_SIZE - 4);
+        randomAccessFile.writeInt(-1);
+        randomAccessFile.close();
+        buffer = new MappedRingBuffer(file, 8, 3);
+        assertTrue(buffer.getRecords().isEmpty());
+    }
+}
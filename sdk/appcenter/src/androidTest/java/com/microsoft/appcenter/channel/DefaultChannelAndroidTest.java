@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.microsoft.appcenter.AndroidTestUtils;
+import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.ingestion.Ingestion;
+import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.ingestion.models.json.MockLogFactory;
+import com.microsoft.appcenter.persistence.DatabasePersistence;
+import com.microsoft.appcenter.persistence.Persistence;
+import com.microsoft.appcenter.utils.storage.FileManager;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.microsoft.appcenter.ingestion.models.json.MockLog.MOCK_LOG_TYPE;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class DefaultChannelAndroidTest {
+
+    private static final String TAG = "DefaultChannel";
+
+    /**
+     * Same as DatabasePersistence.DATABASE, which is not visible from this package.
+     */
+    private static final String DATABASE = "com.microsoft.appcenter.persistence";
+
+    private static final String BACKLOG_GROUP = "backlog";
+
+    private static final String EVENTS_GROUP = "events";
+
+    private static final int BACKLOG_SIZE = 2000;
+
+    private static final int ENQUEUE_COUNT = 200;
+
+    @SuppressLint("StaticFieldLeak")
+    private static Context sContext;
+
+    @BeforeClass
+    public static void setUpClass() {
+        sContext = InstrumentationRegistry.getTargetContext();
+        FileManager.initialize(sContext);
+        SharedPreferencesManager.initialize(sContext);
+        Constants.loadFromContext(sContext);
+    }
+
+    /**
+     * Measure the delay between posting an enqueue and the log being stored, while large batches
+     * are read from a backlog.
+     *
+     * @param separateStorageThread whether batches are read on their own thread.
+     * @return average latency in microseconds.
+     */
+    private static long measureEnqueueLatency(boolean separateStorageThread) throws Exception {
+
+        /* Fill the backlog. */
+        sContext.deleteDatabase(DATABASE);
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        Persistence persistence = new DatabasePersistence(sContext);
+        persistence.setLogSerializer(logSerializer);
+        for (int i = 0; i < BACKLOG_SIZE; i++) {
+            persistence.putLog(AndroidTestUtils.generateMockLog(), BACKLOG_GROUP, Flags.NORMAL);
+        }
+
+        /* Init channel, ingestion never answers so that read batches stay in memory. */
+        HandlerThread appCenterThread = new HandlerThread("AppCenter.Looper");
+        appCenterThread.start();
+        final Handler appCenterHandler = new Handler(appCenterThread.getLooper());
+        HandlerThread storageThread = null;
+        Handler storageHandler = appCenterHandler;
+        if (separateStorageThread) {
+            storageThread = new HandlerThread("AppCenter.Storage");
+            storageThread.start();
+            storageHandler = new Handler(storageThread.getLooper());
+        }
+        final DefaultChannel channel = new DefaultChannel(sContext, UUID.randomUUID().toString(), persistence, mock(Ingestion.class), appCenterHandler, storageHandler);
+        final AtomicLong totalLatency = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(ENQUEUE_COUNT);
+        try {
+            appCenterHandler.post(new Runnable() {
+
+                @Override
+                public void run() {
+                    channel.addGroup(EVENTS_GROUP, 50, 3000, 3, mock(Ingestion.class), null);
+
+                    /* Read the backlog in large batches, this starts reading immediately. */
+                    channel.addGroup(BACKLOG_GROUP, 500, 3000, 3, mock(Ingestion.class), null);
+                }
+            });
+
+            /* Enqueue logs at a steady pace while reading. */
+            for (int i = 0; i < ENQUEUE_COUNT; i++) {
+                final long postTime = System.nanoTime();
+                appCenterHandler.post(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        channel.enqueue(AndroidTestUtils.generateMockLog(), EVENTS_GROUP, Flags.DEFAULTS);
+                        totalLatency.addAndGet(System.nanoTime() - postTime);
+                        done.countDown();
+                    }
+                });
+                Thread.sleep(1);
+            }
+            assertTrue(done.await(1, TimeUnit.MINUTES));
+        } finally {
+            appCenterThread.quit();
+            if (storageThread != null) {
+                storageThread.quit();
+            }
+            persistence.close();
+        }
+        return TimeUnit.NANOSECONDS.toMicros(totalLatency.get() / ENQUEUE_COUNT);
+    }
+
+    @Test
+    public void enqueueLatencyWhileReadingBacklog() throws Exception {
+
+        /* Warm up. */
+        measureEnqueueLatency(true);
+
+        /* Measure batches read on the App Center thread then on the storage thread. */
+        long sharedThreadLatency = measureEnqueueLatency(false);
+        long storageThreadLatency = measureEnqueueLatency(true);
+        Log.i(TAG, "Average enqueue latency while reading a backlog of " + BACKLOG_SIZE + " logs: "
+                + sharedThreadLatency + "us when reading on the App Center thread, "
+                + storageThreadLatency + "us when reading on the storage thread");
+    }
+}
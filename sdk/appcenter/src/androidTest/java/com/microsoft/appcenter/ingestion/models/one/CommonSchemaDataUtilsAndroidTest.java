@@ -5,6 +5,8 @@
 
 package com.microsoft.appcenter.ingestion.models.one;
 
+import android.util.Log;
+
 import com.microsoft.appcenter.ingestion.models.json.JSONDateUtils;
 import com.microsoft.appcenter.ingestion.models.properties.BooleanTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.DateTimeTypedProperty;
@@ -27,6 +29,7 @@ import static com.microsoft.appcenter.ingestion.models.one.CommonSchemaDataUtils
 import static com.microsoft.appcenter.ingestion.models.one.CommonSchemaDataUtils.DATA_TYPE_INT64;
 import static com.microsoft.appcenter.ingestion.models.one.CommonSchemaDataUtils.METADATA_FIELDS;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
@@ -34,6 +37,8 @@ import static org.junit.Assert.assertTrue;
 
 public class CommonSchemaDataUtilsAndroidTest {
 
+    private static final String TAG = "CommonSchemaDataUtils";
+
     private static StringTypedProperty typedProperty(String key, String value) {
         StringTypedProperty stringTypedProperty = new StringTypedProperty();
         stringTypedProperty.setName(key);
@@ -569,4 +574,65 @@ public class CommonSchemaDataUtilsAndroidTest {
         assertEquals("Some.Type", log.getData().getProperties().optString("baseType"));
         assertNull(log.getExt().getMetadata());
     }
+
+    @Test
+    public void schemaSharedBetweenLogsWithSameProperties() throws JSONException {
+        MockCommonSchemaLog log1 = new MockCommonSchemaLog();
+        List<TypedProperty> properties = new ArrayList<>();
+        properties.add(typedProperty("a.b", "1"));
+        LongTypedProperty c = new LongTypedProperty();
+        c.setName("c");
+        c.setValue(1);
+        properties.add(c);
+        CommonSchemaDataUtils.addCommonSchemaData(properties, log1);
+
+        /* Same names and types with other values share metadata but not data. */
+        MockCommonSchemaLog log2 = new MockCommonSchemaLog();
+        properties.set(0, typedProperty("a.b", "2"));
+        c.setValue(2);
+        CommonSchemaDataUtils.addCommonSchemaData(properties, log2);
+        assertSame(log1.getExt().getMetadata(), log2.getExt().getMetadata());
+        assertEquals("1", log1.getData().getProperties().getJSONObject("a").getString("b"));
+        assertEquals("2", log2.getData().getProperties().getJSONObject("a").getString("b"));
+        assertEquals(2, log2.getData().getProperties().getLong("c"));
+
+        /* Another type gets other metadata. */
+        MockCommonSchemaLog log3 = new MockCommonSchemaLog();
+        DoubleTypedProperty doubleC = new DoubleTypedProperty();
+        doubleC.setName("c");
+        doubleC.setValue(2.5);
+        properties.set(1, doubleC);
+        CommonSchemaDataUtils.addCommonSchemaData(properties, log3);
+        assertNotEquals(log1.getExt().getMetadata(), log3.getExt().getMetadata());
+        assertEquals(DATA_TYPE_DOUBLE, log3.getExt().getMetadata().getMetadata().getJSONObject(METADATA_FIELDS).getInt("c"));
+    }
+
+    @Test
+    public void addCommonSchemaDataCost() {
+        List<TypedProperty> properties = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            if (i % 2 == 0) {
+                properties.add(typedProperty("group" + i % 3 + ".key" + i, "value" + i));
+            } else {
+                LongTypedProperty property = new LongTypedProperty();
+                property.setName("key" + i);
+                property.setValue(i);
+                properties.add(property);
+            }
+        }
+
+        /* Warm up then measure events with 20 properties. */
+        for (int i = 0; i < 1000; i++) {
+            CommonSchemaDataUtils.addCommonSchemaData(properties, new MockCommonSchemaLog());
+        }
+        int iterations = 10000;
+        long startTime = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            CommonSchemaDataUtils.addCommonSchemaData(properties, new MockCommonSchemaLog());
+        }
+        long duration = System.nanoTime() - startTime;
+        String message = "addCommonSchemaData with 20 properties: " + duration / iterations + "ns";
+        Log.i(TAG, message);
+        assertTrue(message, duration / iterations < 200000);
+    }
 }
@@ -9,17 +9,22 @@ import android.app.Activity;
 import android.content.Context;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
 import android.support.annotation.WorkerThread;
 
 import com.microsoft.appcenter.channel.Channel;
 import com.microsoft.appcenter.ingestion.models.json.LogFactory;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.HandlerUtils;
+import com.microsoft.appcenter.utils.PreStartBuffer;
 import com.microsoft.appcenter.utils.async.AppCenterFuture;
 import com.microsoft.appcenter.utils.async.DefaultAppCenterFuture;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.microsoft.appcenter.AppCenter.LOG_TAG;
 import static com.microsoft.appcenter.Constants.DEFAULT_TRIGGER_COUNT;
@@ -34,6 +39,12 @@ public abstract class AbstractAppCenterService implements AppCenterService {
      */
     private static final String PREFERENCE_KEY_SEPARATOR = "_";
 
+    /**
+     * Maximum number of commands kept while the service is not started yet.
+     */
+    @VisibleForTesting
+    static final int PRE_START_BUFFER_CAPACITY = 100;
+
     /**
      * Channel instance.
      */
@@ -42,7 +53,32 @@ public abstract class AbstractAppCenterService implements AppCenterService {
     /**
      * Background thread handler.
      */
-    private AppCenterHandler mHandler;
+    private volatile AppCenterHandler mHandler;
+
+    /**
+     * Commands posted before the service was started, closed once started.
+     */
+    private final PreStartBuffer<Runnable> mPreStartCommands = new PreStartBuffer<>(PRE_START_BUFFER_CAPACITY);
+
+    /**
+     * Commands drained from the pre-start buffer when starting, until replayed.
+     */
+    private final List<Runnable> mPreStartCommandsToReplay = new ArrayList<>();
+
+    /**
+     * Whether buffering commands before start has been logged.
+     */
+    private final AtomicBoolean mPreStartBufferingLogged = new AtomicBoolean();
+
+    /**
+     * Whether discarding commands before start has been logged.
+     */
+    private final AtomicBoolean mPreStartOverflowLogged = new AtomicBoolean();
+
+    /**
+     * In-memory copy of the persisted enabled state, null until first read.
+     */
+    private volatile Boolean mEnabled;
 
     @Override
     public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
@@ -133,8 +169,18 @@ public abstract class AbstractAppCenterService implements AppCenterService {
     }
 
     @Override
-    public synchronized boolean isInstanceEnabled() {
-        return SharedPreferencesManager.getBoolean(getEnabledPreferenceKey(), true);
+    public boolean isInstanceEnabled() {
+        Boolean enabled = mEnabled;
+        if (enabled == null) {
+            synchronized (this) {
+                enabled = mEnabled;
+                if (enabled == null) {
+                    enabled = SharedPreferencesManager.getBoolean(getEnabledPreferenceKey(), true);
+                    mEnabled = enabled;
+                }
+            }
+        }
+        return enabled;
     }
 
     @WorkerThread
@@ -165,6 +211,7 @@ public abstract class AbstractAppCenterService implements AppCenterService {
 
         /* Save new state. */
         SharedPreferencesManager.putBoolean(getEnabledPreferenceKey(), enabled);
+        mEnabled = enabled;
         AppCenterLog.info(getLoggerTag(), String.format("%s service has been %s.", getServiceName(), enabled ? "enabled" : "disabled"));
 
         /* Don't call it before the service starts. */
@@ -199,6 +246,12 @@ public abstract class AbstractAppCenterService implements AppCenterService {
     @WorkerThread
     @Override
     public synchronized void onStarted(@NonNull Context context, @NonNull Channel channel, String appSecret, String transmissionTargetToken, boolean startedFromApp) {
+
+        /*
+         * Commands posted from now on are posted directly. As we run on the App Center thread,
+         * they run after the buffered ones that are replayed right after this call.
+         */
+        mPreStartCommands.drainAndClose(mPreStartCommandsToReplay);
         String groupName = getGroupName();
         boolean enabled = isInstanceEnabled();
         if (groupName != null) {
@@ -295,6 +348,93 @@ public abstract class AbstractAppCenterService implements AppCenterService {
         post(runnable, null, null);
     }
 
+    /**
+     * Post a command in background from a thread that must not wait for the service lock, such as a watchdog.
+     * Unlike {@link #post(Runnable)}, the command is not ordered after the calls kept in memory until start.
+     *
+     * @param runnable command to run if service is enabled.
+     * @return false if the service is not started, true otherwise.
+     */
+    protected boolean postWithoutLock(final Runnable runnable) {
+        AppCenterHandler handler = mHandler;
+        if (handler == null) {
+            return false;
+        }
+        handler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                runIfEnabled(runnable);
+            }
+        }, null);
+        return true;
+    }
+
+    /**
+     * Post a command in background, or keep it in memory and execute it once started
+     * if the service is not started yet.
+     * <p>
+     * Buffering does not lock: the pre-start buffer is closed with a CAS when the service starts,
+     * a command rejected because the buffer is closed is posted instead.
+     * Nothing releases buffered commands if the service is never started, at most
+     * {@link #PRE_START_BUFFER_CAPACITY} of them are kept in memory for the process lifetime.
+     *
+     * @param runnable command.
+     */
+    protected void postOrBuffer(Runnable runnable) {
+        if (mPreStartCommands.offer(runnable)) {
+            if (mPreStartBufferingLogged.compareAndSet(false, true)) {
+                AppCenterLog.warn(getLoggerTag(), getServiceName() + " is not started yet, calls are kept in memory until AppCenter.start is called.");
+            }
+        } else if (mPreStartCommands.isClosed()) {
+            post(runnable, null, null);
+        } else if (mPreStartOverflowLogged.compareAndSet(false, true)) {
+            AppCenterLog.warn(getLoggerTag(), getServiceName() + " is not started yet and already kept " + PRE_START_BUFFER_CAPACITY + " calls, further calls are discarded until start.");
+        }
+    }
+
+    /**
+     * Check if commands posted with {@link #postOrBuffer(Runnable)} are currently kept until the service starts.
+     * Commands can use this to snapshot time sensitive data such as the log timestamp.
+     *
+     * @return true if the service is not started yet.
+     */
+    protected boolean isPreStart() {
+        return !mPreStartCommands.isClosed();
+    }
+
+    /**
+     * Check without locking if the service received its background thread handler,
+     * which happens before {@link #onStarted(Context, Channel, String, String, boolean)}.
+     *
+     * @return true if the service can post commands in background.
+     */
+    protected boolean hasHandler() {
+        return mHandler != null;
+    }
+
+    /**
+     * Execute the commands that were posted before the service was started.
+     * This is called after {@link #onStarted(Context, Channel, String, String, boolean)} has been
+     * called so that sub-classes are fully initialized, in the same App Center thread command.
+     */
+    @WorkerThread
+    void replayPreStartCommands() {
+        List<Runnable> commands = new ArrayList<>(mPreStartCommandsToReplay);
+        mPreStartCommandsToReplay.clear();
+        int overflowCount = mPreStartCommands.getOverflowCount();
+        if (overflowCount > 0) {
+            AppCenterLog.warn(getLoggerTag(), overflowCount + " " + getServiceName() + " command(s) were discarded before start as the buffer was full.");
+        }
+        if (commands.isEmpty()) {
+            return;
+        }
+        AppCenterLog.debug(getLoggerTag(), "Executing " + commands.size() + " " + getServiceName() + " command(s) posted before start.");
+        for (Runnable command : commands) {
+            runIfEnabled(command);
+        }
+    }
+
     /**
      * Post a command in background.
      *
@@ -202,6 +202,16 @@ public class AppCenter {
      */
     private Handler mHandler;
 
+    /**
+     * Storage thread handler, used to read log batches without blocking the background thread.
+     */
+    private Handler mStorageHandler;
+
+    /**
+     * In-memory copy of the persisted enabled state, null until first read.
+     */
+    private volatile Boolean mEnabled;
+
     /**
      * Background thread handler abstraction to shared with services.
      */
@@ -673,6 +683,9 @@ public class AppCenter {
         mHandlerThread = new HandlerThread("AppCenter.Looper");
         mHandlerThread.start();
         mHandler = new Handler(mHandlerThread.getLooper());
+        HandlerThread storageHandlerThread = new HandlerThread("AppCenter.Storage");
+        storageHandlerThread.start();
+        mStorageHandler = new Handler(storageHandlerThread.getLooper());
         mAppCenterHandler = new AppCenterHandler() {
 
             @Override
@@ -803,7 +816,7 @@ public class AppCenter {
         mLogSerializer = new DefaultLogSerializer();
         mLogSerializer.addLogFactory(StartServiceLog.TYPE, new StartServiceLogFactory());
         mLogSerializer.addLogFactory(CustomPropertiesLog.TYPE, new CustomPropertiesLogFactory());
-        mChannel = new DefaultChannel(mApplication, mAppSecret, mLogSerializer, httpClient, mHandler);
+        mChannel = new DefaultChannel(mApplication, mAppSecret, mLogSerializer, httpClient, mHandler, mStorageHandler);
 
         /* Complete set maximum storage size future if starting from app. */
         if (configureFromApp) {
@@ -950,8 +963,7 @@ public class AppCenter {
             AppCenterLog.info(LOG_TAG, service.getClass().getSimpleName() + " service configuration updated.");
         }
 
-        /* Start new services. */
-        boolean enabled = isInstanceEnabled();
+        /* Register log factories of all new services before any of them can trigger reading logs. */
         for (AppCenterService service : startedServices) {
             Map<String, LogFactory> logFactories = service.getLogFactories();
             if (logFactories != null) {
@@ -959,6 +971,11 @@ public class AppCenter {
                     mLogSerializer.addLogFactory(logFactory.getKey(), logFactory.getValue());
                 }
             }
+        }
+
+        /* Start new services. */
+        boolean enabled = isInstanceEnabled();
+        for (AppCenterService service : startedServices) {
             if (!enabled && service.isInstanceEnabled()) {
                 service.setInstanceEnabled(false);
             }
@@ -969,6 +986,11 @@ public class AppCenter {
                 service.onStarted(mApplication, mChannel, null, null, false);
                 AppCenterLog.info(LOG_TAG, service.getClass().getSimpleName() + " service started from library.");
             }
+
+            /* Execute API calls that were made before the service was started. */
+            if (service instanceof AbstractAppCenterService) {
+                ((AbstractAppCenterService) service).replayPreStartCommands();
+            }
         }
 
         /* If starting from a library, we will send start service log later when app starts with an app secret. */
@@ -1062,7 +1084,27 @@ public class AppCenter {
      * However after that it can be used from U.I. thread without breaking strict mode.
      */
     boolean isInstanceEnabled() {
-        return SharedPreferencesManager.getBoolean(PrefStorageConstants.KEY_ENABLED, true);
+        Boolean enabled = mEnabled;
+        if (enabled == null) {
+            synchronized (this) {
+                enabled = mEnabled;
+                if (enabled == null) {
+                    enabled = SharedPreferencesManager.getBoolean(PrefStorageConstants.KEY_ENABLED, true);
+                    mEnabled = enabled;
+                }
+            }
+        }
+        return enabled;
+    }
+
+    /**
+     * Save the enabled state and update its in-memory copy.
+     *
+     * @param enabled true if enabled, false otherwise.
+     */
+    private void saveEnabledState(boolean enabled) {
+        SharedPreferencesManager.putBoolean(PrefStorageConstants.KEY_ENABLED, enabled);
+        mEnabled = enabled;
     }
 
     /**
@@ -1090,7 +1132,7 @@ public class AppCenter {
 
         /* Update state now if true, services are checking this. */
         if (enabled) {
-            SharedPreferencesManager.putBoolean(PrefStorageConstants.KEY_ENABLED, true);
+            saveEnabledState(true);
         }
 
         /* Send started services. */
@@ -1109,7 +1151,7 @@ public class AppCenter {
 
         /* Update state now if false, services are checking if enabled while disabling. */
         if (!enabled) {
-            SharedPreferencesManager.putBoolean(PrefStorageConstants.KEY_ENABLED, false);
+            saveEnabledState(false);
         }
 
         /* Log current state. */
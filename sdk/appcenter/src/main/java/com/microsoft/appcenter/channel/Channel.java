@@ -129,6 +129,23 @@ public interface Channel {
      */
     void removeListener(Listener listener);
 
+    /**
+     * Add a listener notified only while preparing logs with the given tag, see {@link Log#getTag()}.
+     * Such a listener is not notified of the other channel events.
+     *
+     * @param tag      log tag.
+     * @param listener listener to add.
+     */
+    void addTaggedListener(@NonNull Object tag, Listener listener);
+
+    /**
+     * Remove a listener added for a log tag.
+     *
+     * @param tag      log tag.
+     * @param listener listener to remove.
+     */
+    void removeTaggedListener(@NonNull Object tag, Listener listener);
+
     /**
      * Suspend channel and wait for a limited period of time for queued logs to be persisted.
      */
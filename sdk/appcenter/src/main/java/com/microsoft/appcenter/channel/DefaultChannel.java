@@ -29,6 +29,7 @@ import com.microsoft.appcenter.persistence.Persistence;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.IdHelper;
+import com.microsoft.appcenter.utils.PreStartBuffer;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
 import java.io.IOException;
@@ -38,6 +39,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -66,6 +68,12 @@ public class DefaultChannel implements Channel {
      */
     private static final long MINIMUM_TRANSMISSION_INTERVAL = 3000;
 
+    /**
+     * Maximum number of logs kept in memory while waiting for an app secret.
+     */
+    @VisibleForTesting
+    static final int PENDING_APP_SECRET_LOGS_CAPACITY = 100;
+
     /**
      * Application context.
      */
@@ -91,6 +99,11 @@ public class DefaultChannel implements Channel {
      */
     private final Collection<Listener> mListeners;
 
+    /**
+     * Listeners notified only of logs with a given tag, by tag identity.
+     */
+    private final Map<Object, Collection<Listener>> mTaggedListeners = new IdentityHashMap<>();
+
     /**
      * The Persistence instance used to store events in the local storage.
      */
@@ -111,6 +124,11 @@ public class DefaultChannel implements Channel {
      */
     private final Handler mAppCenterHandler;
 
+    /**
+     * Handler used to read batches from storage without blocking the App Center core handler.
+     */
+    private final Handler mStorageHandler;
+
     /**
      * Is channel enabled?
      */
@@ -127,6 +145,11 @@ public class DefaultChannel implements Channel {
      */
     private Device mDevice;
 
+    /**
+     * Logs prepared before an app secret was provided, persisted once the app secret is set.
+     */
+    private final PreStartBuffer<PendingLog> mPendingAppSecretLogs = new PreStartBuffer<>(PENDING_APP_SECRET_LOGS_CAPACITY);
+
     /**
      * State checker. If this counter changes during an async call, we have to ignore the result in the callback.
      * Cancelling a database call would be unreliable, and if it's too fast you could still have the callback being called.
@@ -143,7 +166,21 @@ public class DefaultChannel implements Channel {
      * @param appCenterHandler App Center looper thread handler.
      */
     public DefaultChannel(@NonNull Context context, String appSecret, @NonNull LogSerializer logSerializer, @NonNull HttpClient httpClient, @NonNull Handler appCenterHandler) {
-        this(context, appSecret, buildDefaultPersistence(context, logSerializer), new AppCenterIngestion(httpClient, logSerializer), appCenterHandler);
+        this(context, appSecret, logSerializer, httpClient, appCenterHandler, appCenterHandler);
+    }
+
+    /**
+     * Creates and initializes a new instance that reads batches from storage on a separate thread.
+     *
+     * @param context          The context.
+     * @param appSecret        The application secret.
+     * @param logSerializer    The log serializer.
+     * @param httpClient       The HTTP client instance.
+     * @param appCenterHandler App Center looper thread handler.
+     * @param storageHandler   Storage thread handler.
+     */
+    public DefaultChannel(@NonNull Context context, String appSecret, @NonNull LogSerializer logSerializer, @NonNull HttpClient httpClient, @NonNull Handler appCenterHandler, @NonNull Handler storageHandler) {
+        this(context, appSecret, buildDefaultPersistence(context, logSerializer), new AppCenterIngestion(httpClient, logSerializer), appCenterHandler, storageHandler);
     }
 
     /**
@@ -157,6 +194,21 @@ public class DefaultChannel implements Channel {
      */
     @VisibleForTesting
     DefaultChannel(@NonNull Context context, String appSecret, @NonNull Persistence persistence, @NonNull Ingestion ingestion, @NonNull Handler appCenterHandler) {
+        this(context, appSecret, persistence, ingestion, appCenterHandler, appCenterHandler);
+    }
+
+    /**
+     * Overloaded constructor with limited visibility that allows for dependency injection.
+     *
+     * @param context          The context.
+     * @param appSecret        The application secret.
+     * @param persistence      Persistence object for dependency injection.
+     * @param ingestion        Ingestion object for dependency injection.
+     * @param appCenterHandler App Center looper thread handler.
+     * @param storageHandler   Storage thread handler.
+     */
+    @VisibleForTesting
+    DefaultChannel(@NonNull Context context, String appSecret, @NonNull Persistence persistence, @NonNull Ingestion ingestion, @NonNull Handler appCenterHandler, @NonNull Handler storageHandler) {
         mContext = context;
         mAppSecret = appSecret;
         mInstallId = IdHelper.getInstallId();
@@ -167,6 +219,7 @@ public class DefaultChannel implements Channel {
         mIngestions = new HashSet<>();
         mIngestions.add(mIngestion);
         mAppCenterHandler = appCenterHandler;
+        mStorageHandler = storageHandler;
         mEnabled = true;
     }
 
@@ -206,6 +259,22 @@ public class DefaultChannel implements Channel {
         /* Set app secret. */
         mAppSecret = appSecret;
 
+        /* Persist logs that were waiting for the app secret, they keep their original timestamp. */
+        List<PendingLog> pendingLogs = new ArrayList<>();
+        mPendingAppSecretLogs.drainTo(pendingLogs);
+        for (PendingLog pendingLog : pendingLogs) {
+            GroupState groupState = mGroupStates.get(pendingLog.mGroupName);
+            if (groupState == null || mDiscardLogs) {
+                AppCenterLog.debug(LOG_TAG, "Discarding log of type '" + pendingLog.mLog.getType() + "' that was waiting for app secret.");
+            } else {
+                persistLog(groupState, pendingLog.mLog, pendingLog.mFlags);
+            }
+        }
+        int overflowCount = mPendingAppSecretLogs.getOverflowCount();
+        if (overflowCount > 0) {
+            AppCenterLog.warn(LOG_TAG, overflowCount + " log(s) were discarded while waiting for app secret.");
+        }
+
         /* Resume sending logs for groups that use default ingestion once app secret is known. */
         if (mEnabled) {
             for (GroupState groupState : mGroupStates.values()) {
@@ -419,7 +488,15 @@ public class DefaultChannel implements Channel {
                 deleteLogsOnSuspended(groupState);
             }
         } else {
-            mPersistence.clearPendingLogState();
+
+            /* Run after any batch being read so that its logs are not left in pending state. */
+            mStorageHandler.post(new Runnable() {
+
+                @Override
+                public void run() {
+                    mPersistence.clearPendingLogState();
+                }
+            });
         }
     }
 
@@ -461,25 +538,53 @@ public class DefaultChannel implements Channel {
             return;
         }
         int pendingLogCount = groupState.mPendingLogCount;
-        int maxFetch = Math.min(pendingLogCount, groupState.mMaxLogsPerBatch);
+        final int maxFetch = Math.min(pendingLogCount, groupState.mMaxLogsPerBatch);
         AppCenterLog.debug(LOG_TAG, "triggerIngestion(" + groupState.mName + ") pendingLogCount=" + pendingLogCount);
         cancelTimer(groupState);
 
         /* Check if we have reached the maximum number of pending batches, log to LogCat and don't trigger another sending. */
-        if (groupState.mSendingBatches.size() == groupState.mMaxParallelBatches) {
+        if (groupState.mSendingBatches.size() + groupState.mReadingBatchCount >= groupState.mMaxParallelBatches) {
             AppCenterLog.debug(LOG_TAG, "Already sending " + groupState.mMaxParallelBatches + " batches of analytics data to the server.");
             return;
         }
 
-        /* Get a batch from Persistence. */
-        final List<Log> batch = new ArrayList<>(maxFetch);
-        final String batchId = mPersistence.getLogs(groupState.mName, groupState.mPausedTargetKeys, maxFetch, batch);
-
         /* Decrement counter. */
         groupState.mPendingLogCount -= maxFetch;
 
-        /* Nothing more to do if no logs. */
-        if (batchId == null) {
+        /* Get a batch from Persistence on the storage thread, group state is only accessed from the App Center thread. */
+        final int currentState = mCurrentState;
+        final Collection<String> pausedTargetKeys = new ArrayList<>(groupState.mPausedTargetKeys);
+        groupState.mReadingBatchCount++;
+        mStorageHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                final List<Log> batch = new ArrayList<>(maxFetch);
+                final String batchId = mPersistence.getLogs(groupState.mName, pausedTargetKeys, maxFetch, batch);
+                mAppCenterHandler.post(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        groupState.mReadingBatchCount--;
+                        handleBatchRead(groupState, currentState, batch, batchId);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Send a batch that was read from storage.
+     *
+     * @param groupState   The group state.
+     * @param currentState The state when reading was requested.
+     * @param batch        The log batch.
+     * @param batchId      The batch ID or null if no logs were read.
+     */
+    private void handleBatchRead(@NonNull GroupState groupState, int currentState, @NonNull List<Log> batch, String batchId) {
+
+        /* Nothing more to do if no logs or if channel was disabled or group removed while reading. */
+        if (batchId == null || !checkStateDidNotChange(groupState, currentState)) {
             return;
         }
         AppCenterLog.debug(LOG_TAG, "ingestLogs(" + groupState.mName + "," + batchId + ") pendingLogCount=" + groupState.mPendingLogCount);
@@ -493,7 +598,7 @@ public class DefaultChannel implements Channel {
 
         /* Remember this batch. */
         groupState.mSendingBatches.put(batchId, batch);
-        sendLogs(groupState, mCurrentState, batch, batchId);
+        sendLogs(groupState, currentState, batch, batchId);
     }
 
     /**
@@ -621,9 +726,16 @@ public class DefaultChannel implements Channel {
         }
 
         /* Call listeners so that they can decorate the log. */
+        Collection<Listener> taggedListeners = log.getTag() != null ? mTaggedListeners.get(log.getTag()) : null;
+        if (taggedListeners == null) {
+            taggedListeners = Collections.emptyList();
+        }
         for (Listener listener : mListeners) {
             listener.onPreparingLog(log, groupName);
         }
+        for (Listener listener : taggedListeners) {
+            listener.onPreparingLog(log, groupName);
+        }
 
         /* Attach device properties to every log if its not already attached by a service. */
         if (log.getDevice() == null) {
@@ -651,12 +763,18 @@ public class DefaultChannel implements Channel {
         for (Listener listener : mListeners) {
             listener.onPreparedLog(log, groupName, flags);
         }
+        for (Listener listener : taggedListeners) {
+            listener.onPreparedLog(log, groupName, flags);
+        }
 
         /* Call listeners so that they can filter the log. */
         boolean filteredOut = false;
         for (Listener listener : mListeners) {
             filteredOut = filteredOut || listener.shouldFilter(log);
         }
+        for (Listener listener : taggedListeners) {
+            filteredOut = filteredOut || listener.shouldFilter(log);
+        }
 
         /* If filtered out, nothing more to do. */
         if (filteredOut) {
@@ -664,39 +782,54 @@ public class DefaultChannel implements Channel {
         } else {
             if (mAppSecret == null && groupState.mIngestion == mIngestion) {
 
-                /* Log was not filtered out but no app secret has been provided. Do nothing in this case. */
-                AppCenterLog.debug(LOG_TAG, "Log of type '" + log.getType() + "' was not filtered out by listener(s) but no app secret was provided. Not persisting/sending the log.");
-                return;
-            }
-            try {
-
-                /* Persist log. */
-                mPersistence.putLog(log, groupName, flags);
-            } catch (Persistence.PersistenceException e) {
-                AppCenterLog.error(LOG_TAG, "Error persisting log", e);
-                if (groupState.mListener != null) {
-                    groupState.mListener.onBeforeSending(log);
-                    groupState.mListener.onFailure(log, e);
+                /* Log was not filtered out but no app secret has been provided yet, keep it in memory until then. */
+                if (mPendingAppSecretLogs.offer(new PendingLog(log, groupName, flags))) {
+                    AppCenterLog.debug(LOG_TAG, "Log of type '" + log.getType() + "' was not filtered out by listener(s) but no app secret was provided yet. Keeping the log in memory until app secret is set.");
+                } else {
+                    AppCenterLog.debug(LOG_TAG, "Log of type '" + log.getType() + "' was not filtered out by listener(s) but no app secret was provided. Not persisting/sending the log.");
                 }
                 return;
             }
+            persistLog(groupState, log, flags);
+        }
+    }
 
-            /* Nothing more to do if the log is from a paused transmission target. */
-            Iterator<String> targetKeys = log.getTransmissionTargetTokens().iterator();
-            String targetKey = targetKeys.hasNext() ? PartAUtils.getTargetKey(targetKeys.next()) : null;
-            if (groupState.mPausedTargetKeys.contains(targetKey)) {
-                AppCenterLog.debug(LOG_TAG, "Transmission target ikey=" + targetKey + " is paused.");
-                return;
-            }
+    /**
+     * Persist a prepared log and schedule sending it.
+     *
+     * @param groupState the group state.
+     * @param log        the log.
+     * @param flags      the flags.
+     */
+    private void persistLog(@NonNull GroupState groupState, @NonNull Log log, int flags) {
+        try {
 
-            /* Increment counters and schedule ingestion if we are enabled. */
-            groupState.mPendingLogCount++;
-            AppCenterLog.debug(LOG_TAG, "enqueue(" + groupState.mName + ") pendingLogCount=" + groupState.mPendingLogCount);
-            if (mEnabled) {
-                checkPendingLogs(groupState);
-            } else {
-                AppCenterLog.debug(LOG_TAG, "Channel is temporarily disabled, log was saved to disk.");
+            /* Persist log. */
+            mPersistence.putLog(log, groupState.mName, flags);
+        } catch (Persistence.PersistenceException e) {
+            AppCenterLog.error(LOG_TAG, "Error persisting log", e);
+            if (groupState.mListener != null) {
+                groupState.mListener.onBeforeSending(log);
+                groupState.mListener.onFailure(log, e);
             }
+            return;
+        }
+
+        /* Nothing more to do if the log is from a paused transmission target. */
+        Iterator<String> targetKeys = log.getTransmissionTargetTokens().iterator();
+        String targetKey = targetKeys.hasNext() ? PartAUtils.getTargetKey(targetKeys.next()) : null;
+        if (groupState.mPausedTargetKeys.contains(targetKey)) {
+            AppCenterLog.debug(LOG_TAG, "Transmission target ikey=" + targetKey + " is paused.");
+            return;
+        }
+
+        /* Increment counters and schedule ingestion if we are enabled. */
+        groupState.mPendingLogCount++;
+        AppCenterLog.debug(LOG_TAG, "enqueue(" + groupState.mName + ") pendingLogCount=" + groupState.mPendingLogCount);
+        if (mEnabled) {
+            checkPendingLogs(groupState);
+        } else {
+            AppCenterLog.debug(LOG_TAG, "Channel is temporarily disabled, log was saved to disk.");
         }
     }
 
@@ -793,13 +926,61 @@ public class DefaultChannel implements Channel {
         mListeners.remove(listener);
     }
 
+    @Override
+    public void addTaggedListener(@NonNull Object tag, Listener listener) {
+        Collection<Listener> listeners = mTaggedListeners.get(tag);
+        if (listeners == null) {
+            listeners = new LinkedHashSet<>();
+            mTaggedListeners.put(tag, listeners);
+        }
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeTaggedListener(@NonNull Object tag, Listener listener) {
+        Collection<Listener> listeners = mTaggedListeners.get(tag);
+        if (listeners != null) {
+            listeners.remove(listener);
+            if (listeners.isEmpty()) {
+                mTaggedListeners.remove(tag);
+            }
+        }
+    }
+
     @Override
     public void shutdown() {
         suspend(false, new CancellationException());
     }
 
     /**
-     * State for a specific log group.
+     * Log waiting for an app secret before being persisted.
+     */
+    private static class PendingLog {
+
+        /**
+         * Prepared log.
+         */
+        final Log mLog;
+
+        /**
+         * Group name.
+         */
+        final String mGroupName;
+
+        /**
+         * Flags.
+         */
+        final int mFlags;
+
+        PendingLog(Log log, String groupName, int flags) {
+            mLog = log;
+            mGroupName = groupName;
+            mFlags = flags;
+        }
+    }
+
+    /**
+     * State for a specific log group. Only accessed from the App Center thread.
      */
     @VisibleForTesting
     class GroupState {
@@ -844,6 +1025,11 @@ public class DefaultChannel implements Channel {
          */
         int mPendingLogCount;
 
+        /**
+         * Number of batches being read from storage.
+         */
+        int mReadingBatchCount;
+
         /**
          * Is timer scheduled.
          */
@@ -18,9 +18,9 @@ import org.json.JSONStringer;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.TYPE;
 
@@ -28,7 +28,10 @@ public class DefaultLogSerializer implements LogSerializer {
 
     private static final String LOGS = "logs";
 
-    private final Map<String, LogFactory> mLogFactories = new HashMap<>();
+    /**
+     * Log factories by type. Logs are read on the storage thread while factories are added on the App Center thread.
+     */
+    private final Map<String, LogFactory> mLogFactories = new ConcurrentHashMap<>();
 
     @NonNull
     private JSONStringer writeLog(JSONStringer writer, Log log) throws JSONException {
@@ -19,8 +19,11 @@ import com.microsoft.appcenter.utils.AppCenterLog;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.microsoft.appcenter.ingestion.models.one.Data.BASE_DATA;
 import static com.microsoft.appcenter.ingestion.models.one.Data.BASE_TYPE;
@@ -44,6 +47,23 @@ public class CommonSchemaDataUtils {
     @VisibleForTesting
     static final int DATA_TYPE_DATETIME = 9;
 
+    /**
+     * Maximum number of property schemas kept in cache.
+     */
+    @VisibleForTesting
+    static final int SCHEMA_CACHE_SIZE = 64;
+
+    /**
+     * Schemas of the last property lists, by signature, least recently used first.
+     */
+    private static final Map<String, PropertySchema> sSchemaCache = new LinkedHashMap<String, PropertySchema>(SCHEMA_CACHE_SIZE, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PropertySchema> eldest) {
+            return size() > SCHEMA_CACHE_SIZE;
+        }
+    };
+
     /**
      * Adds part B and part C properties to a log and Part A metadata.
      *
@@ -60,11 +80,11 @@ public class CommonSchemaDataUtils {
             Data data = new Data();
             dest.setData(data);
 
-            /* We also build Part A metadata extension at the same time to reflect the data. */
-            MetadataExtension metadata = new MetadataExtension();
+            /* Validate properties and compute the signature of the valid ones: names and metadata types. */
+            List<TypedProperty> validProperties = new ArrayList<>(properties.size());
+            List<Object> values = new ArrayList<>(properties.size());
+            StringBuilder signature = new StringBuilder();
             for (TypedProperty property : properties) {
-
-                /* Validate property and get type. */
                 Object value;
                 try {
                     value = validateProperty(property);
@@ -72,22 +92,31 @@ public class CommonSchemaDataUtils {
                     AppCenterLog.warn(LOG_TAG, e.getMessage());
                     continue;
                 }
+                validProperties.add(property);
+                values.add(value);
+                String key = property.getName();
+                signature.append(key.length()).append(':').append(key).append(getMetadataType(property)).append(';');
+            }
 
-                /* Get metadata type. */
-                Integer metadataType = getMetadataType(property);
+            /* Key paths and metadata only depend on the signature. */
+            String schemaKey = signature.toString();
+            PropertySchema schema;
+            synchronized (sSchemaCache) {
+                schema = sSchemaCache.get(schemaKey);
+            }
+            String[][] keyPaths = schema != null ? schema.mKeyPaths : splitKeys(validProperties);
 
-                /* Split property name by dot. */
-                String key = property.getName();
-                String[] keys = key.split("\\.", -1);
+            /* Write data. */
+            for (int i = 0; i < values.size(); i++) {
+                String[] keys = keyPaths[i];
                 int lastIndex = keys.length - 1;
 
                 /* Handle all intermediate keys. */
                 JSONObject destProperties = data.getProperties();
-                JSONObject destMetadata = metadata.getMetadata();
-                for (int i = 0; i < lastIndex; i++) {
+                for (int j = 0; j < lastIndex; j++) {
 
                     /* Add data sub object. */
-                    String subKey = keys[i];
+                    String subKey = keys[j];
                     JSONObject subDataObject = destProperties.optJSONObject(subKey);
                     if (subDataObject == null) {
                         if (destProperties.has(subKey)) {
@@ -99,9 +128,6 @@ public class CommonSchemaDataUtils {
                         destProperties.put(subKey, subDataObject);
                     }
                     destProperties = subDataObject;
-
-                    /* Handle metadata. */
-                    destMetadata = addIntermediateMetadata(destMetadata, subKey);
                 }
 
                 /* Handle the last key for data, the leaf. */
@@ -109,39 +135,33 @@ public class CommonSchemaDataUtils {
                 if (destProperties.has(lastKey)) {
                     AppCenterLog.warn(LOG_TAG, "Property key '" + lastKey + "' already has a value, the old value will be overridden.");
                 }
-                destProperties.put(lastKey, value);
+                destProperties.put(lastKey, values.get(i));
+            }
 
-                /* Handle the last key for meta-data, the leaf. */
-                addLeafMetadata(metadataType, destMetadata, lastKey);
+            /* Build metadata once per schema. */
+            if (schema == null) {
+                schema = new PropertySchema(validProperties, keyPaths);
+                synchronized (sSchemaCache) {
+                    sSchemaCache.put(schemaKey, schema);
+                }
             }
 
             /* Warn/cleanup if baseData and baseType are not paired. */
-            JSONObject dataObject = data.getProperties();
-            String baseType = dataObject.optString(BASE_TYPE, null);
-            JSONObject baseData = dataObject.optJSONObject(BASE_DATA);
-            if (baseType == null && baseData != null) {
-
-                /* Discard unpaired data and metadata. */
+            if (schema.mUnpairedBaseData) {
                 AppCenterLog.warn(LOG_TAG, "baseData was set but baseType is missing.");
-                dataObject.remove(BASE_DATA);
-                JSONObject baseMetaData = metadata.getMetadata().optJSONObject(METADATA_FIELDS);
-
-                /* baseMetaData is always non null as baseData has at least 1 sub object and not cleaned up yet if empty. */
-                baseMetaData.remove(BASE_DATA);
+                data.getProperties().remove(BASE_DATA);
             }
-            if (baseType != null && baseData == null) {
-
-                /* Discard unpaired base type. */
+            if (schema.mUnpairedBaseType) {
                 AppCenterLog.warn(LOG_TAG, "baseType was set but baseData is missing.");
-                dataObject.remove(BASE_TYPE);
+                data.getProperties().remove(BASE_TYPE);
             }
 
-            /* Add metadata extension only if not empty after cleanup. */
-            if (!cleanUpEmptyObjectsInMetadata(metadata.getMetadata())) {
+            /* Add metadata extension only if not empty. */
+            if (schema.mMetadata != null) {
                 if (dest.getExt() == null) {
                     dest.setExt(new Extensions());
                 }
-                dest.getExt().setMetadata(metadata);
+                dest.getExt().setMetadata(schema.mMetadata);
             }
         } catch (JSONException ignore) {
 
@@ -149,6 +169,47 @@ public class CommonSchemaDataUtils {
         }
     }
 
+    /**
+     * Split the names of properties by dot.
+     *
+     * @param properties properties.
+     * @return keys of each property.
+     */
+    private static String[][] splitKeys(List<TypedProperty> properties) {
+        String[][] keyPaths = new String[properties.size()][];
+        for (int i = 0; i < keyPaths.length; i++) {
+            keyPaths[i] = splitKey(properties.get(i).getName());
+        }
+        return keyPaths;
+    }
+
+    /**
+     * Split a property name by dot, same as {@code key.split("\\.", -1)} without a regular expression.
+     *
+     * @param key property name.
+     * @return keys.
+     */
+    @VisibleForTesting
+    static String[] splitKey(String key) {
+        int count = 1;
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) == '.') {
+                count++;
+            }
+        }
+        String[] keys = new String[count];
+        int start = 0;
+        int index = 0;
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) == '.') {
+                keys[index++] = key.substring(start, i);
+                start = i + 1;
+            }
+        }
+        keys[index] = key.substring(start);
+        return keys;
+    }
+
     /**
      * Validate typed property.
      *
@@ -295,4 +356,68 @@ public class CommonSchemaDataUtils {
         }
         return object.length() == 0;
     }
+
+    /**
+     * Key paths and metadata of a list of valid properties, which do not depend on property values.
+     */
+    private static class PropertySchema {
+
+        /**
+         * Key paths of each property.
+         */
+        final String[][] mKeyPaths;
+
+        /**
+         * Whether baseData is set without baseType and must be removed from data.
+         */
+        final boolean mUnpairedBaseData;
+
+        /**
+         * Whether baseType is set without baseData and must be removed from data.
+         */
+        final boolean mUnpairedBaseType;
+
+        /**
+         * Metadata extension shared by logs with this schema, null if empty. Must not be modified.
+         */
+        final MetadataExtension mMetadata;
+
+        /**
+         * Build schema.
+         *
+         * @param properties valid properties.
+         * @param keyPaths   keys of each property.
+         * @throws JSONException if JSON put fails.
+         */
+        PropertySchema(List<TypedProperty> properties, String[][] keyPaths) throws JSONException {
+            mKeyPaths = keyPaths;
+            MetadataExtension metadata = new MetadataExtension();
+            boolean hasBaseType = false;
+            boolean hasBaseData = false;
+            for (int i = 0; i < properties.size(); i++) {
+                TypedProperty property = properties.get(i);
+                String[] keys = keyPaths[i];
+                int lastIndex = keys.length - 1;
+                hasBaseType |= lastIndex == 0 && BASE_TYPE.equals(keys[0]);
+                hasBaseData |= lastIndex > 0 && BASE_DATA.equals(keys[0]);
+
+                /* Handle all intermediate keys. */
+                JSONObject destMetadata = metadata.getMetadata();
+                for (int j = 0; j < lastIndex; j++) {
+                    destMetadata = addIntermediateMetadata(destMetadata, keys[j]);
+                }
+
+                /* Handle the last key for meta-data, the leaf. */
+                addLeafMetadata(getMetadataType(property), destMetadata, keys[lastIndex]);
+            }
+            mUnpairedBaseData = hasBaseData && !hasBaseType;
+            mUnpairedBaseType = hasBaseType && !hasBaseData;
+
+            /* Discard unpaired metadata, baseData has at least 1 sub object and is not cleaned up yet if empty. */
+            if (mUnpairedBaseData) {
+                metadata.getMetadata().optJSONObject(METADATA_FIELDS).remove(BASE_DATA);
+            }
+            mMetadata = cleanUpEmptyObjectsInMetadata(metadata.getMetadata()) ? null : metadata;
+        }
+    }
 }
@@ -45,6 +45,11 @@ import static com.microsoft.appcenter.AppCenter.LOG_TAG;
 import static com.microsoft.appcenter.utils.storage.DatabaseManager.PRIMARY_KEY;
 import static com.microsoft.appcenter.utils.storage.DatabaseManager.SELECT_PRIMARY_KEY;
 
+/**
+ * Persistence storing logs in a SQLite database.
+ * Batches may be read on a storage thread while logs are stored and deleted on the App Center thread.
+ * Reading, storing and deleting logs are synchronized, so a log deleted while a batch is read never ends up in that batch.
+ */
 @SuppressWarnings("TryFinallyCanBeTryWithResources")
 public class DatabasePersistence extends Persistence {
 
@@ -285,38 +290,42 @@ public class DatabasePersistence extends Persistence {
                 targetKey = null;
                 targetToken = null;
             }
-            long maxSize = mDatabaseManager.getMaxSize();
-            if (maxSize == -1) {
-                throw new PersistenceException("Failed to store a log to the Persistence database.");
-            }
-            if (!isLargePayload && maxSize <= payloadSize) {
-                throw new PersistenceException("Log is too large (" + payloadSize + " bytes) to store in database. " +
-                        "Current maximum database size is " + maxSize + " bytes.");
-            }
             contentValues = getContentValues(group, isLargePayload ? null : payload, targetToken, log.getType(), targetKey, Flags.getPersistenceFlag(flags, false));
-            long databaseId = mDatabaseManager.put(contentValues, COLUMN_PRIORITY);
-            if (databaseId == -1) {
-                throw new PersistenceException("Failed to store a log to the Persistence database for log type " + log.getType() + ".");
-            }
-            AppCenterLog.debug(LOG_TAG, "Stored a log to the Persistence database for log type " + log.getType() + " with databaseId=" + databaseId);
-            if (isLargePayload) {
-                AppCenterLog.debug(LOG_TAG, "Payload is larger than what SQLite supports, storing payload in a separate file.");
-                File directory = getLargePayloadGroupDirectory(group);
-
-                //noinspection ResultOfMethodCallIgnored we'll get an error anyway at write time.
-                directory.mkdir();
-                File payloadFile = getLargePayloadFile(directory, databaseId);
-                try {
-                    FileManager.write(payloadFile, payload);
-                } catch (IOException e) {
 
-                    /* Remove database entry if we cannot save payload as a file. */
-                    mDatabaseManager.delete(databaseId);
-                    throw e;
+            /* Storing may evict other logs when full, and a large payload must be written before its log can be read. */
+            synchronized (this) {
+                long maxSize = mDatabaseManager.getMaxSize();
+                if (maxSize == -1) {
+                    throw new PersistenceException("Failed to store a log to the Persistence database.");
+                }
+                if (!isLargePayload && maxSize <= payloadSize) {
+                    throw new PersistenceException("Log is too large (" + payloadSize + " bytes) to store in database. " +
+                            "Current maximum database size is " + maxSize + " bytes.");
+                }
+                long databaseId = mDatabaseManager.put(contentValues, COLUMN_PRIORITY);
+                if (databaseId == -1) {
+                    throw new PersistenceException("Failed to store a log to the Persistence database for log type " + log.getType() + ".");
+                }
+                AppCenterLog.debug(LOG_TAG, "Stored a log to the Persistence database for log type " + log.getType() + " with databaseId=" + databaseId);
+                if (isLargePayload) {
+                    AppCenterLog.debug(LOG_TAG, "Payload is larger than what SQLite supports, storing payload in a separate file.");
+                    File directory = getLargePayloadGroupDirectory(group);
+
+                    //noinspection ResultOfMethodCallIgnored we'll get an error anyway at write time.
+                    directory.mkdir();
+                    File payloadFile = getLargePayloadFile(directory, databaseId);
+                    try {
+                        FileManager.write(payloadFile, payload);
+                    } catch (IOException e) {
+
+                        /* Remove database entry if we cannot save payload as a file. */
+                        mDatabaseManager.delete(databaseId);
+                        throw e;
+                    }
+                    AppCenterLog.debug(LOG_TAG, "Payload written to " + payloadFile);
                 }
-                AppCenterLog.debug(LOG_TAG, "Payload written to " + payloadFile);
+                return databaseId;
             }
-            return databaseId;
         } catch (JSONException e) {
             throw new PersistenceException("Cannot convert to JSON string.", e);
         } catch (IOException e) {
@@ -344,7 +353,7 @@ public class DatabasePersistence extends Persistence {
     }
 
     @Override
-    public void deleteLogs(@NonNull String group, @NonNull String id) {
+    public synchronized void deleteLogs(@NonNull String group, @NonNull String id) {
 
         /* Log. */
         AppCenterLog.debug(LOG_TAG, "Deleting logs from the Persistence database for " + group + " with " + id);
@@ -363,7 +372,7 @@ public class DatabasePersistence extends Persistence {
     }
 
     @Override
-    public void deleteLogs(String group) {
+    public synchronized void deleteLogs(String group) {
 
         /* Log. */
         AppCenterLog.debug(LOG_TAG, "Deleting all logs from the Persistence database for " + group);
@@ -418,7 +427,7 @@ public class DatabasePersistence extends Persistence {
 
     @Override
     @Nullable
-    public String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @NonNull List<Log> outLogs) {
+    public synchronized String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @NonNull List<Log> outLogs) {
 
         /* Log. */
         AppCenterLog.debug(LOG_TAG, "Trying to get " + limit + " logs from the Persistence database for " + group);
@@ -568,7 +577,7 @@ public class DatabasePersistence extends Persistence {
     }
 
     @Override
-    public void clearPendingLogState() {
+    public synchronized void clearPendingLogState() {
         mPendingDbIdentifiers.clear();
         mPendingDbIdentifiersGroups.clear();
         AppCenterLog.debug(LOG_TAG, "Cleared pending log states");
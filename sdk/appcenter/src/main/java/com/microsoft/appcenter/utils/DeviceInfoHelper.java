@@ -39,7 +39,7 @@ public class DeviceInfoHelper {
     /**
      * Wrapper SDK information to use when building device properties.
      */
-    private static WrapperSdk sWrapperSdk;
+    private static volatile WrapperSdk sWrapperSdk;
 
     /**
      * Gets device information.
@@ -188,6 +188,15 @@ public class DeviceInfoHelper {
         sWrapperSdk = wrapperSdk;
     }
 
+    /**
+     * Get wrapper SDK information used when building device properties.
+     *
+     * @return wrapper SDK information or null if not set.
+     */
+    public static WrapperSdk getWrapperSdk() {
+        return sWrapperSdk;
+    }
+
     /**
      * Thrown when {@link DeviceInfoHelper} cannot retrieve device information from devices
      */
@@ -8,6 +8,10 @@ package com.microsoft.appcenter.utils;
 import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -19,6 +23,11 @@ public class HashUtils {
 
     private static final char[] HEXADECIMAL_OUTPUT = "0123456789abcdef".toCharArray();
 
+    /**
+     * Buffer size when hashing files.
+     */
+    private static final int FILE_BUFFER_SIZE = 8192;
+
     @VisibleForTesting
     HashUtils() {
 
@@ -53,6 +62,55 @@ public class HashUtils {
         }
     }
 
+    /**
+     * Hash bytes with sha256 and encodeHex output in hexadecimal.
+     *
+     * @param data data to hash.
+     * @return hashed data in hexadecimal output.
+     */
+    @NonNull
+    public static String sha256(@NonNull byte[] data) {
+        try {
+            return encodeHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+
+            /* Never happens as every device has SHA-256. */
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Hash a file content with sha256 and encodeHex output in hexadecimal, without loading the file in memory.
+     *
+     * @param file file to hash.
+     * @return hashed content in hexadecimal output.
+     * @throws IOException if the file cannot be read.
+     */
+    @NonNull
+    public static String sha256(@NonNull File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+
+            /* Never happens as every device has SHA-256. */
+            throw new RuntimeException(e);
+        }
+        InputStream inputStream = new FileInputStream(file);
+
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            byte[] buffer = new byte[FILE_BUFFER_SIZE];
+            int length;
+            while ((length = inputStream.read(buffer)) >= 0) {
+                digest.update(buffer, 0, length);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return encodeHex(digest.digest());
+    }
+
     /**
      * Encode a byte array to a string (hexadecimal) representation.
      *
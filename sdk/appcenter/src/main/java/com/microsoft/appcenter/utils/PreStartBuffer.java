@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.utils;
+
+import android.support.annotation.NonNull;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded in-memory buffer used to hold items until the SDK is ready to process them.
+ * <p>
+ * Any number of threads can offer items without locking, items are drained in insertion order
+ * by a single consumer. Items offered when the buffer is full are discarded and counted.
+ * Once closed, offers are rejected so that producers can process items directly.
+ *
+ * @param <E> item type.
+ */
+public class PreStartBuffer<E> {
+
+    /**
+     * Size value marking a segment that has been drained and must not accept new items.
+     */
+    private static final int SEALED = -1;
+
+    /**
+     * Size value marking the segment of a closed buffer.
+     */
+    private static final int CLOSED = -2;
+
+    /**
+     * Maximum number of items kept at a time.
+     */
+    private final int mCapacity;
+
+    /**
+     * Current segment receiving items.
+     */
+    private final AtomicReference<Segment<E>> mSegment;
+
+    /**
+     * Number of items discarded because the buffer was full.
+     */
+    private final AtomicInteger mOverflowCount = new AtomicInteger();
+
+    /**
+     * Init.
+     *
+     * @param capacity maximum number of items kept at a time.
+     */
+    public PreStartBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        mCapacity = capacity;
+        mSegment = new AtomicReference<>(new Segment<E>(capacity));
+    }
+
+    /**
+     * Add an item at the end of the buffer.
+     *
+     * @param item item to add.
+     * @return true if the item was added, false if the buffer is full or closed.
+     */
+    public boolean offer(@NonNull E item) {
+        while (true) {
+            Segment<E> segment = mSegment.get();
+            int size = segment.mSize.get();
+            if (size == SEALED) {
+
+                /* Being drained, retry on the new segment. */
+                continue;
+            }
+            if (size == CLOSED) {
+                return false;
+            }
+            if (size >= mCapacity) {
+                mOverflowCount.incrementAndGet();
+                return false;
+            }
+            if (segment.mSize.compareAndSet(size, size + 1)) {
+                segment.mItems.set(size, item);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Move all buffered items to the given collection in insertion order.
+     * This must be called by only one thread at a time.
+     *
+     * @param destination collection where to add the items.
+     * @return number of items drained.
+     */
+    public int drainTo(@NonNull Collection<? super E> destination) {
+        return drainTo(destination, new Segment<E>(mCapacity));
+    }
+
+    /**
+     * Move all buffered items to the given collection in insertion order and reject any further item.
+     * Every item accepted by {@link #offer(Object)} is either drained by this call or a previous one.
+     * This must be called by only one thread at a time.
+     *
+     * @param destination collection where to add the items.
+     * @return number of items drained.
+     */
+    public int drainAndClose(@NonNull Collection<? super E> destination) {
+        Segment<E> closedSegment = new Segment<>(0);
+        closedSegment.mSize.set(CLOSED);
+        return drainTo(destination, closedSegment);
+    }
+
+    /**
+     * Check if the buffer was closed by {@link #drainAndClose(Collection)}.
+     *
+     * @return true if closed.
+     */
+    public boolean isClosed() {
+        return mSegment.get().mSize.get() == CLOSED;
+    }
+
+    private int drainTo(Collection<? super E> destination, Segment<E> nextSegment) {
+
+        /* Switch producers to the next segment then seal the old one to know how many slots were reserved. */
+        Segment<E> segment = mSegment.get();
+        if (segment.mSize.get() == CLOSED) {
+            return 0;
+        }
+        mSegment.set(nextSegment);
+        int size = segment.mSize.getAndSet(SEALED);
+
+        /* A producer can have reserved a slot without having written the item yet. */
+        for (int i = 0; i < size; i++) {
+            E item;
+            while ((item = segment.mItems.get(i)) == null) {
+                Thread.yield();
+            }
+            destination.add(item);
+        }
+        return size;
+    }
+
+    /**
+     * Get the number of items currently buffered.
+     *
+     * @return number of buffered items.
+     */
+    public int size() {
+        return Math.max(mSegment.get().mSize.get(), 0);
+    }
+
+    /**
+     * Get the number of items that were discarded because the buffer was full.
+     *
+     * @return overflow count since creation.
+     */
+    public int getOverflowCount() {
+        return mOverflowCount.get();
+    }
+
+    /**
+     * Storage for a generation of items.
+     */
+    private static class Segment<E> {
+
+        /**
+         * Items storage.
+         */
+        final AtomicReferenceArray<E> mItems;
+
+        /**
+         * Number of reserved slots, {@link #SEALED} or {@link #CLOSED}.
+         */
+        final AtomicInteger mSize = new AtomicInteger();
+
+        Segment(int capacity) {
+            mItems = new AtomicReferenceArray<>(capacity);
+        }
+    }
+}
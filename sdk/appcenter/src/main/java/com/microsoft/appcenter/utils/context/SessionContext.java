@@ -13,7 +13,6 @@ import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
 import java.util.LinkedHashSet;
-import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Set;
 import java.util.TreeMap;
@@ -23,6 +22,8 @@ import static com.microsoft.appcenter.AppCenter.LOG_TAG;
 
 /**
  * Persistent session history.
+ * <p>
+ * Sessions are looked up for every log: lookups read an immutable snapshot without locking.
  */
 public class SessionContext {
 
@@ -46,13 +47,18 @@ public class SessionContext {
     /**
      * Singleton.
      */
-    private static SessionContext sInstance;
+    private static volatile SessionContext sInstance;
 
     /**
      * Past and current session identifiers sorted by session starting timestamp (ascending).
      */
     private final NavigableMap<Long, SessionInfo> mSessions = new TreeMap<>();
 
+    /**
+     * Immutable copy of {@link #mSessions} values, replaced after each change.
+     */
+    private volatile SessionInfo[] mSessionsSnapshot = new SessionInfo[0];
+
     /**
      * App launch timestamp. We could use the real process start time and not SDK start time.
      * But there is no Android API to do that it requires executing ps command or reading proc files.
@@ -102,11 +108,19 @@ public class SessionContext {
     }
 
     @WorkerThread
-    public static synchronized SessionContext getInstance() {
-        if (sInstance == null) {
-            sInstance = new SessionContext();
+    public static SessionContext getInstance() {
+
+        /* Avoid locking when already created as this is called for every log. */
+        SessionContext instance = sInstance;
+        if (instance == null) {
+            synchronized (SessionContext.class) {
+                instance = sInstance;
+                if (instance == null) {
+                    instance = sInstance = new SessionContext();
+                }
+            }
         }
-        return sInstance;
+        return instance;
     }
 
     @VisibleForTesting
@@ -130,6 +144,7 @@ public class SessionContext {
         if (mSessions.size() > STORAGE_MAX_SESSIONS) {
             mSessions.pollFirstEntry();
         }
+        mSessionsSnapshot = mSessions.values().toArray(new SessionInfo[0]);
 
         /* Persist sessions. */
         Set<String> sessionStorage = new LinkedHashSet<>();
@@ -145,12 +160,21 @@ public class SessionContext {
      * @param timestamp try to find session at that timestamp.
      * @return found session or null.
      */
-    public synchronized SessionInfo getSessionAt(long timestamp) {
-        Map.Entry<Long, SessionInfo> pastEntry = mSessions.floorEntry(timestamp);
-        if (pastEntry != null) {
-            return pastEntry.getValue();
+    public SessionInfo getSessionAt(long timestamp) {
+
+        /* Binary search of the last session started at or before the timestamp. */
+        SessionInfo[] sessions = mSessionsSnapshot;
+        int low = 0;
+        int high = sessions.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (sessions[middle].getTimestamp() <= timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
         }
-        return null;
+        return high >= 0 ? sessions[high] : null;
     }
 
     /**
@@ -158,6 +182,7 @@ public class SessionContext {
      */
     public synchronized void clearSessions() {
         mSessions.clear();
+        mSessionsSnapshot = new SessionInfo[0];
         SharedPreferencesManager.remove(STORAGE_KEY);
     }
 
@@ -9,6 +9,7 @@ import android.content.Context;
 
 import com.microsoft.appcenter.channel.Channel;
 import com.microsoft.appcenter.ingestion.Ingestion;
+import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
 import org.junit.Assert;
@@ -30,8 +31,11 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
+import static org.mockito.Matchers.startsWith;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -45,7 +49,7 @@ import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 
 @SuppressWarnings("unused")
 @RunWith(PowerMockRunner.class)
-@PrepareForTest({SharedPreferencesManager.class, AppCenter.class})
+@PrepareForTest({SharedPreferencesManager.class, AppCenter.class, AppCenterLog.class})
 public class AbstractAppCenterServiceTest {
 
     private static final String SERVICE_ENABLED_KEY = KEY_ENABLED + "_Test";
@@ -205,6 +209,120 @@ public class AbstractAppCenterServiceTest {
         SharedPreferencesManager.putBoolean(eq(mService.getEnabledPreferenceKey()), anyBoolean());
     }
 
+    @Test
+    public void postOrBufferBeforeStart() {
+        Runnable command = mock(Runnable.class);
+        assertTrue(mService.isPreStart());
+        mService.postOrBuffer(command);
+        verify(command, never()).run();
+
+        /* Start service. */
+        AppCenterHandler appCenterHandler = mock(AppCenterHandler.class);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return null;
+            }
+        }).when(appCenterHandler).post(any(Runnable.class), any(Runnable.class));
+        assertFalse(mService.hasHandler());
+        mService.onStarting(appCenterHandler);
+        assertTrue(mService.hasHandler());
+
+        /* Commands are still kept until the service is started. */
+        assertTrue(mService.isPreStart());
+        mService.postOrBuffer(command);
+        mService.onStarted(mock(Context.class), mock(Channel.class), "", null, true);
+        assertFalse(mService.isPreStart());
+        verify(command, never()).run();
+
+        /* Replay executes the commands once. */
+        mService.replayPreStartCommands();
+        verify(command, times(2)).run();
+        mService.replayPreStartCommands();
+        verify(command, times(2)).run();
+
+        /* Once started commands are not buffered. */
+        Runnable command2 = mock(Runnable.class);
+        mService.postOrBuffer(command2);
+        verify(command2).run();
+    }
+
+    @Test
+    public void postOrBufferOverflow() {
+        mockStatic(AppCenterLog.class);
+        Runnable command = mock(Runnable.class);
+        for (int i = 0; i < AbstractAppCenterService.PRE_START_BUFFER_CAPACITY + 2; i++) {
+            mService.postOrBuffer(command);
+        }
+
+        /* Buffering and discarding are logged once each. */
+        verifyStatic();
+        AppCenterLog.warn(anyString(), contains("kept in memory"));
+        verifyStatic();
+        AppCenterLog.warn(anyString(), contains("further calls are discarded"));
+        mService.onStarted(mock(Context.class), mock(Channel.class), "", null, true);
+        mService.replayPreStartCommands();
+        verify(command, times(AbstractAppCenterService.PRE_START_BUFFER_CAPACITY)).run();
+        verifyStatic();
+        AppCenterLog.warn(anyString(), startsWith("2 "));
+    }
+
+    @Test
+    public void postWithoutLock() {
+        Runnable command = mock(Runnable.class);
+
+        /* Not started. */
+        assertFalse(mService.postWithoutLock(command));
+
+        /* Started. */
+        AppCenterHandler appCenterHandler = mock(AppCenterHandler.class);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return null;
+            }
+        }).when(appCenterHandler).post(any(Runnable.class), any(Runnable.class));
+        mService.onStarting(appCenterHandler);
+        mService.onStarted(mock(Context.class), mock(Channel.class), "", null, true);
+        assertTrue(mService.postWithoutLock(command));
+        verify(command).run();
+
+        /* Disabled. */
+        mService.setInstanceEnabled(false);
+        assertTrue(mService.postWithoutLock(command));
+        verify(command).run();
+    }
+
+    @Test
+    public void postOrBufferReplayWhenDisabled() {
+        Runnable command = mock(Runnable.class);
+        mService.postOrBuffer(command);
+        mService.onStarted(mock(Context.class), mock(Channel.class), "", null, true);
+        mService.setInstanceEnabled(false);
+        mService.replayPreStartCommands();
+        verify(command, never()).run();
+    }
+
+    @Test
+    public void enabledStateReadOnceFromStorage() {
+        assertTrue(mService.isInstanceEnabled());
+        assertTrue(mService.isInstanceEnabled());
+        verifyStatic();
+        SharedPreferencesManager.getBoolean(SERVICE_ENABLED_KEY, true);
+
+        /* Write through. */
+        mService.setInstanceEnabled(false);
+        assertFalse(mService.isInstanceEnabled());
+        verifyStatic();
+        SharedPreferencesManager.putBoolean(SERVICE_ENABLED_KEY, false);
+        verifyStatic();
+        SharedPreferencesManager.getBoolean(SERVICE_ENABLED_KEY, true);
+    }
+
     @Test
     public void getLogFactories() {
         assertNull(null, mService.getLogFactories());
@@ -148,6 +148,30 @@ public class DefaultChannelAlternateIngestionTest extends AbstractDefaultChannel
         verify(defaultIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
     }
 
+    @Test
+    public void persistLogsEnqueuedBeforeAppSecret() throws Persistence.PersistenceException {
+
+        /* Set up channel without app secret. */
+        Persistence mockPersistence = mock(Persistence.class);
+        Ingestion defaultIngestion = mock(Ingestion.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), null, mockPersistence, defaultIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, DefaultChannel.PENDING_APP_SECRET_LOGS_CAPACITY + 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* Logs are kept in memory, including the ones that exceed capacity which are discarded. */
+        Log log = mock(Log.class);
+        for (int i = 0; i <= DefaultChannel.PENDING_APP_SECRET_LOGS_CAPACITY; i++) {
+            channel.enqueue(log, TEST_GROUP, Flags.DEFAULTS);
+        }
+        channel.enqueue(mock(Log.class), "other", Flags.DEFAULTS);
+        verify(mockPersistence, never()).putLog(any(Log.class), anyString(), anyInt());
+
+        /* Setting app secret persists buffered logs of existing groups. */
+        channel.setAppSecret("testAppSecret");
+        verify(mockPersistence, times(DefaultChannel.PENDING_APP_SECRET_LOGS_CAPACITY)).putLog(log, TEST_GROUP, Flags.NORMAL);
+        verify(mockPersistence, never()).putLog(any(Log.class), eq("other"), anyInt());
+        assertEquals(DefaultChannel.PENDING_APP_SECRET_LOGS_CAPACITY, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+    }
+
     @Test
     public void sendPendingLogsAfterSettingAppSecret() {
 
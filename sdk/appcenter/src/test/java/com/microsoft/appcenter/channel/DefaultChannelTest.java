@@ -7,6 +7,7 @@ package com.microsoft.appcenter.channel;
 
 import android.content.Context;
 import android.content.pm.PackageManager;
+import android.os.Handler;
 
 import com.microsoft.appcenter.CancellationException;
 import com.microsoft.appcenter.Flags;
@@ -50,6 +51,8 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.spy;
 import static org.powermock.api.mockito.PowerMockito.verifyStatic;
@@ -698,6 +701,47 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         verify(listener).onGloballyEnabled(true);
     }
 
+    @Test
+    public void taggedListeners() throws Persistence.PersistenceException {
+        Persistence persistence = mock(Persistence.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), persistence, mock(Ingestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        Object tag = new Object();
+        Channel.Listener taggedListener = mock(Channel.Listener.class);
+        Channel.Listener otherTaggedListener = mock(Channel.Listener.class);
+        channel.addTaggedListener(tag, taggedListener);
+        channel.addTaggedListener(new Object(), otherTaggedListener);
+
+        /* Only the listener of the log tag is called. */
+        Log log = mock(Log.class);
+        when(log.getTag()).thenReturn(tag);
+        channel.enqueue(log, TEST_GROUP, Flags.DEFAULTS);
+        verify(taggedListener).onPreparingLog(log, TEST_GROUP);
+        verify(taggedListener).onPreparedLog(log, TEST_GROUP, Flags.DEFAULTS);
+        verify(taggedListener).shouldFilter(log);
+        verifyZeroInteractions(otherTaggedListener);
+        verify(persistence).putLog(log, TEST_GROUP, NORMAL);
+
+        /* Logs without tag are not seen, and tagged listeners do not get other events. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.setEnabled(false);
+        verifyNoMoreInteractions(taggedListener);
+        verifyZeroInteractions(otherTaggedListener);
+        channel.setEnabled(true);
+
+        /* Tagged listener can filter. */
+        when(taggedListener.shouldFilter(log)).thenReturn(true);
+        channel.enqueue(log, TEST_GROUP, Flags.DEFAULTS);
+        verify(persistence).putLog(log, TEST_GROUP, NORMAL);
+
+        /* Removed listener is not called anymore. */
+        channel.removeTaggedListener(tag, taggedListener);
+        channel.removeTaggedListener(tag, taggedListener);
+        channel.enqueue(log, TEST_GROUP, Flags.DEFAULTS);
+        verify(taggedListener, times(2)).onPreparingLog(log, TEST_GROUP);
+        verify(persistence, times(2)).putLog(log, TEST_GROUP, NORMAL);
+    }
+
     @Test
     public void disableBeforeCheckingPendingLogs() {
         Ingestion ingestion = mock(Ingestion.class);
@@ -1124,4 +1168,84 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         /* Check rest logs sending. */
         verify(mockIngestion, times(4)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
     }
+
+    @Test
+    public void readBatchOnStorageThread() throws Persistence.PersistenceException {
+        Persistence mockPersistence = mock(Persistence.class);
+        Ingestion mockIngestion = mock(Ingestion.class);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer(1));
+
+        /* Keep storage thread commands to run them later. */
+        Handler storageHandler = mock(Handler.class);
+        ArgumentCaptor<Runnable> storageRunnable = ArgumentCaptor.forClass(Runnable.class);
+        when(storageHandler.post(storageRunnable.capture())).thenReturn(true);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler, storageHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, 1, null, null);
+
+        /* Log is persisted right away but batch is not read yet. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mockPersistence).putLog(any(Log.class), eq(TEST_GROUP), eq(NORMAL));
+        verify(mockPersistence, never()).getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class));
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        assertEquals(1, channel.getGroupState(TEST_GROUP).mReadingBatchCount);
+
+        /* Reading batch counts as a parallel batch. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(storageHandler).post(any(Runnable.class));
+
+        /* Read batch then send it from App Center thread. */
+        storageRunnable.getValue().run();
+        verify(mockPersistence).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(1), anyListOf(Log.class));
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mReadingBatchCount);
+    }
+
+    @Test
+    public void discardBatchReadWhileDisabled() {
+        Persistence mockPersistence = mock(Persistence.class);
+        Ingestion mockIngestion = mock(Ingestion.class);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer(1));
+
+        /* Keep storage thread commands to run them later. */
+        Handler storageHandler = mock(Handler.class);
+        ArgumentCaptor<Runnable> storageRunnable = ArgumentCaptor.forClass(Runnable.class);
+        when(storageHandler.post(storageRunnable.capture())).thenReturn(true);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler, storageHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+
+        /* Shutdown while reading, pending state is cleared after the batch is read. */
+        channel.shutdown();
+        verify(mockPersistence, never()).clearPendingLogState();
+        for (Runnable runnable : storageRunnable.getAllValues()) {
+            runnable.run();
+        }
+        verify(mockPersistence).clearPendingLogState();
+
+        /* Batch is not sent. */
+        verify(mockIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void discardBatchReadForReAddedGroup() {
+        Persistence mockPersistence = mock(Persistence.class);
+        Ingestion mockIngestion = mock(Ingestion.class);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer(1));
+
+        /* Keep storage thread commands to run them later. */
+        Handler storageHandler = mock(Handler.class);
+        ArgumentCaptor<Runnable> storageRunnable = ArgumentCaptor.forClass(Runnable.class);
+        when(storageHandler.post(storageRunnable.capture())).thenReturn(true);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler, storageHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+
+        /* Remove and add the group again while reading. */
+        channel.removeGroup(TEST_GROUP);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        storageRunnable.getAllValues().get(0).run();
+
+        /* Batch is not sent. */
+        verify(mockIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
 }
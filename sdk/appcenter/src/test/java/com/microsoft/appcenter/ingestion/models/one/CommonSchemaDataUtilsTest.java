@@ -18,6 +18,7 @@ import org.powermock.modules.junit4.PowerMockRunner;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
@@ -45,4 +46,11 @@ public class CommonSchemaDataUtilsTest {
         CommonSchemaDataUtils.addCommonSchemaData(properties, commonSchemaLog);
         assertEquals(0, commonSchemaLog.getData().getProperties().length());
     }
+
+    @Test
+    public void splitKey() {
+        for (String key : new String[]{"a", "a.b", "a.b.c", "", ".", "a..b", ".a", "a."}) {
+            assertArrayEquals(key, key.split("\\.", -1), CommonSchemaDataUtils.splitKey(key));
+        }
+    }
 }
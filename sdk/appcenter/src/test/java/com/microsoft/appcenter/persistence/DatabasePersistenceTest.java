@@ -31,6 +31,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static com.microsoft.appcenter.Flags.NORMAL;
 import static org.junit.Assert.assertEquals;
@@ -376,6 +378,82 @@ public class DatabasePersistenceTest {
         verify(databaseManager).delete(anyLong());
     }
 
+    @Test
+    public void deletedLogsNotBatchedWhileReading() throws Exception {
+
+        /* Mock 3 logs with their identifier as payload. */
+        List<ContentValues> fieldValues = new ArrayList<>();
+        for (long id = 1; id <= 3; id++) {
+            ContentValues contentValues = mock(ContentValues.class);
+            when(contentValues.getAsLong(DatabaseManager.PRIMARY_KEY)).thenReturn(id);
+            when(contentValues.getAsString(DatabasePersistence.COLUMN_LOG)).thenReturn(String.valueOf(id));
+            fieldValues.add(contentValues);
+        }
+        DatabaseManager databaseManager = mock(DatabaseManager.class);
+        whenNew(DatabaseManager.class).withAnyArguments().thenReturn(databaseManager);
+        when(databaseManager.nextValues(any(Cursor.class))).thenCallRealMethod();
+
+        /* First batch reads the first 2 logs. */
+        MockCursor firstCursor = new MockCursor(fieldValues);
+        firstCursor.mockBuildValues(databaseManager);
+
+        /* Second batch reads all logs, and waits for a concurrent delete of the first batch after reading the first row. */
+        final CountDownLatch rowRead = new CountDownLatch(1);
+        final CountDownLatch deleted = new CountDownLatch(1);
+        final MockCursor secondCursor = new MockCursor(fieldValues);
+        when(databaseManager.buildValues(eq(secondCursor))).then(new Answer<ContentValues>() {
+
+            @Override
+            public ContentValues answer(InvocationOnMock invocation) throws InterruptedException {
+                ContentValues values = secondCursor.mList.get(secondCursor.mIndex);
+                if (secondCursor.mIndex == 0) {
+                    rowRead.countDown();
+                    deleted.await(200, TimeUnit.MILLISECONDS);
+                }
+                return values;
+            }
+        });
+        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), isNull(String[].class), any(String[].class), anyString())).thenReturn(firstCursor, secondCursor);
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString(), anyString())).thenAnswer(new Answer<Log>() {
+
+            @Override
+            public Log answer(InvocationOnMock invocation) {
+                Log log = mock(Log.class);
+                when(log.getType()).thenReturn((String) invocation.getArguments()[0]);
+                return log;
+            }
+        });
+        final DatabasePersistence persistence = new DatabasePersistence(mock(Context.class));
+        persistence.setLogSerializer(logSerializer);
+        final String firstBatchId = persistence.getLogs("mock", Collections.<String>emptyList(), 2, new ArrayList<Log>());
+
+        /* Delete the first batch, like after sending it, while the second batch is being read. */
+        Thread deleteThread = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    rowRead.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                persistence.deleteLogs("mock", firstBatchId);
+                deleted.countDown();
+            }
+        };
+        deleteThread.start();
+        List<Log> outLogs = new ArrayList<>();
+        persistence.getLogs("mock", Collections.<String>emptyList(), 3, outLogs);
+        deleteThread.join();
+
+        /* Deleted logs must not be sent again. */
+        assertEquals(1, outLogs.size());
+        assertEquals("3", outLogs.get(0).getType());
+        verify(databaseManager).delete(1);
+        verify(databaseManager).delete(2);
+    }
+
     @Test
     public void checkSetStorageSizeForwarding() throws Exception {
 
@@ -7,9 +7,13 @@ package com.microsoft.appcenter.utils;
 
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -25,6 +29,9 @@ public class HashUtilsTest {
     @Rule
     public PowerMockRule mPowerMockRule = new PowerMockRule();
 
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
     @Test
     public void init() {
         new HashUtils();
@@ -36,6 +43,45 @@ public class HashUtilsTest {
         assertEquals("7efd873c874fbf92d6c3eccc2f24f7eaa349d9d7b512d81ff3f1b44e896362fb", HashUtils.sha256("This hash function rocks!"));
     }
 
+    @Test
+    public void sha256Bytes() throws UnsupportedEncodingException {
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", HashUtils.sha256(new byte[0]));
+        assertEquals("7efd873c874fbf92d6c3eccc2f24f7eaa349d9d7b512d81ff3f1b44e896362fb", HashUtils.sha256("This hash function rocks!".getBytes("UTF-8")));
+    }
+
+    @Test(expected = RuntimeException.class)
+    @PrepareForTest(HashUtils.class)
+    public void algorithmNotFoundForBytes() throws Exception {
+        mockStatic(MessageDigest.class);
+        doThrow(new NoSuchAlgorithmException()).when(MessageDigest.class);
+        MessageDigest.getInstance(anyString());
+        HashUtils.sha256(new byte[0]);
+    }
+
+    @Test
+    public void sha256File() throws IOException {
+        File file = mTemporaryFolder.newFile();
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", HashUtils.sha256(file));
+        FileWriter writer = new FileWriter(file);
+        writer.write("This hash function rocks!");
+        writer.close();
+        assertEquals("7efd873c874fbf92d6c3eccc2f24f7eaa349d9d7b512d81ff3f1b44e896362fb", HashUtils.sha256(file));
+    }
+
+    @Test(expected = IOException.class)
+    public void sha256MissingFile() throws IOException {
+        HashUtils.sha256(new File(mTemporaryFolder.getRoot(), "missing"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    @PrepareForTest(HashUtils.class)
+    public void algorithmNotFoundForFile() throws Exception {
+        mockStatic(MessageDigest.class);
+        doThrow(new NoSuchAlgorithmException()).when(MessageDigest.class);
+        MessageDigest.getInstance(anyString());
+        HashUtils.sha256(mTemporaryFolder.newFile());
+    }
+
     @Test(expected = RuntimeException.class)
     @PrepareForTest(HashUtils.class)
     public void algorithmNotFound() throws NoSuchAlgorithmException {
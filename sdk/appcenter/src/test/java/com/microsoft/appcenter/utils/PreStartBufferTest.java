@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PreStartBufferTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCapacity() {
+        new PreStartBuffer<String>(0);
+    }
+
+    @Test
+    public void offerAndDrain() {
+        PreStartBuffer<String> buffer = new PreStartBuffer<>(2);
+        assertEquals(0, buffer.size());
+        assertTrue(buffer.offer("a"));
+        assertTrue(buffer.offer("b"));
+        assertEquals(2, buffer.size());
+
+        /* Full. */
+        assertFalse(buffer.offer("c"));
+        assertEquals(1, buffer.getOverflowCount());
+
+        /* Drain keeps order. */
+        List<String> items = new ArrayList<>();
+        assertEquals(2, buffer.drainTo(items));
+        assertEquals("a", items.get(0));
+        assertEquals("b", items.get(1));
+        assertEquals(0, buffer.size());
+
+        /* Buffer can be used again after drain. */
+        assertTrue(buffer.offer("d"));
+        items.clear();
+        assertEquals(1, buffer.drainTo(items));
+        assertEquals("d", items.get(0));
+        assertEquals(1, buffer.getOverflowCount());
+    }
+
+    @Test
+    public void concurrentOffers() throws InterruptedException {
+        final int threadCount = 4;
+        final int itemsPerThread = 1000;
+        final PreStartBuffer<Integer> buffer = new PreStartBuffer<>(threadCount * itemsPerThread);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int offset = t * itemsPerThread;
+            threads[t] = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                    for (int i = 0; i < itemsPerThread; i++) {
+                        buffer.offer(offset + i);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        /* Drain while producers are running, then drain the rest. */
+        Set<Integer> items = new HashSet<>();
+        List<Integer> drained = new ArrayList<>();
+        startLatch.countDown();
+        buffer.drainTo(drained);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        buffer.drainTo(drained);
+        items.addAll(drained);
+        assertEquals(threadCount * itemsPerThread, drained.size());
+        assertEquals(threadCount * itemsPerThread, items.size());
+        assertEquals(0, buffer.getOverflowCount());
+    }
+
+    @Test
+    public void drainAndClose() {
+        PreStartBuffer<String> buffer = new PreStartBuffer<>(2);
+        assertTrue(buffer.offer("a"));
+        assertFalse(buffer.isClosed());
+        List<String> items = new ArrayList<>();
+        assertEquals(1, buffer.drainAndClose(items));
+        assertEquals("a", items.get(0));
+        assertTrue(buffer.isClosed());
+
+        /* Rejected without counting overflow, and nothing to drain anymore. */
+        assertFalse(buffer.offer("b"));
+        assertEquals(0, buffer.getOverflowCount());
+        assertEquals(0, buffer.drainTo(items));
+        assertEquals(0, buffer.drainAndClose(items));
+        assertTrue(buffer.isClosed());
+        assertEquals(1, items.size());
+    }
+
+    @Test
+    public void concurrentOffersWhileClosing() throws InterruptedException {
+        final int threadCount = 4;
+        final int itemsPerThread = 1000;
+        final PreStartBuffer<Integer> buffer = new PreStartBuffer<>(threadCount * itemsPerThread);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final List<List<Integer>> rejected = new ArrayList<>();
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int offset = t * itemsPerThread;
+            final List<Integer> threadRejected = new ArrayList<>();
+            rejected.add(threadRejected);
+            threads[t] = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                    for (int i = 0; i < itemsPerThread; i++) {
+                        if (!buffer.offer(offset + i)) {
+                            assertTrue(buffer.isClosed());
+                            threadRejected.add(offset + i);
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        /* Every item is either drained when closing or rejected, never lost. */
+        Set<Integer> items = new HashSet<>();
+        List<Integer> drained = new ArrayList<>();
+        startLatch.countDown();
+        buffer.drainAndClose(drained);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        items.addAll(drained);
+        for (List<Integer> threadRejected : rejected) {
+            items.addAll(threadRejected);
+            drained.addAll(threadRejected);
+        }
+        assertEquals(threadCount * itemsPerThread, drained.size());
+        assertEquals(threadCount * itemsPerThread, items.size());
+        assertEquals(0, buffer.getOverflowCount());
+    }
+}
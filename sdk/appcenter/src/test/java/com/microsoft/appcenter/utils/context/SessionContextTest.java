@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.utils.context;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@PrepareForTest({SessionContext.class, SharedPreferencesManager.class, AppCenterLog.class})
+@RunWith(PowerMockRunner.class)
+public class SessionContextTest {
+
+    private static final String STORAGE_KEY = "sessions";
+
+    @Before
+    public void setUp() {
+        mockStatic(System.class);
+        mockStatic(SharedPreferencesManager.class);
+        mockStatic(AppCenterLog.class);
+        SessionContext.unsetInstance();
+    }
+
+    @After
+    public void tearDown() {
+        SessionContext.unsetInstance();
+    }
+
+    private static void setTime(long time) {
+        when(System.currentTimeMillis()).thenReturn(time);
+    }
+
+    @Test
+    public void loadStoredSessions() {
+        UUID sid = UUID.randomUUID();
+        Set<String> storedSessions = new HashSet<>();
+        storedSessions.add("300/" + sid + "/250");
+        storedSessions.add("100//100");
+        storedSessions.add("200/" + UUID.randomUUID());
+        storedSessions.add("invalid");
+        when(SharedPreferencesManager.getStringSet(STORAGE_KEY)).thenReturn(storedSessions);
+        setTime(1000);
+        SessionContext sessionContext = SessionContext.getInstance();
+        assertSame(sessionContext, SessionContext.getInstance());
+
+        /* Lookups find the last session started at or before the time. */
+        assertNull(sessionContext.getSessionAt(99));
+        assertNull(sessionContext.getSessionAt(100).getSessionId());
+        assertEquals(200, sessionContext.getSessionAt(299).getAppLaunchTimestamp());
+        assertEquals(sid, sessionContext.getSessionAt(300).getSessionId());
+        assertEquals(250, sessionContext.getSessionAt(999).getAppLaunchTimestamp());
+
+        /* Current process session has no identifier. */
+        assertNull(sessionContext.getSessionAt(1000).getSessionId());
+        assertEquals(1000, sessionContext.getSessionAt(Long.MAX_VALUE).getAppLaunchTimestamp());
+    }
+
+    @Test
+    public void addAndClearSessions() {
+        setTime(1000);
+        SessionContext sessionContext = SessionContext.getInstance();
+
+        /* A session added after the clock went backwards is still sorted. */
+        UUID sid = UUID.randomUUID();
+        setTime(500);
+        sessionContext.addSession(sid);
+        assertEquals(sid, sessionContext.getSessionAt(999).getSessionId());
+        assertNull(sessionContext.getSessionAt(1000).getSessionId());
+        assertNull(sessionContext.getSessionAt(499));
+
+        /* Only the last sessions are kept. */
+        for (int i = 1; i <= 10; i++) {
+            setTime(1000 + i);
+            sessionContext.addSession(UUID.randomUUID());
+        }
+        assertNull(sessionContext.getSessionAt(1000));
+        verifyStatic(times(12));
+        SharedPreferencesManager.putStringSet(eq(STORAGE_KEY), anySetOf(String.class));
+
+        /* Clear. */
+        sessionContext.clearSessions();
+        assertNull(sessionContext.getSessionAt(Long.MAX_VALUE));
+        verifyStatic();
+        SharedPreferencesManager.remove(STORAGE_KEY);
+    }
+}